@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.optimize.api;
+
+import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
+import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
+import org.deeplearning4j.arbiter.optimize.api.score.ScoreFunction;
+import org.deeplearning4j.arbiter.optimize.runner.CandidateBudget;
+import org.deeplearning4j.arbiter.optimize.runner.IOptimizationRunner;
+import org.deeplearning4j.arbiter.optimize.runner.listener.StatusListener;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/**
+ * A TaskCreator for tasks that can be trained for a limited budget, and resumed from a checkpoint.
+ * Required for early termination scheduling with {@link org.deeplearning4j.arbiter.optimize.runner.AsyncSuccessiveHalving}.
+ * <br>
+ * The created task should train for {@link CandidateBudget#remainingBudget()} units, starting from
+ * {@link CandidateBudget#getResumeFrom()} if it is not null. Once the model has been scored, it should save it with
+ * {@link CandidateBudget#getCheckpointSaver()} (if not null) and set the returned reference using
+ * {@link CandidateBudget#setCheckpoint(org.deeplearning4j.arbiter.optimize.api.saving.ResultReference)}
+ */
+public interface BudgetedTaskCreator extends TaskCreator {
+
+    /**
+     * As per {@link #create(Candidate, DataProvider, ScoreFunction, List, IOptimizationRunner)}, with a training budget
+     *
+     * @param budget Training budget for the task
+     */
+    Callable<OptimizationResult> create(Candidate candidate, DataProvider dataProvider, ScoreFunction scoreFunction,
+                                        List<StatusListener> statusListeners, IOptimizationRunner runner, CandidateBudget budget);
+
+    /**
+     * As per {@link #create(Candidate, Class, Properties, ScoreFunction, List, IOptimizationRunner)}, with a training
+     * budget
+     *
+     * @param budget Training budget for the task
+     */
+    Callable<OptimizationResult> create(Candidate candidate, Class<? extends DataSource> dataSource, Properties dataSourceProperties,
+                                        ScoreFunction scoreFunction, List<StatusListener> statusListeners, IOptimizationRunner runner,
+                                        CandidateBudget budget);
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.optimize.runner;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.arbiter.optimize.api.Candidate;
+import org.deeplearning4j.arbiter.optimize.api.OptimizationResult;
+import org.deeplearning4j.arbiter.optimize.api.saving.ResultReference;
+import org.deeplearning4j.arbiter.optimize.api.saving.ResultSaver;
+
+import java.util.*;
+
+/**
+ * Asynchronous successive halving (ASHA) scheduler, for early termination of poor candidates.<br>
+ * Candidates are first trained for minBudget units (rung 0). Whenever an execution slot is free, the best
+ * 1/reductionFactor of the candidates of a rung that have not yet been promoted are promoted to the next rung,
+ * where they are trained up to reductionFactor times the budget of the previous rung (capped at maxBudget), resuming
+ * from the checkpoint saved at the end of the previous rung. Higher rungs are checked first. If no candidate can be
+ * promoted, a new candidate is started at rung 0. Candidates that are never promoted are effectively stopped early.<br>
+ * Checkpoints are only saved below the final rung, and are dropped once promoted, or once the candidate limit makes
+ * promotion impossible (see {@link #candidateLimitReached(int)}).<br>
+ * Promotions never wait for a rung to be complete, so all execution slots are kept busy.<br>
+ * Requires a task creator implementing {@link org.deeplearning4j.arbiter.optimize.api.BudgetedTaskCreator}.
+ * See: Li et al., A System for Massively Parallel Hyperparameter Tuning - https://arxiv.org/abs/1810.05934
+ */
+@Slf4j
+public class AsyncSuccessiveHalving {
+
+    @Getter
+    private final int minBudget;
+    @Getter
+    private final int maxBudget;
+    @Getter
+    private final int reductionFactor;
+    @Getter
+    private final int numRungs;
+    private final ResultSaver checkpointSaver;
+
+    private final List<List<RungEntry>> rungs = new ArrayList<>();
+    private final List<Set<Integer>> promoted = new ArrayList<>();
+    private boolean minimize = true;
+    private int maxCandidates = -1;
+
+    /**
+     * No checkpoints are saved, so promoted candidates are trained from scratch: see
+     * {@link #AsyncSuccessiveHalving(int, int, int, ResultSaver)} to resume from checkpoints instead
+     */
+    public AsyncSuccessiveHalving(int minBudget, int maxBudget, int reductionFactor) {
+        this(minBudget, maxBudget, reductionFactor, null);
+    }
+
+    /**
+     * @param minBudget       Budget (for example, number of epochs) of the candidates at rung 0
+     * @param maxBudget       Budget of the candidates at the last rung
+     * @param reductionFactor Fraction (1/reductionFactor) of the candidates promoted to the next rung. Also the
+     *                        budget growth factor between rungs
+     * @param checkpointSaver Saver for the checkpoints, used to resume training on promotion. May be null, in which
+     *                        case promoted candidates are trained from scratch
+     */
+    public AsyncSuccessiveHalving(int minBudget, int maxBudget, int reductionFactor, ResultSaver checkpointSaver) {
+        if (minBudget <= 0 || maxBudget < minBudget)
+            throw new IllegalArgumentException("Invalid budgets: must have 0 < minBudget <= maxBudget (got minBudget="
+                            + minBudget + ", maxBudget=" + maxBudget + ")");
+        if (reductionFactor < 2)
+            throw new IllegalArgumentException("reductionFactor must be >= 2 (got: " + reductionFactor + ")");
+        this.minBudget = minBudget;
+        this.maxBudget = maxBudget;
+        this.reductionFactor = reductionFactor;
+        this.checkpointSaver = checkpointSaver;
+
+        int n = 1;
+        long b = minBudget;
+        while (b < maxBudget) {
+            b *= reductionFactor;
+            n++;
+        }
+        this.numRungs = n;
+        for (int i = 0; i < numRungs; i++) {
+            rungs.add(new ArrayList<RungEntry>());
+            promoted.add(new HashSet<Integer>());
+        }
+    }
+
+    /**
+     * Called by the optimization runner before execution starts
+     *
+     * @param minimize Whether the score function should be minimized
+     */
+    public synchronized void initialize(boolean minimize) {
+        this.minimize = minimize;
+    }
+
+    /**
+     * @return Budget of the candidates at the specified rung
+     */
+    public int budget(int rung) {
+        long b = minBudget;
+        for (int i = 0; i < rung && b < maxBudget; i++) {
+            b *= reductionFactor;
+        }
+        return (int) Math.min(b, maxBudget);
+    }
+
+    public boolean isFinalRung(int rung) {
+        return rung == numRungs - 1;
+    }
+
+    /**
+     * @return Number of completed executions at the specified rung
+     */
+    public synchronized int numCompleted(int rung) {
+        return rungs.get(rung).size();
+    }
+
+    /**
+     * @return Number of checkpoints currently held for future promotions
+     */
+    public synchronized int numCheckpoints() {
+        int n = 0;
+        for (List<RungEntry> entries : rungs) {
+            for (RungEntry e : entries) {
+                if (e.checkpoint != null)
+                    n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return Budget to start a new candidate with, at rung 0
+     */
+    public CandidateBudget newCandidate(Candidate candidate) {
+        return new CandidateBudget(candidate, 0, budget(0), 0, null, saverFor(0), null);
+    }
+
+    /**
+     * Called by the optimization runner once no new candidates will be created. From then on, the number of
+     * candidates that can reach each rung is bounded, and checkpoints of candidates ranked too low to ever be
+     * promoted are dropped
+     *
+     * @param numCandidates Total number of candidates created
+     */
+    public synchronized void candidateLimitReached(int numCandidates) {
+        this.maxCandidates = numCandidates;
+        releaseCheckpoints();
+    }
+
+    /**
+     * @return Budget for the next candidate to promote, or null if no candidate can currently be promoted
+     */
+    public synchronized CandidateBudget nextPromotion() {
+        for (int k = numRungs - 2; k >= 0; k--) {
+            List<RungEntry> entries = rungs.get(k);
+            int numToPromote = entries.size() / reductionFactor;
+            if (numToPromote == 0)
+                continue;
+
+            List<RungEntry> sorted = sorted(entries);
+            for (int i = 0; i < numToPromote; i++) {
+                RungEntry e = sorted.get(i);
+                if (promoted.get(k).add(e.candidate.getIndex())) {
+                    log.debug("Promoting candidate {} (score={}) from rung {} to rung {}", e.candidate.getIndex(),
+                                    e.score, k, k + 1);
+                    ResultReference resumeFrom = e.checkpoint;
+                    //Checkpoint is not needed anymore once promoted
+                    e.checkpoint = null;
+                    return new CandidateBudget(e.candidate, k + 1, budget(k + 1), budget(k), resumeFrom,
+                                    saverFor(k + 1), null);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Report the result of a budgeted execution. Failed executions (or executions without a score) are not
+     * eligible for promotion.
+     */
+    public synchronized void reportResult(CandidateBudget budget, OptimizationResult result) {
+        if (result.getScore() == null || result.getCandidateInfo() == null
+                        || result.getCandidateInfo().getCandidateStatus() != CandidateStatus.Complete)
+            return;
+        rungs.get(budget.getRung()).add(new RungEntry(budget.getCandidate(), result.getScore(), budget.getCheckpoint()));
+        releaseCheckpoints();
+    }
+
+    /**
+     * Candidates at the final rung are never promoted, so they don't need a checkpoint
+     */
+    private ResultSaver saverFor(int rung) {
+        return isFinalRung(rung) ? null : checkpointSaver;
+    }
+
+    /**
+     * Drop the checkpoints that can't be used anymore. At most maxCandidates executions complete at rung 0, and at
+     * most 1/reductionFactor of the executions of a rung are promoted, which bounds the size of each rung. Candidates
+     * ranked below the number of promotions that bound allows can't be promoted later either, since later results
+     * can only push them further down
+     */
+    private void releaseCheckpoints() {
+        if (maxCandidates < 0)
+            return;
+
+        long maxSize = maxCandidates;
+        for (int k = 0; k < numRungs - 1; k++) {
+            long maxPromotions = maxSize / reductionFactor;
+            List<RungEntry> sorted = sorted(rungs.get(k));
+            for (int i = (int) Math.min(maxPromotions, sorted.size()); i < sorted.size(); i++) {
+                RungEntry e = sorted.get(i);
+                if (e.checkpoint != null) {
+                    log.debug("Dropping checkpoint of candidate {} at rung {}: can't be promoted", e.candidate.getIndex(), k);
+                    e.checkpoint = null;
+                }
+            }
+            maxSize = maxPromotions;
+        }
+    }
+
+    private List<RungEntry> sorted(List<RungEntry> entries) {
+        List<RungEntry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, new Comparator<RungEntry>() {
+            @Override
+            public int compare(RungEntry e1, RungEntry e2) {
+                return minimize ? Double.compare(e1.score, e2.score) : Double.compare(e2.score, e1.score);
+            }
+        });
+        return sorted;
+    }
+
+    @AllArgsConstructor
+    private static class RungEntry {
+        private Candidate candidate;
+        private double score;
+        private ResultReference checkpoint;
+    }
+}
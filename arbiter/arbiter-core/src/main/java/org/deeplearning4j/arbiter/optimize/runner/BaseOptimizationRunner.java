@@ -19,6 +19,7 @@ package org.deeplearning4j.arbiter.optimize.runner;
 import com.google.common.util.concurrent.ListenableFuture;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.deeplearning4j.arbiter.optimize.api.Candidate;
@@ -27,6 +28,7 @@ import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
 import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
 import org.deeplearning4j.arbiter.optimize.api.saving.ResultReference;
 import org.deeplearning4j.arbiter.optimize.api.score.ScoreFunction;
+import org.deeplearning4j.arbiter.optimize.api.termination.MaxCandidatesCondition;
 import org.deeplearning4j.arbiter.optimize.api.termination.TerminationCondition;
 import org.deeplearning4j.arbiter.optimize.config.OptimizationConfiguration;
 import org.deeplearning4j.arbiter.optimize.runner.listener.StatusListener;
@@ -37,7 +39,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * BaseOptimization runner: responsible for scheduling tasks, saving results using the result saver, etc.
+ * BaseOptimization runner: responsible for scheduling tasks, saving results using the result saver, etc.<br>
+ * When an {@link AsyncSuccessiveHalving} scheduler is set, candidates are executed with limited budgets and only the
+ * best ones are promoted to larger budgets. In that case, the best score only considers candidates trained with the
+ * full budget, and {@link MaxCandidatesCondition} only stops new candidates from being created: candidates created
+ * so far are still promoted, until no more promotions are possible.
  *
  * @author Alex Black
  */
@@ -52,6 +58,7 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
     protected AtomicInteger totalCandidateCount = new AtomicInteger();
     protected AtomicInteger numCandidatesCompleted = new AtomicInteger();
     protected AtomicInteger numCandidatesFailed = new AtomicInteger();
+    protected AtomicInteger rungExecutionCount = new AtomicInteger();
     protected Double bestScore = null;
     protected Long bestScoreTime = null;
     protected AtomicInteger bestScoreCandidateIndex = new AtomicInteger(-1);
@@ -63,6 +70,12 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
 
     protected List<StatusListener> statusListeners = new ArrayList<>();
 
+    @Getter
+    protected AsyncSuccessiveHalving scheduler;
+    protected Map<Future<OptimizationResult>, CandidateBudget> budgets = new ConcurrentHashMap<>();
+    protected Map<Integer, Integer> resultPositions = new HashMap<>();
+    protected boolean noNewCandidates = false;
+
 
     protected BaseOptimizationRunner(OptimizationConfiguration config) {
         this.config = config;
@@ -74,6 +87,15 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
 
     }
 
+    /**
+     * Set the early termination scheduler. If null (default), all candidates are trained to completion
+     *
+     * @param scheduler Scheduler to use for the candidates
+     */
+    public void setScheduler(AsyncSuccessiveHalving scheduler) {
+        this.scheduler = scheduler;
+    }
+
     protected void init() {
         futureListenerExecutor = Executors.newFixedThreadPool(maxConcurrentTasks(), new ThreadFactory() {
             private AtomicLong counter = new AtomicLong(0);
@@ -104,6 +126,10 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
             c.initialize(this);
         }
 
+        if (scheduler != null) {
+            scheduler.initialize(config.getScoreFunction().minimize());
+        }
+
         //Queue initial tasks:
         List<Future<OptimizationResult>> tempList = new ArrayList<>(100);
         while (true) {
@@ -133,29 +159,62 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
             tempList.clear();
 
             //Check termination conditions:
-            if (terminate()) {
+            if (scheduler != null && !noNewCandidates && candidateLimitReached()) {
+                log.info("Candidate limit reached: no new candidates, waiting for remaining promotions");
+                noNewCandidates = true;
+                scheduler.candidateLimitReached(totalCandidateCount.get());
+            }
+            if (terminate(scheduler != null)) {
                 shutdown(true);
                 break;
             }
 
-            //Add additional tasks
-            while (config.getCandidateGenerator().hasMoreCandidates() && queuedFutures.size() < maxConcurrentTasks()) {
-                Candidate candidate = config.getCandidateGenerator().getCandidate();
+            //Add additional tasks: promotions first (if any), then new candidates
+            while (queuedFutures.size() < maxConcurrentTasks()) {
+                CandidateBudget budget = scheduler == null ? null : scheduler.nextPromotion();
+                Candidate candidate;
+                if (budget != null) {
+                    candidate = budget.getCandidate();
+                } else if (!noNewCandidates && config.getCandidateGenerator().hasMoreCandidates()) {
+                    candidate = config.getCandidateGenerator().getCandidate();
+                } else {
+                    break;
+                }
+
                 CandidateInfo status;
                 if (candidate.getException() != null) {
                     //Failed on generation...
                     status = processFailedCandidates(candidate);
                 } else {
                     long created = System.currentTimeMillis();
+                    boolean promotion = budget != null;
+                    if (scheduler != null && !promotion) {
+                        budget = scheduler.newCandidate(candidate);
+                    }
+
                     ListenableFuture<OptimizationResult> f;
                     if(config.getDataSource() != null){
-                        f = execute(candidate, config.getDataSource(), config.getDataSourceProperties(), config.getScoreFunction());
+                        f = budget == null
+                                ? execute(candidate, config.getDataSource(), config.getDataSourceProperties(), config.getScoreFunction())
+                                : execute(candidate, config.getDataSource(), config.getDataSourceProperties(), config.getScoreFunction(), budget);
                     } else {
-                        f = execute(candidate, config.getDataProvider(), config.getScoreFunction());
+                        f = budget == null
+                                ? execute(candidate, config.getDataProvider(), config.getScoreFunction())
+                                : execute(candidate, config.getDataProvider(), config.getScoreFunction(), budget);
+                    }
+                    if (budget != null) {
+                        budgets.put(f, budget);
+                        rungExecutionCount.getAndIncrement();
                     }
                     f.addListener(new OnCompletionListener(f), futureListenerExecutor);
                     queuedFutures.add(f);
-                    totalCandidateCount.getAndIncrement();
+
+                    if (promotion) {
+                        //Same candidate, with a larger budget: keep the original creation time
+                        created = currentStatus.get(candidate.getIndex()).getCreatedTime();
+                    } else {
+                        totalCandidateCount.getAndIncrement();
+                    }
 
                     status = new CandidateInfo(candidate.getIndex(), CandidateStatus.Created, null,
                             created, null, null, candidate.getFlatParameters(), null);
@@ -166,6 +225,12 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
                     listener.onCandidateStatusChange(status, this, null);
                 }
             }
+
+            //Nothing running, and nothing left to promote
+            if (noNewCandidates && queuedFutures.isEmpty()) {
+                shutdown(true);
+                break;
+            }
         }
 
         //Process any final (completed) tasks:
@@ -200,6 +265,7 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
      */
     private void processReturnedTask(Future<OptimizationResult> future) {
         long currentTime = System.currentTimeMillis();
+        CandidateBudget budget = budgets.remove(future);
         OptimizationResult result;
         try {
             result = future.get(100, TimeUnit.MILLISECONDS);
@@ -210,6 +276,10 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
             //This is just to handle any that are missed there (or, by implementations that don't properly do this)
             log.warn("Task failed", e);
 
+            if (budget != null && budget.getRung() > 0) {
+                //Already counted as completed at a lower rung
+                return;
+            }
             numCandidatesFailed.getAndIncrement();
             return;
         } catch (TimeoutException e) {
@@ -228,17 +298,27 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
 
         if (result.getCandidateInfo().getCandidateStatus() == CandidateStatus.Failed) {
             log.info("Task {} failed during execution: {}", result.getIndex(), result.getCandidateInfo().getExceptionStackTrace());
-            numCandidatesFailed.getAndIncrement();
+            if (budget == null || budget.getRung() == 0) {
+                numCandidatesFailed.getAndIncrement();
+            }
         } else {
 
+            if (budget != null) {
+                scheduler.reportResult(budget, result);
+                log.info("Completed task {} at rung {} (budget={}), score = {}", result.getIndex(), budget.getRung(),
+                        budget.getBudget(), result.getScore());
+            }
+
             //Report completion to candidate generator
             config.getCandidateGenerator().reportResults(result);
 
             Double score = result.getScore();
             log.info("Completed task {}, score = {}", result.getIndex(), result.getScore());
 
+            //Scores at lower rungs are for partially trained candidates, and are not comparable with final scores
+            boolean finalScore = budget == null || scheduler.isFinalRung(budget.getRung());
             boolean minimize = config.getScoreFunction().minimize();
-            if (score != null && (bestScore == null
+            if (finalScore && score != null && (bestScore == null
                     || ((minimize && score < bestScore) || (!minimize && score > bestScore)))) {
                 if (bestScore == null) {
                     log.info("New best score: {} (first completed model)", score);
@@ -251,13 +331,23 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
                 bestScoreTime = System.currentTimeMillis();
                 bestScoreCandidateIndex.set(result.getIndex());
             }
-            numCandidatesCompleted.getAndIncrement();
+            if (budget == null || budget.getRung() == 0) {
+                numCandidatesCompleted.getAndIncrement();
+            }
 
             //Model saving is done in the optimization tasks, to avoid CUDA threading issues
             ResultReference resultReference = result.getResultReference();
 
-            if (resultReference != null)
-                allResults.add(resultReference);
+            if (resultReference != null) {
+                //Results of a promoted candidate replace the results from its previous rung
+                Integer position = resultPositions.get(result.getIndex());
+                if (position != null) {
+                    allResults.set(position, resultReference);
+                } else {
+                    resultPositions.put(result.getIndex(), allResults.size());
+                    allResults.add(resultReference);
+                }
+            }
         }
     }
 
@@ -276,6 +366,14 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
         return numCandidatesFailed.get();
     }
 
+    /**
+     * Number of budgeted executions (at any rung) started so far, when a scheduler is set. Unlike
+     * {@link #numCandidatesTotal()}, promotions of a candidate to a higher rung are counted here
+     */
+    public int numRungExecutions() {
+        return rungExecutionCount.get();
+    }
+
     @Override
     public int numCandidatesQueued() {
         return queuedFutures.size();
@@ -337,8 +435,10 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
         return list;
     }
 
-    private boolean terminate() {
+    private boolean terminate(boolean skipCandidateLimit) {
         for (TerminationCondition c : config.getTerminationConditions()) {
+            if (skipCandidateLimit && c instanceof MaxCandidatesCondition)
+                continue;
             if (c.terminate(this)) {
                 log.info("BaseOptimizationRunner global termination condition hit: {}", c);
                 return true;
@@ -347,6 +447,14 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
         return false;
     }
 
+    private boolean candidateLimitReached() {
+        for (TerminationCondition c : config.getTerminationConditions()) {
+            if (c instanceof MaxCandidatesCondition && c.terminate(this))
+                return true;
+        }
+        return false;
+    }
+
     @AllArgsConstructor
     @Data
     private class FutureDetails {
@@ -380,4 +488,25 @@ public abstract class BaseOptimizationRunner implements IOptimizationRunner {
 
     protected abstract List<ListenableFuture<OptimizationResult>> execute(List<Candidate> candidates, Class<? extends DataSource> dataSource,
                                                                           Properties dataSourceProperties, ScoreFunction scoreFunction);
+
+    /**
+     * Execute the candidate with a limited training budget. Used only when a scheduler is set: runners that support
+     * schedulers should override this method
+     */
+    protected ListenableFuture<OptimizationResult> execute(Candidate candidate, DataProvider dataProvider,
+                                                           ScoreFunction scoreFunction, CandidateBudget budget) {
+        throw new UnsupportedOperationException("Cannot use scheduler: " + getClass().getName()
+                + " does not support budgeted execution");
+    }
+
+    /**
+     * Execute the candidate with a limited training budget. Used only when a scheduler is set: runners that support
+     * schedulers should override this method
+     */
+    protected ListenableFuture<OptimizationResult> execute(Candidate candidate, Class<? extends DataSource> dataSource,
+                                                           Properties dataSourceProperties, ScoreFunction scoreFunction,
+                                                           CandidateBudget budget) {
+        throw new UnsupportedOperationException("Cannot use scheduler: " + getClass().getName()
+                + " does not support budgeted execution");
+    }
 }
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.optimize.runner;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.deeplearning4j.arbiter.optimize.api.Candidate;
+import org.deeplearning4j.arbiter.optimize.api.saving.ResultReference;
+import org.deeplearning4j.arbiter.optimize.api.saving.ResultSaver;
+
+/**
+ * Training budget for one execution of a candidate, as scheduled by {@link AsyncSuccessiveHalving}.<br>
+ * The budget is cumulative: a candidate promoted to a higher rung resumes from the checkpoint saved at the end of the
+ * previous rung (if any) and trains for (budget - previousBudget) more units, or for the full budget otherwise.
+ * The unit (epochs, for the DL4J task creators) is defined by the task creator.
+ */
+@AllArgsConstructor
+@Data
+public class CandidateBudget {
+
+    private Candidate candidate;
+    private int rung;
+    private int budget;
+    private int previousBudget;
+    /** Checkpoint to resume training from. May be null: train from scratch */
+    private ResultReference resumeFrom;
+    /** Saver to use for the checkpoint at the end of this rung. May be null: no checkpoint */
+    private ResultSaver checkpointSaver;
+    /** Set by the task once its checkpoint has been saved */
+    private volatile ResultReference checkpoint;
+
+    /**
+     * @return Number of units of training remaining for this rung, taking into account the checkpoint to resume from
+     */
+    public int remainingBudget() {
+        return resumeFrom == null ? budget : budget - previousBudget;
+    }
+}
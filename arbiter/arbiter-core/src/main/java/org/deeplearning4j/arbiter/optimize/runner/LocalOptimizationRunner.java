@@ -134,6 +134,31 @@ public class LocalOptimizationRunner extends BaseOptimizationRunner {
         return list;
     }
 
+    @Override
+    public void setScheduler(AsyncSuccessiveHalving scheduler) {
+        if (scheduler != null && !(taskCreator instanceof BudgetedTaskCreator)) {
+            throw new IllegalStateException("Cannot use scheduler: TaskCreator of type "
+                    + taskCreator.getClass().getName() + " does not implement BudgetedTaskCreator");
+        }
+        super.setScheduler(scheduler);
+    }
+
+    @Override
+    protected ListenableFuture<OptimizationResult> execute(Candidate candidate, DataProvider dataProvider,
+                    ScoreFunction scoreFunction, CandidateBudget budget) {
+        Callable<OptimizationResult> task = ((BudgetedTaskCreator) taskCreator).create(candidate, dataProvider,
+                        scoreFunction, statusListeners, this, budget);
+        return executor.submit(task);
+    }
+
+    @Override
+    protected ListenableFuture<OptimizationResult> execute(Candidate candidate, Class<? extends DataSource> dataSource,
+                    Properties dataSourceProperties, ScoreFunction scoreFunction, CandidateBudget budget) {
+        Callable<OptimizationResult> task = ((BudgetedTaskCreator) taskCreator).create(candidate, dataSource,
+                        dataSourceProperties, scoreFunction, statusListeners, this, budget);
+        return executor.submit(task);
+    }
+
     @Override
     public void shutdown(boolean awaitTermination) {
         if(awaitTermination){
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.optimize;
+
+import org.deeplearning4j.arbiter.optimize.api.*;
+import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
+import org.deeplearning4j.arbiter.optimize.api.data.DataSetIteratorFactoryProvider;
+import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
+import org.deeplearning4j.arbiter.optimize.api.saving.InMemoryResultSaver;
+import org.deeplearning4j.arbiter.optimize.api.score.ScoreFunction;
+import org.deeplearning4j.arbiter.optimize.api.termination.MaxCandidatesCondition;
+import org.deeplearning4j.arbiter.optimize.config.OptimizationConfiguration;
+import org.deeplearning4j.arbiter.optimize.generator.RandomSearchGenerator;
+import org.deeplearning4j.arbiter.optimize.runner.*;
+import org.deeplearning4j.arbiter.optimize.runner.listener.StatusListener;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test early termination scheduling (asynchronous successive halving) on the Branin function
+ */
+public class TestAsyncSuccessiveHalving {
+
+    private static OptimizationResult result(int index, double score) {
+        Candidate c = new Candidate<>(new TestGridSearch.BraninConfig(0, 0), index, null);
+        CandidateInfo ci = new CandidateInfo(index, CandidateStatus.Complete, score, 0L, null, null, null, null);
+        return new OptimizationResult(c, score, index, null, ci, null);
+    }
+
+    private static void report(AsyncSuccessiveHalving asha, CandidateBudget budget, double score) {
+        asha.reportResult(budget, result(budget.getCandidate().getIndex(), score));
+    }
+
+    @Test
+    public void testPromotion() {
+        AsyncSuccessiveHalving asha = new AsyncSuccessiveHalving(1, 9, 3, null);
+        assertEquals(3, asha.getNumRungs());
+        assertEquals(1, asha.budget(0));
+        assertEquals(3, asha.budget(1));
+        assertEquals(9, asha.budget(2));
+        assertTrue(asha.isFinalRung(2));
+
+        double[] scores = {5, 1, 3, 0.5, 4, 2};
+        List<CandidateBudget> budgets = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            budgets.add(asha.newCandidate(result(i, scores[i]).getCandidate()));
+        }
+
+        //Less than reductionFactor results: nothing to promote yet
+        report(asha, budgets.get(0), scores[0]);
+        report(asha, budgets.get(1), scores[1]);
+        assertNull(asha.nextPromotion());
+
+        report(asha, budgets.get(2), scores[2]);
+        CandidateBudget p = asha.nextPromotion();
+        assertEquals(1, p.getCandidate().getIndex());
+        assertEquals(1, p.getRung());
+        assertEquals(3, p.getBudget());
+        assertEquals(1, p.getPreviousBudget());
+        assertNull(asha.nextPromotion());
+
+        //Top 2 of 6: candidate 1 was already promoted
+        for (int i = 3; i < 6; i++) {
+            report(asha, budgets.get(i), scores[i]);
+        }
+        assertEquals(6, asha.numCompleted(0));
+        assertEquals(3, asha.nextPromotion().getCandidate().getIndex());
+        assertNull(asha.nextPromotion());
+
+        //Failed executions are not eligible for promotion
+        CandidateBudget failed = asha.newCandidate(result(6, 0.0).getCandidate());
+        OptimizationResult r = result(6, 0.0);
+        r.getCandidateInfo().setCandidateStatus(CandidateStatus.Failed);
+        asha.reportResult(failed, r);
+        assertEquals(6, asha.numCompleted(0));
+    }
+
+    @Test
+    public void testRunner() throws Exception {
+        Map<String, Object> commands = new HashMap<>();
+        commands.put(DataSetIteratorFactoryProvider.FACTORY_KEY, new HashMap<>());
+
+        CandidateGenerator candidateGenerator = new RandomSearchGenerator(new TestGridSearch.BraninSpace(), commands);
+        OptimizationConfiguration configuration = new OptimizationConfiguration.Builder()
+                        .candidateGenerator(candidateGenerator).scoreFunction(new TestGridSearch.BraninScoreFunction())
+                        .terminationConditions(new MaxCandidatesCondition(30)).build();
+
+        LocalOptimizationRunner runner = new LocalOptimizationRunner(configuration, new BudgetedBraninTaskCreator());
+        AsyncSuccessiveHalving asha = new AsyncSuccessiveHalving(1, 9, 3, new InMemoryResultSaver());
+        runner.setScheduler(asha);
+        runner.execute();
+
+        assertEquals(30, runner.numCandidatesTotal());
+        assertEquals(30, runner.numCandidatesCompleted());
+        //Resuming from a checkpoint with the wrong number of epochs fails the task
+        assertEquals(0, runner.numCandidatesFailed());
+
+        //Candidate limit doesn't cut promotions short: at least top 1/3 of each rung reach the next one
+        assertEquals(30, asha.numCompleted(0));
+        assertTrue(asha.numCompleted(1) >= 10);
+        assertTrue(asha.numCompleted(2) >= 3);
+        assertNull(asha.nextPromotion());
+
+        //Promotions are counted as rung executions, not as candidates
+        assertEquals(asha.numCompleted(0) + asha.numCompleted(1) + asha.numCompleted(2), runner.numRungExecutions());
+        assertNotNull(runner.bestScore());
+        assertEquals(30, runner.getCandidateStatus().size());
+    }
+
+    @Test
+    public void testCheckpointRelease() throws Exception {
+        InMemoryResultSaver saver = new InMemoryResultSaver();
+        AsyncSuccessiveHalving asha = new AsyncSuccessiveHalving(1, 9, 3, saver);
+        for (int i = 0; i < 6; i++) {
+            CandidateBudget b = asha.newCandidate(result(i, i).getCandidate());
+            b.setCheckpoint(b.getCheckpointSaver().saveModel(result(i, i), i));
+            report(asha, b, i);
+        }
+        assertEquals(6, asha.numCheckpoints());
+
+        //No more than 6 candidates: only the best 2 at rung 0 can ever be promoted
+        asha.candidateLimitReached(6);
+        assertEquals(2, asha.numCheckpoints());
+
+        //Checkpoints are handed over on promotion
+        CandidateBudget p = asha.nextPromotion();
+        assertEquals(0, p.getCandidate().getIndex());
+        assertNotNull(p.getResumeFrom());
+        assertNotNull(asha.nextPromotion().getResumeFrom());
+        assertNull(asha.nextPromotion());
+        assertEquals(0, asha.numCheckpoints());
+
+        //At most 2 candidates at rung 1: none of them can be promoted
+        p.setCheckpoint(p.getCheckpointSaver().saveModel(result(0, 0), 3));
+        report(asha, p, 0);
+        assertEquals(0, asha.numCheckpoints());
+
+        //Candidates at the final rung never need a checkpoint
+        AsyncSuccessiveHalving twoRungs = new AsyncSuccessiveHalving(1, 3, 3, saver);
+        for (int i = 0; i < 3; i++) {
+            report(twoRungs, twoRungs.newCandidate(result(i, i).getCandidate()), i);
+        }
+        CandidateBudget last = twoRungs.nextPromotion();
+        assertTrue(twoRungs.isFinalRung(last.getRung()));
+        assertNull(last.getCheckpointSaver());
+
+        //Default: no checkpoints
+        assertNull(new AsyncSuccessiveHalving(1, 9, 3).newCandidate(result(0, 0).getCandidate()).getCheckpointSaver());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequiresBudgetedTaskCreator() {
+        CandidateGenerator candidateGenerator = new RandomSearchGenerator(new TestGridSearch.BraninSpace(), null);
+        OptimizationConfiguration configuration = new OptimizationConfiguration.Builder()
+                        .candidateGenerator(candidateGenerator).scoreFunction(new TestGridSearch.BraninScoreFunction())
+                        .terminationConditions(new MaxCandidatesCondition(30)).build();
+
+        LocalOptimizationRunner runner = new LocalOptimizationRunner(configuration, new TestGridSearch.BraninTaskCreator());
+        runner.setScheduler(new AsyncSuccessiveHalving(1, 9, 3));
+    }
+
+    /**
+     * Branin task where the "model" is the number of epochs trained so far, and the score improves with training
+     */
+    public static class BudgetedBraninTaskCreator extends TestGridSearch.BraninTaskCreator implements BudgetedTaskCreator {
+        @Override
+        public Callable<OptimizationResult> create(final Candidate c, DataProvider dataProvider,
+                                                   final ScoreFunction scoreFunction, List<StatusListener> statusListeners,
+                                                   IOptimizationRunner runner, final CandidateBudget budget) {
+            return new Callable<OptimizationResult>() {
+                @Override
+                public OptimizationResult call() throws Exception {
+                    int epochs = budget.getResumeFrom() == null ? 0 : (Integer) budget.getResumeFrom().getResultModel();
+                    if (epochs != (budget.getResumeFrom() == null ? 0 : budget.getPreviousBudget()))
+                        throw new IllegalStateException("Resumed from wrong checkpoint: " + epochs + " epochs");
+                    epochs += budget.remainingBudget();
+                    if (epochs != budget.getBudget())
+                        throw new IllegalStateException("Trained for " + epochs + " epochs, budget " + budget.getBudget());
+
+                    double score = scoreFunction.score(c.getValue(), null, (Map) null) + 10.0 / epochs;
+                    CandidateInfo ci = new CandidateInfo(c.getIndex(), CandidateStatus.Complete, score,
+                            System.currentTimeMillis(), null, null, null, null);
+                    OptimizationResult result = new OptimizationResult(c, score, c.getIndex(), null, ci, null);
+                    if (budget.getCheckpointSaver() != null)
+                        budget.setCheckpoint(budget.getCheckpointSaver().saveModel(result, epochs));
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        public Callable<OptimizationResult> create(Candidate candidate, Class<? extends DataSource> dataSource,
+                                                   Properties dataSourceProperties, ScoreFunction scoreFunction,
+                                                   List<StatusListener> statusListeners, IOptimizationRunner runner,
+                                                   CandidateBudget budget) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * DataSetIterator over minibatches held in a {@link DataCache}. Each iterator has its own position, so many
+ * iterators (one per candidate) can share the same cached minibatches.<br>
+ * If shuffling is enabled, the order of the minibatches (not the examples within a minibatch) is shuffled on
+ * each reset.<br>
+ * The cached minibatches are shared: if a preprocessor is set on this iterator, it is applied to a copy.
+ */
+public class CachedDataSetIterator implements DataSetIterator {
+
+    private final List<DataSet> batches;
+    @Getter
+    private final List<String> labels;
+    private final Random rng;
+    private final List<Integer> order;
+    @Getter
+    private DataSetPreProcessor preProcessor;
+    private int cursor;
+
+    /**
+     * @param batches Cached minibatches
+     * @param labels  Label names. May be null
+     * @param rng     Random number generator for shuffling. May be null: no shuffling
+     */
+    public CachedDataSetIterator(@NonNull List<DataSet> batches, List<String> labels, Random rng) {
+        this.batches = batches;
+        this.labels = labels;
+        this.rng = rng;
+        this.order = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            order.add(i);
+        }
+        reset();
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("next(int) isn't supported");
+    }
+
+    @Override
+    public int inputColumns() {
+        return batches.isEmpty() ? 0 : (int) batches.get(0).getFeatures().size(1);
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return batches.isEmpty() ? 0 : (int) batches.get(0).getLabels().size(1);
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        //No need to asynchronously prefetch here: already in memory
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+        if (rng != null) {
+            Collections.shuffle(order, rng);
+        }
+    }
+
+    @Override
+    public int batch() {
+        return batches.isEmpty() ? 0 : batches.get(0).numExamples();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < order.size();
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        DataSet ds = batches.get(order.get(cursor++));
+        if (preProcessor != null) {
+            ds = ds.copy();
+            preProcessor.preProcess(ds);
+        }
+        return ds;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * MultiDataSetIterator over minibatches held in a {@link DataCache}. See {@link CachedDataSetIterator}
+ */
+public class CachedMultiDataSetIterator implements MultiDataSetIterator {
+
+    private final List<MultiDataSet> batches;
+    private final Random rng;
+    private final List<Integer> order;
+    @Getter
+    private MultiDataSetPreProcessor preProcessor;
+    private int cursor;
+
+    /**
+     * @param batches Cached minibatches
+     * @param rng     Random number generator for shuffling. May be null: no shuffling
+     */
+    public CachedMultiDataSetIterator(@NonNull List<MultiDataSet> batches, Random rng) {
+        this.batches = batches;
+        this.rng = rng;
+        this.order = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            order.add(i);
+        }
+        reset();
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("next(int) isn't supported");
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        //No need to asynchronously prefetch here: already in memory
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+        if (rng != null) {
+            Collections.shuffle(order, rng);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < order.size();
+    }
+
+    @Override
+    public MultiDataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        MultiDataSet mds = batches.get(order.get(cursor++));
+        if (preProcessor != null) {
+            mds = mds.copy();
+            preProcessor.preProcess(mds);
+        }
+        return mds;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.data;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * A DataProvider that wraps another DataProvider, and caches its data in memory (see {@link DataCache}), once per
+ * set of data parameters. Candidates get their own iterator over the cached minibatches.<br>
+ * The underlying DataProvider should return a single epoch of data (not a MultipleEpochsIterator, for example).
+ * Test data is never shuffled. See {@link CachingDataSource} for the equivalent DataSource.
+ */
+@Data
+@NoArgsConstructor
+public class CachingDataProvider implements DataProvider {
+
+    @JsonProperty
+    private DataProvider dataProvider;
+    @JsonProperty
+    private boolean shuffle;
+    @JsonProperty
+    private Long seed;
+    //Identifies the cached data of this provider
+    @JsonProperty
+    private String cacheId = UUID.randomUUID().toString();
+
+    public CachingDataProvider(@NonNull DataProvider dataProvider) {
+        this(dataProvider, false, null);
+    }
+
+    /**
+     * @param dataProvider Underlying data provider
+     * @param shuffle      If true: shuffle the order of the training minibatches on each epoch
+     * @param seed         Seed for the shuffling. May be null
+     */
+    public CachingDataProvider(@NonNull DataProvider dataProvider, boolean shuffle, Long seed) {
+        this.dataProvider = dataProvider;
+        this.shuffle = shuffle;
+        this.seed = seed;
+    }
+
+    @Override
+    public Object trainData(final Map<String, Object> dataParameters) {
+        return DataCache.getIterator(key(dataParameters) + "/train", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dataProvider.trainData(dataParameters);
+            }
+        }, shuffle ? (seed == null ? new Random() : new Random(seed)) : null);
+    }
+
+    @Override
+    public Object testData(final Map<String, Object> dataParameters) {
+        return DataCache.getIterator(key(dataParameters) + "/test", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dataProvider.testData(dataParameters);
+            }
+        }, null);
+    }
+
+    @Override
+    public Class<?> getDataType() {
+        return dataProvider.getDataType();
+    }
+
+    private String key(Map<String, Object> dataParameters) {
+        return cacheId + (dataParameters == null ? "{}" : new TreeMap<>(dataParameters).toString());
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.data;
+
+import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * A DataSource that reads the data of another DataSource once, and caches it in memory (see {@link DataCache}) for all
+ * the candidates in the same JVM. Each candidate gets its own iterator over the cached minibatches, so the data is not
+ * read and preprocessed again for every candidate.<br>
+ * Configured through the data source properties, which are also passed to the underlying DataSource:<br>
+ * - {@link #DATA_SOURCE}: class name of the underlying DataSource (required)<br>
+ * - {@link #SHUFFLE}: "true" to shuffle the order of the training minibatches on each epoch (default: false)<br>
+ * - {@link #SEED}: seed for the shuffling (default: random)<br>
+ * The underlying DataSource should return a single epoch of data (not a MultipleEpochsIterator, for example).
+ * Test data is never shuffled.
+ */
+public class CachingDataSource implements DataSource {
+
+    public static final String DATA_SOURCE = "org.deeplearning4j.arbiter.data.CachingDataSource.dataSource";
+    public static final String SHUFFLE = "org.deeplearning4j.arbiter.data.CachingDataSource.shuffle";
+    public static final String SEED = "org.deeplearning4j.arbiter.data.CachingDataSource.seed";
+
+    private DataSource dataSource;
+    private String key;
+    private boolean shuffle;
+    private Long seed;
+
+    public CachingDataSource() {
+        //No arg constructor, required for DataSource
+    }
+
+    @Override
+    public void configure(Properties properties) {
+        String className = properties == null ? null : properties.getProperty(DATA_SOURCE);
+        if (className == null) {
+            throw new IllegalStateException("No underlying DataSource: property " + DATA_SOURCE + " must be set");
+        }
+        try {
+            dataSource = (DataSource) Class.forName(className).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Error instantiating instance of DataSource for class " + className, e);
+        }
+        dataSource.configure(properties);
+
+        shuffle = Boolean.parseBoolean(properties.getProperty(SHUFFLE, "false"));
+        String s = properties.getProperty(SEED);
+        seed = s == null ? null : Long.parseLong(s);
+
+        //Candidates with the same underlying data source and properties share the cached data
+        key = className + new TreeMap<>(properties).toString();
+    }
+
+    @Override
+    public Object trainData() {
+        return DataCache.getIterator(key + "/train", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dataSource.trainData();
+            }
+        }, shuffle ? (seed == null ? new Random() : new Random(seed)) : null);
+    }
+
+    @Override
+    public Object testData() {
+        return DataCache.getIterator(key + "/test", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dataSource.testData();
+            }
+        }, null);
+    }
+
+    @Override
+    public Class<?> getDataType() {
+        if (dataSource == null) {
+            throw new IllegalStateException("CachingDataSource has not been configured");
+        }
+        return dataSource.getDataType();
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.arbiter.scoring.util.ScoreUtil;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIteratorFactory;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIteratorFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory store of preprocessed minibatches, shared by all the candidates of an optimization runner (in the same
+ * JVM). Data is read (and preprocessed, by the preprocessor set on the source iterator) once per key, the first time
+ * it is requested; each caller then gets its own cheap iterator over the cached minibatches.<br>
+ * Minibatches are detached from any workspace and must be treated as read-only.<br>
+ * Entries are kept until {@link #remove(String)} or {@link #clear()} is called.
+ *
+ * @see CachingDataSource
+ * @see CachingDataProvider
+ */
+@Slf4j
+public class DataCache {
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private DataCache() {
+    }
+
+    /**
+     * Get an iterator over the cached data for the specified key, loading it first if required
+     *
+     * @param key    Key for the data. Callers that share a key get the same data
+     * @param loader Returns the data to cache: DataSetIterator, MultiDataSetIterator, or a factory for either
+     * @param rng    Random number generator for shuffling the minibatches. May be null: no shuffling
+     * @return A new CachedDataSetIterator or CachedMultiDataSetIterator (depending on the type of data loaded)
+     */
+    public static Object getIterator(String key, Callable<Object> loader, Random rng) {
+        Entry e = get(key, loader);
+        if (e.dataSets != null) {
+            return new CachedDataSetIterator(e.dataSets, e.labels, rng);
+        }
+        return new CachedMultiDataSetIterator(e.multiDataSets, rng);
+    }
+
+    /**
+     * @return True if the data for the specified key has been loaded
+     */
+    public static boolean contains(String key) {
+        return cache.containsKey(key);
+    }
+
+    /**
+     * Remove the cached data for the specified key (iterators already created keep a reference to it)
+     */
+    public static void remove(String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * Remove all cached data
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static Entry get(String key, Callable<Object> loader) {
+        Entry e = cache.get(key);
+        if (e != null) {
+            return e;
+        }
+        synchronized (DataCache.class) {
+            //Concurrent candidates: only the first one loads the data
+            e = cache.get(key);
+            if (e == null) {
+                Object data;
+                try {
+                    data = loader.call();
+                } catch (Exception ex) {
+                    throw new RuntimeException("Error loading data for cache key " + key, ex);
+                }
+                e = load(data);
+                cache.put(key, e);
+                log.info("Cached data for key {}: {} minibatches", key,
+                                e.dataSets != null ? e.dataSets.size() : e.multiDataSets.size());
+            }
+            return e;
+        }
+    }
+
+    private static Entry load(Object data) {
+        Entry e = new Entry();
+        if (data instanceof DataSetIterator || data instanceof DataSetIteratorFactory) {
+            DataSetIterator iter = ScoreUtil.getIterator(data);
+            List<DataSet> list = new ArrayList<>();
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                ds.detach();
+                list.add(ds);
+            }
+            e.dataSets = Collections.unmodifiableList(list);
+            e.labels = iter.getLabels();
+        } else if (data instanceof MultiDataSetIterator || data instanceof MultiDataSetIteratorFactory) {
+            MultiDataSetIterator iter = ScoreUtil.getMultiIterator(data);
+            List<MultiDataSet> list = new ArrayList<>();
+            while (iter.hasNext()) {
+                MultiDataSet mds = iter.next();
+                mds.detach();
+                list.add(mds);
+            }
+            e.multiDataSets = Collections.unmodifiableList(list);
+        } else {
+            throw new IllegalArgumentException("Cannot cache data of type " + (data == null ? null : data.getClass())
+                            + ": must be DataSetIterator, MultiDataSetIterator, or a factory for either");
+        }
+        return e;
+    }
+
+    private static class Entry {
+        private List<DataSet> dataSets;
+        private List<String> labels;
+        private List<MultiDataSet> multiDataSets;
+    }
+}
@@ -24,15 +24,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.deeplearning4j.arbiter.GraphConfiguration;
 import org.deeplearning4j.arbiter.listener.DL4JArbiterStatusReportingListener;
+import org.deeplearning4j.arbiter.optimize.api.BudgetedTaskCreator;
 import org.deeplearning4j.arbiter.optimize.api.Candidate;
 import org.deeplearning4j.arbiter.optimize.api.OptimizationResult;
-import org.deeplearning4j.arbiter.optimize.api.TaskCreator;
 import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
 import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
 import org.deeplearning4j.arbiter.optimize.api.evaluation.ModelEvaluator;
 import org.deeplearning4j.arbiter.optimize.api.saving.ResultReference;
 import org.deeplearning4j.arbiter.optimize.api.saving.ResultSaver;
 import org.deeplearning4j.arbiter.optimize.api.score.ScoreFunction;
+import org.deeplearning4j.arbiter.optimize.runner.CandidateBudget;
 import org.deeplearning4j.arbiter.optimize.runner.CandidateInfo;
 import org.deeplearning4j.arbiter.optimize.runner.CandidateStatus;
 import org.deeplearning4j.arbiter.optimize.runner.IOptimizationRunner;
@@ -62,7 +63,7 @@ import java.util.concurrent.Callable;
 @AllArgsConstructor
 @NoArgsConstructor
 @Slf4j
-public class ComputationGraphTaskCreator implements TaskCreator {
+public class ComputationGraphTaskCreator implements BudgetedTaskCreator {
 
     private ModelEvaluator modelEvaluator;
     @Getter
@@ -89,6 +90,26 @@ public class ComputationGraphTaskCreator implements TaskCreator {
                 taskListener, runner);
     }
 
+    @Override
+    public Callable<OptimizationResult> create(Candidate candidate, DataProvider dataProvider,
+                                               ScoreFunction scoreFunction, List<StatusListener> statusListeners,
+                                               IOptimizationRunner runner, CandidateBudget budget) {
+        GraphLearningTask task = new GraphLearningTask(candidate, dataProvider, scoreFunction, modelEvaluator, statusListeners,
+                taskListener, runner);
+        task.budget = budget;
+        return task;
+    }
+
+    @Override
+    public Callable<OptimizationResult> create(Candidate candidate, Class<? extends DataSource> dataSource, Properties dataSourceProperties,
+                                               ScoreFunction scoreFunction, List<StatusListener> statusListeners,
+                                               IOptimizationRunner runner, CandidateBudget budget) {
+        GraphLearningTask task = new GraphLearningTask(candidate, dataSource, dataSourceProperties, scoreFunction, modelEvaluator,
+                statusListeners, taskListener, runner);
+        task.budget = budget;
+        return task;
+    }
+
     @AllArgsConstructor
     private static class GraphLearningTask implements Callable<OptimizationResult> {
 
@@ -101,6 +122,7 @@ public class ComputationGraphTaskCreator implements TaskCreator {
         private List<StatusListener> listeners;
         private TaskListener taskListener;
         private IOptimizationRunner runner;
+        private CandidateBudget budget;
 
         private long startTime;
 
@@ -173,9 +195,20 @@ public class ComputationGraphTaskCreator implements TaskCreator {
             CandidateInfo ci = new CandidateInfo(candidate.getIndex(), CandidateStatus.Running, null, startTime, startTime,
                     null, candidate.getFlatParameters(), null);
 
-            //Create network
-            ComputationGraph net = new ComputationGraph(((GraphConfiguration) candidate.getValue()).getConfiguration());
-            net.init();
+            //Create network, or resume from the checkpoint of the previous rung
+            ComputationGraph net;
+            if (budget != null && budget.getResumeFrom() != null) {
+                try {
+                    net = (ComputationGraph) budget.getResumeFrom().getResultModel();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error loading checkpoint for candidate " + candidate.getIndex(), e);
+                }
+                //Listeners are added again below
+                net.setListeners();
+            } else {
+                net = new ComputationGraph(((GraphConfiguration) candidate.getValue()).getConfiguration());
+                net.init();
+            }
 
             if(taskListener != null){
                 net = taskListener.preProcess(net, candidate);
@@ -200,7 +233,8 @@ public class ComputationGraphTaskCreator implements TaskCreator {
             EarlyStoppingConfiguration<ComputationGraph> esConfig =
                     ((GraphConfiguration) candidate.getValue()).getEarlyStoppingConfiguration();
             EarlyStoppingResult<ComputationGraph> esResult = null;
-            if (esConfig != null) {
+            //Budgeted execution (early termination scheduling): the scheduler decides when to stop, not the early stopping config
+            if (esConfig != null && budget == null) {
                 EarlyStoppingGraphTrainer trainer = new EarlyStoppingGraphTrainer(esConfig, net, iterator, null);
                 esResult = trainer.fit();
                 net = esResult.getBestModel(); //Can return null if failed OR if
@@ -218,7 +252,8 @@ public class ComputationGraphTaskCreator implements TaskCreator {
 
             } else {
                 //Fixed number of epochs
-                int nEpochs = ((GraphConfiguration) candidate.getValue()).getNumEpochs();
+                int nEpochs = budget != null ? budget.remainingBudget()
+                        : ((GraphConfiguration) candidate.getValue()).getNumEpochs();
                 for (int i = 0; i < nEpochs; i++) {
                     net.fit(iterator);
                 }
@@ -227,7 +262,7 @@ public class ComputationGraphTaskCreator implements TaskCreator {
             Nd4j.getExecutioner().commit();
 
             Object additionalEvaluation = null;
-            if (esConfig != null && esResult.getTerminationReason() != EarlyStoppingResult.TerminationReason.Error) {
+            if (esResult != null && esResult.getTerminationReason() != EarlyStoppingResult.TerminationReason.Error) {
                 additionalEvaluation =
                         (modelEvaluator != null ? modelEvaluator.evaluateModel(net, dataProvider) : null);
             }
@@ -260,6 +295,15 @@ public class ComputationGraphTaskCreator implements TaskCreator {
                 }
             }
             result.setResultReference(resultReference);
+
+            //Checkpoint, to resume from if the candidate is promoted
+            if (budget != null && budget.getCheckpointSaver() != null && net != null) {
+                try {
+                    budget.setCheckpoint(budget.getCheckpointSaver().saveModel(result, net));
+                } catch (IOException e) {
+                    log.warn("Error saving checkpoint (id={}): IOException thrown. ", result.getIndex(), e);
+                }
+            }
             return result;
         }
     }
@@ -25,15 +25,16 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bytedeco.javacpp.Pointer;
 import org.deeplearning4j.arbiter.DL4JConfiguration;
 import org.deeplearning4j.arbiter.listener.DL4JArbiterStatusReportingListener;
+import org.deeplearning4j.arbiter.optimize.api.BudgetedTaskCreator;
 import org.deeplearning4j.arbiter.optimize.api.Candidate;
 import org.deeplearning4j.arbiter.optimize.api.OptimizationResult;
-import org.deeplearning4j.arbiter.optimize.api.TaskCreator;
 import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
 import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
 import org.deeplearning4j.arbiter.optimize.api.evaluation.ModelEvaluator;
 import org.deeplearning4j.arbiter.optimize.api.saving.ResultReference;
 import org.deeplearning4j.arbiter.optimize.api.saving.ResultSaver;
 import org.deeplearning4j.arbiter.optimize.api.score.ScoreFunction;
+import org.deeplearning4j.arbiter.optimize.runner.CandidateBudget;
 import org.deeplearning4j.arbiter.optimize.runner.CandidateInfo;
 import org.deeplearning4j.arbiter.optimize.runner.CandidateStatus;
 import org.deeplearning4j.arbiter.optimize.runner.IOptimizationRunner;
@@ -62,7 +63,7 @@ import java.util.concurrent.Callable;
 @AllArgsConstructor
 @NoArgsConstructor
 @Slf4j
-public class MultiLayerNetworkTaskCreator implements TaskCreator {
+public class MultiLayerNetworkTaskCreator implements BudgetedTaskCreator {
 
     private ModelEvaluator modelEvaluator;
     @Getter
@@ -88,6 +89,26 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
     }
 
 
+    @Override
+    public Callable<OptimizationResult> create(Candidate candidate, DataProvider dataProvider,
+                                               ScoreFunction scoreFunction, List<StatusListener> statusListeners,
+                                               IOptimizationRunner runner, CandidateBudget budget) {
+        DL4JLearningTask task = new DL4JLearningTask(candidate, dataProvider, scoreFunction, modelEvaluator, statusListeners,
+                taskListener, runner);
+        task.budget = budget;
+        return task;
+    }
+
+    @Override
+    public Callable<OptimizationResult> create(Candidate candidate, Class<? extends DataSource> dataSource, Properties dataSourceProperties,
+                                               ScoreFunction scoreFunction, List<StatusListener> statusListeners,
+                                               IOptimizationRunner runner, CandidateBudget budget) {
+        DL4JLearningTask task = new DL4JLearningTask(candidate, dataSource, dataSourceProperties, scoreFunction, modelEvaluator,
+                statusListeners, taskListener, runner);
+        task.budget = budget;
+        return task;
+    }
+
     private static class DL4JLearningTask implements Callable<OptimizationResult> {
 
         private Candidate candidate;
@@ -99,6 +120,7 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
         private List<StatusListener> listeners;
         private TaskListener taskListener;
         private IOptimizationRunner runner;
+        private CandidateBudget budget;
 
         private long startTime;
 
@@ -171,10 +193,20 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
             CandidateInfo ci = new CandidateInfo(candidate.getIndex(), CandidateStatus.Running, null,
                     startTime, startTime, null, candidate.getFlatParameters(), null);
 
-            //Create network
-            MultiLayerNetwork net = new MultiLayerNetwork(
-                            ((DL4JConfiguration) candidate.getValue()).getMultiLayerConfiguration());
-            net.init();
+            //Create network, or resume from the checkpoint of the previous rung
+            MultiLayerNetwork net;
+            if (budget != null && budget.getResumeFrom() != null) {
+                try {
+                    net = (MultiLayerNetwork) budget.getResumeFrom().getResultModel();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error loading checkpoint for candidate " + candidate.getIndex(), e);
+                }
+                //Listeners are added again below
+                net.setListeners();
+            } else {
+                net = new MultiLayerNetwork(((DL4JConfiguration) candidate.getValue()).getMultiLayerConfiguration());
+                net.init();
+            }
 
             if(taskListener != null){
                 net = taskListener.preProcess(net, candidate);
@@ -204,7 +236,8 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
             EarlyStoppingConfiguration<MultiLayerNetwork> esConfig =
                             ((DL4JConfiguration) candidate.getValue()).getEarlyStoppingConfiguration();
             EarlyStoppingResult<MultiLayerNetwork> esResult = null;
-            if (esConfig != null) {
+            //Budgeted execution (early termination scheduling): the scheduler decides when to stop, not the early stopping config
+            if (esConfig != null && budget == null) {
                 EarlyStoppingTrainer trainer = new EarlyStoppingTrainer(esConfig, net, dataSetIterator, null);
                 esResult = trainer.fit();
                 net = esResult.getBestModel(); //Can return null if failed OR if
@@ -222,7 +255,8 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
 
             } else {
                 //Fixed number of epochs
-                int nEpochs = ((DL4JConfiguration) candidate.getValue()).getNumEpochs();
+                int nEpochs = budget != null ? budget.remainingBudget()
+                        : ((DL4JConfiguration) candidate.getValue()).getNumEpochs();
                 for (int i = 0; i < nEpochs; i++) {
                     net.fit(dataSetIterator);
                 }
@@ -230,7 +264,7 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
             }
 
             Object additionalEvaluation = null;
-            if (esConfig != null && esResult.getTerminationReason() != EarlyStoppingResult.TerminationReason.Error) {
+            if (esResult != null && esResult.getTerminationReason() != EarlyStoppingResult.TerminationReason.Error) {
                 additionalEvaluation =
                                 (modelEvaluator != null ? modelEvaluator.evaluateModel(net, dataProvider) : null);
             }
@@ -262,6 +296,15 @@ public class MultiLayerNetworkTaskCreator implements TaskCreator {
                 }
             }
             result.setResultReference(resultReference);
+
+            //Checkpoint, to resume from if the candidate is promoted
+            if (budget != null && budget.getCheckpointSaver() != null && net != null) {
+                try {
+                    budget.setCheckpoint(budget.getCheckpointSaver().saveModel(result, net));
+                } catch (IOException e) {
+                    log.warn("Error saving checkpoint (id={}): IOException thrown. ", result.getIndex(), e);
+                }
+            }
             return result;
         }
     }
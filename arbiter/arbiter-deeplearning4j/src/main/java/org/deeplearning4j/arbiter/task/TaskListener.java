@@ -40,7 +40,9 @@ public interface TaskListener extends Serializable {
     <T extends Model> T preProcess(T model, Candidate candidate);
 
     /**
-     * Post process the model, after any training has taken place
+     * Post process the model, after any training has taken place.<br>
+     * With early termination scheduling ({@link org.deeplearning4j.arbiter.optimize.runner.AsyncSuccessiveHalving}),
+     * pre and post processing happen for each budget (rung) the candidate is trained for
      * @param model     Model to postprocess
      * @param candidate Candidate information, for the current model
      */
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.arbiter.util;
+
+import org.deeplearning4j.arbiter.data.CachedDataSetIterator;
+import org.deeplearning4j.arbiter.data.CachingDataProvider;
+import org.deeplearning4j.arbiter.data.CachingDataSource;
+import org.deeplearning4j.arbiter.data.DataCache;
+import org.deeplearning4j.arbiter.optimize.api.data.DataProvider;
+import org.deeplearning4j.arbiter.optimize.api.data.DataSource;
+import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
+import org.junit.After;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestDataCache {
+
+    private static final AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void after() {
+        DataCache.clear();
+        loads.set(0);
+    }
+
+    private static Properties properties(boolean shuffle) {
+        Properties p = new Properties();
+        p.setProperty(CachingDataSource.DATA_SOURCE, IrisDataSource.class.getName());
+        p.setProperty(CachingDataSource.SHUFFLE, String.valueOf(shuffle));
+        p.setProperty(CachingDataSource.SEED, "12345");
+        p.setProperty("minibatch", "10");
+        return p;
+    }
+
+    private static List<DataSet> all(DataSetIterator iter) {
+        List<DataSet> list = new ArrayList<>();
+        while (iter.hasNext()) {
+            list.add(iter.next());
+        }
+        return list;
+    }
+
+    @Test
+    public void testCachingDataSource() {
+        CachingDataSource ds1 = new CachingDataSource();
+        ds1.configure(properties(false));
+        CachingDataSource ds2 = new CachingDataSource();
+        ds2.configure(properties(false));
+        assertEquals(DataSetIterator.class, ds1.getDataType());
+
+        DataSetIterator iter1 = (DataSetIterator) ds1.trainData();
+        DataSetIterator iter2 = (DataSetIterator) ds2.trainData();
+        //Data is loaded once, and shared
+        assertEquals(1, loads.get());
+        assertTrue(iter1 instanceof CachedDataSetIterator);
+
+        //Independent iterators over the same minibatches
+        List<DataSet> first = all(iter1);
+        assertEquals(15, first.size());
+        assertTrue(iter2.hasNext());
+        List<DataSet> second = all(iter2);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+
+        iter1.reset();
+        assertEquals(first, all(iter1));
+
+        ds1.testData();
+        assertEquals(2, loads.get());
+        ds2.testData();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testShuffleAndPreProcessor() {
+        CachingDataSource ds = new CachingDataSource();
+        ds.configure(properties(true));
+        DataSetIterator iter = (DataSetIterator) ds.trainData();
+        List<DataSet> epoch1 = all(iter);
+        iter.reset();
+        List<DataSet> epoch2 = all(iter);
+
+        //Same minibatches, in a different order
+        Set<DataSet> seen = Collections.newSetFromMap(new IdentityHashMap<DataSet, Boolean>());
+        seen.addAll(epoch1);
+        assertEquals(15, seen.size());
+        assertTrue(seen.containsAll(epoch2));
+        assertNotEquals(epoch1, epoch2);
+
+        //Preprocessing must not modify the cached data
+        DataSet before = epoch1.get(0).copy();
+        iter.setPreProcessor(new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet toPreProcess) {
+                toPreProcess.getFeatures().muli(0);
+            }
+        });
+        iter.reset();
+        for (DataSet d : all(iter)) {
+            assertEquals(0.0, d.getFeatures().sumNumber().doubleValue(), 0.0);
+        }
+        assertEquals(before.getFeatures(), epoch1.get(0).getFeatures());
+    }
+
+    @Test
+    public void testCachingDataProvider() {
+        CachingDataProvider dp = new CachingDataProvider(new IrisDataProvider());
+        Map<String, Object> params = new HashMap<>();
+        params.put("minibatch", 10);
+
+        assertEquals(15, all((DataSetIterator) dp.trainData(params)).size());
+        assertEquals(15, all((DataSetIterator) dp.trainData(params)).size());
+        assertEquals(1, loads.get());
+
+        params.put("minibatch", 50);
+        assertEquals(3, all((DataSetIterator) dp.trainData(params)).size());
+        assertEquals(2, loads.get());
+    }
+
+    public static class IrisDataSource implements DataSource {
+        private int minibatch;
+
+        @Override
+        public void configure(Properties properties) {
+            this.minibatch = Integer.parseInt(properties.getProperty("minibatch", "10"));
+        }
+
+        @Override
+        public Object trainData() {
+            loads.getAndIncrement();
+            return new IrisDataSetIterator(minibatch, 150);
+        }
+
+        @Override
+        public Object testData() {
+            loads.getAndIncrement();
+            return new IrisDataSetIterator(minibatch, 150);
+        }
+
+        @Override
+        public Class<?> getDataType() {
+            return DataSetIterator.class;
+        }
+    }
+
+    public static class IrisDataProvider implements DataProvider {
+        @Override
+        public Object trainData(Map<String, Object> dataParameters) {
+            loads.getAndIncrement();
+            return new IrisDataSetIterator((Integer) dataParameters.get("minibatch"), 150);
+        }
+
+        @Override
+        public Object testData(Map<String, Object> dataParameters) {
+            loads.getAndIncrement();
+            return new IrisDataSetIterator((Integer) dataParameters.get("minibatch"), 150);
+        }
+
+        @Override
+        public Class<?> getDataType() {
+            return DataSetIterator.class;
+        }
+    }
+}
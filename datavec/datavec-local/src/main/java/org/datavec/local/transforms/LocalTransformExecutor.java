@@ -58,7 +58,9 @@ import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
 
 /**
- * Local transform executor
+ * Local transform executor.<br>
+ * All data is held in memory; for data that does not fit in memory, see
+ * {@link org.datavec.local.transforms.streaming.StreamingTransformExecutor}
  */
 @Slf4j
 public class LocalTransformExecutor {
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableType;
+
+/**
+ * A single column of a {@link ColumnarRecordBatch}.<br>
+ * Numerical columns are backed by primitive arrays, all other columns are backed by an array of {@link Writable}s.<br>
+ * Columns are never modified once created: kernels always produce new columns.
+ */
+public abstract class Column {
+
+    /**
+     * @return Number of values in the column
+     */
+    public abstract int size();
+
+    /**
+     * @param row Index of the value
+     * @return Value, as a Writable
+     */
+    public abstract Writable get(int row);
+
+    /**
+     * @param rows Indices of the values to keep, in order
+     * @return New column, with only the specified values
+     */
+    public abstract Column select(int[] rows);
+
+    /**
+     * @return True if values can be accessed via {@link #toDoubles()}
+     */
+    public boolean isNumeric() {
+        return false;
+    }
+
+    /**
+     * @return Values of the column as doubles. Equivalent to {@link Writable#toDouble()} on each value.
+     * The returned array may be shared with the column, and must not be modified
+     */
+    public double[] toDoubles() {
+        throw new UnsupportedOperationException("Column is not numeric: " + getClass().getSimpleName());
+    }
+
+    /**
+     * Create a column from the specified values. A primitive column is returned if all values have the Writable
+     * type that corresponds to the column type; otherwise (for example, for missing or invalid values) a
+     * {@link WritableColumn} is returned.
+     *
+     * @param type   Type of the column, according to the schema
+     * @param values Values of the column
+     * @return Column
+     */
+    public static Column fromWritables(ColumnType type, Writable[] values) {
+        switch (type) {
+            case Double:
+                if (allOfType(values, WritableType.Double)) {
+                    double[] d = new double[values.length];
+                    for (int i = 0; i < d.length; i++)
+                        d[i] = values[i].toDouble();
+                    return new DoubleColumn(d);
+                }
+                break;
+            case Float:
+                if (allOfType(values, WritableType.Float)) {
+                    float[] f = new float[values.length];
+                    for (int i = 0; i < f.length; i++)
+                        f[i] = values[i].toFloat();
+                    return new FloatColumn(f);
+                }
+                break;
+            case Integer:
+                if (allOfType(values, WritableType.Int)) {
+                    int[] in = new int[values.length];
+                    for (int i = 0; i < in.length; i++)
+                        in[i] = values[i].toInt();
+                    return new IntColumn(in);
+                }
+                break;
+            case Long:
+            case Time:
+                if (allOfType(values, WritableType.Long)) {
+                    long[] l = new long[values.length];
+                    for (int i = 0; i < l.length; i++)
+                        l[i] = values[i].toLong();
+                    return new LongColumn(l);
+                }
+                break;
+            default:
+                break;
+        }
+        return new WritableColumn(values);
+    }
+
+    private static boolean allOfType(Writable[] values, WritableType type) {
+        for (Writable w : values) {
+            if (w == null || w.getType() != type)
+                return false;
+        }
+        return true;
+    }
+}
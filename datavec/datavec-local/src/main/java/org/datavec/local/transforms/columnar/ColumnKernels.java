@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.column.DuplicateColumnsTransform;
+import org.datavec.api.transform.transform.column.RemoveAllColumnsExceptForTransform;
+import org.datavec.api.transform.transform.column.RemoveColumnsTransform;
+import org.datavec.api.transform.transform.column.RenameColumnsTransform;
+import org.datavec.api.transform.transform.column.ReorderColumnsTransform;
+import org.datavec.api.transform.transform.doubletransform.*;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+
+/**
+ * Vectorized (column at a time) implementations of the built-in transforms, for use in
+ * {@link ColumnarTransformExecutor}.<br>
+ * Each kernel produces exactly the same values as the corresponding {@code Transform.map(List<Writable>)} method.
+ */
+public class ColumnKernels {
+
+    private static final double LOG2 = Math.log(2);
+
+    private ColumnKernels() {}
+
+    /**
+     * Execute the transform on the specified columns
+     *
+     * @param transform    Transform to execute
+     * @param inputSchema  Schema of the input columns
+     * @param outputSchema Schema after the transform has been applied
+     * @param in           Input columns
+     * @return Output columns, or null if there is no vectorized kernel for the transform and/or columns
+     */
+    public static Column[] execute(Transform transform, Schema inputSchema, Schema outputSchema, Column[] in) {
+        if (transform instanceof RemoveColumnsTransform || transform instanceof RemoveAllColumnsExceptForTransform
+                        || transform instanceof ReorderColumnsTransform) {
+            return selectByName(inputSchema, outputSchema, in);
+        } else if (transform instanceof RenameColumnsTransform) {
+            return in;
+        } else if (transform instanceof DuplicateColumnsTransform) {
+            return duplicate((DuplicateColumnsTransform) transform, inputSchema, outputSchema, in);
+        } else if (transform instanceof DoubleColumnsMathOpTransform) {
+            return columnsMathOp((DoubleColumnsMathOpTransform) transform, inputSchema, in);
+        }
+
+        //Remaining kernels: single column, replaced at the same position
+        if (!(transform instanceof BaseColumnTransform))
+            return null;
+
+        int idx = inputSchema.getIndexOfColumn(((BaseColumnTransform) transform).getColumnName());
+        Column c = singleColumn(transform, in[idx]);
+        if (c == null)
+            return null;
+
+        Column[] out = in.clone();
+        out[idx] = c;
+        return out;
+    }
+
+    private static Column singleColumn(Transform transform, Column in) {
+        if (transform instanceof IntegerMathOpTransform) {
+            if (!(in instanceof IntColumn))
+                return null;
+            IntegerMathOpTransform t = (IntegerMathOpTransform) transform;
+            return new IntColumn(intMathOp(((IntColumn) in).getValues(), t.getMathOp(), t.getScalar()));
+        } else if (transform instanceof LongMathOpTransform) {
+            if (!(in instanceof LongColumn))
+                return null;
+            LongMathOpTransform t = (LongMathOpTransform) transform;
+            return new LongColumn(longMathOp(((LongColumn) in).getValues(), t.getMathOp(), t.getScalar()));
+        }
+
+        //All other kernels operate on doubles
+        if (!in.isNumeric())
+            return null;
+
+        if (transform instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform t = (DoubleMathOpTransform) transform;
+            return new DoubleColumn(doubleMathOp(in.toDoubles(), t.getMathOp(), t.getScalar()));
+        } else if (transform instanceof DoubleMathFunctionTransform) {
+            return new DoubleColumn(
+                            mathFunction(in.toDoubles(), ((DoubleMathFunctionTransform) transform).getMathFunction()));
+        } else if (transform instanceof ConvertToDouble) {
+            return new DoubleColumn(in.toDoubles());
+        } else if (transform instanceof MinMaxNormalizer) {
+            MinMaxNormalizer t = (MinMaxNormalizer) transform;
+            double[] x = in.toDoubles();
+            double[] out = new double[x.length];
+            double ratio = t.getRatio();
+            double min = t.getMin();
+            double newMin = t.getNewMin();
+            for (int i = 0; i < x.length; i++)
+                out[i] = Double.isNaN(x[i]) ? 0.0 : ratio * (x[i] - min) + newMin;
+            return new DoubleColumn(out);
+        } else if (transform instanceof StandardizeNormalizer) {
+            StandardizeNormalizer t = (StandardizeNormalizer) transform;
+            double[] x = in.toDoubles();
+            double[] out = new double[x.length];
+            double mean = t.getMean();
+            double stdev = t.getStdev();
+            for (int i = 0; i < x.length; i++)
+                out[i] = (x[i] - mean) / stdev;
+            return new DoubleColumn(out);
+        } else if (transform instanceof SubtractMeanNormalizer) {
+            double mean = ((SubtractMeanNormalizer) transform).getMean();
+            double[] x = in.toDoubles();
+            double[] out = new double[x.length];
+            for (int i = 0; i < x.length; i++)
+                out[i] = x[i] - mean;
+            return new DoubleColumn(out);
+        } else if (transform instanceof Log2Normalizer) {
+            Log2Normalizer t = (Log2Normalizer) transform;
+            double[] x = in.toDoubles();
+            double[] out = new double[x.length];
+            double columnMin = t.getColumnMin();
+            double range = t.getColumnMean() - columnMin;
+            double scalingFactor = t.getScalingFactor();
+            for (int i = 0; i < x.length; i++)
+                out[i] = Double.isNaN(x[i]) ? 0.0 : scalingFactor * (Math.log((x[i] - columnMin) / range + 1) / LOG2);
+            return new DoubleColumn(out);
+        }
+
+        return null;
+    }
+
+    private static Column[] selectByName(Schema inputSchema, Schema outputSchema, Column[] in) {
+        Column[] out = new Column[outputSchema.numColumns()];
+        for (int j = 0; j < out.length; j++)
+            out[j] = in[inputSchema.getIndexOfColumn(outputSchema.getName(j))];
+        return out;
+    }
+
+    private static Column[] duplicate(DuplicateColumnsTransform t, Schema inputSchema, Schema outputSchema,
+                    Column[] in) {
+        Column[] out = new Column[outputSchema.numColumns()];
+        for (int j = 0; j < out.length; j++) {
+            String name = outputSchema.getName(j);
+            int dupIdx = t.getNewColumnNames().indexOf(name);
+            String source = dupIdx >= 0 ? t.getColumnsToDuplicate().get(dupIdx) : name;
+            //Columns are immutable, so the duplicate can share the values with the original
+            out[j] = in[inputSchema.getIndexOfColumn(source)];
+        }
+        return out;
+    }
+
+    private static Column[] columnsMathOp(DoubleColumnsMathOpTransform t, Schema inputSchema, Column[] in) {
+        String[] columns = t.getColumns();
+        double[][] x = new double[columns.length][0];
+        for (int j = 0; j < columns.length; j++) {
+            Column c = in[inputSchema.getIndexOfColumn(columns[j])];
+            if (!c.isNumeric())
+                return null;
+            x[j] = c.toDoubles();
+        }
+
+        int n = x[0].length;
+        double[] result = new double[n];
+        switch (t.getMathOp()) {
+            case Add:
+                for (double[] col : x)
+                    for (int i = 0; i < n; i++)
+                        result[i] += col[i];
+                break;
+            case Subtract:
+                for (int i = 0; i < n; i++)
+                    result[i] = x[0][i] - x[1][i];
+                break;
+            case Multiply:
+                for (int i = 0; i < n; i++)
+                    result[i] = 1.0;
+                for (double[] col : x)
+                    for (int i = 0; i < n; i++)
+                        result[i] *= col[i];
+                break;
+            case Divide:
+                for (int i = 0; i < n; i++)
+                    result[i] = x[0][i] / x[1][i];
+                break;
+            case Modulus:
+                for (int i = 0; i < n; i++)
+                    result[i] = x[0][i] % x[1][i];
+                break;
+            default:
+                throw new RuntimeException("Invalid mathOp: " + t.getMathOp()); //Should never happen
+        }
+
+        Column[] out = new Column[in.length + 1];
+        System.arraycopy(in, 0, out, 0, in.length);
+        out[in.length] = new DoubleColumn(result);
+        return out;
+    }
+
+    private static double[] doubleMathOp(double[] x, MathOp op, double scalar) {
+        double[] out = new double[x.length];
+        switch (op) {
+            case Add:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] + scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] - scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] * scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] / scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] % scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+        return out;
+    }
+
+    private static int[] intMathOp(int[] x, MathOp op, int scalar) {
+        int[] out = new int[x.length];
+        switch (op) {
+            case Add:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] + scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] - scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] * scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] / scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] % scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+        return out;
+    }
+
+    private static long[] longMathOp(long[] x, MathOp op, long scalar) {
+        long[] out = new long[x.length];
+        switch (op) {
+            case Add:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] + scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] - scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] * scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] / scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = x[i] % scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+        return out;
+    }
+
+    private static double[] mathFunction(double[] x, MathFunction f) {
+        double[] out = new double[x.length];
+        switch (f) {
+            case ABS:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.abs(x[i]);
+                break;
+            case ACOS:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.acos(x[i]);
+                break;
+            case ASIN:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.asin(x[i]);
+                break;
+            case ATAN:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.atan(x[i]);
+                break;
+            case CEIL:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.ceil(x[i]);
+                break;
+            case COS:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.cos(x[i]);
+                break;
+            case COSH:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.cosh(x[i]);
+                break;
+            case EXP:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.exp(x[i]);
+                break;
+            case FLOOR:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.floor(x[i]);
+                break;
+            case LOG:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.log(x[i]);
+                break;
+            case LOG10:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.log10(x[i]);
+                break;
+            case SIGNUM:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.signum(x[i]);
+                break;
+            case SIN:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.sin(x[i]);
+                break;
+            case SINH:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.sinh(x[i]);
+                break;
+            case SQRT:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.sqrt(x[i]);
+                break;
+            case TAN:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.tan(x[i]);
+                break;
+            case TANH:
+                for (int i = 0; i < x.length; i++)
+                    out[i] = Math.tanh(x[i]);
+                break;
+            default:
+                throw new RuntimeException("Unknown function: " + f);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.AbstractWritableRecordBatch;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of records, stored column by column. See {@link Column}.<br>
+ * This class implements {@code List<List<Writable>>}: records are created on demand when accessed via {@link #get(int)}
+ */
+public class ColumnarRecordBatch extends AbstractWritableRecordBatch {
+
+    @Getter
+    private final Schema schema;
+    private final Column[] columns;
+    private final int size;
+
+    public ColumnarRecordBatch(@NonNull Schema schema, @NonNull Column[] columns, int size) {
+        if (columns.length != schema.numColumns()) {
+            throw new IllegalStateException("Number of columns (" + columns.length + ") does not match the number "
+                            + "of columns in the schema (" + schema.numColumns() + ")");
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].size() != size) {
+                throw new IllegalStateException("Column " + i + " (\"" + schema.getName(i) + "\") has "
+                                + columns[i].size() + " values, expected " + size);
+            }
+        }
+        this.schema = schema;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    /**
+     * Convert the specified records to columnar format
+     *
+     * @param schema  Schema of the records
+     * @param records Records to convert
+     * @param from    First record to convert (inclusive)
+     * @param to      Last record to convert (exclusive)
+     * @return Columnar batch
+     */
+    public static ColumnarRecordBatch fromRecords(@NonNull Schema schema, @NonNull List<List<Writable>> records,
+                    int from, int to) {
+        int numColumns = schema.numColumns();
+        int n = to - from;
+        Writable[][] values = new Writable[numColumns][n];
+        for (int i = 0; i < n; i++) {
+            List<Writable> record = records.get(from + i);
+            if (record.size() != numColumns) {
+                throw new IllegalStateException("Record " + (from + i) + " has " + record.size()
+                                + " values, but schema has " + numColumns + " columns");
+            }
+            for (int j = 0; j < numColumns; j++)
+                values[j][i] = record.get(j);
+        }
+
+        return fromWritables(schema, values, n);
+    }
+
+    /**
+     * Convert the specified Arrow record batch to columnar format. Numerical Arrow vectors without null values are
+     * copied directly to primitive arrays.
+     *
+     * @param batch Arrow record batch
+     * @return Columnar batch
+     */
+    public static ColumnarRecordBatch fromArrow(@NonNull ArrowWritableRecordBatch batch) {
+        Schema schema = batch.getSchema();
+        List<FieldVector> vectors = batch.getList();
+        int offset = batch.getOffset();
+        int n = batch.size();
+
+        Column[] columns = new Column[schema.numColumns()];
+        for (int j = 0; j < columns.length; j++) {
+            FieldVector v = vectors.get(j);
+            ColumnType type = schema.getType(j);
+            if (v.getNullCount() == 0 && type == ColumnType.Double && v instanceof Float8Vector) {
+                double[] d = new double[n];
+                for (int i = 0; i < n; i++)
+                    d[i] = ((Float8Vector) v).get(offset + i);
+                columns[j] = new DoubleColumn(d);
+            } else if (v.getNullCount() == 0 && type == ColumnType.Float && v instanceof Float4Vector) {
+                float[] f = new float[n];
+                for (int i = 0; i < n; i++)
+                    f[i] = ((Float4Vector) v).get(offset + i);
+                columns[j] = new FloatColumn(f);
+            } else if (v.getNullCount() == 0 && type == ColumnType.Integer && v instanceof IntVector) {
+                int[] in = new int[n];
+                for (int i = 0; i < n; i++)
+                    in[i] = ((IntVector) v).get(offset + i);
+                columns[j] = new IntColumn(in);
+            } else if (v.getNullCount() == 0 && type == ColumnType.Long && v instanceof BigIntVector) {
+                long[] l = new long[n];
+                for (int i = 0; i < n; i++)
+                    l[i] = ((BigIntVector) v).get(offset + i);
+                columns[j] = new LongColumn(l);
+            } else {
+                Writable[] w = new Writable[n];
+                for (int i = 0; i < n; i++)
+                    w[i] = ArrowConverter.fromEntry(offset + i, v, type);
+                columns[j] = Column.fromWritables(type, w);
+            }
+        }
+
+        return new ColumnarRecordBatch(schema, columns, n);
+    }
+
+    /**
+     * Create a columnar batch from per-column values
+     *
+     * @param schema Schema of the batch
+     * @param values Values, indexed by [column][row]
+     * @param size   Number of records
+     * @return Columnar batch
+     */
+    public static ColumnarRecordBatch fromWritables(@NonNull Schema schema, @NonNull Writable[][] values, int size) {
+        Column[] columns = new Column[values.length];
+        for (int j = 0; j < columns.length; j++)
+            columns[j] = Column.fromWritables(schema.getType(j), values[j]);
+
+        return new ColumnarRecordBatch(schema, columns, size);
+    }
+
+    /**
+     * @param column Index of the column
+     * @return Column
+     */
+    public Column getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * @return All columns of the batch. The returned array must not be modified
+     */
+    public Column[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param rows Indices of the records to keep, in order
+     * @return New batch with only the specified records
+     */
+    public ColumnarRecordBatch select(int[] rows) {
+        Column[] out = new Column[columns.length];
+        for (int j = 0; j < columns.length; j++)
+            out[j] = columns[j].select(rows);
+        return new ColumnarRecordBatch(schema, out, rows.length);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<Writable> get(int i) {
+        List<Writable> out = new ArrayList<>(columns.length);
+        for (Column c : columns)
+            out.add(c.get(i));
+        return out;
+    }
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.LocalTransformExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar transform executor.<br>
+ * Executes a {@link TransformProcess} on batches of records stored column by column (see {@link ColumnarRecordBatch}),
+ * instead of one {@code List<Writable>} at a time as in {@link LocalTransformExecutor}. Transforms are executed as
+ * follows:<br>
+ * - Built-in transforms with a vectorized kernel (see {@link ColumnKernels}) are executed on primitive arrays<br>
+ * - Other single column transforms (subclasses of {@link BaseColumnTransform}) are executed on the values of that
+ * column only<br>
+ * - All other transforms, and all filters, are executed one record at a time<br>
+ * <br>
+ * Only non-sequence TransformProcesses consisting of transforms and filters can be executed in columnar format.
+ * Other TransformProcesses (reductions, joins, conversion to/from sequences etc) are passed to
+ * {@link LocalTransformExecutor} instead.
+ */
+@Slf4j
+public class ColumnarTransformExecutor {
+
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+
+    private ColumnarTransformExecutor() {}
+
+    /**
+     * Execute the specified TransformProcess with the given input data<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public static List<List<Writable>> execute(List<List<Writable>> inputWritables,
+                    TransformProcess transformProcess) {
+        return execute(inputWritables, transformProcess, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @param batchSize        Number of records to convert to columnar format and process at once
+     * @return Processed data
+     */
+    public static List<List<Writable>> execute(@NonNull List<List<Writable>> inputWritables,
+                    @NonNull TransformProcess transformProcess, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+
+        if (!canExecute(transformProcess) || !allValidLength(inputWritables, transformProcess.getInitialSchema())) {
+            log.debug("TransformProcess cannot be executed in columnar format, using LocalTransformExecutor");
+            return LocalTransformExecutor.execute(inputWritables, transformProcess);
+        }
+
+        Schema schema = transformProcess.getInitialSchema();
+        List<List<Writable>> out = new ArrayList<>(inputWritables.size());
+        for (int from = 0; from < inputWritables.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, inputWritables.size());
+            ColumnarRecordBatch in = ColumnarRecordBatch.fromRecords(schema, inputWritables, from, to);
+            ColumnarRecordBatch batch = executeBatch(in, transformProcess);
+            for (int i = 0; i < batch.size(); i++)
+                out.add(batch.get(i));
+        }
+
+        return out;
+    }
+
+    /**
+     * Execute the specified TransformProcess on an Arrow record batch.
+     *
+     * @param batch            Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data, in columnar format
+     */
+    public static ColumnarRecordBatch executeBatch(@NonNull ArrowWritableRecordBatch batch,
+                    @NonNull TransformProcess transformProcess) {
+        return executeBatch(ColumnarRecordBatch.fromArrow(batch), transformProcess);
+    }
+
+    /**
+     * Execute the specified TransformProcess on a columnar batch.
+     *
+     * @param batch            Input data to process
+     * @param transformProcess TransformProcess to execute. Must satisfy {@link #canExecute(TransformProcess)}
+     * @return Processed data, in columnar format
+     */
+    public static ColumnarRecordBatch executeBatch(@NonNull ColumnarRecordBatch batch,
+                    @NonNull TransformProcess transformProcess) {
+        if (!canExecute(transformProcess)) {
+            throw new IllegalStateException("Cannot execute TransformProcess in columnar format: only non-sequence "
+                            + "TransformProcesses consisting of transforms and filters are supported");
+        }
+
+        ColumnarRecordBatch current = batch;
+        Schema currentSchema = transformProcess.getInitialSchema();
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() != null) {
+                Transform t = d.getTransform();
+                Schema outputSchema = t.transform(currentSchema);
+                current = executeTransform(t, currentSchema, outputSchema, current);
+                currentSchema = outputSchema;
+            } else {
+                current = executeFilter(d.getFilter(), current);
+            }
+
+            if (current.size() == 0)
+                return new ColumnarRecordBatch(transformProcess.getFinalSchema(),
+                                emptyColumns(transformProcess.getFinalSchema()), 0);
+        }
+
+        return current;
+    }
+
+    /**
+     * @param transformProcess TransformProcess to check
+     * @return True if the TransformProcess can be executed in columnar format
+     */
+    public static boolean canExecute(@NonNull TransformProcess transformProcess) {
+        if (LocalTransformExecutor.isTryCatch())
+            return false;
+
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema
+                        || transformProcess.getFinalSchema() instanceof SequenceSchema)
+            return false;
+
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() == null && d.getFilter() == null)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static ColumnarRecordBatch executeTransform(Transform t, Schema inputSchema, Schema outputSchema,
+                    ColumnarRecordBatch batch) {
+        Column[] vectorized = ColumnKernels.execute(t, inputSchema, outputSchema, batch.getColumns());
+        if (vectorized != null)
+            return new ColumnarRecordBatch(outputSchema, vectorized, batch.size());
+
+        int n = batch.size();
+        if (isSingleColumnTransform(t)) {
+            //Only the values of one column are modified: no need to create the records
+            BaseColumnTransform ct = (BaseColumnTransform) t;
+            int idx = inputSchema.getIndexOfColumn(ct.getColumnName());
+            Column in = batch.getColumn(idx);
+            Writable[] values = new Writable[n];
+            for (int i = 0; i < n; i++)
+                values[i] = ct.map(in.get(i));
+
+            Column[] out = batch.getColumns().clone();
+            out[idx] = Column.fromWritables(outputSchema.getType(idx), values);
+            return new ColumnarRecordBatch(outputSchema, out, n);
+        }
+
+        //Fall back on row-wise execution
+        int numColumns = outputSchema.numColumns();
+        Writable[][] values = new Writable[numColumns][n];
+        for (int i = 0; i < n; i++) {
+            List<Writable> record = t.map(batch.get(i));
+            if (record.size() != numColumns) {
+                throw new IllegalStateException("Transform " + t + " returned " + record.size()
+                                + " values, but output schema has " + numColumns + " columns");
+            }
+            for (int j = 0; j < numColumns; j++)
+                values[j][i] = record.get(j);
+        }
+        return ColumnarRecordBatch.fromWritables(outputSchema, values, n);
+    }
+
+    private static ColumnarRecordBatch executeFilter(Filter f, ColumnarRecordBatch batch) {
+        int[] keep = new int[batch.size()];
+        int count = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (!f.removeExample(batch.get(i)))
+                keep[count++] = i;
+        }
+
+        if (count == keep.length)
+            return batch;
+
+        return batch.select(Arrays.copyOf(keep, count));
+    }
+
+    private static boolean isSingleColumnTransform(Transform t) {
+        if (!(t instanceof BaseColumnTransform))
+            return false;
+
+        //Subclasses that override map(List<Writable>) may do more than map a single column
+        try {
+            return t.getClass().getMethod("map", List.class).getDeclaringClass() == BaseColumnTransform.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean allValidLength(List<List<Writable>> records, Schema schema) {
+        int numColumns = schema.numColumns();
+        for (List<Writable> record : records) {
+            if (record.size() != numColumns)
+                return false;
+        }
+        return true;
+    }
+
+    private static Column[] emptyColumns(Schema schema) {
+        Column[] out = new Column[schema.numColumns()];
+        for (int j = 0; j < out.length; j++)
+            out[j] = Column.fromWritables(schema.getType(j), new Writable[0]);
+        return out;
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.writable.FloatWritable;
+import org.datavec.api.writable.Writable;
+
+/**
+ * Column backed by a float[] array
+ */
+public class FloatColumn extends Column {
+
+    @Getter
+    private final float[] values;
+
+    public FloatColumn(@NonNull float[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Writable get(int row) {
+        return new FloatWritable(values[row]);
+    }
+
+    @Override
+    public Column select(int[] rows) {
+        float[] out = new float[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            out[i] = values[rows[i]];
+        return new FloatColumn(out);
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return true;
+    }
+
+    @Override
+    public double[] toDoubles() {
+        double[] out = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            out[i] = values[i];
+        return out;
+    }
+}
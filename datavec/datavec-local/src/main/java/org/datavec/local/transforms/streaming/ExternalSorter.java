@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableFactory;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.*;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * External merge sort for (key, record) pairs.<br>
+ * Pairs are buffered in memory until the (estimated) size of the buffer exceeds the memory budget; the buffer is then
+ * sorted by key and written to a temporary file (a "run"). Once all pairs have been added, the runs are merged.
+ * If nothing was spilled, the sort happens entirely in memory.<br>
+ * <br>
+ * The sort is stable: pairs with equal keys are returned in the order they were added.<br>
+ * Temporary files are deleted once the sorted iterator has been exhausted, or when {@link #close()} is called. Files of
+ * sorted iterators that are abandoned without being closed are deleted once the iterator has been garbage collected.
+ */
+@Slf4j
+public class ExternalSorter implements Closeable {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final ReferenceQueue<Object> ABANDONED = new ReferenceQueue<>();
+    //Cleaners must stay reachable until their iterator is collected, otherwise they are never enqueued
+    private static final Set<SpillCleaner> CLEANERS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Comparator<List<Writable>> keyComparator;
+    private final Comparator<Pair<List<Writable>, List<Writable>>> pairComparator;
+    private final StreamingExecutionConfig config;
+
+    private List<Pair<List<Writable>, List<Writable>>> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private final List<Run> runs = new ArrayList<>();
+    private boolean finished;
+    private MergeIterator merge;
+    private SpillCleaner cleaner;
+
+    @Getter
+    private int numSpills;
+
+    public ExternalSorter(@NonNull Comparator<List<Writable>> keyComparator, @NonNull StreamingExecutionConfig config) {
+        if (config.getMemoryBudgetBytes() <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive, got " + config.getMemoryBudgetBytes());
+        if (config.getMaxMergeFanIn() < 2)
+            throw new IllegalArgumentException("Max merge fan in must be at least 2, got " + config.getMaxMergeFanIn());
+        deleteAbandoned();
+
+        this.keyComparator = keyComparator;
+        this.pairComparator = new Comparator<Pair<List<Writable>, List<Writable>>>() {
+            @Override
+            public int compare(Pair<List<Writable>, List<Writable>> o1, Pair<List<Writable>, List<Writable>> o2) {
+                return ExternalSorter.this.keyComparator.compare(o1.getFirst(), o2.getFirst());
+            }
+        };
+        this.config = config;
+    }
+
+    /**
+     * Add a (key, record) pair to be sorted
+     */
+    public void add(@NonNull List<Writable> key, @NonNull List<Writable> record) {
+        if (finished)
+            throw new IllegalStateException("Cannot add values: sorted iterator has already been requested");
+
+        buffer.add(Pair.of(key, record));
+        bufferBytes += estimateBytes(key) + estimateBytes(record);
+
+        if (bufferBytes >= config.getMemoryBudgetBytes())
+            spill();
+    }
+
+    /**
+     * Add all (key, record) pairs from the given iterator
+     */
+    public void addAll(@NonNull Iterator<Pair<List<Writable>, List<Writable>>> iterator) {
+        while (iterator.hasNext()) {
+            Pair<List<Writable>, List<Writable>> p = iterator.next();
+            add(p.getFirst(), p.getSecond());
+        }
+    }
+
+    /**
+     * Get an iterator over all added pairs, sorted by key. This method can only be called once; no values can
+     * be added after calling this method.
+     */
+    public Iterator<Pair<List<Writable>, List<Writable>>> sortedIterator() {
+        if (finished)
+            throw new IllegalStateException("Sorted iterator has already been requested");
+        finished = true;
+
+        Collections.sort(buffer, pairComparator);
+        if (runs.isEmpty()) {
+            Iterator<Pair<List<Writable>, List<Writable>>> iter = buffer.iterator();
+            buffer = null;
+            return iter;
+        }
+
+        //Merge in multiple passes if required, so we never have more than maxMergeFanIn files open at once.
+        //Merged runs replace the runs they were created from, at the same position, to keep the sort stable
+        int fanIn = config.getMaxMergeFanIn();
+        while (runs.size() + 1 > fanIn) {
+            List<Run> toMerge = new ArrayList<>(runs.subList(0, fanIn));
+            Run merged = newRun();
+            try (DataOutputStream out = merged.openOutput()) {
+                MergeIterator iter = new MergeIterator(toMerge, null);
+                while (iter.hasNext()) {
+                    Pair<List<Writable>, List<Writable>> p = iter.next();
+                    writePair(p, out);
+                    merged.count++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            runs.subList(0, fanIn).clear();
+            runs.add(0, merged);
+        }
+
+        List<Pair<List<Writable>, List<Writable>>> tail = buffer;
+        buffer = null;
+        merge = new MergeIterator(new ArrayList<>(runs), tail);
+        cleaner = new SpillCleaner(merge, new ArrayList<>(runs));
+        CLEANERS.add(cleaner);
+        return merge;
+    }
+
+    /**
+     * Close the sorted iterator if any, and delete any temporary files created by this sorter
+     */
+    @Override
+    public void close() {
+        if (merge != null) {
+            merge.close();
+            merge = null;
+        }
+        if (cleaner != null) {
+            cleaner.clean();
+            cleaner = null;
+        }
+        for (Run r : runs)
+            r.delete();
+        runs.clear();
+        buffer = null;
+    }
+
+    /**
+     * Delete the temporary files of sorted iterators that were garbage collected without being exhausted or closed
+     */
+    protected static void deleteAbandoned() {
+        Reference<?> ref;
+        while ((ref = ABANDONED.poll()) != null)
+            ((SpillCleaner) ref).clean();
+    }
+
+    protected void spill() {
+        Collections.sort(buffer, pairComparator);
+        Run run = newRun();
+        try (DataOutputStream out = run.openOutput()) {
+            for (Pair<List<Writable>, List<Writable>> p : buffer) {
+                writePair(p, out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        run.count = buffer.size();
+        runs.add(run);
+        numSpills++;
+
+        log.debug("Spilled {} records ({} bytes estimated) to {}", buffer.size(), bufferBytes, run.file);
+        buffer = new ArrayList<>();
+        bufferBytes = 0;
+    }
+
+    protected Run newRun() {
+        deleteAbandoned();
+        try {
+            File f = File.createTempFile("datavec_spill_", ".bin", config.getTempDirectory());
+            f.deleteOnExit();
+            return new Run(f);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Approximate on-heap size of the given record, in bytes
+     */
+    public static long estimateBytes(List<Writable> record) {
+        long bytes = 40;
+        for (Writable w : record) {
+            if (w instanceof Text) {
+                bytes += 56 + ((Text) w).getLength();
+            } else if (w instanceof NDArrayWritable && ((NDArrayWritable) w).get() != null) {
+                bytes += 128 + ((NDArrayWritable) w).get().length() * 8;
+            } else {
+                bytes += 24;
+            }
+        }
+        return bytes;
+    }
+
+    protected static void writePair(Pair<List<Writable>, List<Writable>> p, DataOutput out) throws IOException {
+        writeRecord(p.getFirst(), out);
+        writeRecord(p.getSecond(), out);
+    }
+
+    protected static void writeRecord(List<Writable> record, DataOutput out) throws IOException {
+        WritableFactory wf = WritableFactory.getInstance();
+        out.writeInt(record.size());
+        for (Writable w : record) {
+            wf.writeWithType(w, out);
+        }
+    }
+
+    protected static List<Writable> readRecord(DataInput in) throws IOException {
+        WritableFactory wf = WritableFactory.getInstance();
+        int size = in.readInt();
+        List<Writable> record = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            record.add(wf.readWithType(in));
+        }
+        return record;
+    }
+
+    /**
+     * A sorted run, stored in a temporary file
+     */
+    protected static class Run {
+        private final File file;
+        private long count;
+
+        private Run(File file) {
+            this.file = file;
+        }
+
+        private DataOutputStream openOutput() throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_SIZE));
+        }
+
+        private DataInputStream openInput() throws IOException {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE));
+        }
+
+        private void delete() {
+            if (file.exists() && !file.delete())
+                log.warn("Could not delete spill file {}", file);
+        }
+    }
+
+    /**
+     * Deletes the runs of a sorted iterator once it has been garbage collected. Only holds the runs, not the
+     * iterator, so it doesn't keep the iterator reachable
+     */
+    private static class SpillCleaner extends PhantomReference<Object> {
+        private final List<Run> runs;
+
+        private SpillCleaner(Object iterator, List<Run> runs) {
+            super(iterator, ABANDONED);
+            this.runs = runs;
+        }
+
+        private void clean() {
+            if (CLEANERS.remove(this)) {
+                for (Run r : runs)
+                    r.delete();
+            }
+            clear();
+        }
+    }
+
+    /**
+     * Reads pairs from one run (or the in-memory tail), with one pair of look-ahead
+     */
+    private static class RunCursor {
+        private final int order;
+        private final Run run;
+        private final Iterator<Pair<List<Writable>, List<Writable>>> memory;
+        private DataInputStream in;
+        private long remaining;
+        private Pair<List<Writable>, List<Writable>> head;
+
+        private RunCursor(int order, Run run) throws IOException {
+            this.order = order;
+            this.run = run;
+            this.memory = null;
+            this.in = run.openInput();
+            this.remaining = run.count;
+        }
+
+        private RunCursor(int order, List<Pair<List<Writable>, List<Writable>>> memory) {
+            this.order = order;
+            this.run = null;
+            this.memory = memory.iterator();
+        }
+
+        private boolean advance() throws IOException {
+            if (memory != null) {
+                head = memory.hasNext() ? memory.next() : null;
+            } else if (remaining > 0) {
+                head = Pair.of(readRecord(in), readRecord(in));
+                remaining--;
+            } else {
+                head = null;
+                close();
+            }
+            return head != null;
+        }
+
+        private void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs. Ties are broken by run order, so the merge is stable
+     */
+    private class MergeIterator implements Iterator<Pair<List<Writable>, List<Writable>>> {
+        private final PriorityQueue<RunCursor> queue;
+
+        private MergeIterator(List<Run> toMerge, List<Pair<List<Writable>, List<Writable>>> tail) {
+            queue = new PriorityQueue<>(toMerge.size() + 1, new Comparator<RunCursor>() {
+                @Override
+                public int compare(RunCursor o1, RunCursor o2) {
+                    int c = keyComparator.compare(o1.head.getFirst(), o2.head.getFirst());
+                    return c != 0 ? c : Integer.compare(o1.order, o2.order);
+                }
+            });
+
+            try {
+                int order = 0;
+                for (Run r : toMerge) {
+                    RunCursor c = new RunCursor(order++, r);
+                    if (c.advance())
+                        queue.add(c);
+                }
+                if (tail != null && !tail.isEmpty()) {
+                    RunCursor c = new RunCursor(order, tail);
+                    if (c.advance())
+                        queue.add(c);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        /**
+         * Close all runs that were not fully read yet, deleting their files
+         */
+        private void close() {
+            for (RunCursor c : queue) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    log.warn("Could not close spill file", e);
+                }
+            }
+            queue.clear();
+        }
+
+        @Override
+        public Pair<List<Writable>, List<Writable>> next() {
+            if (queue.isEmpty())
+                throw new NoSuchElementException();
+
+            RunCursor c = queue.poll();
+            Pair<List<Writable>, List<Writable>> out = c.head;
+            try {
+                if (c.advance())
+                    queue.add(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out;
+        }
+    }
+}
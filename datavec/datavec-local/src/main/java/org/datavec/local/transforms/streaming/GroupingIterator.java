@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+import org.datavec.api.writable.Writable;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.*;
+
+/**
+ * Groups consecutive (key, record) pairs with equal keys, from an iterator sorted by key (such as
+ * {@link ExternalSorter#sortedIterator()}).<br>
+ * Note that the records for any one key are held in memory at once.
+ */
+public class GroupingIterator implements Iterator<Pair<List<Writable>, List<List<Writable>>>> {
+
+    private final Iterator<Pair<List<Writable>, List<Writable>>> sorted;
+    private final Comparator<List<Writable>> keyComparator;
+    private Pair<List<Writable>, List<Writable>> next;
+
+    public GroupingIterator(@NonNull Iterator<Pair<List<Writable>, List<Writable>>> sorted,
+                    @NonNull Comparator<List<Writable>> keyComparator) {
+        this.sorted = sorted;
+        this.keyComparator = keyComparator;
+        this.next = sorted.hasNext() ? sorted.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Pair<List<Writable>, List<List<Writable>>> next() {
+        if (next == null)
+            throw new NoSuchElementException();
+
+        List<Writable> key = next.getFirst();
+        List<List<Writable>> group = new ArrayList<>();
+        group.add(next.getSecond());
+        next = null;
+
+        while (sorted.hasNext()) {
+            Pair<List<Writable>, List<Writable>> p = sorted.next();
+            if (keyComparator.compare(key, p.getFirst()) != 0) {
+                next = p;
+                break;
+            }
+            group.add(p.getSecond());
+        }
+
+        return Pair.of(key, group);
+    }
+}
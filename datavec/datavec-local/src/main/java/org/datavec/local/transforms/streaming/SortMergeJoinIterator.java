@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.*;
+
+/**
+ * Sort-merge join: joins two streams of records that have been grouped by key, and sorted by key using the same
+ * comparator (see {@link GroupingIterator}). The join for each key is executed using
+ * {@link ExecuteJoinFromCoGroupFlatMapFunction}, hence the output is the same as for
+ * {@link org.datavec.local.transforms.LocalTransformExecutor#executeJoin(Join, List, List)}
+ */
+public class SortMergeJoinIterator implements Iterator<List<Writable>> {
+
+    private final Iterator<Pair<List<Writable>, List<List<Writable>>>> left;
+    private final Iterator<Pair<List<Writable>, List<List<Writable>>>> right;
+    private final Comparator<List<Writable>> keyComparator;
+    private final ExecuteJoinFromCoGroupFlatMapFunction joinFunction;
+
+    private Pair<List<Writable>, List<List<Writable>>> currLeft;
+    private Pair<List<Writable>, List<List<Writable>>> currRight;
+    private Iterator<List<Writable>> current = Collections.emptyIterator();
+
+    public SortMergeJoinIterator(@NonNull Join join, @NonNull Iterator<Pair<List<Writable>, List<List<Writable>>>> left,
+                    @NonNull Iterator<Pair<List<Writable>, List<List<Writable>>>> right,
+                    @NonNull Comparator<List<Writable>> keyComparator) {
+        this.left = left;
+        this.right = right;
+        this.keyComparator = keyComparator;
+        this.joinFunction = new ExecuteJoinFromCoGroupFlatMapFunction(join);
+        this.currLeft = left.hasNext() ? left.next() : null;
+        this.currRight = right.hasNext() ? right.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (currLeft == null && currRight == null)
+                return false;
+
+            List<Writable> key;
+            List<List<Writable>> l;
+            List<List<Writable>> r;
+            int c;
+            if (currLeft == null) {
+                c = 1;
+            } else if (currRight == null) {
+                c = -1;
+            } else {
+                c = keyComparator.compare(currLeft.getFirst(), currRight.getFirst());
+            }
+
+            if (c < 0) {
+                key = currLeft.getFirst();
+                l = currLeft.getSecond();
+                r = Collections.emptyList();
+                currLeft = left.hasNext() ? left.next() : null;
+            } else if (c > 0) {
+                key = currRight.getFirst();
+                l = Collections.emptyList();
+                r = currRight.getSecond();
+                currRight = right.hasNext() ? right.next() : null;
+            } else {
+                key = currLeft.getFirst();
+                l = currLeft.getSecond();
+                r = currRight.getSecond();
+                currLeft = left.hasNext() ? left.next() : null;
+                currRight = right.hasNext() ? right.next() : null;
+            }
+
+            current = joinFunction.call(Pair.of(key, Pair.of(l, r))).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+}
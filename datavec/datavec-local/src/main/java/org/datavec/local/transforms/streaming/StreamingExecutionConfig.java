@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Configuration for {@link StreamingTransformExecutor}.<br>
+ * <br>
+ * memoryBudgetBytes: (Approximate) maximum number of bytes of records buffered in memory by each blocking stage
+ * (join, reduction, conversion to sequence, sorted rank), before they are sorted and spilled to disk.
+ * Default: 256MB<br>
+ * tempDirectory: Directory used for spill files. If null (default), java.io.tmpdir is used<br>
+ * maxMergeFanIn: Maximum number of spill files merged at once. If more spill files are produced, they are merged
+ * in multiple passes. Default: 64
+ */
+@Data
+@Builder
+@AllArgsConstructor
+public class StreamingExecutionConfig implements Serializable {
+
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 256L * 1024 * 1024;
+    public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
+
+    @Builder.Default
+    private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    private File tempDirectory;
+    @Builder.Default
+    private int maxMergeFanIn = DEFAULT_MAX_MERGE_FAN_IN;
+
+    /**
+     * @return Configuration with default values
+     */
+    public static StreamingExecutionConfig defaultConfig() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterator returned by {@link StreamingTransformExecutor}.<br>
+ * Temporary (spill) files are deleted once the iterator has been exhausted. Iterators that are not fully consumed
+ * should be closed, so their temporary files are deleted immediately instead of once the iterator has been
+ * garbage collected.
+ */
+public class StreamingIterator<T> implements Iterator<T>, Closeable {
+    private final Iterator<T> iterator;
+    private final List<ExternalSorter> sorters;
+
+    protected StreamingIterator(@NonNull Iterator<T> iterator, @NonNull List<ExternalSorter> sorters) {
+        this.iterator = iterator;
+        this.sorters = sorters;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return iterator.next();
+    }
+
+    /**
+     * Delete the temporary files of all blocking stages of the execution. No more values can be read afterwards
+     */
+    @Override
+    public void close() {
+        for (ExternalSorter sorter : sorters)
+            sorter.close();
+        sorters.clear();
+    }
+}
@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import com.google.common.collect.Iterators;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.SequenceRecordReader;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.rank.CalculateSortedRank;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.sequence.ConvertToSequence;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.SequenceEmptyRecordFunction;
+import org.datavec.local.transforms.functions.EmptyRecordFunction;
+import org.datavec.local.transforms.join.ExtractKeysFunction;
+import org.datavec.local.transforms.rank.UnzipForCalculateSortedRankFunction;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+import org.datavec.local.transforms.sequence.*;
+import org.datavec.local.transforms.transform.LocalTransformFunction;
+import org.datavec.local.transforms.transform.SequenceSplitFunction;
+import org.datavec.local.transforms.transform.filter.LocalFilterFunction;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Streaming (out-of-core) transform executor.<br>
+ * Executes a {@link TransformProcess} or {@link Join} over iterators of records, instead of fully materialized lists
+ * as in {@link LocalTransformExecutor}. Transforms, filters, sequence splits and conversion from sequences are
+ * applied lazily, one record at a time. Operations that need all records for a key - joins, reductions, conversion
+ * to sequences and sorted rank calculation - are executed by sorting records by key with an {@link ExternalSorter}
+ * (which spills sorted runs to disk once the memory budget from the {@link StreamingExecutionConfig} is exceeded),
+ * and then merging the sorted runs.<br>
+ * <br>
+ * Consequently, the input data does not need to fit in memory. Only the records for any single key (one group for
+ * a reduction, one sequence, or one key for a join) are held in memory at once.<br>
+ * <br>
+ * Note that unlike LocalTransformExecutor, the order of the output records for reductions and conversion to sequence
+ * is by key. The returned iterators are lazy: input is consumed as the output is iterated, and temporary files are
+ * deleted once the output iterator has been exhausted or closed (see {@link StreamingIterator}).
+ */
+@Slf4j
+public class StreamingTransformExecutor {
+
+    private StreamingTransformExecutor() {}
+
+    /**
+     * Execute the specified TransformProcess with the given input data, using the default configuration<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @param input            Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public static StreamingIterator<List<Writable>> execute(Iterator<List<Writable>> input,
+                    TransformProcess transformProcess) {
+        return execute(input, transformProcess, StreamingExecutionConfig.defaultConfig());
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @param input            Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @param config           Streaming execution configuration
+     * @return Processed data
+     */
+    public static StreamingIterator<List<Writable>> execute(@NonNull Iterator<List<Writable>> input,
+                    @NonNull TransformProcess transformProcess, @NonNull StreamingExecutionConfig config) {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        }
+
+        //As per LocalTransformExecutor: records with the wrong number of columns are skipped
+        final int numColumns = transformProcess.getInitialSchema().numColumns();
+        Iterator<List<Writable>> filtered = Iterators.filter(input, r -> r.size() == numColumns);
+        List<ExternalSorter> sorters = new ArrayList<>();
+        return new StreamingIterator<>(execute(filtered, null, transformProcess, config, sorters).getFirst(), sorters);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data<br>
+     * Note: this method can only be used if the TransformProcess starts with non-sequential data,
+     * but returns <it>sequence</it> data (after grouping or converting to a sequence as one of the steps)
+     *
+     * @param input            Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @param config           Streaming execution configuration
+     * @return Processed (sequence) data
+     */
+    public static StreamingIterator<List<List<Writable>>> executeToSequence(@NonNull Iterator<List<Writable>> input,
+                    @NonNull TransformProcess transformProcess, @NonNull StreamingExecutionConfig config) {
+        if (!(transformProcess.getFinalSchema() instanceof SequenceSchema)) {
+            throw new IllegalStateException("Cannot return non-sequence data with this method");
+        }
+
+        List<ExternalSorter> sorters = new ArrayList<>();
+        return new StreamingIterator<>(execute(input, null, transformProcess, config, sorters).getSecond(), sorters);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given <i>sequence</i> input data<br>
+     * Note: this method can only be used if the TransformProcess starts with sequence data, but returns
+     * <i>non-sequential</i> data (after reducing or converting sequential data to individual examples)
+     *
+     * @param input            Input sequence data to process
+     * @param transformProcess TransformProcess to execute
+     * @param config           Streaming execution configuration
+     * @return Processed (non-sequential) data
+     */
+    public static StreamingIterator<List<Writable>> executeSequenceToSeparate(@NonNull Iterator<List<List<Writable>>> input,
+                    @NonNull TransformProcess transformProcess, @NonNull StreamingExecutionConfig config) {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        }
+
+        List<ExternalSorter> sorters = new ArrayList<>();
+        return new StreamingIterator<>(execute(null, input, transformProcess, config, sorters).getFirst(), sorters);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given <i>sequence</i> input data<br>
+     * Note: this method can only be used if the TransformProcess starts with sequence data, and also returns
+     * sequence data
+     *
+     * @param input            Input sequence data to process
+     * @param transformProcess TransformProcess to execute
+     * @param config           Streaming execution configuration
+     * @return Processed (sequence) data
+     */
+    public static StreamingIterator<List<List<Writable>>> executeSequenceToSequence(
+                    @NonNull Iterator<List<List<Writable>>> input, @NonNull TransformProcess transformProcess,
+                    @NonNull StreamingExecutionConfig config) {
+        if (!(transformProcess.getFinalSchema() instanceof SequenceSchema)) {
+            throw new IllegalStateException("Cannot return non-sequence data with this method");
+        }
+
+        List<ExternalSorter> sorters = new ArrayList<>();
+        return new StreamingIterator<>(execute(null, input, transformProcess, config, sorters).getSecond(), sorters);
+    }
+
+    /**
+     * Execute a join on the specified data, using a sort-merge join. Both inputs are sorted by key
+     * (spilling to disk if required), and then merged.
+     *
+     * @param join   Join to execute
+     * @param left   Left data for join
+     * @param right  Right data for join
+     * @param config Streaming execution configuration
+     * @return Joined data
+     */
+    public static StreamingIterator<List<Writable>> executeJoin(@NonNull Join join, @NonNull Iterator<List<Writable>> left,
+                    @NonNull Iterator<List<Writable>> right, @NonNull StreamingExecutionConfig config) {
+        final String[] leftColumnNames = join.getJoinColumnsLeft();
+        final String[] rightColumnNames = join.getJoinColumnsRight();
+        final ExtractKeysFunction leftKeys =
+                        new ExtractKeysFunction(join.getLeftSchema().getIndexOfColumns(leftColumnNames));
+        final ExtractKeysFunction rightKeys =
+                        new ExtractKeysFunction(join.getRightSchema().getIndexOfColumns(rightColumnNames));
+
+        final List<ExternalSorter> sorters = new ArrayList<>();
+        return new StreamingIterator<>(deferred(() -> {
+            Comparator<List<Writable>> keyComparator = new WritableListComparator();
+            //Same filtering as LocalTransformExecutor.executeJoin
+            Iterator<Pair<List<Writable>, List<Writable>>> leftSorted = sortedPairs(Iterators.transform(
+                            Iterators.filter(left, r -> r.size() != leftColumnNames.length), leftKeys::apply),
+                            keyComparator, config, sorters);
+            Iterator<Pair<List<Writable>, List<Writable>>> rightSorted = sortedPairs(Iterators.transform(
+                            Iterators.filter(right, r -> r.size() != rightColumnNames.length), rightKeys::apply),
+                            keyComparator, config, sorters);
+            return new SortMergeJoinIterator(join, new GroupingIterator(leftSorted, keyComparator),
+                            new GroupingIterator(rightSorted, keyComparator), keyComparator);
+        }), sorters);
+    }
+
+    /**
+     * Convert a RecordReader to an iterator of records, for use as input to this executor
+     */
+    public static Iterator<List<Writable>> iterator(@NonNull final RecordReader recordReader) {
+        return new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return recordReader.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                return recordReader.next();
+            }
+        };
+    }
+
+    /**
+     * Convert a SequenceRecordReader to an iterator of sequences, for use as input to this executor
+     */
+    public static Iterator<List<List<Writable>>> sequenceIterator(@NonNull final SequenceRecordReader recordReader) {
+        return new Iterator<List<List<Writable>>>() {
+            @Override
+            public boolean hasNext() {
+                return recordReader.hasNext();
+            }
+
+            @Override
+            public List<List<Writable>> next() {
+                return recordReader.sequenceRecord();
+            }
+        };
+    }
+
+    private static Pair<Iterator<List<Writable>>, Iterator<List<List<Writable>>>> execute(
+                    Iterator<List<Writable>> inputWritables, Iterator<List<List<Writable>>> inputSequence,
+                    TransformProcess sequence, StreamingExecutionConfig config, List<ExternalSorter> sorters) {
+        Iterator<List<Writable>> currentWritables = inputWritables;
+        Iterator<List<List<Writable>>> currentSequence = inputSequence;
+
+        for (DataAction d : sequence.getActionList()) {
+            if (d.getTransform() != null) {
+                Transform t = d.getTransform();
+                if (currentWritables != null) {
+                    LocalTransformFunction function = new LocalTransformFunction(t);
+                    currentWritables = Iterators.transform(currentWritables, function::apply);
+                    if (LocalTransformExecutor.isTryCatch())
+                        currentWritables = Iterators.filter(currentWritables, new EmptyRecordFunction()::apply);
+                } else {
+                    LocalSequenceTransformFunction function = new LocalSequenceTransformFunction(t);
+                    currentSequence = Iterators.transform(currentSequence, function::apply);
+                    if (LocalTransformExecutor.isTryCatch())
+                        currentSequence = Iterators.filter(currentSequence, new SequenceEmptyRecordFunction()::apply);
+                }
+            } else if (d.getFilter() != null) {
+                Filter f = d.getFilter();
+                if (currentWritables != null) {
+                    LocalFilterFunction function = new LocalFilterFunction(f);
+                    currentWritables = Iterators.filter(currentWritables, function::apply);
+                } else {
+                    LocalSequenceFilterFunction function = new LocalSequenceFilterFunction(f);
+                    currentSequence = Iterators.filter(currentSequence, function::apply);
+                }
+            } else if (d.getConvertToSequence() != null) {
+                final ConvertToSequence cts = d.getConvertToSequence();
+                if (currentWritables == null)
+                    throw new IllegalStateException("Cannot execute ConvertToSequence operation: current writables are null");
+
+                if (cts.isSingleStepSequencesMode()) {
+                    currentSequence = Iterators.transform(currentWritables, new ConvertToSequenceLengthOne()::apply);
+                } else {
+                    Schema schema = cts.getInputSchema();
+                    final LocalMapToPairByMultipleColumnsFunction keyFunction =
+                                    new LocalMapToPairByMultipleColumnsFunction(
+                                                    schema.getIndexOfColumns(cts.getKeyColumns()));
+                    final LocalGroupToSequenceFunction toSequence =
+                                    new LocalGroupToSequenceFunction(cts.getComparator());
+                    final Iterator<List<Writable>> in = currentWritables;
+                    currentSequence = deferred(() -> {
+                        Comparator<List<Writable>> keyComparator = new WritableListComparator();
+                        Iterator<Pair<List<Writable>, List<Writable>>> sorted =
+                                        sortedPairs(Iterators.transform(in, keyFunction::apply), keyComparator, config,
+                                                        sorters);
+                        return Iterators.transform(new GroupingIterator(sorted, keyComparator),
+                                        g -> toSequence.apply(g.getSecond()));
+                    });
+                }
+                currentWritables = null;
+            } else if (d.getConvertFromSequence() != null) {
+                if (currentSequence == null) {
+                    throw new IllegalStateException(
+                                    "Cannot execute ConvertFromSequence operation: current sequence is null");
+                }
+
+                currentWritables = Iterators.concat(Iterators.transform(currentSequence, List::iterator));
+                currentSequence = null;
+            } else if (d.getSequenceSplit() != null) {
+                if (currentSequence == null)
+                    throw new IllegalStateException("Error during execution of SequenceSplit: currentSequence is null");
+                SequenceSplitFunction function = new SequenceSplitFunction(d.getSequenceSplit());
+
+                currentSequence = Iterators.concat(Iterators.transform(currentSequence, s -> function.call(s).iterator()));
+            } else if (d.getReducer() != null) {
+                final IAssociativeReducer reducer = d.getReducer();
+
+                if (currentWritables == null)
+                    throw new IllegalStateException("Error during execution of reduction: current writables are null. "
+                                    + "Trying to execute a reduce operation on a sequence?");
+
+                //Same (string) keys as LocalTransformExecutor, so grouping semantics are identical
+                final MapToPairForReducerFunction keyFunction = new MapToPairForReducerFunction(reducer);
+                final Iterator<List<Writable>> in = currentWritables;
+                currentWritables = deferred(() -> {
+                    Comparator<List<Writable>> keyComparator = new WritableListComparator();
+                    Iterator<Pair<List<Writable>, List<Writable>>> sorted = sortedPairs(
+                                    Iterators.transform(in, r -> {
+                                        Pair<String, List<Writable>> p = keyFunction.apply(r);
+                                        return Pair.of(Collections.<Writable>singletonList(new Text(p.getFirst())),
+                                                        p.getSecond());
+                                    }), keyComparator, config, sorters);
+                    return Iterators.transform(new GroupingIterator(sorted, keyComparator), g -> {
+                        IAggregableReduceOp<List<Writable>, List<Writable>> op = reducer.aggregableReducer();
+                        for (List<Writable> value : g.getSecond())
+                            op.accept(value);
+                        return op.get();
+                    });
+                });
+            } else if (d.getCalculateSortedRank() != null) {
+                CalculateSortedRank csr = d.getCalculateSortedRank();
+
+                if (currentWritables == null) {
+                    throw new IllegalStateException(
+                                    "Error during execution of CalculateSortedRank: current writables are null. "
+                                                    + "Trying to execute a CalculateSortedRank operation on a sequence? (not currently supported)");
+                }
+
+                final Comparator<Writable> comparator = csr.getComparator();
+                final int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(csr.getSortOnColumn());
+                final boolean ascending = csr.isAscending();
+                final Iterator<List<Writable>> in = currentWritables;
+                currentWritables = deferred(() -> {
+                    Comparator<List<Writable>> keyComparator = (k1, k2) -> {
+                        int result = comparator.compare(k1.get(0), k2.get(0));
+                        return ascending ? result : -result;
+                    };
+                    Iterator<List<Writable>> sorted = sortByKey(in,
+                                    r -> Pair.of(Collections.singletonList(r.get(sortColumnIdx)), r), keyComparator,
+                                    config, sorters);
+                    final UnzipForCalculateSortedRankFunction unzip = new UnzipForCalculateSortedRankFunction();
+                    final long[] rank = new long[1];
+                    return Iterators.transform(sorted,
+                                    r -> unzip.apply(Pair.of(Pair.of(r.get(sortColumnIdx), r), rank[0]++)));
+                });
+            } else {
+                throw new RuntimeException("Unknown/not implemented action: " + d);
+            }
+        }
+
+        return Pair.of(currentWritables, currentSequence);
+    }
+
+    private static Iterator<Pair<List<Writable>, List<Writable>>> sortedPairs(
+                    Iterator<Pair<List<Writable>, List<Writable>>> pairs, Comparator<List<Writable>> keyComparator,
+                    StreamingExecutionConfig config, List<ExternalSorter> sorters) {
+        ExternalSorter sorter = new ExternalSorter(keyComparator, config);
+        sorters.add(sorter);
+        try {
+            sorter.addAll(pairs);
+        } catch (RuntimeException e) {
+            sorter.close();
+            throw e;
+        }
+        if (sorter.getNumSpills() > 0)
+            log.info("Sorted records using {} spill files", sorter.getNumSpills());
+        return sorter.sortedIterator();
+    }
+
+    private static Iterator<List<Writable>> sortByKey(Iterator<List<Writable>> records,
+                    com.google.common.base.Function<List<Writable>, Pair<List<Writable>, List<Writable>>> keyFunction,
+                    Comparator<List<Writable>> keyComparator, StreamingExecutionConfig config,
+                    List<ExternalSorter> sorters) {
+        return Iterators.transform(
+                        sortedPairs(Iterators.transform(records, keyFunction), keyComparator, config, sorters),
+                        Pair::getSecond);
+    }
+
+    /**
+     * Iterator that is created on first use, so blocking stages don't consume their input until the output is
+     * actually requested
+     */
+    private static <T> Iterator<T> deferred(final Supplier<Iterator<T>> supplier) {
+        return new Iterator<T>() {
+            private Iterator<T> iter;
+
+            private Iterator<T> get() {
+                if (iter == null)
+                    iter = supplier.get();
+                return iter;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return get().hasNext();
+            }
+
+            @Override
+            public T next() {
+                return get().next();
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import org.datavec.api.io.WritableComparable;
+import org.datavec.api.writable.*;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lexicographic comparator for lists of writables, used to sort records by key before grouping/joining.<br>
+ * Writables of the same type are compared using {@link WritableComparable#compareTo(Object)}. Consistent with
+ * {@link Writable#equals(Object)}, integer writables (byte, int and long) are compared with each other by value, as are
+ * floating point writables (float and double). Other writables of different types are never equal, and are ordered
+ * by class name.
+ */
+public class WritableListComparator implements Comparator<List<Writable>>, Serializable {
+
+    @Override
+    public int compare(List<Writable> o1, List<Writable> o2) {
+        int n = Math.min(o1.size(), o2.size());
+        for (int i = 0; i < n; i++) {
+            int c = compareWritables(o1.get(i), o2.get(i));
+            if (c != 0)
+                return c;
+        }
+        return Integer.compare(o1.size(), o2.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static int compareWritables(Writable w1, Writable w2) {
+        Class<?> c1 = numericClass(w1);
+        Class<?> c2 = numericClass(w2);
+        if (c1 != null && c1 == c2) {
+            if (c1 == LongWritable.class)
+                return Long.compare(w1.toLong(), w2.toLong());
+            return Double.compare(w1.toDouble(), w2.toDouble());
+        }
+
+        if (w1.getClass() == w2.getClass()) {
+            if (w1 instanceof WritableComparable)
+                return ((WritableComparable) w1).compareTo(w2);
+            return w1.toString().compareTo(w2.toString());
+        }
+
+        //Numeric writables are ordered against other types as a single class, to keep the ordering transitive
+        String n1 = (c1 != null ? c1 : w1.getClass()).getName();
+        String n2 = (c2 != null ? c2 : w2.getClass()).getName();
+        return n1.compareTo(n2);
+    }
+
+    /**
+     * Class that numeric writables comparable by value with each other are ordered as: LongWritable for integer
+     * writables, DoubleWritable for floating point writables; null for other writables
+     */
+    private static Class<?> numericClass(Writable w) {
+        if (w instanceof ByteWritable || w instanceof IntWritable || w instanceof LongWritable)
+            return LongWritable.class;
+        if (w instanceof FloatWritable || w instanceof DoubleWritable)
+            return DoubleWritable.class;
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.doubletransform.MinMaxNormalizer;
+import org.datavec.api.transform.transform.doubletransform.StandardizeNormalizer;
+import org.datavec.api.writable.*;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestColumnarTransformExecutor {
+
+    private static Schema schema() {
+        return new Schema.Builder().addColumnInteger("int").addColumnLong("long").addColumnDouble("d0")
+                        .addColumnDouble("d1").addColumnCategorical("cat", "a", "b", "c").addColumnString("str")
+                        .build();
+    }
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        String[] states = {"a", "b", "c"};
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new IntWritable(r.nextInt(100)), new LongWritable(r.nextLong() % 1000),
+                            new DoubleWritable(r.nextDouble()), new DoubleWritable(r.nextGaussian()),
+                            new Text(states[r.nextInt(3)]), new Text("  s" + i + " ")));
+        }
+        return out;
+    }
+
+    @Test
+    public void testSameAsLocalExecutor() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                        .integerMathOp("int", MathOp.Multiply, 3)
+                        .longMathOp("long", MathOp.Subtract, 7)
+                        .doubleMathOp("d0", MathOp.ReverseDivide, 2.0)
+                        .doubleMathFunction("d1", MathFunction.TANH)
+                        .transform(new MinMaxNormalizer("d0", 0, 100))
+                        .transform(new StandardizeNormalizer("d1", 0.5, 2.0))
+                        .doubleColumnsMathOp("sum", MathOp.Add, "d0", "d1")
+                        .filter(new ConditionFilter(new DoubleColumnCondition("sum", ConditionOp.LessThan, 0.0)))
+                        .categoricalToInteger("cat")
+                        .stringRemoveWhitespaceTransform("str")
+                        .duplicateColumn("int", "intCopy")
+                        .renameColumn("d1", "d1renamed")
+                        .removeColumns("long")
+                        .reorderColumns("sum", "cat")
+                        .build();
+
+        List<List<Writable>> in = data(1000);
+
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        for (int batchSize : new int[] {1, 7, 1000, 5000}) {
+            List<List<Writable>> actual = ColumnarTransformExecutor.execute(in, tp, batchSize);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testInvalidValuesFallBack() {
+        Schema s = new Schema.Builder().addColumnDouble("d").addColumnInteger("i").build();
+        TransformProcess tp = new TransformProcess.Builder(s).doubleMathOp("d", MathOp.Add, 1.0)
+                        .integerMathOp("i", MathOp.Add, 1).build();
+
+        //Non-double writables in a double column: can't be stored in a primitive column
+        List<List<Writable>> in = new ArrayList<>();
+        in.add(Arrays.<Writable>asList(new DoubleWritable(1.0), new IntWritable(1)));
+        in.add(Arrays.<Writable>asList(new IntWritable(2), new IntWritable(2)));
+
+        ColumnarRecordBatch batch = ColumnarRecordBatch.fromRecords(s, in, 0, in.size());
+        assertTrue(batch.getColumn(0) instanceof WritableColumn);
+        assertTrue(batch.getColumn(1) instanceof IntColumn);
+
+        assertEquals(LocalTransformExecutor.execute(in, tp), ColumnarTransformExecutor.execute(in, tp));
+    }
+
+    @Test
+    public void testAllFiltered() {
+        Schema s = new Schema.Builder().addColumnDouble("d").build();
+        TransformProcess tp = new TransformProcess.Builder(s)
+                        .filter(new ConditionFilter(new DoubleColumnCondition("d", ConditionOp.GreaterThan, -1.0)))
+                        .build();
+
+        List<List<Writable>> in = new ArrayList<>();
+        in.add(Arrays.<Writable>asList(new DoubleWritable(1.0)));
+
+        assertEquals(0, ColumnarTransformExecutor.execute(in, tp).size());
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.streaming;
+
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.*;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestStreamingTransformExecutor {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private StreamingExecutionConfig smallBudget(File dir) {
+        //Small enough that every blocking stage spills many times, and multiple merge passes are required
+        return StreamingExecutionConfig.builder().memoryBudgetBytes(2000).maxMergeFanIn(3).tempDirectory(dir).build();
+    }
+
+    private static <T> List<T> toList(Iterator<T> iter) {
+        List<T> out = new ArrayList<>();
+        while (iter.hasNext())
+            out.add(iter.next());
+        return out;
+    }
+
+    private static void sortByString(List<List<Writable>> list) {
+        Collections.sort(list, new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+    }
+
+    @Test
+    public void testExternalSorter() throws Exception {
+        File dir = testDir.newFolder();
+        ExternalSorter sorter = new ExternalSorter(new WritableListComparator(), smallBudget(dir));
+
+        Random r = new Random(12345);
+        int n = 500;
+        for (int i = 0; i < n; i++) {
+            sorter.add(Collections.<Writable>singletonList(new IntWritable(r.nextInt(20))),
+                            Arrays.<Writable>asList(new IntWritable(i), new Text("value" + i)));
+        }
+        assertTrue(sorter.getNumSpills() > 3);
+
+        List<Pair<List<Writable>, List<Writable>>> sorted = toList(sorter.sortedIterator());
+        assertEquals(n, sorted.size());
+        for (int i = 1; i < n; i++) {
+            int k0 = sorted.get(i - 1).getFirst().get(0).toInt();
+            int k1 = sorted.get(i).getFirst().get(0).toInt();
+            assertTrue(k0 <= k1);
+            if (k0 == k1) {
+                //Stable: insertion order is retained for equal keys
+                assertTrue(sorted.get(i - 1).getSecond().get(0).toInt() < sorted.get(i).getSecond().get(0).toInt());
+            }
+        }
+
+        //All spill files should be deleted once the iterator is exhausted
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testExternalSorterClose() throws Exception {
+        File dir = testDir.newFolder();
+        ExternalSorter sorter = new ExternalSorter(new WritableListComparator(), smallBudget(dir));
+        for (int i = 0; i < 500; i++) {
+            sorter.add(Collections.<Writable>singletonList(new IntWritable(i % 20)),
+                            Collections.<Writable>singletonList(new Text("value" + i)));
+        }
+
+        //Only part of the output is read: spill files should be deleted on close
+        Iterator<Pair<List<Writable>, List<Writable>>> iter = sorter.sortedIterator();
+        for (int i = 0; i < 10; i++)
+            iter.next();
+        assertTrue(dir.listFiles().length > 0);
+
+        sorter.close();
+        assertEquals(0, dir.listFiles().length);
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testStreamingIteratorClose() throws Exception {
+        Schema s = new Schema.Builder().addColumnInteger("intCol").addColumnDouble("doubleCol").build();
+        TransformProcess tp = new TransformProcess.Builder(s).reduce(new Reducer.Builder(ReduceOp.Sum)
+                        .keyColumns("intCol").build()).build();
+
+        List<List<Writable>> in = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            in.add(Arrays.<Writable>asList(new IntWritable(i % 7), new DoubleWritable(i)));
+        }
+
+        File dir = testDir.newFolder();
+        StreamingIterator<List<Writable>> iter = StreamingTransformExecutor.execute(in.iterator(), tp, smallBudget(dir));
+        iter.next();
+        assertTrue(dir.listFiles().length > 0);
+
+        iter.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testNumericKeys() {
+        WritableListComparator c = new WritableListComparator();
+
+        //Consistent with equals: integer and floating point writables are compared by value within their kind
+        assertEquals(new IntWritable(1), new LongWritable(1));
+        assertEquals(0, c.compare(Collections.<Writable>singletonList(new IntWritable(1)),
+                        Collections.<Writable>singletonList(new LongWritable(1))));
+        assertEquals(0, WritableListComparator.compareWritables(new ByteWritable((byte) 3), new LongWritable(3)));
+        assertTrue(WritableListComparator.compareWritables(new IntWritable(2), new LongWritable(10)) < 0);
+        assertTrue(WritableListComparator.compareWritables(new LongWritable(10), new IntWritable(2)) > 0);
+        assertEquals(0, WritableListComparator.compareWritables(new FloatWritable(0.5f), new DoubleWritable(0.5)));
+        assertTrue(WritableListComparator.compareWritables(new DoubleWritable(-1.0), new FloatWritable(2.0f)) < 0);
+
+        //Different kinds are never equal, and are ordered the same way whatever the values
+        int intVsDouble = WritableListComparator.compareWritables(new IntWritable(1), new DoubleWritable(1.0));
+        assertNotEquals(0, intVsDouble);
+        assertEquals(Integer.signum(intVsDouble), Integer.signum(
+                        WritableListComparator.compareWritables(new LongWritable(-5), new FloatWritable(100f))));
+        assertNotEquals(0, WritableListComparator.compareWritables(new IntWritable(1), new Text("1")));
+    }
+
+    @Test
+    public void testReductionByKey() throws Exception {
+        Schema s = new Schema.Builder().addColumnInteger("intCol").addColumnString("textCol")
+                        .addColumnDouble("doubleCol").build();
+
+        TransformProcess tp = new TransformProcess.Builder(s).reduce(new Reducer.Builder(ReduceOp.TakeFirst)
+                        .keyColumns("intCol").takeFirstColumns("textCol").sumColumns("doubleCol").build()).build();
+
+        List<List<Writable>> in = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            in.add(Arrays.<Writable>asList(new IntWritable(i % 7), new Text("t" + i), new DoubleWritable(i)));
+        }
+
+        List<List<Writable>> out =
+                        toList(StreamingTransformExecutor.execute(in.iterator(), tp, smallBudget(testDir.newFolder())));
+        List<List<Writable>> exp = new ArrayList<>(LocalTransformExecutor.execute(in, tp));
+
+        sortByString(out);
+        sortByString(exp);
+        assertEquals(exp, out);
+        assertEquals(7, out.size());
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        Schema customerInfoSchema =
+                        new Schema.Builder().addColumnLong("customerID").addColumnString("customerName").build();
+        Schema purchasesSchema = new Schema.Builder().addColumnLong("purchaseID").addColumnLong("customerID")
+                        .addColumnDouble("amount").build();
+
+        Random r = new Random(12345);
+        List<List<Writable>> info = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            info.add(Arrays.<Writable>asList(new LongWritable(i), new Text("Customer" + i)));
+        }
+        List<List<Writable>> purchases = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            //Some customers without purchases, and some purchases without customers
+            purchases.add(Arrays.<Writable>asList(new LongWritable(1000000 + i), new LongWritable(r.nextInt(150)),
+                            new DoubleWritable(i)));
+        }
+
+        for (Join.JoinType jt : Join.JoinType.values()) {
+            Join join = new Join.Builder(jt).setJoinColumns("customerID")
+                            .setSchemas(customerInfoSchema, purchasesSchema).build();
+
+            File dir = testDir.newFolder();
+            List<List<Writable>> out = toList(StreamingTransformExecutor.executeJoin(join, info.iterator(),
+                            purchases.iterator(), smallBudget(dir)));
+            List<List<Writable>> exp = new ArrayList<>(LocalTransformExecutor.executeJoin(join, info, purchases));
+
+            assertEquals(jt.toString(), exp.size(), out.size());
+            if (jt == Join.JoinType.Inner) {
+                sortByString(out);
+                sortByString(exp);
+                assertEquals(exp, out);
+            }
+            assertEquals(0, dir.listFiles().length);
+        }
+    }
+
+    @Test
+    public void testConvertToSequence() throws Exception {
+        Schema s = new Schema.Builder().addColumnsString("key").addColumnLong("time").build();
+
+        List<List<Writable>> in = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            in.add(Arrays.<Writable>asList(new Text("k" + (i % 5)), new LongWritable(200 - i)));
+        }
+
+        TransformProcess tp = new TransformProcess.Builder(s)
+                        .convertToSequence(Collections.singletonList("key"), new NumericalColumnComparator("time"))
+                        .build();
+
+        List<List<List<Writable>>> out = toList(StreamingTransformExecutor.executeToSequence(in.iterator(), tp,
+                        smallBudget(testDir.newFolder())));
+        assertEquals(5, out.size());
+
+        for (int i = 0; i < 5; i++) {
+            List<List<Writable>> seq = out.get(i);
+            assertEquals(40, seq.size());
+            for (int j = 0; j < seq.size(); j++) {
+                assertEquals("k" + i, seq.get(j).get(0).toString());
+                if (j > 0)
+                    assertTrue(seq.get(j - 1).get(1).toLong() < seq.get(j).get(1).toLong());
+            }
+        }
+    }
+}
@@ -34,4 +34,11 @@ public class DL4JEnvironmentVars {
      */
     public static final String DL4J_VOID_IP = "DL4J_VOID_IP";
 
+    /**
+     * Applicability: Module dl4j-spark-parameterserver_2.xx<br>
+     * Usage: Rank of this node in ring, in range 0..ringSize-1, if ring all-reduce is enabled via
+     * SharedTrainingMaster.Builder.ringAllReduce(int). Each node should have its own rank
+     */
+    public static final String DL4J_RING_RANK = "DL4J_RING_RANK";
+
 }
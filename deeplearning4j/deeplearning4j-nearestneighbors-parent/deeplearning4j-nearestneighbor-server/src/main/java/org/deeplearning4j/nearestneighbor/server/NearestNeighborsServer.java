@@ -21,7 +21,9 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.clustering.hnsw.HnswIndex;
 import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.deeplearning4j.clustering.util.NearestNeighborsIndex;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.clustering.vptree.VPTreeFillSearch;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
@@ -46,7 +48,7 @@ import static play.mvc.Results.*;
 
 /**
  * A rest server for using an
- * {@link VPTree} based on loading an ndarray containing
+ * {@link VPTree} (or {@link HnswIndex}, if --index hnsw is specified) based on loading an ndarray containing
  * the data points for the path
  * The input values are an {@link CSVRecord}
  * which (based on the input schema) will automatically
@@ -66,6 +68,12 @@ public class NearestNeighborsServer {
     private String similarityFunction = "euclidean";
     @Parameter(names = {"--invert"}, arity = 1)
     private boolean invert = false;
+    @Parameter(names = {"--index"}, arity = 1)
+    private String index = "vptree";
+    @Parameter(names = {"--hnswPath"}, arity = 1, required = false)
+    private String hnswPath = null;
+    @Parameter(names = {"--hnswEfSearch"}, arity = 1)
+    private int hnswEfSearch = 50;
 
     private Server server;
 
@@ -147,7 +155,29 @@ public class NearestNeighborsServer {
             System.gc();
         }
 
-        VPTree tree = new VPTree(points, similarityFunction, invert);
+        final NearestNeighborsIndex tree;
+        if ("hnsw".equalsIgnoreCase(index)) {
+            HnswIndex hnsw;
+            if (hnswPath != null) {
+                log.info("Loading HNSW index from {}", hnswPath);
+                hnsw = HnswIndex.load(new File(hnswPath));
+                if (hnsw.size() != rows || hnsw.getDimensions() != cols)
+                    throw new DL4JInvalidInputException(String.format(
+                                    "HNSW index doesn't match points matrix (expected [%d x %d], found [%d x %d])",
+                                    rows, cols, hnsw.size(), hnsw.getDimensions()));
+            } else {
+                log.info("Building HNSW index...");
+                hnsw = new HnswIndex(points, similarityFunction, invert);
+            }
+            hnsw.setEfSearch(hnswEfSearch);
+            tree = hnsw;
+        } else if ("vptree".equalsIgnoreCase(index)) {
+            if (VPTree.isBulkLoadSupported(similarityFunction))
+                tree = VPTree.bulkLoad(points, similarityFunction, invert, Runtime.getRuntime().availableProcessors());
+            else
+                tree = new VPTree(points, similarityFunction, invert);
+        } else
+            throw new DL4JInvalidInputException("Unknown index type: [" + index + "], should be vptree or hnsw");
 
         RoutingDsl routingDsl = new RoutingDsl();
         //return the host information for a given id
@@ -183,12 +213,13 @@ public class NearestNeighborsServer {
                 List<DataPoint> results;
                 List<Double> distances;
 
-                if (record.isForceFillK()) {
-                    VPTreeFillSearch vpTreeFillSearch = new VPTreeFillSearch(tree, record.getK(), arr);
+                if (record.isForceFillK() && tree instanceof VPTree) {
+                    VPTreeFillSearch vpTreeFillSearch = new VPTreeFillSearch((VPTree) tree, record.getK(), arr);
                     vpTreeFillSearch.search();
                     results = vpTreeFillSearch.getResults();
                     distances = vpTreeFillSearch.getDistances();
                 } else {
+                    // HnswIndex always returns min(k, size) results, so there's nothing to fill
                     results = new ArrayList<>();
                     distances = new ArrayList<>();
                     tree.search(arr, record.getK(), results, distances);
@@ -218,6 +249,58 @@ public class NearestNeighborsServer {
             }
         })));
 
+        routingDsl.POST("/knnbatch").routeTo(FunctionUtil.function0((() -> {
+            try {
+                Base64NDArrayBody record = Json.fromJson(request().body().asJson(), Base64NDArrayBody.class);
+                if (record == null)
+                    return badRequest(Json.toJson(Collections.singletonMap("status", "invalid json passed.")));
+
+                INDArray arr = Nd4jBase64.fromBase64(record.getNdarray());
+                if (arr.rank() == 1)
+                    arr = arr.reshape(1, arr.length());
+
+                List<NearestNeighborsResults> batch = new ArrayList<>();
+                if (tree instanceof VPTree) {
+                    // all queries are searched in one pass over the flat tree, concurrently
+                    VPTree.BatchSearchResult searchResult = ((VPTree) tree).search(arr, record.getK());
+                    for (int q = 0; q < searchResult.size(); q++) {
+                        int[] indices = searchResult.getIndices()[q];
+                        float[] distances = searchResult.getDistances()[q];
+                        List<NearestNeighborsResult> nnResult = new ArrayList<>();
+                        for (int i = 0; i < indices.length; i++) {
+                            if (!labels.isEmpty())
+                                nnResult.add(new NearestNeighborsResult(indices[i], distances[i], labels.get(indices[i])));
+                            else
+                                nnResult.add(new NearestNeighborsResult(indices[i], distances[i]));
+                        }
+                        batch.add(NearestNeighborsResults.builder().results(nnResult).build());
+                    }
+                } else {
+                    List<DataPoint> results = new ArrayList<>();
+                    List<Double> distances = new ArrayList<>();
+                    for (int q = 0; q < arr.rows(); q++) {
+                        tree.search(arr.getRow(q), record.getK(), results, distances);
+                        List<NearestNeighborsResult> nnResult = new ArrayList<>();
+                        for (int i = 0; i < results.size(); i++) {
+                            int idx = results.get(i).getIndex();
+                            if (!labels.isEmpty())
+                                nnResult.add(new NearestNeighborsResult(idx, distances.get(i), labels.get(idx)));
+                            else
+                                nnResult.add(new NearestNeighborsResult(idx, distances.get(i)));
+                        }
+                        batch.add(NearestNeighborsResults.builder().results(nnResult).build());
+                    }
+                }
+
+                return ok(Json.toJson(BatchNearestNeighborsResults.builder().results(batch).build()));
+
+            } catch (Throwable e) {
+                log.error("Error in POST /knnbatch",e);
+                e.printStackTrace();
+                return internalServerError(e.getMessage());
+            }
+        })));
+
         //Set play secret key, if required
         //http://www.playframework.com/documentation/latest/ApplicationSecret
         String crypto = System.getProperty("play.crypto.secret");
@@ -20,6 +20,7 @@ import org.deeplearning4j.clustering.sptree.DataPoint;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.clustering.vptree.VPTreeFillSearch;
 import org.deeplearning4j.nearestneighbor.client.NearestNeighborsClient;
+import org.deeplearning4j.nearestneighbor.model.BatchNearestNeighborsResults;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborRequest;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborsResults;
 import org.junit.Rule;
@@ -99,6 +100,13 @@ public class NearestNeighborTest {
         NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
         NearestNeighborsResults result = client.knnNew(5, rand.getRow(0));
         assertEquals(5, result.getResults().size());
+
+        BatchNearestNeighborsResults batch = client.knnBatch(3, rand.getRows(0, 1, 2, 3));
+        assertEquals(4, batch.getResults().size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(3, batch.getResults().get(i).getResults().size());
+            assertEquals(i, batch.getResults().get(i).getResults().get(0).getIndex());
+        }
         server.stop();
     }
 
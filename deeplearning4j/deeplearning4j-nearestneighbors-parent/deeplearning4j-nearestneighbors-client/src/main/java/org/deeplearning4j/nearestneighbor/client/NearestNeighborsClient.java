@@ -122,6 +122,30 @@ public class NearestNeighborsClient {
         return ret;
     }
 
+    /**
+     * Run a k nearest neighbors search
+     * for each row of a matrix of NEW data points
+     * @param k the number of results
+     *          to retrieve per data point
+     * @param arr the data points to run the search on,
+     *            one data point per row
+     * @return results for each data point, nearest first
+     * @throws Exception
+     */
+    public BatchNearestNeighborsResults knnBatch(int k, INDArray arr) throws Exception {
+        Base64NDArrayBody base64NDArrayBody =
+                        Base64NDArrayBody.builder().k(k).ndarray(Nd4jBase64.base64String(arr)).build();
+
+        HttpRequestWithBody req = Unirest.post(url + "/knnbatch");
+        req.header("accept", "application/json")
+                .header("Content-Type", "application/json").body(base64NDArrayBody);
+        addAuthHeader(req);
+
+        BatchNearestNeighborsResults ret = req.asObject(BatchNearestNeighborsResults.class).getBody();
+
+        return ret;
+    }
+
 
     /**
      * Add the specified authentication header to the specified HttpRequest
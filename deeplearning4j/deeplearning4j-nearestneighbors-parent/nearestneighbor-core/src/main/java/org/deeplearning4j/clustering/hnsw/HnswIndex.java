@@ -0,0 +1,1110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.deeplearning4j.clustering.util.NearestNeighborsIndex;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph index, for approximate k-nearest neighbors search.
+ * Based on: Malkov, Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs"
+ *
+ * Points are stored in flat on-heap float array, so distances are calculated without op invocation overhead.
+ * Insertion is thread-safe, and can be done concurrently with search.
+ *
+ * Supported similarity functions are: euclidean, manhattan, cosinedistance, cosinesimilarity and dot. Just like VPTree,
+ * smaller distance means nearer point, so use invert = true for similarity functions.
+ *
+ * PLEASE NOTE: Unlike VPTree, search results are always sorted from nearest to farthest.
+ */
+@Slf4j
+public class HnswIndex implements NearestNeighborsIndex, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    protected static final int MAGIC = 0x484E5357;
+    protected static final int VERSION = 1;
+
+    public static final String EUCLIDEAN = "euclidean";
+    public static final String MANHATTAN = "manhattan";
+    public static final String COSINE_DISTANCE = "cosinedistance";
+    public static final String COSINE_SIMILARITY = "cosinesimilarity";
+    public static final String DOT = "dot";
+
+    @Getter
+    protected int dimensions;
+    @Getter
+    protected String similarityFunction;
+    @Getter
+    protected boolean invert;
+    @Getter
+    protected int m;
+    protected int maxM0;
+    @Getter
+    protected int efConstruction;
+    @Getter
+    protected volatile int efSearch;
+    @Getter
+    protected int workers;
+    protected long seed;
+    protected double levelMultiplier;
+
+    protected transient int metric;
+    protected transient Random random;
+    protected transient AtomicInteger counter;
+    protected transient volatile int published;
+    protected transient TreeMap<Integer, Integer> completed;
+    protected transient ReentrantReadWriteLock insertLock;
+    protected transient ReentrantReadWriteLock resizeLock;
+    protected transient Object entryLock;
+    protected transient ThreadLocal<SearchContext> contexts;
+
+    protected transient volatile int capacity;
+    protected transient float[] vectors;
+    protected transient float[] norms;
+    protected transient int[][][] links;
+
+    protected transient volatile int entryPoint;
+    protected transient volatile int maxLevel;
+
+    protected HnswIndex() {
+        // method for serialization only
+    }
+
+    protected HnswIndex(int dimensions, @NonNull String similarityFunction, boolean invert, int m, int efConstruction,
+                    int efSearch, int initialCapacity, int workers, long seed) {
+        if (dimensions < 1)
+            throw new ND4JIllegalStateException("Number of dimensions should be positive value");
+
+        if (m < 2)
+            throw new ND4JIllegalStateException("M should be >= 2");
+
+        this.dimensions = dimensions;
+        this.similarityFunction = similarityFunction;
+        this.invert = invert;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(1, efSearch);
+        this.workers = Math.max(1, workers);
+        this.seed = seed;
+        this.levelMultiplier = 1.0 / Math.log(m);
+
+        initialize(Math.max(16, initialCapacity), 0);
+    }
+
+    /**
+     *
+     * @param items points to be indexed, one point per row
+     * @param similarityFunction the similarity function to use
+     * @param invert whether to invert the distance (similarity functions have different min/max objectives)
+     */
+    public HnswIndex(@NonNull INDArray items, String similarityFunction, boolean invert) {
+        this(new Builder((int) items.columns()).similarityFunction(similarityFunction).invert(invert)
+                        .initialCapacity(items.rows()));
+
+        addAll(items);
+    }
+
+    /**
+     *
+     * @param items points to be indexed, one point per row
+     */
+    public HnswIndex(@NonNull INDArray items) {
+        this(items, EUCLIDEAN, false);
+    }
+
+    protected HnswIndex(@NonNull Builder builder) {
+        this(builder.dimensions, builder.similarityFunction, builder.invert, builder.m, builder.efConstruction,
+                        builder.efSearch, builder.initialCapacity, builder.workers, builder.seed);
+    }
+
+    protected void initialize(int capacity, int size) {
+        this.metric = metricFor(similarityFunction);
+        this.random = new Random(seed + size);
+        this.counter = new AtomicInteger(size);
+        this.published = size;
+        this.completed = new TreeMap<>();
+        this.insertLock = new ReentrantReadWriteLock();
+        this.resizeLock = new ReentrantReadWriteLock();
+        this.entryLock = new Object();
+        this.contexts = new ThreadLocal<>();
+
+        this.capacity = capacity;
+        this.vectors = new float[capacity * dimensions];
+        this.norms = new float[capacity];
+        this.links = new int[capacity][][];
+
+        this.entryPoint = -1;
+        this.maxLevel = -1;
+    }
+
+    protected static int metricFor(@NonNull String similarityFunction) {
+        switch (similarityFunction) {
+            case EUCLIDEAN:
+                return 0;
+            case MANHATTAN:
+                return 1;
+            case COSINE_DISTANCE:
+                return 2;
+            case COSINE_SIMILARITY:
+                return 3;
+            case DOT:
+                return 4;
+            default:
+                throw new ND4JIllegalStateException("Unsupported similarity function: [" + similarityFunction + "]");
+        }
+    }
+
+    /**
+     * This method returns number of points in this index.
+     * PLEASE NOTE: points still being inserted by concurrent add() or addAll() calls are not counted
+     *
+     * @return
+     */
+    public int size() {
+        return published;
+    }
+
+    /**
+     * This method allows to change size of dynamic candidates list used during search. Higher values give better recall, but slower search.
+     *
+     * @param efSearch
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /**
+     * This method adds single point to this index
+     *
+     * PLEASE NOTE: This method is thread-safe
+     *
+     * @param point
+     * @return index assigned to this point
+     */
+    public int add(@NonNull INDArray point) {
+        float[] vector = toFloats(point);
+
+        insertLock.readLock().lock();
+        try {
+            int id = reserve(1);
+            try {
+                resizeLock.readLock().lock();
+                try {
+                    insert(id, vector, 0);
+                } finally {
+                    resizeLock.readLock().unlock();
+                }
+            } finally {
+                publish(id, 1);
+            }
+
+            return id;
+        } finally {
+            insertLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method adds all rows of given matrix to this index, using number of workers specified in builder.
+     * Points get consecutive indices, so first row gets index equal to size() before this call.
+     *
+     * @param items
+     * @return index assigned to the first row
+     */
+    public int addAll(@NonNull INDArray items) {
+        return addAll(items, workers);
+    }
+
+    /**
+     * This method adds all rows of given matrix to this index, using specified number of threads.
+     * Points get consecutive indices, so first row gets index equal to size() before this call.
+     *
+     * @param items
+     * @param workers
+     * @return index assigned to the first row
+     */
+    public int addAll(@NonNull INDArray items, int workers) {
+        if (items.rank() != 2 || items.columns() != dimensions)
+            throw new ND4JIllegalStateException("Items should have shape of [N, " + dimensions + "] but got "
+                            + Arrays.toString(items.shape()) + " instead");
+
+        final int rows = items.rows();
+        final float[] data = items.dup('c').data().asFloat();
+
+        insertLock.readLock().lock();
+        try {
+            final int base = reserve(rows);
+            try {
+                insertRows(base, rows, data, workers);
+            } finally {
+                publish(base, rows);
+            }
+
+            return base;
+        } finally {
+            insertLock.readLock().unlock();
+        }
+    }
+
+    protected void insertRows(final int base, final int rows, final float[] data, int workers) {
+        final AtomicInteger position = new AtomicInteger(0);
+        final AtomicReference<Throwable> exception = new AtomicReference<>();
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int row;
+                    while ((row = position.getAndIncrement()) < rows && exception.get() == null) {
+                        resizeLock.readLock().lock();
+                        try {
+                            insert(base + row, data, row * dimensions);
+                        } finally {
+                            resizeLock.readLock().unlock();
+                        }
+                    }
+                } catch (Throwable t) {
+                    exception.compareAndSet(null, t);
+                }
+            }
+        };
+
+        int numThreads = Math.max(1, Math.min(workers, rows / 64));
+        if (numThreads == 1) {
+            runnable.run();
+        } else {
+            Thread[] threads = new Thread[numThreads];
+            for (int t = 0; t < numThreads; t++) {
+                threads[t] = new Thread(runnable, "HnswIndex insertion thread " + t);
+                threads[t].setDaemon(true);
+                threads[t].start();
+            }
+
+            try {
+                for (Thread thread : threads)
+                    thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (exception.get() != null)
+            throw new RuntimeException(exception.get());
+    }
+
+    /**
+     * This method returns copy of the point with given index
+     *
+     * @param index
+     * @return
+     */
+    public INDArray getPoint(int index) {
+        // search may return points that are linked already, but not yet published
+        if (index < 0 || index >= counter.get())
+            throw new ND4JIllegalStateException("Index [" + index + "] is out of bounds");
+
+        resizeLock.readLock().lock();
+        try {
+            if (links[index] == null)
+                throw new ND4JIllegalStateException("Point [" + index + "] is not inserted yet");
+
+            return Nd4j.create(Arrays.copyOfRange(vectors, index * dimensions, (index + 1) * dimensions));
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method searches for k approximate nearest neighbors of target point.
+     * Results are sorted from nearest to farthest.
+     *
+     * @param target point to search neighbors for
+     * @param k number of neighbors to look for
+     * @param results list to be filled with neighbors found
+     * @param distances list to be filled with distances to neighbors found
+     */
+    @Override
+    public void search(@NonNull INDArray target, int k, List<DataPoint> results, List<Double> distances) {
+        if (!target.isVectorOrScalar() || target.length() != dimensions || target.rows() > 1)
+            throw new ND4JIllegalStateException("Target for search should have shape of [" + 1 + ", " + dimensions
+                            + "] but got " + Arrays.toString(target.shape()) + " instead");
+
+        results.clear();
+        distances.clear();
+
+        int[] ids = new int[Math.max(1, k)];
+        float[] dists = new float[ids.length];
+        int found = search(toFloats(target), k, ids, dists);
+
+        for (int e = 0; e < found; e++) {
+            results.add(new DataPoint(ids[e], getPoint(ids[e])));
+            distances.add((double) dists[e]);
+        }
+    }
+
+    /**
+     * This method searches for k approximate nearest neighbors of target point, without any INDArray allocations.
+     * Results are sorted from nearest to farthest.
+     *
+     * @param target point to search neighbors for
+     * @param k number of neighbors to look for
+     * @param resultIds array to store indices of neighbors found, should have at least k elements
+     * @param resultDistances array to store distances to neighbors found, should have at least k elements
+     * @return number of neighbors found
+     */
+    public int search(@NonNull float[] target, int k, @NonNull int[] resultIds, @NonNull float[] resultDistances) {
+        if (target.length != dimensions)
+            throw new ND4JIllegalStateException("Target for search should have length of [" + dimensions + "] but got ["
+                            + target.length + "] instead");
+
+        if (k < 1)
+            return 0;
+
+        resizeLock.readLock().lock();
+        try {
+            int entry;
+            int top;
+            synchronized (entryLock) {
+                entry = entryPoint;
+                top = maxLevel;
+            }
+
+            if (entry < 0)
+                return 0;
+
+            SearchContext context = context();
+            float targetNorm = norm(target, 0);
+
+            int current = entry;
+            float currentDistance = distance(target, 0, targetNorm, current);
+            for (int level = top; level > 0; level--) {
+                current = greedySearch(context, target, 0, targetNorm, current, currentDistance, level);
+                currentDistance = distance(target, 0, targetNorm, current);
+            }
+
+            NeighborQueue candidates = searchLayer(context, target, 0, targetNorm, current, currentDistance,
+                            Math.max(efSearch, k), 0);
+
+            int count = candidates.size();
+            int[] ids = new int[count];
+            float[] dists = new float[count];
+            candidates.drainSorted(ids, dists);
+
+            int found = Math.min(k, count);
+            for (int e = 0; e < found; e++) {
+                resultIds[e] = ids[e];
+                resultDistances[e] = reportedDistance(dists[e]);
+            }
+
+            return found;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method reserves given number of consecutive indices, growing storage if required
+     *
+     * @param count
+     * @return first reserved index
+     */
+    protected int reserve(int count) {
+        int base = counter.getAndAdd(count);
+        int required = base + count;
+
+        if (required > capacity) {
+            resizeLock.writeLock().lock();
+            try {
+                if (required > capacity) {
+                    int newCapacity = Math.max(required, capacity * 2);
+
+                    vectors = Arrays.copyOf(vectors, newCapacity * dimensions);
+                    norms = Arrays.copyOf(norms, newCapacity);
+                    links = Arrays.copyOf(links, newCapacity);
+
+                    capacity = newCapacity;
+                }
+            } finally {
+                resizeLock.writeLock().unlock();
+            }
+        }
+
+        return base;
+    }
+
+    /**
+     * This method marks given range of reserved indices as processed, and advances size() over all
+     * consecutive processed ranges
+     *
+     * @param base first index of the range
+     * @param count number of indices in the range
+     */
+    protected void publish(int base, int count) {
+        synchronized (completed) {
+            completed.put(base, base + count);
+
+            Integer end;
+            while ((end = completed.remove(published)) != null)
+                published = end;
+        }
+    }
+
+    protected int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * This method inserts point into graph.
+     * PLEASE NOTE: read lock should be held by caller
+     *
+     * @param id reserved index for this point
+     * @param source array holding point
+     * @param offset offset of the point within source array
+     */
+    protected void insert(int id, float[] source, int offset) {
+        System.arraycopy(source, offset, vectors, id * dimensions, dimensions);
+        norms[id] = norm(vectors, id * dimensions);
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++)
+            nodeLinks[l] = new int[(l == 0 ? maxM0 : m) + 1];
+
+        // node becomes reachable only after it's linked from other nodes below, under their locks
+        links[id] = nodeLinks;
+
+        int entry;
+        int top;
+        synchronized (entryLock) {
+            entry = entryPoint;
+            top = maxLevel;
+
+            if (entry < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return;
+            }
+        }
+
+        SearchContext context = context();
+        float[] point = vectors;
+        int pointOffset = id * dimensions;
+        float pointNorm = norms[id];
+
+        int current = entry;
+        float currentDistance = distance(point, pointOffset, pointNorm, current);
+        for (int l = top; l > level; l--) {
+            current = greedySearch(context, point, pointOffset, pointNorm, current, currentDistance, l);
+            currentDistance = distance(point, pointOffset, pointNorm, current);
+        }
+
+        for (int l = Math.min(level, top); l >= 0; l--) {
+            NeighborQueue candidates = searchLayer(context, point, pointOffset, pointNorm, current, currentDistance,
+                            efConstruction, l);
+
+            int count = candidates.size();
+            int[] ids = new int[count];
+            float[] dists = new float[count];
+            candidates.drainSorted(ids, dists);
+
+            current = ids[0];
+            currentDistance = dists[0];
+
+            int selected = selectNeighbors(ids, dists, count, m);
+            for (int e = 0; e < selected; e++) {
+                connect(id, ids[e], l);
+                connect(ids[e], id, l);
+            }
+        }
+
+        if (level > top) {
+            synchronized (entryLock) {
+                if (level > maxLevel) {
+                    entryPoint = id;
+                    maxLevel = level;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method adds link from source node to target node at given level.
+     * If source node has too many links already, they are pruned using neighbors selection heuristic.
+     *
+     * @param source
+     * @param target
+     * @param level
+     */
+    protected void connect(int source, int target, int level) {
+        if (source == target)
+            return;
+
+        int[][] nodeLinks = links[source];
+        synchronized (nodeLinks) {
+            int[] list = nodeLinks[level];
+            int count = list[0];
+
+            for (int e = 1; e <= count; e++)
+                if (list[e] == target)
+                    return;
+
+            int maxConnections = level == 0 ? maxM0 : m;
+            if (count < maxConnections) {
+                list[count + 1] = target;
+                list[0] = count + 1;
+                return;
+            }
+
+            // too many links, so we're pruning them
+            int sourceOffset = source * dimensions;
+            float sourceNorm = norms[source];
+
+            NeighborQueue queue = new NeighborQueue(count + 1, false);
+            queue.push(target, distance(vectors, sourceOffset, sourceNorm, target));
+            for (int e = 1; e <= count; e++)
+                queue.push(list[e], distance(vectors, sourceOffset, sourceNorm, list[e]));
+
+            int[] ids = new int[count + 1];
+            float[] dists = new float[count + 1];
+            queue.drainSorted(ids, dists);
+
+            int selected = selectNeighbors(ids, dists, count + 1, maxConnections);
+            System.arraycopy(ids, 0, list, 1, selected);
+            list[0] = selected;
+        }
+    }
+
+    /**
+     * Neighbors selection heuristic: candidate is kept only if it's closer to the base point than to any of already selected neighbors.
+     * Selected neighbors are moved to the beginning of ids array.
+     *
+     * @param ids candidates, sorted by distance to base point
+     * @param dists distances to base point
+     * @param count number of candidates
+     * @param limit maximal number of neighbors to select
+     * @return number of neighbors selected
+     */
+    protected int selectNeighbors(int[] ids, float[] dists, int count, int limit) {
+        if (count <= limit)
+            return count;
+
+        int selected = 0;
+        for (int e = 0; e < count && selected < limit; e++) {
+            int candidate = ids[e];
+            int candidateOffset = candidate * dimensions;
+            float candidateNorm = norms[candidate];
+
+            boolean good = true;
+            for (int s = 0; s < selected; s++) {
+                if (distance(vectors, candidateOffset, candidateNorm, ids[s]) < dists[e]) {
+                    good = false;
+                    break;
+                }
+            }
+
+            if (good) {
+                ids[selected] = candidate;
+                dists[selected] = dists[e];
+                selected++;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * This method copies links of given node at given level into context buffer
+     *
+     * @return number of links
+     */
+    protected int readLinks(SearchContext context, int node, int level) {
+        int[][] nodeLinks = links[node];
+        synchronized (nodeLinks) {
+            int[] list = nodeLinks[level];
+            int count = list[0];
+            System.arraycopy(list, 1, context.buffer, 0, count);
+            return count;
+        }
+    }
+
+    protected int greedySearch(SearchContext context, float[] point, int offset, float pointNorm, int entry,
+                    float entryDistance, int level) {
+        int current = entry;
+        float currentDistance = entryDistance;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            int count = readLinks(context, current, level);
+            for (int e = 0; e < count; e++) {
+                int candidate = context.buffer[e];
+                float distance = distance(point, offset, pointNorm, candidate);
+                if (distance < currentDistance) {
+                    currentDistance = distance;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * This method returns up to ef nearest points found at given level, as max-heap
+     */
+    protected NeighborQueue searchLayer(SearchContext context, float[] point, int offset, float pointNorm, int entry,
+                    float entryDistance, int ef, int level) {
+        context.visit(capacity);
+
+        NeighborQueue candidates = context.candidates;
+        candidates.clear();
+        NeighborQueue results = new NeighborQueue(ef + 1, true);
+
+        context.visited(entry);
+        candidates.push(entry, entryDistance);
+        results.push(entry, entryDistance);
+
+        while (!candidates.isEmpty()) {
+            if (candidates.peekDistance() > results.peekDistance() && results.size() >= ef)
+                break;
+
+            int current = candidates.pop();
+
+            int count = readLinks(context, current, level);
+            for (int e = 0; e < count; e++) {
+                int neighbor = context.buffer[e];
+                if (!context.visited(neighbor))
+                    continue;
+
+                float distance = distance(point, offset, pointNorm, neighbor);
+                if (results.size() < ef || distance < results.peekDistance()) {
+                    candidates.push(neighbor, distance);
+                    results.push(neighbor, distance);
+
+                    if (results.size() > ef)
+                        results.pop();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    protected SearchContext context() {
+        SearchContext context = contexts.get();
+        if (context == null) {
+            context = new SearchContext(maxM0);
+            contexts.set(context);
+        }
+
+        return context;
+    }
+
+    protected float norm(float[] point, int offset) {
+        double sum = 0.0;
+        for (int e = 0; e < dimensions; e++) {
+            float v = point[offset + e];
+            sum += v * v;
+        }
+
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * This method returns internal distance between point and indexed element. Smaller distance means nearer point.
+     * For euclidean distance squared value is used internally.
+     */
+    protected float distance(float[] point, int offset, float pointNorm, int id) {
+        float[] data = vectors;
+        int dataOffset = id * dimensions;
+        float result;
+
+        switch (metric) {
+            case 0: {
+                float sum = 0.0f;
+                for (int e = 0; e < dimensions; e++) {
+                    float diff = point[offset + e] - data[dataOffset + e];
+                    sum += diff * diff;
+                }
+                result = sum;
+                break;
+            }
+            case 1: {
+                float sum = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    sum += Math.abs(point[offset + e] - data[dataOffset + e]);
+                result = sum;
+                break;
+            }
+            case 2:
+            case 3: {
+                float dot = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    dot += point[offset + e] * data[dataOffset + e];
+
+                float denominator = pointNorm * norms[id];
+                float similarity = denominator == 0.0f ? 0.0f : dot / denominator;
+                result = metric == 2 ? 1.0f - similarity : similarity;
+                break;
+            }
+            default: {
+                float dot = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    dot += point[offset + e] * data[dataOffset + e];
+                result = dot;
+            }
+        }
+
+        return invert ? -result : result;
+    }
+
+    /**
+     * This method converts internal distance into the value exposed to user
+     */
+    protected float reportedDistance(float distance) {
+        if (metric != 0)
+            return distance;
+
+        return invert ? (float) -Math.sqrt(-distance) : (float) Math.sqrt(distance);
+    }
+
+    protected float[] toFloats(INDArray point) {
+        if (point.length() != dimensions)
+            throw new ND4JIllegalStateException("Point should have length of [" + dimensions + "] but got ["
+                            + point.length() + "] instead");
+
+        return point.dup('c').data().asFloat();
+    }
+
+    /**
+     * This method saves this index to the given file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            write(stream);
+        }
+    }
+
+    /**
+     * This method restores index previously saved with save() method
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static HnswIndex load(@NonNull File file) throws IOException {
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            HnswIndex index = new HnswIndex();
+            index.read(stream);
+            return index;
+        }
+    }
+
+    /**
+     * This method writes this index to the given output.
+     * PLEASE NOTE: this method waits for insertions in progress, and new insertions are blocked while index is written
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(@NonNull DataOutput out) throws IOException {
+        insertLock.writeLock().lock();
+        try {
+            // no insertions are in flight, so every reserved index is published at this point
+            int size = published;
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeUTF(similarityFunction);
+            out.writeBoolean(invert);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(workers);
+            out.writeLong(seed);
+
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+
+            writeFloats(out, vectors, size * dimensions);
+
+            for (int e = 0; e < size; e++) {
+                // failed insertion leaves node without links, and it's not reachable from the graph
+                int[][] nodeLinks = links[e] == null ? new int[0][] : links[e];
+                out.writeInt(nodeLinks.length);
+                for (int[] list : nodeLinks) {
+                    out.writeInt(list[0]);
+                    for (int i = 1; i <= list[0]; i++)
+                        out.writeInt(list[i]);
+                }
+            }
+        } finally {
+            insertLock.writeLock().unlock();
+        }
+    }
+
+    protected void read(@NonNull DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Stream doesn't contain HnswIndex");
+
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported HnswIndex version: [" + version + "]");
+
+        dimensions = in.readInt();
+        similarityFunction = in.readUTF();
+        invert = in.readBoolean();
+        m = in.readInt();
+        maxM0 = m * 2;
+        efConstruction = in.readInt();
+        efSearch = in.readInt();
+        workers = in.readInt();
+        seed = in.readLong();
+        levelMultiplier = 1.0 / Math.log(m);
+
+        int size = in.readInt();
+        initialize(Math.max(16, size), size);
+
+        int entry = in.readInt();
+        int top = in.readInt();
+
+        readFloats(in, vectors, size * dimensions);
+        for (int e = 0; e < size; e++) {
+            norms[e] = norm(vectors, e * dimensions);
+
+            int[][] nodeLinks = new int[in.readInt()][];
+            for (int l = 0; l < nodeLinks.length; l++) {
+                int[] list = new int[(l == 0 ? maxM0 : m) + 1];
+                list[0] = in.readInt();
+                for (int i = 1; i <= list[0]; i++)
+                    list[i] = in.readInt();
+
+                nodeLinks[l] = list;
+            }
+            links[e] = nodeLinks;
+        }
+
+        entryPoint = entry;
+        maxLevel = top;
+    }
+
+    private static void writeFloats(DataOutput out, float[] array, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int position = 0; position < length;) {
+            int chunk = Math.min(length - position, buffer.capacity() / 4);
+            buffer.clear();
+            buffer.asFloatBuffer().put(array, position, chunk);
+            out.write(buffer.array(), 0, chunk * 4);
+            position += chunk;
+        }
+    }
+
+    private static void readFloats(DataInput in, float[] array, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int position = 0; position < length;) {
+            int chunk = Math.min(length - position, buffer.capacity() / 4);
+            buffer.clear();
+            in.readFully(buffer.array(), 0, chunk * 4);
+            buffer.asFloatBuffer().get(array, position, chunk);
+            position += chunk;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        write(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Per-thread state used during search
+     */
+    protected static class SearchContext {
+        protected final int[] buffer;
+        protected final NeighborQueue candidates = new NeighborQueue(64, false);
+        protected int[] marks = new int[0];
+        protected int tag = 0;
+
+        protected SearchContext(int maxLinks) {
+            this.buffer = new int[maxLinks];
+        }
+
+        /**
+         * This method starts new visit, invalidating all marks
+         */
+        protected void visit(int capacity) {
+            if (marks.length < capacity)
+                marks = new int[capacity];
+
+            if (++tag == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                tag = 1;
+            }
+        }
+
+        /**
+         * This method marks node as visited
+         *
+         * @return TRUE if node wasn't visited before within current visit
+         */
+        protected boolean visited(int id) {
+            if (marks[id] == tag)
+                return false;
+
+            marks[id] = tag;
+            return true;
+        }
+    }
+
+    public static class Builder {
+        private int dimensions;
+        private String similarityFunction = EUCLIDEAN;
+        private boolean invert = false;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 50;
+        private int initialCapacity = 1024;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private long seed = 119L;
+
+        /**
+         *
+         * @param dimensions number of dimensions of indexed points
+         */
+        public Builder(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        /**
+         * This method defines similarity function to be used. Default value: euclidean
+         *
+         * @param similarityFunction
+         * @return
+         */
+        public Builder similarityFunction(@NonNull String similarityFunction) {
+            this.similarityFunction = similarityFunction;
+            return this;
+        }
+
+        /**
+         * This method defines, whether distance should be inverted. Should be TRUE for similarity functions.
+         *
+         * @param reallyInvert
+         * @return
+         */
+        public Builder invert(boolean reallyInvert) {
+            this.invert = reallyInvert;
+            return this;
+        }
+
+        /**
+         * This method defines number of links per point. Default value: 16
+         *
+         * @param m
+         * @return
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * This method defines size of dynamic candidates list used during insertion. Default value: 200
+         *
+         * @param efConstruction
+         * @return
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * This method defines size of dynamic candidates list used during search. Default value: 50
+         *
+         * @param efSearch
+         * @return
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * This method defines initial number of points storage is allocated for. Storage grows automatically.
+         *
+         * @param initialCapacity
+         * @return
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * This method defines number of threads used in addAll() method
+         *
+         * @param workers
+         * @return
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * This method defines seed used for random levels generation
+         *
+         * @param seed
+         * @return
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public HnswIndex build() {
+            return new HnswIndex(this);
+        }
+    }
+}
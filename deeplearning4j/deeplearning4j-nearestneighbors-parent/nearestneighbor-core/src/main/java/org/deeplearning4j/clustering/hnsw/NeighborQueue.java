@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (id, distance) pairs, backed by primitive arrays.
+ * Depending on mode, head of the queue is either nearest or farthest element.
+ *
+ * PLEASE NOTE: This class is NOT thread-safe
+ */
+class NeighborQueue {
+    private final boolean maxHeap;
+    private int[] ids;
+    private float[] distances;
+    private int size;
+
+    /**
+     *
+     * @param initialCapacity
+     * @param maxHeap if TRUE, farthest element will be the head of the queue, nearest otherwise
+     */
+    NeighborQueue(int initialCapacity, boolean maxHeap) {
+        this.maxHeap = maxHeap;
+        this.ids = new int[Math.max(4, initialCapacity)];
+        this.distances = new float[ids.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int peekId() {
+        return ids[0];
+    }
+
+    float peekDistance() {
+        return distances[0];
+    }
+
+    void push(int id, float distance) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+
+        int pos = size++;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!before(distance, distances[parent]))
+                break;
+
+            ids[pos] = ids[parent];
+            distances[pos] = distances[parent];
+            pos = parent;
+        }
+
+        ids[pos] = id;
+        distances[pos] = distance;
+    }
+
+    /**
+     * This method removes head of the queue, and returns its id
+     *
+     * @return
+     */
+    int pop() {
+        int result = ids[0];
+        size--;
+
+        if (size > 0) {
+            int id = ids[size];
+            float distance = distances[size];
+
+            int pos = 0;
+            while (true) {
+                int child = (pos << 1) + 1;
+                if (child >= size)
+                    break;
+
+                if (child + 1 < size && before(distances[child + 1], distances[child]))
+                    child++;
+
+                if (!before(distances[child], distance))
+                    break;
+
+                ids[pos] = ids[child];
+                distances[pos] = distances[child];
+                pos = child;
+            }
+
+            ids[pos] = id;
+            distances[pos] = distance;
+        }
+
+        return result;
+    }
+
+    /**
+     * This method empties the queue, and stores its contents into provided arrays, sorted from nearest to farthest.
+     *
+     * @param resultIds array of at least size() elements
+     * @param resultDistances array of at least size() elements
+     * @return number of elements stored
+     */
+    int drainSorted(int[] resultIds, float[] resultDistances) {
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            int position = maxHeap ? count - 1 - i : i;
+            resultDistances[position] = peekDistance();
+            resultIds[position] = pop();
+        }
+
+        return count;
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
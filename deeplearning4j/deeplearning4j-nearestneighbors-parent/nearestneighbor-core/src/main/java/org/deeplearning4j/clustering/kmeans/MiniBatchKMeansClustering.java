@@ -0,0 +1,438 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.kmeans;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.cluster.ClusterSet;
+import org.deeplearning4j.clustering.cluster.Point;
+import org.deeplearning4j.clustering.util.MultiThreadUtils;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Mini-batch k-means (Sculley, "Web-Scale K-Means Clustering") over a single matrix of points, one point per row.
+ *
+ * Unlike {@link KMeansClustering}, points are never wrapped into {@link Point} objects: distances are computed
+ * for blocks of rows at once, as ||x||^2 - 2 * x * C^T + ||c||^2, so the heavy lifting is a single mmul per block.
+ * Initial centers are selected with k-means|| (Bahmani et al., "Scalable K-Means++"), which needs a few passes
+ * over the data instead of the k passes of k-means++.
+ *
+ * Blocks are processed on the clustering thread pool. Center updates of a mini-batch are applied concurrently,
+ * with lock striping over the centers, so threads updating different centers don't contend.
+ *
+ * Only euclidean distance is supported.
+ */
+@Slf4j
+public class MiniBatchKMeansClustering implements Serializable {
+
+    private static final long serialVersionUID = -3326342717325123577L;
+
+    protected static final int DEFAULT_INIT_ROUNDS = 5;
+    protected static final int DEFAULT_BLOCK_SIZE = 4096;
+    protected static final int LOCK_STRIPES = 64;
+
+    @Getter
+    private int clusterCount;
+    @Getter
+    private int batchSize;
+    @Getter
+    private int maxIterationCount;
+    @Getter
+    private double tolerance;
+    private long seed;
+
+    @Getter
+    private int iterationCount;
+    private int dimensions;
+    private float[] centers;
+    private long[] counts;
+
+    private transient Object[] locks;
+    private transient ExecutorService exec;
+
+    protected MiniBatchKMeansClustering(int clusterCount, int batchSize, int maxIterationCount, double tolerance,
+                    long seed) {
+        if (clusterCount < 1)
+            throw new ND4JIllegalStateException("Number of clusters should be positive value");
+        if (batchSize < 1)
+            throw new ND4JIllegalStateException("Batch size should be positive value");
+
+        this.clusterCount = clusterCount;
+        this.batchSize = batchSize;
+        this.maxIterationCount = maxIterationCount;
+        this.tolerance = tolerance;
+        this.seed = seed;
+    }
+
+    /**
+     * Setup a mini-batch kmeans instance
+     * @param clusterCount the number of clusters
+     * @param batchSize the number of points used for each center update
+     * @param maxIterationCount the max number of mini-batches
+     * @return
+     */
+    public static MiniBatchKMeansClustering setup(int clusterCount, int batchSize, int maxIterationCount) {
+        return setup(clusterCount, batchSize, maxIterationCount, 0.0, System.currentTimeMillis());
+    }
+
+    /**
+     * Setup a mini-batch kmeans instance
+     * @param clusterCount the number of clusters
+     * @param batchSize the number of points used for each center update
+     * @param maxIterationCount the max number of mini-batches
+     * @param tolerance stop once the mean squared movement of the centers during a mini-batch is below this value
+     * @param seed random seed for initialization and mini-batch sampling
+     * @return
+     */
+    public static MiniBatchKMeansClustering setup(int clusterCount, int batchSize, int maxIterationCount,
+                    double tolerance, long seed) {
+        return new MiniBatchKMeansClustering(clusterCount, batchSize, maxIterationCount, tolerance, seed);
+    }
+
+    /**
+     * Find the cluster centers of the given points
+     * @param points the points to cluster, one point per row
+     * @return this instance
+     */
+    public MiniBatchKMeansClustering fit(@NonNull INDArray points) {
+        if (points.rank() != 2)
+            throw new ND4JIllegalStateException("Points should be a matrix, one point per row");
+        if (points.rows() < clusterCount)
+            throw new ND4JIllegalStateException("Number of points [" + points.rows()
+                            + "] is less than number of clusters [" + clusterCount + "]");
+
+        Random random = new Random(seed);
+        dimensions = points.columns();
+        centers = initCenters(points, random);
+        counts = new long[clusterCount];
+        iterationCount = 0;
+
+        int n = points.rows();
+        int[] batch = new int[Math.min(batchSize, n)];
+        int[] labels = new int[batch.length];
+        float[] previous = new float[centers.length];
+        while (iterationCount < maxIterationCount) {
+            for (int i = 0; i < batch.length; i++)
+                batch[i] = random.nextInt(n);
+
+            INDArray batchPoints = Nd4j.pullRows(points, 1, batch, 'c');
+            assign(batchPoints, centers, clusterCount, labels, null);
+
+            System.arraycopy(centers, 0, previous, 0, centers.length);
+            update(batchPoints.data().asFloat(), labels);
+            iterationCount++;
+
+            double shift = 0.0;
+            for (int i = 0; i < centers.length; i++) {
+                double diff = centers[i] - previous[i];
+                shift += diff * diff;
+            }
+            shift /= clusterCount;
+            log.debug("Completed mini-batch {}, mean squared center shift {}", iterationCount, shift);
+            if (shift <= tolerance)
+                break;
+        }
+
+        log.info("Completed mini-batch kmeans after {} iterations", iterationCount);
+        return this;
+    }
+
+    /**
+     * Index of the nearest cluster center for each point
+     * @param points one point per row
+     * @return
+     */
+    public int[] predict(@NonNull INDArray points) {
+        checkFitted();
+        checkDimensions(points);
+        int[] labels = new int[points.rows()];
+        assign(points, centers, clusterCount, labels, null);
+        return labels;
+    }
+
+    /**
+     * Sum of the squared distances between the points and their nearest cluster center
+     * @param points one point per row
+     * @return
+     */
+    public double cost(@NonNull INDArray points) {
+        checkFitted();
+        checkDimensions(points);
+        double[] distances = new double[points.rows()];
+        assign(points, centers, clusterCount, new int[distances.length], distances);
+        return sum(distances);
+    }
+
+    private void checkDimensions(INDArray points) {
+        Preconditions.checkArgument(points.rank() == 2 && points.columns() == dimensions,
+                        "Points should be a matrix with %s columns, one point per row: got shape %s", dimensions,
+                        points.shape());
+    }
+
+    /**
+     * @return the cluster centers, one center per row
+     */
+    public INDArray getCenters() {
+        checkFitted();
+        return Nd4j.create(Arrays.copyOf(centers, centers.length), new int[] {clusterCount, dimensions});
+    }
+
+    /**
+     * The cluster centers as a {@link ClusterSet}, for use with the Point-based clustering API.
+     * The returned clusters don't contain any points besides their centers.
+     * @return
+     */
+    public ClusterSet getClusterSet() {
+        INDArray c = getCenters();
+        ClusterSet clusterSet = new ClusterSet("euclidean", false);
+        for (int i = 0; i < clusterCount; i++)
+            clusterSet.addNewClusterWithCenter(new Point(c.getRow(i).dup()));
+        return clusterSet;
+    }
+
+    /**
+     * k-means|| initialization: oversample about 2 * k candidates per round, with probability proportional to the
+     * squared distance to the nearest candidate so far, then reduce the candidates to k centers with
+     * k-means++, weighting each candidate by the number of points nearest to it.
+     */
+    protected float[] initCenters(INDArray points, Random random) {
+        int n = points.rows();
+        double oversampling = 2.0 * clusterCount;
+
+        List<float[]> candidates = new ArrayList<>();
+        float[] first = rows(points, new int[] {random.nextInt(n)});
+        candidates.add(first);
+
+        double[] minDistances = new double[n];
+        int[] labels = new int[n];
+        assign(points, first, 1, labels, minDistances);
+
+        double[] distances = new double[n];
+        for (int round = 0; round < DEFAULT_INIT_ROUNDS; round++) {
+            double phi = sum(minDistances);
+            if (phi <= 0.0)
+                break;
+
+            List<Integer> sampled = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (random.nextDouble() < oversampling * minDistances[i] / phi)
+                    sampled.add(i);
+            }
+            if (sampled.isEmpty())
+                continue;
+
+            int[] indices = new int[sampled.size()];
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = sampled.get(i);
+            float[] block = rows(points, indices);
+            for (int i = 0; i < indices.length; i++)
+                candidates.add(Arrays.copyOfRange(block, i * dimensions, (i + 1) * dimensions));
+
+            //only distances to the new candidates are needed to maintain the minimum
+            assign(points, block, indices.length, labels, distances);
+            for (int i = 0; i < n; i++)
+                minDistances[i] = Math.min(minDistances[i], distances[i]);
+        }
+
+        int m = candidates.size();
+        float[] flat = new float[m * dimensions];
+        for (int i = 0; i < m; i++)
+            System.arraycopy(candidates.get(i), 0, flat, i * dimensions, dimensions);
+
+        if (m <= clusterCount) {
+            //not enough distinct candidates (e.g. duplicate points), fill up with random points
+            float[] result = Arrays.copyOf(flat, clusterCount * dimensions);
+            for (int i = m; i < clusterCount; i++)
+                System.arraycopy(rows(points, new int[] {random.nextInt(n)}), 0, result, i * dimensions, dimensions);
+            return result;
+        }
+
+        double[] weights = new double[m];
+        assign(points, flat, m, labels, null);
+        for (int label : labels)
+            weights[label]++;
+
+        log.info("Reducing {} k-means|| candidates to {} centers", m, clusterCount);
+        return weightedKMeansPlusPlus(flat, weights, m, random);
+    }
+
+    protected float[] weightedKMeansPlusPlus(float[] candidates, double[] weights, int m, Random random) {
+        float[] result = new float[clusterCount * dimensions];
+        INDArray points = Nd4j.create(candidates, new int[] {m, dimensions});
+        INDArray weightArray = Nd4j.create(weights, new int[] {m, 1});
+        INDArray minDistances = null;
+
+        int next = sample(weights, sum(weights), random);
+        for (int c = 0; c < clusterCount; c++) {
+            System.arraycopy(candidates, next * dimensions, result, c * dimensions, dimensions);
+
+            //distances from all candidates to the new center at once
+            INDArray distances = Transforms.allEuclideanDistances(points, points.getRow(next), 1).reshape(m, 1);
+            distances.muli(distances);
+            minDistances = minDistances == null ? distances : Transforms.min(minDistances, distances, false);
+
+            double[] probabilities = minDistances.mul(weightArray).data().asDouble();
+            double total = sum(probabilities);
+            if (total <= 0.0)
+                next = random.nextInt(m);
+            else
+                next = sample(probabilities, total, random);
+        }
+        return result;
+    }
+
+    /**
+     * Apply the mini-batch update c = c + (x - c) / count(c) for every point of the batch.
+     * The batch is split between threads, and each center is guarded by one of LOCK_STRIPES locks.
+     */
+    protected void update(final float[] batch, final int[] labels) {
+        final Object[] stripes = locks();
+        int blockSize = blockSize(labels.length);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < labels.length; from += blockSize) {
+            final int start = from;
+            final int end = Math.min(labels.length, from + blockSize);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = start; i < end; i++) {
+                        int c = labels[i];
+                        synchronized (stripes[c % stripes.length]) {
+                            float eta = 1.0f / ++counts[c];
+                            int offset = c * dimensions;
+                            int row = i * dimensions;
+                            for (int j = 0; j < dimensions; j++)
+                                centers[offset + j] += eta * (batch[row + j] - centers[offset + j]);
+                        }
+                    }
+                }
+            });
+        }
+        MultiThreadUtils.parallelTasks(tasks, executor());
+    }
+
+    /**
+     * Find the nearest center for each point, in parallel blocks of rows
+     * @param points one point per row
+     * @param centers flat centers, row-major
+     * @param numCenters number of centers
+     * @param labels output: index of the nearest center of each point
+     * @param distances output: squared distance to the nearest center of each point, may be null
+     */
+    protected void assign(final INDArray points, float[] centers, int numCenters, final int[] labels,
+                    final double[] distances) {
+        final INDArray centersT = Nd4j.create(centers, new int[] {numCenters, dimensions}).transpose();
+        final float[] centerNorms = new float[numCenters];
+        for (int c = 0; c < numCenters; c++) {
+            float norm = 0.0f;
+            for (int j = 0; j < dimensions; j++)
+                norm += centers[c * dimensions + j] * centers[c * dimensions + j];
+            centerNorms[c] = norm;
+        }
+
+        final int n = points.rows();
+        int blockSize = blockSize(n);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += blockSize) {
+            final int start = from;
+            final int end = Math.min(n, from + blockSize);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    INDArray block = points.get(NDArrayIndex.interval(start, end), NDArrayIndex.all());
+                    float[] dots = block.mmul(centersT).dup('c').data().asFloat();
+                    float[] norms = block.mul(block).sum(1).dup('c').data().asFloat();
+                    int k = centerNorms.length;
+                    for (int i = 0; i < end - start; i++) {
+                        int best = 0;
+                        float bestDistance = Float.MAX_VALUE;
+                        for (int c = 0; c < k; c++) {
+                            float d = norms[i] - 2.0f * dots[i * k + c] + centerNorms[c];
+                            if (d < bestDistance) {
+                                bestDistance = d;
+                                best = c;
+                            }
+                        }
+                        labels[start + i] = best;
+                        if (distances != null)
+                            distances[start + i] = Math.max(0.0f, bestDistance);
+                    }
+                }
+            });
+        }
+        MultiThreadUtils.parallelTasks(tasks, executor());
+    }
+
+    protected int blockSize(int n) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(DEFAULT_BLOCK_SIZE, (n + threads - 1) / threads));
+    }
+
+    protected float[] rows(INDArray points, int[] indices) {
+        return Nd4j.pullRows(points, 1, indices, 'c').data().asFloat();
+    }
+
+    protected void checkFitted() {
+        if (centers == null)
+            throw new ND4JIllegalStateException("Cluster centers are not available, call fit() first");
+    }
+
+    protected synchronized Object[] locks() {
+        if (locks == null) {
+            locks = new Object[Math.min(LOCK_STRIPES, clusterCount)];
+            for (int i = 0; i < locks.length; i++)
+                locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    protected synchronized ExecutorService executor() {
+        if (exec == null)
+            exec = MultiThreadUtils.newExecutorService();
+        return exec;
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0.0;
+        for (double v : values)
+            sum += v;
+        return sum;
+    }
+
+    private static int sample(double[] probabilities, double total, Random random) {
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < probabilities.length; i++) {
+            r -= probabilities[i];
+            if (r < 0.0)
+                return i;
+        }
+        return probabilities.length - 1;
+    }
+}
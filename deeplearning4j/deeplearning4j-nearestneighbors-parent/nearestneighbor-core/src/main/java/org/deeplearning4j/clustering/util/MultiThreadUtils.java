@@ -16,16 +16,12 @@
 
 package org.deeplearning4j.clustering.util;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MultiThreadUtils {
 
-    private static Logger log = LoggerFactory.getLogger(MultiThreadUtils.class);
-
     private static ExecutorService instance;
 
     private MultiThreadUtils() {}
@@ -43,9 +39,14 @@ public class MultiThreadUtils {
                         });
     }
 
+    /**
+     * Run the tasks on the given executor and wait for all of them to finish.
+     * If any task fails, the first exception is rethrown once all tasks are done.
+     */
     public static void parallelTasks(final List<Runnable> tasks, ExecutorService executorService) {
         int tasksCount = tasks.size();
         final CountDownLatch latch = new CountDownLatch(tasksCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
         for (int i = 0; i < tasksCount; i++) {
             final int taskIdx = i;
             executorService.execute(new Runnable() {
@@ -53,7 +54,7 @@ public class MultiThreadUtils {
                     try {
                         tasks.get(taskIdx).run();
                     } catch (Throwable e) {
-                        log.info("Unchecked exception thrown by task", e);
+                        failure.compareAndSet(null, e);
                     } finally {
                         latch.countDown();
                     }
@@ -66,5 +67,13 @@ public class MultiThreadUtils {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new RuntimeException("Unchecked exception thrown by task", t);
     }
 }
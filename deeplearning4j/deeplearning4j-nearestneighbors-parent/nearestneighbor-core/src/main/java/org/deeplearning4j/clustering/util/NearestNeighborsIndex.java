@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.util;
+
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+
+/**
+ * This interface describes k-nearest neighbors search structure, i.e. VPTree or HnswIndex
+ */
+public interface NearestNeighborsIndex {
+
+    /**
+     * This method searches for k nearest neighbors of target point
+     *
+     * @param target point to search neighbors for
+     * @param k number of neighbors to look for
+     * @param results list to be filled with neighbors found
+     * @param distances list to be filled with distances to neighbors found
+     */
+    void search(INDArray target, int k, List<DataPoint> results, List<Double> distances);
+}
@@ -21,6 +21,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.clustering.sptree.DataPoint;
 import org.deeplearning4j.clustering.sptree.HeapObject;
 import org.deeplearning4j.clustering.util.MathUtils;
+import org.deeplearning4j.clustering.util.NearestNeighborsIndex;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
@@ -44,7 +45,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 @Builder
 @AllArgsConstructor
-public class VPTree implements Serializable {
+public class VPTree implements NearestNeighborsIndex, Serializable {
     private static final long serialVersionUID = 1L;
 
     public static final String EUCLIDEAN = "euclidean";
@@ -66,6 +67,8 @@ public class VPTree implements Serializable {
 
     private WorkspaceConfiguration workspaceConfiguration;
 
+    private VPTreeLayout layout;
+
     protected VPTree() {
         // method for serialization only
         scalars = new ThreadLocal<>();
@@ -184,6 +187,44 @@ public class VPTree implements Serializable {
         this(items, EUCLIDEAN);
     }
 
+    /**
+     * Build a tree with flat, array-based node layout. Subtrees are built in parallel with fork-join,
+     * and distances are calculated on a float copy of the points, without op invocations.
+     * Such a tree uses less memory than a tree built node by node, and is much faster to query,
+     * especially with {@link #search(INDArray, int)}.
+     *
+     * Supported similarity functions are: euclidean, manhattan, cosinedistance, cosinesimilarity and dot
+     *
+     * @param items the items to use, one item per row
+     * @param similarityFunction the similarity function to use
+     * @param invert whether to invert the distance (similarity functions have different min/max objectives)
+     * @param workers number of parallel workers for tree building and batched search
+     * @return
+     */
+    public static VPTree bulkLoad(@NonNull INDArray items, @NonNull String similarityFunction, boolean invert,
+                    int workers) {
+        if (items.rank() != 2)
+            throw new ND4JIllegalStateException("Items should be a matrix, one item per row");
+
+        VPTree tree = new VPTree();
+        tree.items = items;
+        tree.similarityFunction = similarityFunction;
+        tree.invert = invert;
+        tree.workers = Math.max(1, workers);
+        tree.layout = VPTreeLayout.build(items.dup('c').data().asFloat(), items.rows(), items.columns(),
+                        similarityFunction, invert, tree.workers);
+        return tree;
+    }
+
+    /**
+     *
+     * @param similarityFunction
+     * @return true if the given similarity function can be used with {@link #bulkLoad(INDArray, String, boolean, int)}
+     */
+    public static boolean isBulkLoadSupported(@NonNull String similarityFunction) {
+        return VPTreeLayout.isSupported(similarityFunction);
+    }
+
     /**
      * Create an ndarray
      * from the datapoints
@@ -475,6 +516,7 @@ public class VPTree implements Serializable {
      * @param results
      * @param distances
      */
+    @Override
     public void search(@NonNull INDArray target, int k, List<DataPoint> results, List<Double> distances) {
         if (items != null)
             if (!target.isVectorOrScalar() || target.columns() != items.columns() || target.rows() > 1)
@@ -485,6 +527,20 @@ public class VPTree implements Serializable {
         results.clear();
         distances.clear();
 
+        if (layout != null) {
+            int[] ids = new int[Math.max(1, k)];
+            float[] dists = new float[ids.length];
+            int found = layout.search(target.dup('c').data().asFloat(), 0, k, ids, dists);
+
+            // same order as node based search: farthest first, nearest first for inverted distances
+            for (int e = 0; e < found; e++) {
+                int i = invert ? e : found - 1 - e;
+                results.add(new DataPoint(ids[i], items.getRow(ids[i])));
+                distances.add((double) dists[i]);
+            }
+            return;
+        }
+
         PriorityQueue<HeapObject> pq = new PriorityQueue<>(items.rows(), new HeapObjectComparator());
         search(root, target, k + 1, pq, Double.MAX_VALUE);
 
@@ -505,6 +561,51 @@ public class VPTree implements Serializable {
         }
     }
 
+    /**
+     * Search k nearest neighbors for each row of queries. For trees built with
+     * {@link #bulkLoad(INDArray, String, boolean, int)} queries are processed concurrently by the tree workers,
+     * otherwise they're processed one by one.
+     *
+     * PLEASE NOTE: Unlike {@link #search(INDArray, int, List, List)}, results are always sorted from nearest to farthest.
+     *
+     * @param queries points to search neighbors for, one point per row
+     * @param k number of neighbors to look for
+     * @return neighbors and distances for each query
+     */
+    public BatchSearchResult search(@NonNull INDArray queries, int k) {
+        if (queries.rank() != 2 || queries.columns() != items.columns())
+            throw new ND4JIllegalStateException("Queries for search should have shape of [N, " + items.columns()
+                            + "] but got " + Arrays.toString(queries.shape()) + " instead");
+
+        int numQueries = queries.rows();
+        int[][] ids = new int[numQueries][];
+        float[][] dists = new float[numQueries][];
+        k = Math.min(k, items.rows());
+
+        if (layout != null) {
+            layout.search(queries.dup('c').data().asFloat(), numQueries, k, ids, dists);
+        } else {
+            List<DataPoint> results = new ArrayList<>();
+            List<Double> distances = new ArrayList<>();
+            for (int q = 0; q < numQueries; q++) {
+                search(queries.getRow(q), k, results, distances);
+                if (!invert) {
+                    Collections.reverse(results);
+                    Collections.reverse(distances);
+                }
+
+                ids[q] = new int[results.size()];
+                dists[q] = new float[results.size()];
+                for (int e = 0; e < results.size(); e++) {
+                    ids[q][e] = results.get(e).getIndex();
+                    dists[q][e] = distances.get(e).floatValue();
+                }
+            }
+        }
+
+        return new BatchSearchResult(ids, dists);
+    }
+
     /**
      *
      * @param node
@@ -566,6 +667,23 @@ public class VPTree implements Serializable {
         }
     }
 
+    /**
+     * Results of {@link #search(INDArray, int)}: indices of and distances to the neighbors of each query,
+     * sorted from nearest to farthest
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BatchSearchResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] indices;
+        private final float[][] distances;
+
+        public int size() {
+            return indices.length;
+        }
+    }
+
     @Data
     public static class Node implements Serializable {
         private static final long serialVersionUID = 2L;
@@ -0,0 +1,508 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.vptree;
+
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Array-based vantage point tree, used by {@link VPTree#bulkLoad(org.nd4j.linalg.api.ndarray.INDArray, String, boolean, int)}.
+ *
+ * Nodes are stored in pre-order: the vantage point of node i is stored at position i, its inner subtree (points
+ * with distance <= threshold) starts at i + 1, and its outer subtree at right[i]. Vectors are copied into a single
+ * float array in the same order, so traversal walks mostly forward through memory, and distances are calculated
+ * without op invocation overhead. Subtrees are built in parallel with fork-join.
+ *
+ * Search is thread-safe, and uses per-thread buffers for the heap and traversal stack.
+ */
+class VPTreeLayout implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    protected static final int EUCLIDEAN = 0;
+    protected static final int MANHATTAN = 1;
+    protected static final int COSINE_DISTANCE = 2;
+    protected static final int COSINE_SIMILARITY = 3;
+    protected static final int DOT = 4;
+
+    // subtrees smaller than this are built within the same task
+    protected static final int FORK_THRESHOLD = 1024;
+
+    private final int size;
+    private final int dimensions;
+    private final int metric;
+    private final boolean invert;
+    private final int workers;
+
+    private final int[] indices;
+    private final int[] left;
+    private final int[] right;
+    private final float[] thresholds;
+    private final float[] vectors;
+    private final float[] norms;
+
+    private transient ThreadLocal<SearchContext> contexts;
+    private transient ForkJoinPool pool;
+
+    protected VPTreeLayout(int size, int dimensions, int metric, boolean invert, int workers) {
+        this.size = size;
+        this.dimensions = dimensions;
+        this.metric = metric;
+        this.invert = invert;
+        this.workers = Math.max(1, workers);
+
+        this.indices = new int[size];
+        this.left = new int[size];
+        this.right = new int[size];
+        this.thresholds = new float[size];
+        this.vectors = new float[size * dimensions];
+        this.norms = isCosine(metric) ? new float[size] : null;
+    }
+
+    protected static boolean isSupported(String similarityFunction) {
+        switch (similarityFunction) {
+            case "euclidean":
+            case "manhattan":
+            case "cosinedistance":
+            case "cosinesimilarity":
+            case "dot":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    protected static int metricFor(String similarityFunction) {
+        switch (similarityFunction) {
+            case "euclidean":
+                return EUCLIDEAN;
+            case "manhattan":
+                return MANHATTAN;
+            case "cosinedistance":
+                return COSINE_DISTANCE;
+            case "cosinesimilarity":
+                return COSINE_SIMILARITY;
+            case "dot":
+                return DOT;
+            default:
+                throw new ND4JIllegalStateException(
+                                "Unsupported similarity function for bulk loading: [" + similarityFunction + "]");
+        }
+    }
+
+    private static boolean isCosine(int metric) {
+        return metric == COSINE_DISTANCE || metric == COSINE_SIMILARITY;
+    }
+
+    /**
+     * Build the tree
+     *
+     * @param data points, one point per row, row-major
+     * @param rows number of points
+     * @param columns number of dimensions
+     */
+    protected static VPTreeLayout build(float[] data, int rows, int columns, String similarityFunction,
+                    boolean invert, int workers) {
+        VPTreeLayout layout = new VPTreeLayout(rows, columns, metricFor(similarityFunction), invert, workers);
+
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++)
+            order[i] = i;
+
+        float[] dataNorms = null;
+        if (layout.norms != null) {
+            dataNorms = new float[rows];
+            for (int i = 0; i < rows; i++)
+                dataNorms[i] = layout.norm(data, i * columns);
+        }
+
+        if (rows > 0)
+            layout.pool().invoke(layout.new BuildTask(data, dataNorms, order, new float[rows], 0, rows));
+
+        return layout;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Search k nearest neighbors of every query, in parallel blocks of queries.
+     * Results are sorted from nearest to farthest.
+     *
+     * @param queries queries, one query per row, row-major
+     * @param numQueries number of queries
+     * @param k number of neighbors to look for
+     * @param resultIds output: indices of neighbors found, per query
+     * @param resultDistances output: distances to neighbors found, per query
+     */
+    protected void search(final float[] queries, int numQueries, final int k, final int[][] resultIds,
+                    final float[][] resultDistances) {
+        int blockSize = Math.max(1, (numQueries + workers * 4 - 1) / (workers * 4));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < numQueries; from += blockSize) {
+            final int start = from;
+            final int end = Math.min(numQueries, from + blockSize);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int[] ids = new int[Math.max(1, k)];
+                    float[] distances = new float[ids.length];
+                    for (int q = start; q < end; q++) {
+                        int found = search(queries, q * dimensions, k, ids, distances);
+                        resultIds[q] = Arrays.copyOf(ids, found);
+                        resultDistances[q] = Arrays.copyOf(distances, found);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (tasks.size() == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+
+        try {
+            for (Future<Void> future : pool().invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Search k nearest neighbors of a single query.
+     * Results are sorted from nearest to farthest.
+     *
+     * @param query array containing the query
+     * @param offset offset of the query within the array
+     * @param k number of neighbors to look for
+     * @param resultIds array to store indices of neighbors found, should have at least k elements
+     * @param resultDistances array to store distances to neighbors found, should have at least k elements
+     * @return number of neighbors found
+     */
+    protected int search(float[] query, int offset, int k, int[] resultIds, float[] resultDistances) {
+        if (k < 1 || size == 0)
+            return 0;
+
+        SearchContext context = context(k);
+        int[] heapIds = context.heapIds;
+        float[] heap = context.heapDistances;
+        float queryNorm = norms != null ? norm(query, offset) : 0.0f;
+
+        int count = 0;
+        float tau = Float.MAX_VALUE;
+
+        context.push(0, -Float.MAX_VALUE);
+        while (context.depth > 0) {
+            int node = context.nodes[--context.depth];
+            // lower bound of the distance to any point of this subtree, from the triangle inequality
+            if (context.bounds[context.depth] >= tau)
+                continue;
+
+            float distance = distance(query, offset, queryNorm, vectors, node * dimensions,
+                            norms != null ? norms[node] : 0.0f);
+            if (count < k) {
+                siftUp(heap, heapIds, count++, distance, indices[node]);
+                if (count == k)
+                    tau = heap[0];
+            } else if (distance < tau) {
+                siftDown(heap, heapIds, k, distance, indices[node]);
+                tau = heap[0];
+            }
+
+            int inner = left[node];
+            int outer = right[node];
+            float threshold = thresholds[node];
+
+            // the nearer subtree is pushed last, so it's visited first
+            if (distance < threshold) {
+                if (outer >= 0)
+                    context.push(outer, threshold - distance);
+                if (inner >= 0)
+                    context.push(inner, distance - threshold);
+            } else {
+                if (inner >= 0)
+                    context.push(inner, distance - threshold);
+                if (outer >= 0)
+                    context.push(outer, threshold - distance);
+            }
+        }
+
+        // heap sort: repeatedly move the farthest element to the end
+        for (int e = count - 1; e >= 0; e--) {
+            resultIds[e] = heapIds[0];
+            resultDistances[e] = heap[0];
+            siftDown(heap, heapIds, e, heap[e], heapIds[e]);
+        }
+
+        return count;
+    }
+
+    private static void siftUp(float[] heap, int[] ids, int position, float distance, int id) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent] >= distance)
+                break;
+            heap[position] = heap[parent];
+            ids[position] = ids[parent];
+            position = parent;
+        }
+        heap[position] = distance;
+        ids[position] = id;
+    }
+
+    /**
+     * Replace the top of the max-heap of given size, and restore heap order
+     */
+    private static void siftDown(float[] heap, int[] ids, int size, float distance, int id) {
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] > heap[child])
+                child++;
+            if (heap[child] <= distance)
+                break;
+            heap[position] = heap[child];
+            ids[position] = ids[child];
+            position = child;
+        }
+        if (size > 0) {
+            heap[position] = distance;
+            ids[position] = id;
+        }
+    }
+
+    protected float norm(float[] point, int offset) {
+        double sum = 0.0;
+        for (int e = 0; e < dimensions; e++) {
+            float v = point[offset + e];
+            sum += v * v;
+        }
+
+        return (float) Math.sqrt(sum);
+    }
+
+    protected float distance(float[] a, int aOffset, float aNorm, float[] b, int bOffset, float bNorm) {
+        float result;
+        switch (metric) {
+            case EUCLIDEAN: {
+                float sum = 0.0f;
+                for (int e = 0; e < dimensions; e++) {
+                    float diff = a[aOffset + e] - b[bOffset + e];
+                    sum += diff * diff;
+                }
+                result = (float) Math.sqrt(sum);
+                break;
+            }
+            case MANHATTAN: {
+                float sum = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    sum += Math.abs(a[aOffset + e] - b[bOffset + e]);
+                result = sum;
+                break;
+            }
+            case COSINE_DISTANCE:
+            case COSINE_SIMILARITY: {
+                float dot = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    dot += a[aOffset + e] * b[bOffset + e];
+
+                float denominator = aNorm * bNorm;
+                float similarity = denominator == 0.0f ? 0.0f : dot / denominator;
+                result = metric == COSINE_DISTANCE ? 1.0f - similarity : similarity;
+                break;
+            }
+            default: {
+                float dot = 0.0f;
+                for (int e = 0; e < dimensions; e++)
+                    dot += a[aOffset + e] * b[bOffset + e];
+                result = dot;
+            }
+        }
+
+        return invert ? -result : result;
+    }
+
+    protected synchronized ForkJoinPool pool() {
+        if (pool == null)
+            pool = new ForkJoinPool(workers);
+        return pool;
+    }
+
+    protected SearchContext context(int k) {
+        if (contexts == null) {
+            synchronized (this) {
+                if (contexts == null)
+                    contexts = new ThreadLocal<>();
+            }
+        }
+
+        SearchContext context = contexts.get();
+        if (context == null || context.heapIds.length < k) {
+            context = new SearchContext(k);
+            contexts.set(context);
+        }
+        context.depth = 0;
+        return context;
+    }
+
+    protected static class SearchContext {
+        protected final int[] heapIds;
+        protected final float[] heapDistances;
+        protected int[] nodes = new int[64];
+        protected float[] bounds = new float[64];
+        protected int depth;
+
+        protected SearchContext(int k) {
+            heapIds = new int[k];
+            heapDistances = new float[k];
+        }
+
+        protected void push(int node, float bound) {
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                bounds = Arrays.copyOf(bounds, depth * 2);
+            }
+            nodes[depth] = node;
+            bounds[depth++] = bound;
+        }
+    }
+
+    /**
+     * Builds the subtree for the points order[from..to), which becomes nodes from..to
+     */
+    protected class BuildTask extends RecursiveAction {
+        private final float[] data;
+        private final float[] dataNorms;
+        private final int[] order;
+        private final float[] distances;
+        private final int from;
+        private final int to;
+
+        protected BuildTask(float[] data, float[] dataNorms, int[] order, float[] distances, int from, int to) {
+            this.data = data;
+            this.dataNorms = dataNorms;
+            this.order = order;
+            this.distances = distances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            build(from, to);
+        }
+
+        private void build(int from, int to) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            swap(order, distances, from, from + random.nextInt(to - from));
+
+            int node = from;
+            int point = order[node];
+            indices[node] = point;
+            System.arraycopy(data, point * dimensions, vectors, node * dimensions, dimensions);
+            if (norms != null)
+                norms[node] = dataNorms[point];
+
+            if (to - from == 1) {
+                left[node] = -1;
+                right[node] = -1;
+                return;
+            }
+
+            float pointNorm = dataNorms != null ? dataNorms[point] : 0.0f;
+            for (int i = from + 1; i < to; i++)
+                distances[i] = distance(data, order[i] * dimensions, dataNorms != null ? dataNorms[order[i]] : 0.0f,
+                                data, point * dimensions, pointNorm);
+
+            // inner points go to [from + 1, mid), outer points to [mid, to)
+            int mid = (from + 1 + to) >>> 1;
+            select(order, distances, from + 1, to - 1, mid, random);
+            thresholds[node] = distances[mid];
+            left[node] = mid > from + 1 ? from + 1 : -1;
+            right[node] = mid;
+
+            if (to - from > FORK_THRESHOLD) {
+                if (mid > from + 1)
+                    invokeAll(new BuildTask(data, dataNorms, order, distances, from + 1, mid),
+                                    new BuildTask(data, dataNorms, order, distances, mid, to));
+                else
+                    build(mid, to);
+            } else {
+                if (mid > from + 1)
+                    build(from + 1, mid);
+                build(mid, to);
+            }
+        }
+    }
+
+    /**
+     * Quickselect with three-way partitioning: afterwards distances[lo..k) <= distances[k] <= distances(k..hi]
+     */
+    private static void select(int[] order, float[] distances, int lo, int hi, int k, ThreadLocalRandom random) {
+        while (hi > lo) {
+            float pivot = distances[lo + random.nextInt(hi - lo + 1)];
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                if (distances[i] < pivot)
+                    swap(order, distances, lt++, i++);
+                else if (distances[i] > pivot)
+                    swap(order, distances, i, gt--);
+                else
+                    i++;
+            }
+
+            if (k < lt)
+                hi = lt - 1;
+            else if (k > gt)
+                lo = gt + 1;
+            else
+                return;
+        }
+    }
+
+    private static void swap(int[] order, float[] distances, int i, int j) {
+        int o = order[i];
+        order[i] = order[j];
+        order[j] = o;
+        float d = distances[i];
+        distances[i] = distances[j];
+        distances[j] = d;
+    }
+}
@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.SerializationUtils;
+import org.deeplearning4j.clustering.randomprojection.RPForest;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.deeplearning4j.clustering.vptree.VPTree;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class HnswIndexTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    /**
+     * Brute-force euclidean k nearest neighbors, used as ground truth
+     */
+    protected static int[] exactNeighbors(float[] data, int dimensions, float[] query, int k) {
+        int numPoints = data.length / dimensions;
+        final double[] distances = new double[numPoints];
+        Integer[] order = new Integer[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < dimensions; j++) {
+                double diff = query[j] - data[i * dimensions + j];
+                sum += diff * diff;
+            }
+            distances[i] = sum;
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(distances[o1], distances[o2]);
+            }
+        });
+
+        int[] result = new int[k];
+        for (int i = 0; i < k; i++)
+            result[i] = order[i];
+
+        return result;
+    }
+
+    protected static double recall(int[] expected, Collection<Integer> found) {
+        Set<Integer> truth = new HashSet<>();
+        for (int e : expected)
+            truth.add(e);
+
+        int hits = 0;
+        for (int f : found)
+            if (truth.contains(f))
+                hits++;
+
+        return hits / (double) expected.length;
+    }
+
+    @Test
+    public void testRecall_1() {
+        Nd4j.getRandom().setSeed(119);
+        int dimensions = 16;
+        int k = 10;
+        INDArray points = Nd4j.randn(2000, dimensions);
+        INDArray queries = Nd4j.randn(50, dimensions);
+        float[] data = points.dup('c').data().asFloat();
+
+        HnswIndex index = new HnswIndex(points);
+        assertEquals(2000, index.size());
+
+        double recall = 0.0;
+        for (int q = 0; q < queries.rows(); q++) {
+            INDArray query = queries.getRow(q);
+            val results = new ArrayList<DataPoint>();
+            val distances = new ArrayList<Double>();
+            index.search(query, k, results, distances);
+
+            assertEquals(k, results.size());
+            assertEquals(k, distances.size());
+
+            // results should be sorted from nearest to farthest
+            for (int e = 1; e < distances.size(); e++)
+                assertTrue(distances.get(e - 1) <= distances.get(e));
+
+            List<Integer> found = new ArrayList<>();
+            for (DataPoint dp : results)
+                found.add(dp.getIndex());
+
+            recall += recall(exactNeighbors(data, dimensions, query.dup('c').data().asFloat(), k), found);
+        }
+        recall /= queries.rows();
+
+        log.info("Recall@{}: {}", k, recall);
+        assertTrue(recall > 0.95);
+    }
+
+    @Test
+    public void testSelfSearch_1() {
+        Nd4j.getRandom().setSeed(119);
+        INDArray points = Nd4j.rand(500, 20);
+
+        HnswIndex index = new HnswIndex(points, HnswIndex.COSINE_SIMILARITY, true);
+
+        for (int e = 0; e < points.rows(); e += 10) {
+            val results = new ArrayList<DataPoint>();
+            val distances = new ArrayList<Double>();
+            index.search(points.getRow(e), 1, results, distances);
+
+            assertEquals(e, results.get(0).getIndex());
+            assertEquals(-1.0, distances.get(0), 1e-4);
+            assertEquals(points.getRow(e), results.get(0).getPoint());
+        }
+    }
+
+    @Test
+    public void testEuclideanDistances_1() {
+        INDArray points = Nd4j.create(new double[][] {{0, 0}, {3, 4}, {6, 8}});
+        HnswIndex index = new HnswIndex(points);
+
+        val results = new ArrayList<DataPoint>();
+        val distances = new ArrayList<Double>();
+        index.search(Nd4j.create(new double[] {0, 0}), 3, results, distances);
+
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals(2, results.get(2).getIndex());
+
+        assertEquals(0.0, distances.get(0), 1e-5);
+        assertEquals(5.0, distances.get(1), 1e-5);
+        assertEquals(10.0, distances.get(2), 1e-5);
+    }
+
+    @Test
+    public void testConcurrentInsertion_1() throws Exception {
+        Nd4j.getRandom().setSeed(119);
+        final INDArray points = Nd4j.randn(1000, 8);
+        final float[] data = points.dup('c').data().asFloat();
+        final HnswIndex index = new HnswIndex.Builder(8).initialCapacity(16).build();
+
+        // ids assigned by add() are used to check results below
+        final int[] assigned = new int[points.rows()];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int e = offset; e < points.rows(); e += 4)
+                        assigned[e] = index.add(points.getRow(e));
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(points.rows(), index.size());
+
+        int[] ids = new int[1];
+        float[] distances = new float[1];
+        for (int e = 0; e < points.rows(); e += 7) {
+            float[] query = Arrays.copyOfRange(data, e * 8, (e + 1) * 8);
+            assertEquals(1, index.search(query, 1, ids, distances));
+            assertEquals(assigned[e], ids[0]);
+            assertEquals(points.getRow(e), index.getPoint(ids[0]));
+        }
+    }
+
+    @Test
+    public void testSerialization_1() throws Exception {
+        Nd4j.getRandom().setSeed(119);
+        INDArray points = Nd4j.randn(300, 10);
+        HnswIndex indexA = new HnswIndex(points, HnswIndex.MANHATTAN, false);
+
+        HnswIndex indexB;
+        try (val bos = new ByteArrayOutputStream()) {
+            SerializationUtils.serialize(indexA, bos);
+
+            try (val bis = new ByteArrayInputStream(bos.toByteArray())) {
+                indexB = SerializationUtils.deserialize(bis);
+            }
+        }
+
+        File file = new File(testDir.getRoot(), "hnsw.bin");
+        indexA.save(file);
+        HnswIndex indexC = HnswIndex.load(file);
+
+        for (HnswIndex other : new HnswIndex[] {indexB, indexC}) {
+            assertEquals(indexA.size(), other.size());
+            assertEquals(indexA.getSimilarityFunction(), other.getSimilarityFunction());
+            assertEquals(indexA.getM(), other.getM());
+
+            INDArray query = Nd4j.randn(1, 10);
+            val resultsA = new ArrayList<DataPoint>();
+            val distancesA = new ArrayList<Double>();
+            val resultsB = new ArrayList<DataPoint>();
+            val distancesB = new ArrayList<Double>();
+
+            indexA.search(query, 5, resultsA, distancesA);
+            other.search(query, 5, resultsB, distancesB);
+
+            assertEquals(distancesA, distancesB);
+            for (int e = 0; e < resultsA.size(); e++)
+                assertEquals(resultsA.get(e).getIndex(), resultsB.get(e).getIndex());
+        }
+
+        // restored index should accept new points
+        int id = indexC.add(Nd4j.randn(1, 10));
+        assertEquals(300, id);
+        assertEquals(301, indexC.size());
+    }
+
+    @Test
+    public void testSaveDuringInsertion_1() throws Exception {
+        Nd4j.getRandom().setSeed(119);
+        final INDArray points = Nd4j.randn(2000, 8);
+        final HnswIndex index = new HnswIndex.Builder(8).initialCapacity(16).build();
+        final AtomicInteger added = new AtomicInteger(0);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int e = offset; e < points.rows(); e += 4) {
+                        index.add(points.getRow(e));
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        // size() should never count points that are still being inserted, and saved copies should be usable
+        int previous = 0;
+        int[] ids = new int[1];
+        float[] distances = new float[1];
+        while (added.get() < points.rows()) {
+            int size = index.size();
+            assertTrue(size >= previous);
+            assertTrue(size <= added.get());
+            previous = size;
+
+            HnswIndex restored;
+            try (val bos = new ByteArrayOutputStream()) {
+                try (val dos = new DataOutputStream(bos)) {
+                    index.write(dos);
+                }
+
+                try (val dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+                    restored = new HnswIndex();
+                    restored.read(dis);
+                }
+            }
+
+            assertTrue(restored.size() >= size);
+            for (int e = 0; e < restored.size(); e += 97) {
+                assertEquals(1, restored.search(restored.getPoint(e).dup('c').data().asFloat(), 1, ids, distances));
+                assertEquals(0.0f, distances[0], 1e-5f);
+            }
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(points.rows(), index.size());
+    }
+
+    @Test(expected = ND4JIllegalStateException.class)
+    public void testWrongShape_1() {
+        HnswIndex index = new HnswIndex(Nd4j.rand(10, 5));
+        index.search(Nd4j.rand(1, 4), 3, new ArrayList<DataPoint>(), new ArrayList<Double>());
+    }
+
+    @Test(expected = ND4JIllegalStateException.class)
+    public void testUnsupportedFunction_1() {
+        new HnswIndex.Builder(5).similarityFunction("jaccard").build();
+    }
+
+    /**
+     * Recall/QPS comparison against existing structures. Takes a while, so it's ignored by default.
+     */
+    @Test
+    @Ignore
+    public void benchmarkRecallQps() {
+        Nd4j.getRandom().setSeed(119);
+        int numPoints = 20000;
+        int dimensions = 100;
+        int numQueries = 200;
+        int k = 10;
+
+        INDArray points = Nd4j.randn(numPoints, dimensions);
+        INDArray queries = Nd4j.randn(numQueries, dimensions);
+        float[] data = points.dup('c').data().asFloat();
+
+        List<int[]> truth = new ArrayList<>();
+        for (int q = 0; q < numQueries; q++)
+            truth.add(exactNeighbors(data, dimensions, queries.getRow(q).dup('c').data().asFloat(), k));
+
+        // HNSW
+        long time = System.nanoTime();
+        HnswIndex index = new HnswIndex.Builder(dimensions).initialCapacity(numPoints).build();
+        index.addAll(points);
+        log.info("HNSW build time: {} ms", (System.nanoTime() - time) / 1000000);
+
+        for (int ef : new int[] {10, 50, 100, 200}) {
+            index.setEfSearch(ef);
+            double recall = 0.0;
+            time = System.nanoTime();
+            for (int q = 0; q < numQueries; q++) {
+                val results = new ArrayList<DataPoint>();
+                index.search(queries.getRow(q), k, results, new ArrayList<Double>());
+
+                List<Integer> found = new ArrayList<>();
+                for (DataPoint dp : results)
+                    found.add(dp.getIndex());
+
+                recall += recall(truth.get(q), found);
+            }
+            report("HNSW ef=" + ef, recall / numQueries, numQueries, System.nanoTime() - time);
+        }
+
+        // VPTree
+        time = System.nanoTime();
+        VPTree tree = new VPTree(points, false, Runtime.getRuntime().availableProcessors());
+        log.info("VPTree build time: {} ms", (System.nanoTime() - time) / 1000000);
+
+        double recall = 0.0;
+        time = System.nanoTime();
+        for (int q = 0; q < numQueries; q++) {
+            val results = new ArrayList<DataPoint>();
+            tree.search(queries.getRow(q), k, results, new ArrayList<Double>());
+
+            List<Integer> found = new ArrayList<>();
+            for (DataPoint dp : results)
+                found.add(dp.getIndex());
+
+            recall += recall(truth.get(q), found);
+        }
+        report("VPTree", recall / numQueries, numQueries, System.nanoTime() - time);
+
+        // RPForest
+        time = System.nanoTime();
+        RPForest forest = new RPForest(10, 100, "euclidean");
+        forest.fit(points);
+        log.info("RPForest build time: {} ms", (System.nanoTime() - time) / 1000000);
+
+        recall = 0.0;
+        time = System.nanoTime();
+        for (int q = 0; q < numQueries; q++) {
+            List<Pair<Double, Integer>> results = forest.queryWithDistances(queries.getRow(q), k);
+
+            List<Integer> found = new ArrayList<>();
+            for (Pair<Double, Integer> pair : results)
+                found.add(pair.getSecond());
+
+            recall += recall(truth.get(q), found);
+        }
+        report("RPForest", recall / numQueries, numQueries, System.nanoTime() - time);
+    }
+
+    protected void report(String name, double recall, int numQueries, long nanos) {
+        log.info("{}: recall@10: {}; QPS: {}", name, String.format("%.4f", recall),
+                        String.format("%.1f", numQueries / (nanos / 1e9)));
+    }
+}
@@ -19,12 +19,21 @@ package org.deeplearning4j.clustering.kmeans;
 import org.deeplearning4j.clustering.cluster.ClusterSet;
 import org.deeplearning4j.clustering.cluster.Point;
 import org.deeplearning4j.clustering.cluster.PointClassification;
+import org.deeplearning4j.clustering.util.MultiThreadUtils;
 import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by agibsonccc on 7/2/17.
@@ -62,4 +71,78 @@ public class KMeansTest {
                         pointClassificationEuclidean.getCluster().getPoints().get(0));
     }
 
+    @Test
+    public void testMiniBatchKMeans() {
+        Nd4j.getRandom().setSeed(12345);
+        int perCluster = 500;
+        double[][] means = {{10, 10, 10, 10}, {-10, -10, 10, 10}, {10, -10, -10, 10}};
+        INDArray points = Nd4j.create(means.length * perCluster, 4);
+        for (int c = 0; c < means.length; c++) {
+            INDArray blob = Nd4j.randn(perCluster, 4).addiRowVector(Nd4j.create(means[c]));
+            points.get(NDArrayIndex.interval(c * perCluster, (c + 1) * perCluster), NDArrayIndex.all()).assign(blob);
+        }
+
+        MiniBatchKMeansClustering kMeans = MiniBatchKMeansClustering.setup(3, 100, 50, 0.0, 12345).fit(points);
+        int[] labels = kMeans.predict(points);
+        assertEquals(points.rows(), labels.length);
+
+        //each blob should end up in its own cluster
+        Set<Integer> seen = new HashSet<>();
+        for (int c = 0; c < means.length; c++) {
+            int label = labels[c * perCluster];
+            for (int i = c * perCluster; i < (c + 1) * perCluster; i++)
+                assertEquals(label, labels[i]);
+            assertTrue(seen.add(label));
+        }
+
+        //about 4 per point, unit variance in each of the 4 dimensions
+        double cost = kMeans.cost(points) / points.rows();
+        assertTrue(String.valueOf(cost), cost < 6.0);
+
+        INDArray centers = kMeans.getCenters();
+        assertEquals(3, centers.rows());
+        ClusterSet clusterSet = kMeans.getClusterSet();
+        assertEquals(3, clusterSet.getClusterCount());
+        PointClassification classification = clusterSet.classifyPoint(new Point(points.getRow(0).dup()), false);
+        assertEquals(centers.getRow(labels[0]), classification.getCluster().getCenter().getArray());
+    }
+
+    @Test
+    public void testMiniBatchKMeansDimensionMismatch() {
+        Nd4j.getRandom().setSeed(12345);
+        MiniBatchKMeansClustering kMeans = MiniBatchKMeansClustering.setup(2, 10, 5, 0.0, 12345).fit(Nd4j.rand(50, 4));
+
+        try {
+            kMeans.predict(Nd4j.rand(10, 3));
+            fail("Expected exception for points with wrong number of columns");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("with 4 columns"));
+        }
+    }
+
+    @Test
+    public void testParallelTasksFailure() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int idx = i;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (idx == 2)
+                        throw new IllegalStateException("Task " + idx + " failed");
+                }
+            });
+        }
+
+        //failure of a task on the thread pool has to surface in the calling thread
+        ExecutorService executor = MultiThreadUtils.newExecutorService();
+        try {
+            MultiThreadUtils.parallelTasks(tasks, executor);
+            fail("Expected exception from failed task");
+        } catch (IllegalStateException e) {
+            assertEquals("Task 2 failed", e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
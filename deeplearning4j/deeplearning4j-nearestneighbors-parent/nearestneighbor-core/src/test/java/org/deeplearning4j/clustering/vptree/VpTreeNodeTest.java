@@ -25,6 +25,7 @@ import org.nd4j.linalg.primitives.Counter;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.TreeSet;
@@ -77,6 +78,46 @@ public class VpTreeNodeTest {
 
     }
 
+    @Test
+    public void testBulkLoad() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray points = Nd4j.rand(3000, 10);
+        INDArray queries = Nd4j.rand(50, 10);
+        int k = 7;
+
+        VPTree bulk = VPTree.bulkLoad(points, "euclidean", false, 4);
+        VPTree.BatchSearchResult batch = bulk.search(queries, k);
+        assertEquals(50, batch.size());
+
+        VPTree tree = new VPTree(points, false);
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        List<DataPoint> bulkResults = new ArrayList<>();
+        List<Double> bulkDistances = new ArrayList<>();
+        for (int q = 0; q < queries.rows(); q++) {
+            //exhaustive search
+            double[] all = new double[points.rows()];
+            for (int i = 0; i < all.length; i++)
+                all[i] = tree.distance(queries.getRow(q), points.getRow(i));
+            Arrays.sort(all);
+
+            int[] indices = batch.getIndices()[q];
+            float[] batchDistances = batch.getDistances()[q];
+            assertEquals(k, indices.length);
+            for (int i = 0; i < k; i++) {
+                assertEquals(all[i], batchDistances[i], 1e-4);
+                assertEquals(batchDistances[i], tree.distance(queries.getRow(q), points.getRow(indices[i])), 1e-4);
+            }
+
+            //single query search keeps the result order of node based tree
+            tree.search(queries.getRow(q), k, results, distances);
+            bulk.search(queries.getRow(q), k, bulkResults, bulkDistances);
+            assertEquals(distances.size(), bulkDistances.size());
+            for (int i = 0; i < k; i++)
+                assertEquals(distances.get(i), bulkDistances.get(i), 1e-4);
+        }
+    }
+
     @Test
     public void knnManualRandom() {
         knnManual(Nd4j.randn(3, 5));
@@ -29,6 +29,7 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.MappedWordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
 import org.deeplearning4j.models.glove.Glove;
@@ -45,11 +46,17 @@ import org.deeplearning4j.models.word2vec.wordstore.VocabularyHolder;
 import org.deeplearning4j.models.word2vec.wordstore.VocabularyWord;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.InMemoryLookupCache;
+import org.deeplearning4j.models.word2vec.wordstore.offheap.OffHeapVocabCache;
 import org.deeplearning4j.text.documentiterator.LabelsSource;
 import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.TokenPreProcess;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
 import org.nd4j.compression.impl.NoOp;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.LocationPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
@@ -63,9 +70,18 @@ import org.nd4j.storage.CompressedRamStorage;
 import org.nd4j.util.OneTimeLogger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
@@ -83,6 +99,11 @@ public class WordVectorSerializer {
     private static final int MAX_SIZE = 50;
     private static final String WHITESPACE_REPLACEMENT = "_Az92_";
 
+    // memory-mapped model footer: magic, version, data type, number of words, vector length, reserved, vocab offset
+    protected static final long MAPPED_MODEL_MAGIC = 0x444C344A57325631L;
+    protected static final int MAPPED_MODEL_VERSION = 1;
+    protected static final int MAPPED_MODEL_FOOTER_LENGTH = 40;
+
     private WordVectorSerializer() {}
 
     /**
@@ -2606,6 +2627,305 @@ public class WordVectorSerializer {
     }
 
 
+    /**
+     * This method converts w2v model into binary format suitable for memory mapping, see loadMappedModel().
+     * Source file can be in one of the following formats:
+     * 1) Binary model, either compressed or not. Like well-known Google Model
+     * 2) Popular CSV word2vec text format, GloVe text format included
+     * 3) DL4j compressed format
+     *
+     * PLEASE NOTE: Vectors are stored in current Nd4j data type, using native byte order.
+     * So converted file should be loaded with the same data type, on platform with the same endianness.
+     *
+     * @param source File should point to previously saved w2v model
+     * @param target File to be created
+     */
+    public static void convertToMappedModel(@NonNull File source, @NonNull File target) {
+        if (!source.exists() || source.isDirectory())
+            throw new RuntimeException(
+                            new FileNotFoundException("File [" + source.getAbsolutePath() + "] was not found"));
+
+        // we're writing into temporary file first, so partially converted model is never visible as target
+        File tmpTarget = new File(target.getAbsolutePath() + ".tmp");
+
+        try {
+            try {
+                log.debug("Trying DL4j format...");
+                File tmpFileSyn0 = File.createTempFile("word2vec", "syn");
+                tmpFileSyn0.deleteOnExit();
+
+                try (ZipFile zipFile = new ZipFile(source)) {
+                    ZipEntry syn0 = zipFile.getEntry("syn0.txt");
+                    FileUtils.copyInputStreamToFile(zipFile.getInputStream(syn0), tmpFileSyn0);
+
+                    try (Reader reader = new CSVReader(tmpFileSyn0)) {
+                        writeMappedModel(reader, tmpTarget);
+                    }
+                } finally {
+                    tmpFileSyn0.delete();
+                }
+            } catch (Exception e) {
+                try {
+                    log.debug("Trying CSVReader...");
+                    try (Reader reader = new CSVReader(source)) {
+                        writeMappedModel(reader, tmpTarget);
+                    }
+                } catch (Exception ef) {
+                    log.debug("Trying BinaryReader...");
+                    try (Reader reader = new BinaryReader(source)) {
+                        writeMappedModel(reader, tmpTarget);
+                    } catch (ND4JIllegalStateException ez) {
+                        throw ez;
+                    } catch (Exception ez) {
+                        throw new RuntimeException("Unable to guess input file format", ez);
+                    }
+                }
+            }
+
+            Files.move(tmpTarget.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (tmpTarget.exists())
+                tmpTarget.delete();
+        }
+    }
+
+    /**
+     * This method writes vectors provided by Reader in memory-mapped model format:
+     * syn0 rows, norms of syn0 rows, vocabulary, and fixed-size footer at the end of file.
+     *
+     * syn0 is placed at the very beginning of the file, so it's page-aligned once mapped.
+     *
+     * @param reader
+     * @param target
+     * @throws IOException
+     */
+    protected static void writeMappedModel(@NonNull Reader reader, @NonNull File target) throws IOException {
+        DataBuffer.Type dataType = Nd4j.dataType();
+        if (dataType != DataBuffer.Type.FLOAT && dataType != DataBuffer.Type.DOUBLE)
+            throw new ND4JIllegalStateException("Memory-mapped models are supported for FLOAT and DOUBLE data types only, current data type is [" + dataType + "]");
+
+        boolean isFloat = dataType == DataBuffer.Type.FLOAT;
+        int elementSize = isFloat ? 4 : 8;
+
+        // vocabulary goes after vectors, so we keep it in separate file until all vectors are written
+        File tmpFileVocab = File.createTempFile("word2vec", "vocab");
+        tmpFileVocab.deleteOnExit();
+
+        double[] norms = new double[1024];
+        int numWords = 0;
+        int vectorLength = -1;
+
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                        DataOutputStream vocab = new DataOutputStream(
+                                        new BufferedOutputStream(new FileOutputStream(tmpFileVocab)))) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.nativeOrder());
+
+            while (reader.hasNext()) {
+                Pair<VocabWord, float[]> pair = reader.next();
+                VocabWord word = pair.getFirst();
+                float[] vector = pair.getSecond();
+
+                if (vectorLength < 0)
+                    vectorLength = vector.length;
+                else if (vector.length != vectorLength)
+                    throw new DL4JInvalidInputException("Vector length for word [" + word.getLabel() + "] is ["
+                                    + vector.length + "], expected [" + vectorLength + "]");
+
+                double norm = 0.0;
+                for (float v : vector) {
+                    if (buffer.remaining() < elementSize)
+                        flushBuffer(buffer, channel);
+
+                    if (isFloat)
+                        buffer.putFloat(v);
+                    else
+                        buffer.putDouble(v);
+
+                    norm += (double) v * v;
+                }
+
+                if (numWords == norms.length)
+                    norms = Arrays.copyOf(norms, norms.length * 2);
+
+                norms[numWords++] = Math.sqrt(norm);
+
+                byte[] label = word.getLabel().getBytes(StandardCharsets.UTF_8);
+                vocab.writeInt(label.length);
+                vocab.write(label);
+                vocab.writeDouble(word.getElementFrequency());
+            }
+
+            if (numWords == 0)
+                throw new DL4JInvalidInputException("No vectors were found in source file");
+
+            for (int i = 0; i < numWords; i++) {
+                if (buffer.remaining() < elementSize)
+                    flushBuffer(buffer, channel);
+
+                if (isFloat)
+                    buffer.putFloat((float) norms[i]);
+                else
+                    buffer.putDouble(norms[i]);
+            }
+            flushBuffer(buffer, channel);
+            vocab.flush();
+
+            long vocabOffset = channel.position();
+            try (FileChannel vocabChannel = FileChannel.open(tmpFileVocab.toPath(), StandardOpenOption.READ)) {
+                long position = 0;
+                long size = vocabChannel.size();
+                while (position < size)
+                    position += vocabChannel.transferTo(position, size - position, channel);
+            }
+
+            buffer.putLong(MAPPED_MODEL_MAGIC);
+            buffer.putInt(MAPPED_MODEL_VERSION);
+            buffer.putInt(isFloat ? 0 : 1);
+            buffer.putLong(numWords);
+            buffer.putInt(vectorLength);
+            buffer.putInt(0);
+            buffer.putLong(vocabOffset);
+            flushBuffer(buffer, channel);
+        } finally {
+            tmpFileVocab.delete();
+        }
+    }
+
+    private static void flushBuffer(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * This method memory-maps model previously converted with convertToMappedModel().
+     * syn0 isn't copied to heap or off-heap memory, so model loading takes fraction of time, and physical memory is shared between JVMs using the same file.
+     *
+     * PLEASE NOTE: This method is available for CPU backend only.
+     *
+     * @param file File should point to previously converted model
+     * @return
+     */
+    public static MappedWordVectors loadMappedModel(@NonNull File file) {
+        if (!file.exists() || file.isDirectory())
+            throw new RuntimeException(
+                            new FileNotFoundException("File [" + file.getAbsolutePath() + "] was not found"));
+
+        long numWords;
+        int vectorLength;
+        OffHeapVocabCache vocabCache;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < MAPPED_MODEL_FOOTER_LENGTH)
+                throw new DL4JInvalidInputException("File [" + file.getAbsolutePath() + "] isn't memory-mapped model");
+
+            ByteBuffer footer = ByteBuffer.allocate(MAPPED_MODEL_FOOTER_LENGTH).order(ByteOrder.nativeOrder());
+            channel.position(channel.size() - MAPPED_MODEL_FOOTER_LENGTH);
+            while (footer.hasRemaining())
+                if (channel.read(footer) < 0)
+                    throw new EOFException();
+
+            footer.flip();
+
+            long magic = footer.getLong();
+            if (magic == Long.reverseBytes(MAPPED_MODEL_MAGIC))
+                throw new ND4JIllegalStateException("Model [" + file.getAbsolutePath() + "] was converted on platform with different byte order");
+
+            if (magic != MAPPED_MODEL_MAGIC)
+                throw new DL4JInvalidInputException("File [" + file.getAbsolutePath() + "] isn't memory-mapped model");
+
+            int version = footer.getInt();
+            if (version != MAPPED_MODEL_VERSION)
+                throw new DL4JInvalidInputException("Unsupported memory-mapped model version: [" + version + "]");
+
+            DataBuffer.Type dataType = footer.getInt() == 0 ? DataBuffer.Type.FLOAT : DataBuffer.Type.DOUBLE;
+            if (dataType != Nd4j.dataType())
+                throw new ND4JIllegalStateException("Model [" + file.getAbsolutePath() + "] was converted with data type ["
+                                + dataType + "], but current data type is [" + Nd4j.dataType() + "]");
+
+            numWords = footer.getLong();
+            vectorLength = footer.getInt();
+            footer.getInt();
+            long vocabOffset = footer.getLong();
+
+            vocabCache = new OffHeapVocabCache((int) numWords);
+
+            channel.position(vocabOffset);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            for (int i = 0; i < numWords; i++) {
+                byte[] label = new byte[dis.readInt()];
+                dis.readFully(label);
+                double frequency = dis.readDouble();
+
+                String word = new String(label, StandardCharsets.UTF_8);
+
+                // some models contain duplicate labels, first one wins
+                if (vocabCache.containsWord(word)) {
+                    log.debug("Skipping duplicate label [{}] at index [{}]", word, i);
+                    continue;
+                }
+
+                VocabWord element = new VocabWord(frequency, word);
+                element.setIndex(i);
+
+                vocabCache.addToken(element);
+                vocabCache.addWordToIndex(i, word);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().initialSize(file.length())
+                        .policyLocation(LocationPolicy.MMAP).policyLearning(LearningPolicy.NONE)
+                        .tempFilePath(file.getAbsolutePath()).build();
+
+        MemoryWorkspace workspace = Nd4j.getWorkspaceManager().createNewWorkspace(configuration,
+                        "MAPPED_W2V_" + UUID.randomUUID().toString());
+
+        INDArray syn0;
+        INDArray norms;
+        try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+            // array should stay uninitialized, otherwise file contents will be wiped out
+            INDArray storage = Nd4j.createUninitialized(new long[] {1, numWords * (vectorLength + 1)}, 'c');
+
+            syn0 = Nd4j.create(storage.data(), new long[] {numWords, vectorLength}, new long[] {vectorLength, 1}, 0, 'c');
+            norms = Nd4j.create(storage.data(), new long[] {1, numWords}, new long[] {numWords, 1}, numWords * vectorLength, 'c');
+        } finally {
+            // this workspace shouldn't be ever reused for anything else
+            Nd4j.getWorkspaceManager().destroyWorkspace(workspace);
+        }
+
+        InMemoryLookupTable<VocabWord> lookupTable = new InMemoryLookupTable.Builder<VocabWord>()
+                        .vectorLength(vectorLength).useAdaGrad(false).cache(vocabCache).useHierarchicSoftmax(false)
+                        .build();
+        lookupTable.setSyn0(syn0);
+
+        return new MappedWordVectors(file, lookupTable, vocabCache, norms, workspace);
+    }
+
+    /**
+     * This method memory-maps w2v model, using cache file. If cache file doesn't exist, or it's older than source file,
+     * source model will be converted first.
+     *
+     * @param source File should point to previously saved w2v model, in any format supported by convertToMappedModel()
+     * @param cache File to be used as memory-mapped model
+     * @return
+     */
+    public static MappedWordVectors loadMappedModel(@NonNull File source, @NonNull File cache) {
+        if (!cache.exists() || cache.length() == 0 || cache.lastModified() < source.lastModified()) {
+            log.info("Converting model [{}] into memory-mapped model [{}]...", source.getAbsolutePath(),
+                            cache.getAbsolutePath());
+            convertToMappedModel(source, cache);
+        }
+
+        return loadMappedModel(cache);
+    }
+
     protected interface Reader extends AutoCloseable {
         boolean hasNext();
 
@@ -296,7 +296,7 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
      * @param N the number of elements to extract
      * @return the indices and the sorted top N elements
      */
-    private List<Double> getTopN(INDArray vec, int N) {
+    protected List<Double> getTopN(INDArray vec, int N) {
         ArrayComparator comparator = new ArrayComparator();
         PriorityQueue<Double[]> queue = new PriorityQueue<>(vec.rows(), comparator);
 
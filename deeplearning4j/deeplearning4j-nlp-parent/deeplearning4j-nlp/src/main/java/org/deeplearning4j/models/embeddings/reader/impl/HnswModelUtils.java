@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.hnsw.HnswIndex;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This is HNSW-based implementation for wordsNearest method, suited for large vocabularies and multiple consequent calls.
+ * Results are approximate: recall depends on efSearch value, see {@link HnswIndex#setEfSearch(int)}.
+ *
+ * Index is built upon first call to wordsNearest, unless prebuilt index was passed via constructor.
+ * Index ids are equal to vocabulary indices.
+ */
+@Slf4j
+public class HnswModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    protected volatile HnswIndex index;
+    protected int m = 16;
+    protected int efSearch = 100;
+
+    public HnswModelUtils() {
+        //
+    }
+
+    /**
+     *
+     * @param m number of links per point
+     * @param efSearch size of dynamic candidates list used during search
+     */
+    public HnswModelUtils(int m, int efSearch) {
+        this.m = m;
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * This constructor allows to use index built earlier, i.e. restored via {@link HnswIndex#load(java.io.File)}.
+     * Index should be built with cosinesimilarity function and invert = true, and point ids should match vocabulary indices.
+     *
+     * @param index
+     */
+    public HnswModelUtils(@NonNull HnswIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void init(@NonNull WeightLookupTable<T> lookupTable) {
+        super.init(lookupTable);
+
+        if (index != null && (index.getDimensions() != lookupTable.layerSize()
+                        || index.size() != lookupTable.getVocabCache().numWords()))
+            throw new ND4JIllegalStateException("HnswIndex doesn't match lookup table: expected ["
+                            + lookupTable.getVocabCache().numWords() + " x " + lookupTable.layerSize() + "], but got ["
+                            + index.size() + " x " + index.getDimensions() + "]");
+    }
+
+    /**
+     * This method returns HnswIndex used by this instance, building it if required
+     *
+     * @return
+     */
+    public HnswIndex getIndex() {
+        checkIndex();
+        return index;
+    }
+
+    protected synchronized void checkIndex() {
+        // build new index if it wasn't created before
+        if (index == null) {
+            int numWords = vocabCache.numWords();
+            INDArray points;
+            if (lookupTable instanceof InMemoryLookupTable) {
+                points = ((InMemoryLookupTable) lookupTable).getSyn0();
+            } else {
+                points = Nd4j.create(numWords, lookupTable.layerSize());
+                for (int i = 0; i < numWords; i++)
+                    points.putRow(i, lookupTable.vector(vocabCache.wordAtIndex(i)));
+            }
+
+            log.info("Building HNSW index for {} words...", numWords);
+            HnswIndex newIndex = new HnswIndex.Builder(lookupTable.layerSize())
+                            .similarityFunction(HnswIndex.COSINE_SIMILARITY).invert(true).m(m).efSearch(efSearch)
+                            .initialCapacity(numWords).build();
+            newIndex.addAll(points);
+
+            index = newIndex;
+        }
+    }
+
+    /**
+     * Words nearest based on HNSW index
+     *
+     * @param words
+     * @param top
+     * @return the words nearest the mean of the words
+     */
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        checkIndex();
+
+        // few extra elements to address UNK/STOP removal
+        int k = top + 2;
+        int[] ids = new int[k];
+        float[] distances = new float[k];
+        int found = index.search(words.dup('c').data().asFloat(), k, ids, distances);
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < found && result.size() < top; i++) {
+            String word = vocabCache.wordAtIndex(ids[i]);
+            if (word != null && !word.equals("UNK") && !word.equals("STOP"))
+                result.add(word);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This ModelUtils implementation is suited for lookup tables backed by memory-mapped files.
+ *
+ * PLEASE NOTE: This reader does NOT normalize underlying weights, it stays intact.
+ * Instead of that, precomputed norms of syn0 rows are used.
+ */
+@Slf4j
+public class MappedModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    protected INDArray norms;
+
+    /**
+     *
+     * @param norms row vector, containing norm2 for each row of syn0
+     */
+    public MappedModelUtils(@NonNull INDArray norms) {
+        this.norms = norms;
+    }
+
+    /**
+     * Words nearest based on positive and negative words
+     *
+     * @param words
+     * @param top
+     * @return the words nearest the mean of the words
+     */
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        if (!(lookupTable instanceof InMemoryLookupTable))
+            return super.wordsNearest(words, top);
+
+        INDArray syn0 = ((InMemoryLookupTable) lookupTable).getSyn0();
+
+        // syn0 stays intact here, we're dividing result by norms instead
+        INDArray similarity = Transforms.unitVec(words).mmul(syn0.transpose()).divi(norms);
+
+        List<Double> highToLowSimList = getTopN(similarity, top + 20);
+
+        List<WordSimilarity> result = new ArrayList<>();
+
+        for (int i = 0; i < highToLowSimList.size(); i++) {
+            String word = vocabCache.wordAtIndex(highToLowSimList.get(i).intValue());
+            if (word != null && !word.equals("UNK") && !word.equals("STOP")) {
+                INDArray otherVec = lookupTable.vector(word);
+                double sim = Transforms.cosineSim(words, otherVec);
+
+                result.add(new WordSimilarity(word, sim));
+            }
+        }
+
+        Collections.sort(result, new SimilarityComparator());
+
+        return getLabels(result, top);
+    }
+}
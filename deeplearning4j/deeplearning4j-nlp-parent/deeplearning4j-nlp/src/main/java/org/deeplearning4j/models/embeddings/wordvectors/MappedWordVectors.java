@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.embeddings.wordvectors;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.reader.impl.MappedModelUtils;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * This is WordVectors implementation backed by memory-mapped file, previously created with
+ * WordVectorSerializer.convertToMappedModel(). syn0 is never copied to heap, OS page cache is used instead,
+ * so multiple JVMs loading the same file will share physical memory.
+ *
+ * PLEASE NOTE: Arrays returned by getWordVectorMatrix() are views of the mapped file. Any in-place modification will be written to file.
+ * PLEASE NOTE: ModelUtils normalizing lookup table in place (i.e. BasicModelUtils) will modify mapped file as well, so MappedModelUtils is used by default.
+ * PLEASE NOTE: This implementation is read-only, and isn't suited for training.
+ */
+@Slf4j
+public class MappedWordVectors extends WordVectorsImpl<VocabWord> implements Closeable {
+    private static final long serialVersionUID = 3712908623498547813L;
+
+    @Getter
+    protected final File file;
+
+    // precomputed norm2 of syn0 rows
+    @Getter
+    protected transient INDArray norms;
+
+    // we keep reference to the workspace here, to keep mapping alive
+    protected transient MemoryWorkspace workspace;
+
+    public MappedWordVectors(@NonNull File file, @NonNull InMemoryLookupTable<VocabWord> lookupTable,
+                    @NonNull VocabCache<VocabWord> vocabCache, @NonNull INDArray norms, @NonNull MemoryWorkspace workspace) {
+        this.file = file;
+        this.norms = norms;
+        this.workspace = workspace;
+        this.layerSize = lookupTable.layerSize();
+
+        setVocab(vocabCache);
+        setLookupTable(lookupTable);
+        setModelUtils(new MappedModelUtils<VocabWord>(norms));
+    }
+
+    /**
+     * This method returns syn0, backed by mapped file
+     *
+     * @return
+     */
+    public INDArray getSyn0() {
+        return ((InMemoryLookupTable) lookupTable).getSyn0();
+    }
+
+    /**
+     * This method unmaps underlying file.
+     *
+     * PLEASE NOTE: This instance, and all arrays obtained from it, should NOT be used after this call.
+     */
+    @Override
+    public synchronized void close() {
+        if (workspace == null)
+            return;
+
+        ((InMemoryLookupTable) lookupTable).setSyn0(null);
+        norms = null;
+
+        workspace.destroyWorkspace(true);
+        workspace = null;
+    }
+}
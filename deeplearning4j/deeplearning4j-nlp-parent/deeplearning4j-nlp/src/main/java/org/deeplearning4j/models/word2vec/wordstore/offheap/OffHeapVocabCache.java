@@ -0,0 +1,1231 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.word2vec.wordstore.offheap;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This is VocabCache implementation designed for huge vocabularies.
+ *
+ * Unlike AbstractCache, it doesn't keep VocabWord object per element. Labels are stored off-heap, in direct memory chunks,
+ * everything else (frequencies, Huffman codes & points, indexes) is stored in flat primitive arrays, and lookups are
+ * served by open addressing hash tables. So GC has only a few dozens of objects to track, regardless of vocabulary size.
+ *
+ * VocabWord instances returned by this cache are lightweight views (see OffHeapVocabWord): they're created on demand,
+ * and all changes made to them are written through into the cache. So this class can be used as drop-in replacement
+ * for AbstractCache with SequenceVectors, Word2Vec and ParagraphVectors, i.e. via Builder.vocabCache() method.
+ *
+ * PLEASE NOTE: Structural changes (new elements, removals) are serialized, lookups are lock-free unless they race with
+ * structural changes. Element fields are written under read lock, so writes can't be lost when columns are reallocated,
+ * and increments are done under write lock, so they're atomic, same as frequency increments in AbstractCache.
+ */
+@Slf4j
+public class OffHeapVocabCache implements VocabCache<VocabWord> {
+    private static final long serialVersionUID = 6712891637415246231L;
+
+    protected static final int DEFAULT_CAPACITY = 1024;
+
+    protected static final byte FLAG_SPECIAL = 1;
+    protected static final byte FLAG_LABEL = 2;
+    protected static final byte FLAG_INIT = 4;
+    protected static final byte FLAG_REMOVED = 8;
+
+    // hash tables store slot + 1, so 0 means empty cell
+    protected static final int EMPTY = 0;
+    protected static final int DELETED = -1;
+
+    protected static final long NO_LABEL = -1L;
+
+    // labels storage, lives off-heap
+    protected transient LabelStorage labels;
+
+    // per-element columns, addressed by slot
+    protected transient long[] storageIds;
+    protected transient long[] labelPointers;
+    protected transient int[] labelHashes;
+    protected transient double[] frequencies;
+    protected transient long[] sequencesCounts;
+    protected transient int[] indexes;
+    protected transient byte[] flags;
+    protected transient short[] codeLengths;
+
+    // variable-length Huffman codes & points, stored in shared pools
+    protected transient int[] codesOffsets;
+    protected transient short[] codesSizes;
+    protected transient short[] codesCapacities;
+    protected transient byte[] codesPool;
+    protected transient int codesPoolSize;
+
+    protected transient int[] pointsOffsets;
+    protected transient short[] pointsSizes;
+    protected transient short[] pointsCapacities;
+    protected transient int[] pointsPool;
+    protected transient int pointsPoolSize;
+
+    // open addressing tables: label -> slot, storageId -> slot, and Huffman index -> slot
+    protected transient int[] labelTable;
+    protected transient int labelTableUsed;
+    protected transient int[] idTable;
+    protected transient int idTableUsed;
+    protected transient int[] indexTable;
+
+    protected transient int numSlots;
+    protected transient int numElements;
+    protected transient int numLabels;
+
+    protected transient StampedLock lock;
+
+    protected final AtomicLong totalWordCount = new AtomicLong(0);
+    protected final AtomicLong documentsCounter = new AtomicLong(0);
+
+    public OffHeapVocabCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     *
+     * @param expectedElements expected number of elements in vocabulary, used for initial allocation only
+     */
+    public OffHeapVocabCache(int expectedElements) {
+        allocate(Math.max(16, expectedElements));
+    }
+
+    protected void allocate(int capacity) {
+        lock = new StampedLock();
+        labels = new LabelStorage();
+
+        storageIds = new long[capacity];
+        labelPointers = new long[capacity];
+        labelHashes = new int[capacity];
+        frequencies = new double[capacity];
+        sequencesCounts = new long[capacity];
+        indexes = new int[capacity];
+        flags = new byte[capacity];
+        codeLengths = new short[capacity];
+
+        codesOffsets = new int[capacity];
+        codesSizes = new short[capacity];
+        codesCapacities = new short[capacity];
+        codesPool = new byte[capacity * 4];
+        codesPoolSize = 0;
+
+        pointsOffsets = new int[capacity];
+        pointsSizes = new short[capacity];
+        pointsCapacities = new short[capacity];
+        pointsPool = new int[capacity * 4];
+        pointsPoolSize = 0;
+
+        int tableSize = tableSizeFor(capacity);
+        labelTable = new int[tableSize];
+        labelTableUsed = 0;
+        idTable = new int[tableSize];
+        idTableUsed = 0;
+        indexTable = new int[capacity];
+
+        numSlots = 0;
+        numElements = 0;
+        numLabels = 0;
+    }
+
+    protected static int tableSizeFor(int capacity) {
+        // we keep load factor below 0.5
+        long size = Integer.highestOneBit(Math.max(16, capacity)) * 4L;
+        if (size > (1 << 30))
+            throw new IllegalStateException("Vocabulary is too large: " + capacity + " elements");
+
+        return (int) size;
+    }
+
+    protected static int mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    /*
+        Lookups
+     */
+
+    protected int findByLabel(String label) {
+        final int[] table = labelTable;
+        final int mask = table.length - 1;
+        final int hash = label.hashCode();
+
+        int position = mix(hash) & mask;
+        for (int e = 0; e < table.length; e++) {
+            int cell = table[position];
+            if (cell == EMPTY)
+                return -1;
+
+            if (cell != DELETED) {
+                int slot = cell - 1;
+                if (labelHashes[slot] == hash && labels.matches(labelPointers[slot], label))
+                    return slot;
+            }
+
+            position = (position + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    protected int findById(long id) {
+        final int[] table = idTable;
+        final int mask = table.length - 1;
+
+        int position = mix(id) & mask;
+        for (int e = 0; e < table.length; e++) {
+            int cell = table[position];
+            if (cell == EMPTY)
+                return -1;
+
+            if (cell != DELETED && storageIds[cell - 1] == id)
+                return cell - 1;
+
+            position = (position + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * This method returns slot for given label, or -1 if there's no such label
+     *
+     * @param label
+     * @return
+     */
+    protected int slotOf(String label) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int slot = findByLabel(label);
+                if (lock.validate(stamp))
+                    return slot;
+            } catch (RuntimeException e) {
+                // we've raced with structural change, so we'll just retry under lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findByLabel(label);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns slot for given storageId, or -1 if there's no such element
+     *
+     * @param id
+     * @return
+     */
+    protected int slotOf(long id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int slot = findById(id);
+                if (lock.validate(stamp))
+                    return slot;
+            } catch (RuntimeException e) {
+                // we've raced with structural change, so we'll just retry under lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findById(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    protected int slotAtIndex(int index) {
+        int[] table = indexTable;
+        if (index < 0 || index >= table.length)
+            return -1;
+
+        return table[index] - 1;
+    }
+
+    protected OffHeapVocabWord view(int slot) {
+        return slot < 0 ? null : new OffHeapVocabWord(this, slot);
+    }
+
+    /*
+        Structural changes, all of them are called under write lock
+     */
+
+    protected int insert(String label, long storageId) {
+        if (numSlots == storageIds.length)
+            growColumns(numSlots + (numSlots >> 1) + 1);
+
+        if ((labelTableUsed + 1) * 2 > labelTable.length)
+            labelTable = rehash(labelTable, true);
+
+        if ((idTableUsed + 1) * 2 > idTable.length)
+            idTable = rehash(idTable, false);
+
+        int slot = numSlots++;
+        storageIds[slot] = storageId;
+        indexes[slot] = -1;
+
+        if (label != null) {
+            labelPointers[slot] = labels.store(label);
+            labelHashes[slot] = label.hashCode();
+            labelTableUsed += put(labelTable, mix(labelHashes[slot]), slot);
+            numLabels++;
+        } else
+            labelPointers[slot] = NO_LABEL;
+
+        idTableUsed += put(idTable, mix(storageId), slot);
+
+        numElements++;
+        return slot;
+    }
+
+    protected static int put(int[] table, int hash, int slot) {
+        final int mask = table.length - 1;
+        int position = hash & mask;
+        while (table[position] != EMPTY && table[position] != DELETED)
+            position = (position + 1) & mask;
+
+        int used = table[position] == EMPTY ? 1 : 0;
+        table[position] = slot + 1;
+        return used;
+    }
+
+    protected static void remove(int[] table, int hash, int slot) {
+        final int mask = table.length - 1;
+        int position = hash & mask;
+        for (int e = 0; e < table.length; e++) {
+            if (table[position] == EMPTY)
+                return;
+
+            if (table[position] == slot + 1) {
+                table[position] = DELETED;
+                return;
+            }
+
+            position = (position + 1) & mask;
+        }
+    }
+
+    protected int[] rehash(int[] table, boolean byLabel) {
+        // tombstones are dropped here
+        int[] result = new int[tableSizeFor(numElements + 1)];
+        int used = 0;
+        for (int cell : table) {
+            if (cell == EMPTY || cell == DELETED)
+                continue;
+
+            int slot = cell - 1;
+            used += put(result, byLabel ? mix(labelHashes[slot]) : mix(storageIds[slot]), slot);
+        }
+
+        if (byLabel)
+            labelTableUsed = used;
+        else
+            idTableUsed = used;
+
+        return result;
+    }
+
+    protected void growColumns(int capacity) {
+        storageIds = Arrays.copyOf(storageIds, capacity);
+        labelPointers = Arrays.copyOf(labelPointers, capacity);
+        labelHashes = Arrays.copyOf(labelHashes, capacity);
+        frequencies = Arrays.copyOf(frequencies, capacity);
+        sequencesCounts = Arrays.copyOf(sequencesCounts, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        codeLengths = Arrays.copyOf(codeLengths, capacity);
+        codesOffsets = Arrays.copyOf(codesOffsets, capacity);
+        codesSizes = Arrays.copyOf(codesSizes, capacity);
+        codesCapacities = Arrays.copyOf(codesCapacities, capacity);
+        pointsOffsets = Arrays.copyOf(pointsOffsets, capacity);
+        pointsSizes = Arrays.copyOf(pointsSizes, capacity);
+        pointsCapacities = Arrays.copyOf(pointsCapacities, capacity);
+    }
+
+    protected void mapIndex(int index, int slot) {
+        if (index >= indexTable.length) {
+            int capacity = Math.max(index + 1, indexTable.length + (indexTable.length >> 1));
+            indexTable = Arrays.copyOf(indexTable, capacity);
+        }
+
+        indexTable[index] = slot + 1;
+    }
+
+    protected int copyIn(VocabWord element) {
+        int slot = insert(element.getLabel(), element.getStorageId());
+        frequencies[slot] = element.getElementFrequency();
+        sequencesCounts[slot] = element.getSequencesCount();
+        indexes[slot] = element.getIndex();
+
+        byte flag = 0;
+        if (element.isSpecial())
+            flag |= FLAG_SPECIAL;
+        if (element.isLabel())
+            flag |= FLAG_LABEL;
+        if (element.isInit())
+            flag |= FLAG_INIT;
+        flags[slot] = flag;
+
+        codeLengths[slot] = (short) element.getCodeLength();
+
+        List<Byte> codes = element.getCodes();
+        if (codes != null && !codes.isEmpty()) {
+            reserveCodes(slot, codes.size());
+            for (int e = 0; e < codes.size(); e++)
+                codesPool[codesOffsets[slot] + e] = codes.get(e);
+            codesSizes[slot] = (short) codes.size();
+        }
+
+        List<Integer> points = element.getPoints();
+        if (points != null && !points.isEmpty()) {
+            reservePoints(slot, points.size());
+            for (int e = 0; e < points.size(); e++)
+                pointsPool[pointsOffsets[slot] + e] = points.get(e);
+            pointsSizes[slot] = (short) points.size();
+        }
+
+        return slot;
+    }
+
+    /*
+        Huffman codes & points pools. Regions are never released, old region is just abandoned on relocation.
+     */
+
+    protected void reserveCodes(int slot, int capacity) {
+        if (capacity <= codesCapacities[slot])
+            return;
+
+        if ((long) codesPoolSize + capacity > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Huffman codes pool is exhausted");
+
+        if (codesPoolSize + capacity > codesPool.length)
+            codesPool = Arrays.copyOf(codesPool,
+                            (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) codesPoolSize + capacity,
+                                            codesPool.length + (long) (codesPool.length >> 1))));
+
+        System.arraycopy(codesPool, codesOffsets[slot], codesPool, codesPoolSize, codesSizes[slot]);
+        codesOffsets[slot] = codesPoolSize;
+        codesCapacities[slot] = (short) capacity;
+        codesPoolSize += capacity;
+    }
+
+    protected void reservePoints(int slot, int capacity) {
+        if (capacity <= pointsCapacities[slot])
+            return;
+
+        if ((long) pointsPoolSize + capacity > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Huffman points pool is exhausted");
+
+        if (pointsPoolSize + capacity > pointsPool.length)
+            pointsPool = Arrays.copyOf(pointsPool,
+                            (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) pointsPoolSize + capacity,
+                                            pointsPool.length + (long) (pointsPool.length >> 1))));
+
+        System.arraycopy(pointsPool, pointsOffsets[slot], pointsPool, pointsPoolSize, pointsSizes[slot]);
+        pointsOffsets[slot] = pointsPoolSize;
+        pointsCapacities[slot] = (short) capacity;
+        pointsPoolSize += capacity;
+    }
+
+    /*
+        Element-level accessors, used by OffHeapVocabWord
+     */
+
+    String label(int slot) {
+        long pointer = labelPointers[slot];
+        return pointer == NO_LABEL ? null : labels.load(pointer);
+    }
+
+    long storageId(int slot) {
+        return storageIds[slot];
+    }
+
+    double frequency(int slot) {
+        return frequencies[slot];
+    }
+
+    void setFrequency(int slot, double value) {
+        long stamp = lock.readLock();
+        try {
+            frequencies[slot] = value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void addFrequency(int slot, double value) {
+        long stamp = lock.writeLock();
+        try {
+            frequencies[slot] += value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    long sequencesCount(int slot) {
+        return sequencesCounts[slot];
+    }
+
+    void setSequencesCount(int slot, long value) {
+        long stamp = lock.readLock();
+        try {
+            sequencesCounts[slot] = value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void addSequencesCount(int slot, long value) {
+        long stamp = lock.writeLock();
+        try {
+            sequencesCounts[slot] += value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int index(int slot) {
+        return indexes[slot];
+    }
+
+    void setIndex(int slot, int index) {
+        long stamp = lock.readLock();
+        try {
+            indexes[slot] = index;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    boolean flag(int slot, byte flag) {
+        return (flags[slot] & flag) != 0;
+    }
+
+    void setFlag(int slot, byte flag, boolean value) {
+        // flags share a single byte, so this is an increment-like update
+        long stamp = lock.writeLock();
+        try {
+            if (value)
+                flags[slot] |= flag;
+            else
+                flags[slot] &= ~flag;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int codeLength(int slot) {
+        return codeLengths[slot];
+    }
+
+    void setCodeLength(int slot, short codeLength) {
+        long stamp = lock.writeLock();
+        try {
+            codeLengths[slot] = codeLength;
+
+            // same semantics as SequenceElement.setCodeLength(): lists are padded with zeroes
+            if (codesSizes[slot] < codeLength) {
+                reserveCodes(slot, codesSizes[slot] + codeLength);
+                Arrays.fill(codesPool, codesOffsets[slot] + codesSizes[slot],
+                                codesOffsets[slot] + codesSizes[slot] + codeLength, (byte) 0);
+                codesSizes[slot] += codeLength;
+            }
+
+            if (pointsSizes[slot] < codeLength) {
+                // one extra cell is reserved for Huffman tree root, Huffman adds it right after this call
+                reservePoints(slot, pointsSizes[slot] + codeLength + 1);
+                Arrays.fill(pointsPool, pointsOffsets[slot] + pointsSizes[slot],
+                                pointsOffsets[slot] + pointsSizes[slot] + codeLength, 0);
+                pointsSizes[slot] += codeLength;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int codesSize(int slot) {
+        return codesSizes[slot];
+    }
+
+    byte code(int slot, int position) {
+        if (position < 0 || position >= codesSizes[slot])
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + codesSizes[slot]);
+
+        return codesPool[codesOffsets[slot] + position];
+    }
+
+    byte setCode(int slot, int position, byte value) {
+        long stamp = lock.readLock();
+        try {
+            byte old = code(slot, position);
+            codesPool[codesOffsets[slot] + position] = value;
+            return old;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void addCode(int slot, byte value) {
+        long stamp = lock.writeLock();
+        try {
+            int size = codesSizes[slot];
+            if (size + 1 > codesCapacities[slot])
+                reserveCodes(slot, Math.max(4, size * 2));
+
+            codesPool[codesOffsets[slot] + size] = value;
+            codesSizes[slot] = (short) (size + 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setCodes(int slot, List<Byte> codes) {
+        long stamp = lock.writeLock();
+        try {
+            codesSizes[slot] = 0;
+            if (codes == null)
+                return;
+
+            reserveCodes(slot, codes.size());
+            for (int e = 0; e < codes.size(); e++)
+                codesPool[codesOffsets[slot] + e] = codes.get(e);
+            codesSizes[slot] = (short) codes.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int pointsSize(int slot) {
+        return pointsSizes[slot];
+    }
+
+    int point(int slot, int position) {
+        if (position < 0 || position >= pointsSizes[slot])
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + pointsSizes[slot]);
+
+        return pointsPool[pointsOffsets[slot] + position];
+    }
+
+    int setPoint(int slot, int position, int value) {
+        long stamp = lock.readLock();
+        try {
+            int old = point(slot, position);
+            pointsPool[pointsOffsets[slot] + position] = value;
+            return old;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void addPoint(int slot, int value) {
+        long stamp = lock.writeLock();
+        try {
+            int size = pointsSizes[slot];
+            if (size + 1 > pointsCapacities[slot])
+                reservePoints(slot, Math.max(4, size * 2));
+
+            pointsPool[pointsOffsets[slot] + size] = value;
+            pointsSizes[slot] = (short) (size + 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setPoints(int slot, int[] points) {
+        long stamp = lock.writeLock();
+        try {
+            pointsSizes[slot] = 0;
+            if (points == null)
+                return;
+
+            reservePoints(slot, points.length);
+            System.arraycopy(points, 0, pointsPool, pointsOffsets[slot], points.length);
+            pointsSizes[slot] = (short) points.length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method returns detached on-heap copy of the element
+     *
+     * @param slot
+     * @return
+     */
+    VocabWord detach(int slot) {
+        VocabWord word = new VocabWord(frequencies[slot], label(slot), storageIds[slot]);
+        word.setSequencesCount(sequencesCounts[slot]);
+        word.setIndex(indexes[slot]);
+        word.setSpecial(flag(slot, FLAG_SPECIAL));
+        word.markAsLabel(flag(slot, FLAG_LABEL));
+        word.setInit(flag(slot, FLAG_INIT));
+
+        List<Byte> codes = new ArrayList<>(codesSizes[slot]);
+        for (int e = 0; e < codesSizes[slot]; e++)
+            codes.add(codesPool[codesOffsets[slot] + e]);
+
+        word.setCodes(codes);
+        word.setPoints(Arrays.copyOfRange(pointsPool, pointsOffsets[slot], pointsOffsets[slot] + pointsSizes[slot]));
+
+        // setCodeLength() won't pad anything here, since lists are already filled
+        if (codeLengths[slot] <= codesSizes[slot] && codeLengths[slot] <= pointsSizes[slot])
+            word.setCodeLength(codeLengths[slot]);
+
+        return word;
+    }
+
+    /*
+        VocabCache implementation
+     */
+
+    @Override
+    public void loadVocab() {
+        // no-op, same as AbstractCache
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return numElements > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op, same as AbstractCache
+    }
+
+    /**
+     * Returns collection of labels available in this vocabulary. Labels are decoded lazily, during iteration
+     *
+     * @return
+     */
+    @Override
+    public Collection<String> words() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Integer> slots = new SlotIterator();
+                return new Iterator<String>() {
+                    private String next = advance();
+
+                    private String advance() {
+                        while (slots.hasNext()) {
+                            String label = label(slots.next());
+                            if (label != null)
+                                return label;
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next == null)
+                            throw new NoSuchElementException();
+
+                        String result = next;
+                        next = advance();
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && containsWord((String) o);
+            }
+
+            @Override
+            public int size() {
+                return numLabels;
+            }
+        };
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(String word, int increment) {
+        int slot = slotOf(word);
+        if (slot >= 0) {
+            addFrequency(slot, increment);
+            totalWordCount.addAndGet(increment);
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        int slot = slotOf(word);
+        return slot >= 0 ? (int) frequencies[slot] : 0;
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return word != null && slotOf(word) >= 0;
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        int slot = slotAtIndex(index);
+        return slot >= 0 ? label(slot) : null;
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        return view(slotAtIndex(index));
+    }
+
+    /**
+     * Returns Huffman index for specified label
+     *
+     * @param label the label to get index for
+     * @return >=0 if label exists, -1 if Huffman tree wasn't built yet, -2 if specified label wasn't found
+     */
+    @Override
+    public int indexOf(String label) {
+        int slot = slotOf(label);
+        return slot >= 0 ? indexes[slot] : -2;
+    }
+
+    /**
+     * Returns collection of elements stored in this vocabulary. Elements are views, created lazily, during iteration
+     *
+     * @return
+     */
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        return new AbstractCollection<VocabWord>() {
+            @Override
+            public Iterator<VocabWord> iterator() {
+                final Iterator<Integer> slots = new SlotIterator();
+                return new Iterator<VocabWord>() {
+                    @Override
+                    public boolean hasNext() {
+                        return slots.hasNext();
+                    }
+
+                    @Override
+                    public VocabWord next() {
+                        return view(slots.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return numElements;
+            }
+        };
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    public void setTotalWordOccurences(long value) {
+        totalWordCount.set(value);
+    }
+
+    @Override
+    public VocabWord wordFor(@NonNull String word) {
+        return view(slotOf(word));
+    }
+
+    @Override
+    public VocabWord wordFor(long id) {
+        return view(slotOf(id));
+    }
+
+    @Override
+    public void addWordToIndex(int index, String label) {
+        if (index < 0)
+            return;
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findByLabel(label);
+            if (slot >= 0) {
+                mapIndex(index, slot);
+                indexes[slot] = index;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void addWordToIndex(int index, long elementId) {
+        if (index < 0)
+            return;
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findById(elementId);
+            if (slot >= 0)
+                mapIndex(index, slot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        return numElements;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        int slot = slotOf(word);
+        return slot >= 0 ? (int) sequencesCounts[slot] : -1;
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        int slot = slotOf(word);
+        if (slot >= 0)
+            addSequencesCount(slot, howMuch);
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        int slot = slotOf(word);
+        if (slot >= 0)
+            setSequencesCount(slot, count);
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    public void setTotalDocCount(long by) {
+        documentsCounter.set(by);
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * This method adds specified element to vocabulary. Element state is copied, so element itself isn't retained.
+     * If element with the same storageId already exists - counters are merged, same as AbstractCache does.
+     *
+     * @param element the word to add
+     */
+    @Override
+    public void addToken(@NonNull VocabWord element) {
+        double frequency;
+        long stamp = lock.writeLock();
+        try {
+            int slot = findById(element.getStorageId());
+            if (slot < 0) {
+                slot = copyIn(element);
+            } else {
+                sequencesCounts[slot] += element.getSequencesCount();
+                frequencies[slot] += (int) element.getElementFrequency();
+            }
+
+            frequency = frequencies[slot];
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        totalWordCount.addAndGet((long) frequency);
+    }
+
+    @Override
+    public VocabWord tokenFor(String label) {
+        return wordFor(label);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String token) {
+        return containsWord(token);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        for (VocabWord element : vocabCache.vocabWords())
+            addToken(element);
+
+        documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public void updateWordsOccurrences() {
+        long total = 0;
+        for (Iterator<Integer> iterator = new SlotIterator(); iterator.hasNext();) {
+            long value = (long) frequencies[iterator.next()];
+            if (value > 0)
+                total += value;
+        }
+
+        totalWordCount.set(total);
+        log.info("Updated counter: [" + total + "]");
+    }
+
+    @Override
+    public void removeElement(String label) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findByLabel(label);
+            if (slot < 0)
+                throw new IllegalStateException("Can't get label: '" + label + "'");
+
+            totalWordCount.getAndAdd((long) frequencies[slot] * -1);
+
+            int index = indexes[slot];
+            if (slotAtIndex(index) == slot)
+                indexTable[index] = EMPTY;
+
+            remove(labelTable, mix(labelHashes[slot]), slot);
+            remove(idTable, mix(storageIds[slot]), slot);
+
+            flags[slot] |= FLAG_REMOVED;
+            numElements--;
+            numLabels--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeElement(VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    /**
+     * This method returns approximate number of bytes used by this vocabulary, both on-heap and off-heap
+     *
+     * @return
+     */
+    public long getMemoryUsage() {
+        long perSlot = 8 + 8 + 4 + 8 + 8 + 4 + 1 + 2 + (4 + 2 + 2) * 2;
+        return perSlot * storageIds.length + codesPool.length + pointsPool.length * 4L
+                        + (labelTable.length + idTable.length + indexTable.length) * 4L + labels.allocated();
+    }
+
+    /**
+     * Iterates over live slots
+     */
+    protected class SlotIterator implements Iterator<Integer> {
+        private final int limit = numSlots;
+        private int position = skip(0);
+
+        private int skip(int from) {
+            while (from < limit && (flags[from] & FLAG_REMOVED) != 0)
+                from++;
+
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < limit;
+        }
+
+        @Override
+        public Integer next() {
+            if (position >= limit)
+                throw new NoSuchElementException();
+
+            int result = position;
+            position = skip(position + 1);
+            return result;
+        }
+    }
+
+    /*
+        Java serialization: columns are written element by element, so removed elements and abandoned pools are dropped
+     */
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        long stamp = lock.readLock();
+        try {
+            out.writeInt(numElements);
+            for (Iterator<Integer> iterator = new SlotIterator(); iterator.hasNext();) {
+                int slot = iterator.next();
+                String label = label(slot);
+                out.writeBoolean(label != null);
+                if (label != null)
+                    out.writeUTF(label);
+
+                out.writeLong(storageIds[slot]);
+                out.writeDouble(frequencies[slot]);
+                out.writeLong(sequencesCounts[slot]);
+                out.writeInt(indexes[slot]);
+                out.writeByte(flags[slot]);
+                out.writeShort(codeLengths[slot]);
+
+                out.writeShort(codesSizes[slot]);
+                out.write(codesPool, codesOffsets[slot], codesSizes[slot]);
+
+                out.writeShort(pointsSizes[slot]);
+                for (int e = 0; e < pointsSizes[slot]; e++)
+                    out.writeInt(pointsPool[pointsOffsets[slot] + e]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        int count = in.readInt();
+        allocate(Math.max(16, count));
+
+        for (int i = 0; i < count; i++) {
+            String label = in.readBoolean() ? in.readUTF() : null;
+            long storageId = in.readLong();
+
+            int slot = insert(label, storageId);
+            frequencies[slot] = in.readDouble();
+            sequencesCounts[slot] = in.readLong();
+            indexes[slot] = in.readInt();
+            flags[slot] = in.readByte();
+            codeLengths[slot] = in.readShort();
+
+            int codesSize = in.readShort();
+            reserveCodes(slot, codesSize);
+            in.readFully(codesPool, codesOffsets[slot], codesSize);
+            codesSizes[slot] = (short) codesSize;
+
+            int pointsSize = in.readShort();
+            reservePoints(slot, pointsSize);
+            for (int e = 0; e < pointsSize; e++)
+                pointsPool[pointsOffsets[slot] + e] = in.readInt();
+            pointsSizes[slot] = (short) pointsSize;
+
+            if (indexes[slot] >= 0)
+                mapIndex(indexes[slot], slot);
+        }
+    }
+
+    /**
+     * Append-only off-heap storage for labels. Labels are stored as UTF-16 code units,
+     * so comparison against String doesn't need any decoding or allocation.
+     *
+     * Pointer layout: chunk number in upper 32 bits, offset within chunk in lower 32 bits
+     */
+    protected static class LabelStorage {
+        protected static final int CHUNK_SIZE = 1 << 24;
+
+        private ByteBuffer[] chunks = new ByteBuffer[0];
+        private ByteBuffer current;
+        private long allocated;
+
+        protected long store(String label) {
+            int required = 4 + label.length() * 2;
+            if (current == null || current.remaining() < required) {
+                current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, required)).order(ByteOrder.nativeOrder());
+                allocated += current.capacity();
+
+                ByteBuffer[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+                newChunks[chunks.length] = current;
+                chunks = newChunks;
+            }
+
+            int offset = current.position();
+            current.putInt(label.length());
+            for (int e = 0; e < label.length(); e++)
+                current.putChar(label.charAt(e));
+
+            return ((long) (chunks.length - 1) << 32) | offset;
+        }
+
+        protected String load(long pointer) {
+            ByteBuffer chunk = chunks[(int) (pointer >>> 32)];
+            int offset = (int) pointer;
+            int length = chunk.getInt(offset);
+
+            char[] chars = new char[length];
+            for (int e = 0; e < length; e++)
+                chars[e] = chunk.getChar(offset + 4 + e * 2);
+
+            return new String(chars);
+        }
+
+        protected boolean matches(long pointer, String label) {
+            ByteBuffer chunk = chunks[(int) (pointer >>> 32)];
+            int offset = (int) pointer;
+            if (chunk.getInt(offset) != label.length())
+                return false;
+
+            for (int e = 0; e < label.length(); e++)
+                if (chunk.getChar(offset + 4 + e * 2) != label.charAt(e))
+                    return false;
+
+            return true;
+        }
+
+        protected long allocated() {
+            return allocated;
+        }
+    }
+}
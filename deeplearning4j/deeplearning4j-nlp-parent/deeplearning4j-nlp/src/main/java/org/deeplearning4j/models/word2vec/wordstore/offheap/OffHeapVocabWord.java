@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.word2vec.wordstore.offheap;
+
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.io.ObjectStreamException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * This class is lightweight view of single OffHeapVocabCache element.
+ * It holds no state besides reference to the cache and element slot, all reads and writes go straight to the cache.
+ *
+ * PLEASE NOTE: Java serialization replaces view with detached VocabWord copy
+ */
+public class OffHeapVocabWord extends VocabWord {
+    private static final long serialVersionUID = -3391427402546117231L;
+
+    private final transient OffHeapVocabCache cache;
+    private final transient int slot;
+
+    OffHeapVocabWord(OffHeapVocabCache cache, int slot) {
+        this.cache = cache;
+        this.slot = slot;
+    }
+
+    @Override
+    public String getLabel() {
+        // label is decoded once per view
+        String word = super.getWord();
+        if (word == null) {
+            word = cache.label(slot);
+            super.setWord(word);
+        }
+
+        return word;
+    }
+
+    @Override
+    public String getWord() {
+        return getLabel();
+    }
+
+    @Override
+    public void setWord(String word) {
+        throw new UnsupportedOperationException("Labels of OffHeapVocabCache elements can't be changed");
+    }
+
+    @Override
+    public Long getStorageId() {
+        return cache.storageId(slot);
+    }
+
+    @Override
+    public void setStorageId(Long storageId) {
+        throw new UnsupportedOperationException("StorageId of OffHeapVocabCache elements can't be changed");
+    }
+
+    @Override
+    public double getElementFrequency() {
+        return cache.frequency(slot);
+    }
+
+    @Override
+    public void setElementFrequency(long value) {
+        cache.setFrequency(slot, value);
+    }
+
+    @Override
+    public void increaseElementFrequency(int by) {
+        cache.addFrequency(slot, by);
+    }
+
+    @Override
+    public long getSequencesCount() {
+        return cache.sequencesCount(slot);
+    }
+
+    @Override
+    public void setSequencesCount(long count) {
+        cache.setSequencesCount(slot, count);
+    }
+
+    @Override
+    public void incrementSequencesCount() {
+        incrementSequencesCount(1);
+    }
+
+    @Override
+    public void incrementSequencesCount(long count) {
+        cache.addSequencesCount(slot, count);
+    }
+
+    @Override
+    public boolean isSpecial() {
+        return cache.flag(slot, OffHeapVocabCache.FLAG_SPECIAL);
+    }
+
+    @Override
+    public void setSpecial(boolean special) {
+        cache.setFlag(slot, OffHeapVocabCache.FLAG_SPECIAL, special);
+    }
+
+    @Override
+    public boolean isLabel() {
+        return cache.flag(slot, OffHeapVocabCache.FLAG_LABEL);
+    }
+
+    @Override
+    public void markAsLabel(boolean isLabel) {
+        cache.setFlag(slot, OffHeapVocabCache.FLAG_LABEL, isLabel);
+    }
+
+    @Override
+    public boolean isInit() {
+        return cache.flag(slot, OffHeapVocabCache.FLAG_INIT);
+    }
+
+    @Override
+    public void setInit(boolean init) {
+        cache.setFlag(slot, OffHeapVocabCache.FLAG_INIT, init);
+    }
+
+    @Override
+    public int getIndex() {
+        return cache.index(slot);
+    }
+
+    @Override
+    public void setIndex(int index) {
+        cache.setIndex(slot, index);
+    }
+
+    @Override
+    public int getCodeLength() {
+        return cache.codeLength(slot);
+    }
+
+    @Override
+    public void setCodeLength(short codeLength) {
+        cache.setCodeLength(slot, codeLength);
+    }
+
+    @Override
+    public List<Byte> getCodes() {
+        return new AbstractList<Byte>() {
+            @Override
+            public Byte get(int index) {
+                return cache.code(slot, index);
+            }
+
+            @Override
+            public Byte set(int index, Byte element) {
+                return cache.setCode(slot, index, element);
+            }
+
+            @Override
+            public boolean add(Byte element) {
+                cache.addCode(slot, element);
+                return true;
+            }
+
+            @Override
+            public int size() {
+                return cache.codesSize(slot);
+            }
+        };
+    }
+
+    @Override
+    public void setCodes(List<Byte> codes) {
+        cache.setCodes(slot, codes);
+    }
+
+    @Override
+    public List<Integer> getPoints() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return cache.point(slot, index);
+            }
+
+            @Override
+            public Integer set(int index, Integer element) {
+                return cache.setPoint(slot, index, element);
+            }
+
+            @Override
+            public boolean add(Integer element) {
+                cache.addPoint(slot, element);
+                return true;
+            }
+
+            @Override
+            public int size() {
+                return cache.pointsSize(slot);
+            }
+        };
+    }
+
+    @Override
+    public void setPoints(List<Integer> points) {
+        int[] array = null;
+        if (points != null) {
+            array = new int[points.size()];
+            for (int e = 0; e < array.length; e++)
+                array[e] = points.get(e);
+        }
+
+        cache.setPoints(slot, array);
+    }
+
+    @Override
+    @JsonIgnore
+    public void setPoints(int[] points) {
+        cache.setPoints(slot, points);
+    }
+
+    @Override
+    public int compareTo(SequenceElement o) {
+        return Double.compare(getElementFrequency(), o.getElementFrequency());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof VocabWord))
+            return false;
+
+        String label = getLabel();
+        return label == null ? ((VocabWord) o).getWord() == null : label.equals(((VocabWord) o).getWord());
+    }
+
+    @Override
+    public int hashCode() {
+        String label = getLabel();
+        return label == null ? 0 : label.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "VocabWord{" + "wordFrequency=" + getElementFrequency() + ", index=" + getIndex() + ", word='"
+                        + getLabel() + '\'' + ", codeLength=" + getCodeLength() + '}';
+    }
+
+    /**
+     * This method returns detached on-heap copy of this element
+     *
+     * @return
+     */
+    public VocabWord detach() {
+        return cache.detach(slot);
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return detach();
+    }
+}
@@ -29,8 +29,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * These are temporary tests and will be removed after issue is solved.
@@ -103,6 +106,24 @@ public class FlatModelUtilsTest {
         printWords("energy", list, vec);
     }
 
+    @Test
+    public void testWordsNearestHnsw1() throws Exception {
+        vec.setModelUtils(new BasicModelUtils<VocabWord>());
+        Collection<String> exact = vec.wordsNearest("energy", 10);
+
+        vec.setModelUtils(new HnswModelUtils<VocabWord>());
+
+        Collection<String> list = vec.wordsNearest("energy", 10);
+        log.info("HNSW model results:");
+        printWords("energy", list, vec);
+
+        assertEquals(10, list.size());
+        Set<String> found = new HashSet<>(list);
+        found.retainAll(exact);
+        //approximate search: at least 80% recall of the exact nearest words
+        assertTrue("HNSW results " + list + " vs exact results " + exact, found.size() >= 8);
+    }
+
     private static void printWords(String target, Collection<String> list, WordVectors vec) {
         System.out.println("Words close to [" + target + "]:");
         for (String word : list) {
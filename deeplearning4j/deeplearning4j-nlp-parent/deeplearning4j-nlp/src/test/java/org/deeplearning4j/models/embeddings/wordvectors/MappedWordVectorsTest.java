@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.embeddings.wordvectors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class MappedWordVectorsTest {
+    private static final int NUM_WORDS = 200;
+    private static final int VECTOR_LENGTH = 16;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private INDArray vectors;
+
+    @Before
+    public void setUp() {
+        Nd4j.getRandom().setSeed(119);
+        vectors = Nd4j.rand(NUM_WORDS, VECTOR_LENGTH).subi(0.5);
+    }
+
+    protected File writeTextModel() throws Exception {
+        File file = testDir.newFile("vectors.txt");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println(NUM_WORDS + " " + VECTOR_LENGTH);
+            for (int i = 0; i < NUM_WORDS; i++) {
+                StringBuilder builder = new StringBuilder("word_" + i);
+                for (int j = 0; j < VECTOR_LENGTH; j++)
+                    builder.append(" ").append(vectors.getFloat(i, j));
+
+                writer.println(builder.toString());
+            }
+        }
+
+        return file;
+    }
+
+    protected File writeBinaryModel() throws Exception {
+        File file = testDir.newFile("vectors.bin");
+        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(file))) {
+            stream.write((NUM_WORDS + " " + VECTOR_LENGTH + "\n").getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.allocate(VECTOR_LENGTH * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < NUM_WORDS; i++) {
+                stream.write(("word_" + i + " ").getBytes(StandardCharsets.UTF_8));
+
+                buffer.clear();
+                for (int j = 0; j < VECTOR_LENGTH; j++)
+                    buffer.putFloat(vectors.getFloat(i, j));
+
+                stream.write(buffer.array());
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void testTextModel() throws Exception {
+        File source = writeTextModel();
+        File mapped = new File(testDir.getRoot(), "vectors.mapped");
+
+        WordVectorSerializer.convertToMappedModel(source, mapped);
+        WordVectors reference = WordVectorSerializer.readWord2VecModel(source);
+
+        try (MappedWordVectors vectors = WordVectorSerializer.loadMappedModel(mapped)) {
+            assertEquals(NUM_WORDS, vectors.vocab().numWords());
+
+            for (int i = 0; i < NUM_WORDS; i++) {
+                String word = "word_" + i;
+                assertTrue(vectors.hasWord(word));
+                assertEquals(i, vectors.indexOf(word));
+                assertEquals(reference.getWordVectorMatrix(word), vectors.getWordVectorMatrix(word));
+            }
+
+            assertFalse(vectors.hasWord("word_" + NUM_WORDS));
+
+            assertEquals(reference.similarity("word_1", "word_7"), vectors.similarity("word_1", "word_7"), 1e-5);
+            assertEquals(reference.similarity("word_3", "word_190"), vectors.similarity("word_3", "word_190"), 1e-5);
+
+            Collection<String> expected = reference.wordsNearest("word_11", 10);
+            Collection<String> result = vectors.wordsNearest("word_11", 10);
+            assertEquals(new ArrayList<>(expected), new ArrayList<>(result));
+        }
+    }
+
+    @Test
+    public void testBinaryModel() throws Exception {
+        File source = writeBinaryModel();
+        File mapped = new File(testDir.getRoot(), "vectors.mapped");
+
+        try (MappedWordVectors vectors = WordVectorSerializer.loadMappedModel(source, mapped)) {
+            assertTrue(mapped.exists());
+            assertEquals(NUM_WORDS, vectors.vocab().numWords());
+
+            for (int i = 0; i < NUM_WORDS; i++)
+                assertEquals(vectors.getSyn0().getRow(i), this.vectors.getRow(i));
+        }
+    }
+
+    @Test
+    public void testFileStaysIntact() throws Exception {
+        File source = writeTextModel();
+        File mapped = new File(testDir.getRoot(), "vectors.mapped");
+
+        WordVectorSerializer.convertToMappedModel(source, mapped);
+        byte[] before = FileUtils.readFileToByteArray(mapped);
+
+        try (MappedWordVectors vectors = WordVectorSerializer.loadMappedModel(mapped)) {
+            vectors.wordsNearest("word_5", 5);
+            vectors.wordsNearestSum("word_5", 5);
+            vectors.similarity("word_5", "word_6");
+        }
+
+        byte[] after = FileUtils.readFileToByteArray(mapped);
+        assertTrue(Arrays.equals(before, after));
+    }
+
+    @Test
+    public void testStaleCache() throws Exception {
+        File source = writeTextModel();
+        File mapped = new File(testDir.getRoot(), "vectors.mapped");
+
+        // broken cache, older than source
+        FileUtils.writeStringToFile(mapped, "garbage", StandardCharsets.UTF_8);
+        mapped.setLastModified(source.lastModified() - 10000L);
+
+        try (MappedWordVectors vectors = WordVectorSerializer.loadMappedModel(source, mapped)) {
+            assertEquals(NUM_WORDS, vectors.vocab().numWords());
+            assertEquals(this.vectors.getRow(3), vectors.getWordVectorMatrix("word_3"));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownFormat() throws Exception {
+        File source = testDir.newFile("garbage.txt");
+        FileUtils.writeStringToFile(source, "this is not a model", StandardCharsets.UTF_8);
+
+        WordVectorSerializer.convertToMappedModel(source, new File(testDir.getRoot(), "vectors.mapped"));
+    }
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.word2vec.wordstore.offheap;
+
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+public class OffHeapVocabCacheTest {
+
+    @Test
+    public void testNumWords() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(1.0, "test"));
+
+        assertEquals(2, cache.numWords());
+        assertTrue(cache.containsWord("word"));
+        assertFalse(cache.containsWord("tester"));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "word"));
+        cache.incrementWordCount("word", 3);
+
+        assertEquals(1, cache.numWords());
+        assertEquals(6, cache.wordFrequency("word"));
+
+        VocabWord word = cache.wordFor("word");
+        word.increaseElementFrequency(4);
+        word.incrementSequencesCount(2);
+
+        assertEquals(10, cache.wordFrequency("word"));
+        assertEquals(2, cache.docAppearedIn("word"));
+        assertEquals(word, cache.wordFor(word.getStorageId()));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        // small initial capacity, so columns are reallocated many times while counters are updated
+        final OffHeapVocabCache cache = new OffHeapVocabCache(16);
+        cache.addToken(new VocabWord(1.0, "word"));
+        final VocabWord word = cache.wordFor("word");
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int e = 0; e < 5000; e++) {
+                        if (thread == 0) {
+                            cache.addToken(new VocabWord(1.0, "token_" + e));
+                        } else {
+                            cache.incrementWordCount("word", 1);
+                            word.incrementSequencesCount(1);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(5001, cache.numWords());
+        assertEquals(1 + 3 * 5000, cache.wordFrequency("word"));
+        assertEquals(3 * 5000, cache.docAppearedIn("word"));
+    }
+
+    @Test
+    public void testHuffman() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+
+        assertEquals(3, cache.numWords());
+
+        Huffman huffman = new Huffman(cache.tokens());
+        huffman.build();
+        huffman.applyIndexes(cache);
+
+        assertEquals("tester", cache.wordAtIndex(0));
+        assertEquals("test", cache.wordAtIndex(1));
+        assertEquals("word", cache.wordAtIndex(2));
+
+        VocabWord word = cache.tokenFor("tester");
+        assertEquals(0, word.getIndex());
+        assertEquals("tester", cache.elementAtIndex(0).getLabel());
+    }
+
+    @Test
+    public void testHuffmanEquality() throws Exception {
+        AbstractCache<VocabWord> reference = new AbstractCache.Builder<VocabWord>().build();
+        OffHeapVocabCache cache = new OffHeapVocabCache(16);
+
+        for (int e = 0; e < 5000; e++) {
+            // distinct frequencies, so Huffman tree is deterministic
+            reference.addToken(new VocabWord(e * 3 + 1, "word_" + e));
+            cache.addToken(new VocabWord(e * 3 + 1, "word_" + e));
+        }
+
+        Huffman huffmanA = new Huffman(reference.vocabWords());
+        huffmanA.build();
+        huffmanA.applyIndexes(reference);
+
+        Huffman huffmanB = new Huffman(cache.vocabWords());
+        huffmanB.build();
+        huffmanB.applyIndexes(cache);
+
+        assertEquals(reference.numWords(), cache.numWords());
+        assertEquals(reference.totalWordOccurrences(), cache.totalWordOccurrences());
+
+        for (int e = 0; e < reference.numWords(); e++) {
+            VocabWord expected = reference.elementAtIndex(e);
+            VocabWord actual = cache.elementAtIndex(e);
+
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getCodeLength(), actual.getCodeLength());
+            assertEquals(expected.getCodes(), actual.getCodes());
+            assertEquals(expected.getPoints(), actual.getPoints());
+        }
+    }
+
+    @Test
+    public void testWordsOccurencies() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+
+        assertEquals(3, cache.numWords());
+        assertEquals(6, cache.totalWordOccurrences());
+    }
+
+    @Test
+    public void testRemoval() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+
+        assertEquals(3, cache.numWords());
+        assertEquals(6, cache.totalWordOccurrences());
+
+        cache.removeElement("tester");
+        assertEquals(2, cache.numWords());
+        assertEquals(3, cache.totalWordOccurrences());
+        assertFalse(cache.containsWord("tester"));
+        assertEquals(2, cache.vocabWords().size());
+
+        // removed labels can be added back
+        cache.addToken(new VocabWord(3.0, "tester"));
+        assertEquals(3, cache.numWords());
+        assertEquals(3, cache.wordFrequency("tester"));
+    }
+
+    @Test
+    public void testLabels() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+
+        Collection<String> collection = cache.words();
+        assertEquals(3, collection.size());
+
+        assertTrue(collection.contains("word"));
+        assertTrue(collection.contains("test"));
+        assertTrue(collection.contains("tester"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        VocabWord label = new VocabWord(1.0, "DOC_1");
+        label.markAsLabel(true);
+        label.setSpecial(true);
+
+        cache.addToken(label);
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+        cache.incrementTotalDocCount(7);
+
+        Huffman huffman = new Huffman(cache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(cache);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(cache);
+        }
+
+        OffHeapVocabCache restored;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            restored = (OffHeapVocabCache) ois.readObject();
+        }
+
+        assertEquals(cache.numWords(), restored.numWords());
+        assertEquals(cache.totalWordOccurrences(), restored.totalWordOccurrences());
+        assertEquals(7, restored.totalNumberOfDocs());
+
+        for (int e = 0; e < cache.numWords(); e++) {
+            VocabWord expected = cache.elementAtIndex(e);
+            VocabWord actual = restored.elementAtIndex(e);
+
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getCodes(), actual.getCodes());
+            assertEquals(expected.getPoints(), actual.getPoints());
+            assertEquals(expected.isLabel(), actual.isLabel());
+            assertEquals(expected.isSpecial(), actual.isSpecial());
+        }
+
+        // views are replaced with detached copies
+        bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(cache.wordFor("DOC_1"));
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            VocabWord word = (VocabWord) ois.readObject();
+            assertFalse(word instanceof OffHeapVocabWord);
+            assertEquals("DOC_1", word.getLabel());
+            assertTrue(word.isLabel());
+        }
+    }
+}
@@ -20,7 +20,11 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.api.StepFunction;
 import org.deeplearning4j.util.ThreadUtils;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -30,13 +34,22 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.util.AtomicThrowable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -44,6 +57,12 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * This GradientsAccumulator is suited for CUDA backend.
  *
+ * If bucket boundaries are set, updates are split into buckets (groups of layers), each with its own residual.
+ * Buckets are encoded and sent by background thread, last layers first, while worker goes on with next iteration.
+ * So communication overlaps with computation, at the cost of updates arriving to other workers one iteration later.
+ * Each worker has its own encoder thread, so threshold adaptation of EncodingHandler works per worker, as usual.
+ * Since every update produces up to one message per bucket, queues and workspaces hold queueSize * numBuckets messages.
+ *
  * @author raver119@gmail.com
  */
 @Slf4j
@@ -60,6 +79,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     protected ThreadLocal<Integer> index = new ThreadLocal<>();
     protected long initialMemory = 100 * 1024 * 1024L;
     protected int queueSize = 5;
+    // max number of messages in each queue: queueSize, or queueSize * numBuckets for bucketed updates
+    protected int slots;
     protected Double boundary = 1.0;
 
     protected Queue<INDArray> externalSource;
@@ -75,6 +96,15 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
     protected final AtomicThrowable throwable = new AtomicThrowable();
 
+    // bucket boundaries within flattened params, null if updates are encoded as a whole
+    protected long[] buckets;
+    protected ThreadLocal<INDArray[]> residuals = new ThreadLocal<>();
+    // messages decoded while worker was waiting for its encoder, applied at next applyUpdate() call
+    protected ThreadLocal<INDArray> drained = new ThreadLocal<>();
+    protected ThreadLocal<Integer> drainedMessages = new ThreadLocal<>();
+    protected final Map<Long, ExecutorService> encoders = new ConcurrentHashMap<>();
+    protected final Map<Long, Future<?>> inFlight = new ConcurrentHashMap<>();
+
     protected boolean isDebug = false;
     protected final boolean relocatable;
 
@@ -97,12 +127,35 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
     protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
                     int queueSize, Double boundary) {
+        this(parties, handler, initialMemory, queueSize, boundary, null);
+    }
+
+    protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
+                    int queueSize, Double boundary, long[] buckets) {
+        if (buckets != null && !(handler instanceof EncodingHandler))
+            throw new DL4JInvalidConfigException("Bucketed updates require EncodingHandler, but got ["
+                            + handler.getClass().getSimpleName() + "]");
+
         this.parties = parties;
         this.handler = handler;
-        this.initialMemory = initialMemory;
         this.queueSize = queueSize;
         this.boundary = boundary;
 
+        if (buckets != null) {
+            this.buckets = buckets;
+
+            // each bucket is sent as separate message, capped at bucketLength / 16 values
+            long maxBucket = 0;
+            for (int b = 1; b < buckets.length; b++)
+                maxBucket = Math.max(maxBucket, buckets[b] - buckets[b - 1]);
+
+            this.slots = queueSize * (buckets.length - 1);
+            initialMemory = Math.max(initialMemory, ((maxBucket / 16) + 65536) * slots * 4);
+        } else
+            this.slots = queueSize;
+
+        this.initialMemory = initialMemory;
+
         // maybe not the best idea in the world, but we'll use cyclic workspace of 25MB to receive updates
         WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().initialSize(initialMemory)
                         .policyReset(ResetPolicy.ENDOFBUFFER_REACHED).policyAllocation(AllocationPolicy.STRICT)
@@ -124,7 +177,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         int curDev = Nd4j.getAffinityManager().getDeviceForCurrentThread();
 
         for (int i = 0; i < parties; i++) {
-            messages.add(new LinkedBlockingQueue<INDArray>(queueSize));
+            messages.add(new LinkedBlockingQueue<INDArray>(slots));
 
             // we don't want device index to step out of boundaries here
             int cDevice = numDevices > 1 ? i % numDevices : 0;
@@ -166,6 +219,71 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         return getOptimalBufferSize(model.params().length(), numWorkers, queueSize);
     }
 
+    /**
+     * This method groups consecutive layers into buckets of at least bucketSize params.
+     * Layers are never split, so single layer with more than bucketSize params gets bucket of its own.
+     *
+     * @param layerParams number of params of each layer, in flattened params order
+     * @param bucketSize minimal number of params per bucket
+     * @return bucket boundaries: 0, end of first bucket, ..., total number of params
+     */
+    public static long[] getBucketBoundaries(long[] layerParams, long bucketSize) {
+        if (bucketSize < 1)
+            throw new DL4JInvalidConfigException("bucketSize should be positive value");
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long current = 0;
+        long total = 0;
+        for (long n : layerParams) {
+            current += n;
+            total += n;
+            if (current >= bucketSize) {
+                boundaries.add(total);
+                current = 0;
+            }
+        }
+
+        if (current > 0)
+            boundaries.add(total);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = boundaries.get(i);
+
+        return result;
+    }
+
+    /**
+     * This method returns layer-aligned bucket boundaries for a given model
+     *
+     * @param model MultiLayerNetwork or ComputationGraph
+     * @param bucketSize minimal number of params per bucket
+     * @return
+     */
+    public static long[] getBucketBoundaries(Model model, long bucketSize) {
+        List<Long> layerParams = new ArrayList<>();
+        if (model instanceof MultiLayerNetwork) {
+            for (Layer layer : ((MultiLayerNetwork) model).getLayers())
+                layerParams.add((long) layer.numParams());
+        } else if (model instanceof ComputationGraph) {
+            // graph params are laid out in topological order
+            ComputationGraph graph = (ComputationGraph) model;
+            for (int idx : graph.topologicalSortOrder()) {
+                GraphVertex vertex = graph.getVertices()[idx];
+                if (vertex.hasLayer())
+                    layerParams.add((long) vertex.getLayer().numParams());
+            }
+        } else
+            throw new DL4JInvalidConfigException("Unsupported model type: [" + model.getClass().getSimpleName() + "]");
+
+        long[] params = new long[layerParams.size()];
+        for (int i = 0; i < params.length; i++)
+            params[i] = layerParams.get(i);
+
+        return getBucketBoundaries(params, bucketSize);
+    }
+
     @Override
     public void fallbackToSingleConsumerMode(boolean reallyFallback) {
         if (externalSource != null && externalSource instanceof Registerable)
@@ -279,6 +397,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                 cnt++;
             }
 
+            cnt += applyDrained(updates);
+
             if (cnt > 0 && isDebug)
                 log.info("Local updates to be applied: {}", cnt);
 
@@ -363,6 +483,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                 cnt++;
             }
 
+            cnt += applyDrained(updates);
+
             if (cnt > 0 && isDebug)
                 log.info("Local updates to be applied: {}", cnt);
 
@@ -415,6 +537,24 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
     }
 
+    /**
+     * This method adds updates drained by this worker in {@link #waitForBuckets()}, if any
+     *
+     * @return number of messages drained since last call
+     */
+    protected int applyDrained(INDArray updates) {
+        Integer cnt = drainedMessages.get();
+        if (cnt == null || cnt == 0)
+            return 0;
+
+        INDArray d = drained.get();
+        updates.addi(d.reshape(updates.shape()));
+        Nd4j.getMemoryManager().memset(d);
+        drainedMessages.set(0);
+
+        return cnt;
+    }
+
     /**
      * This method allows to pass external updates to accumulator, they will be populated across all workers using this GradientsAccumulator instance
      *
@@ -456,6 +596,12 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     @Override
     public void storeUpdate(INDArray array) {
         try {
+            if (buckets != null) {
+                waitForRegistration();
+                storeBuckets(array);
+                return;
+            }
+
             if (accumulator.get() == null) {
                 // we don't want accumulator to be attached to workspaces
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
@@ -469,13 +615,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             if (isDebug)
                 log.info("thread {} locking at Register", Thread.currentThread().getId());
 
-            // block until ParallelWrapper sends us message about number of threads in this cycle
-            if (!bypassMode.get())
-                while (!registered.get()) {
-                    ThreadUtils.uncheckedSleep(1);
-                    if (throwable.isTriggered())
-                        throw new RuntimeException(throwable.get());
-                }
+            waitForRegistration();
 
             if (isDebug)
                 log.info("thread {} unlocking at Register", Thread.currentThread().getId());
@@ -491,6 +631,131 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
     }
 
+    protected void waitForRegistration() {
+        // block until ParallelWrapper sends us message about number of threads in this cycle
+        if (!bypassMode.get())
+            while (!registered.get()) {
+                ThreadUtils.uncheckedSleep(1);
+                if (throwable.isTriggered())
+                    throw new RuntimeException(throwable.get());
+            }
+    }
+
+    /**
+     * This method adds given updates to bucket residuals, and hands buckets over to background encoder of this worker.
+     * There's no barrier here: other workers will pick these updates up at their next applyUpdate() call.
+     *
+     * @param array
+     */
+    protected void storeBuckets(INDArray array) throws Exception {
+        // previous update of this worker should be fully encoded before we touch residuals again
+        waitForBuckets();
+
+        if (residuals.get() == null) {
+            if (buckets[buckets.length - 1] != array.lengthLong())
+                throw new DL4JInvalidConfigException("Bucket boundaries cover [" + buckets[buckets.length - 1]
+                                + "] params, but updates have length [" + array.lengthLong() + "]");
+
+            // residuals can't be views: encoding works with whole buffers
+            INDArray[] r = new INDArray[buckets.length - 1];
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (int b = 0; b < r.length; b++)
+                    r[b] = Nd4j.create(1, (int) (buckets[b + 1] - buckets[b]));
+
+                drained.set(Nd4j.create(1, array.lengthLong()));
+            }
+            residuals.set(r);
+            drainedMessages.set(0);
+        }
+
+        final INDArray[] r = residuals.get();
+        INDArray flat = array.reshape(1, array.lengthLong());
+        for (int b = 0; b < r.length; b++)
+            r[b].addi(flat.get(NDArrayIndex.all(), NDArrayIndex.interval(buckets[b], buckets[b + 1])));
+
+        final EncodingHandler encodingHandler = (EncodingHandler) handler;
+        final int device = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        long threadId = Thread.currentThread().getId();
+        inFlight.put(threadId, getEncoder(threadId).submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Nd4j.getAffinityManager().unsafeSetDevice(device);
+
+                    encodingHandler.broadcastUpdates(r, buckets);
+                } catch (Exception e) {
+                    throwable.setIfFirst(e);
+                }
+            }
+        }));
+    }
+
+    /**
+     * This method returns encoder of given worker. Each worker has single encoder thread, so thread-local
+     * threshold state of EncodingHandler is kept across iterations, same as without buckets.
+     */
+    protected ExecutorService getEncoder(long threadId) {
+        ExecutorService encoder = encoders.get(threadId);
+        if (encoder == null) {
+            encoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            encoders.put(threadId, encoder);
+        }
+
+        return encoder;
+    }
+
+    /**
+     * This method blocks until previous update of current worker is fully sent.
+     *
+     * While waiting, worker keeps decoding messages from its own queue: queues are bounded,
+     * so encoder might wait for space in this queue, and nobody else is going to free it.
+     */
+    protected void waitForBuckets() throws Exception {
+        Future<?> future = inFlight.get(Thread.currentThread().getId());
+        if (future != null) {
+            while (true) {
+                try {
+                    future.get(1, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    drain();
+                }
+            }
+        }
+
+        if (throwable.isTriggered())
+            throw new RuntimeException(throwable.get());
+    }
+
+    protected void drain() {
+        if (index.get() == null || drained.get() == null)
+            return;
+
+        BlockingQueue<INDArray> queue = messages.get(index.get());
+        INDArray compressed;
+        while ((compressed = queue.poll()) != null) {
+            decode(compressed, drained.get());
+            drainedMessages.set(drainedMessages.get() + 1);
+        }
+    }
+
+    protected void decode(INDArray compressed, INDArray target) {
+        int encoding = compressed.data().getInt(3);
+        if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
+            Nd4j.getExecutioner().thresholdDecode(compressed, target);
+        else if (encoding == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(compressed, target);
+        else
+            throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+    }
+
     /**
      * This method accepts updates suitable for StepFunction and puts them to the queue, which is used in backpropagation loop
      * <p>
@@ -513,7 +778,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
                 try (MemoryWorkspace workspace = workspaces.get(i).notifyScopeEntered()) {
                     // we might just scope out of workspace here, instead of throwing error out
-                    if (array.data().length() > (initialMemory / queueSize)
+                    if (array.data().length() > (initialMemory / slots)
                                     / Nd4j.sizeOfDataType(array.data().dataType()))
                         throw new ND4JIllegalStateException("Not enough memory to handle update: ["
                                         + array.data().length() * Nd4j.sizeOfDataType(array.data().dataType())
@@ -542,8 +807,31 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
      */
     @Override
     public void reset() {
+        // buckets still being encoded should land in queues before we clear them, workers aren't draining queues anymore
+        for (Future<?> future : inFlight.values()) {
+            while (true) {
+                try {
+                    future.get(1, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    for (int i = 0; i < parties; i++)
+                        messages.get(i).clear();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        inFlight.clear();
+
+        for (ExecutorService encoder : encoders.values())
+            encoder.shutdown();
+        encoders.clear();
+
         // just replace accumulator, gc will do the rest
         accumulator = new ThreadLocal<>();
+        residuals = new ThreadLocal<>();
+        drained = new ThreadLocal<>();
+        drainedMessages = new ThreadLocal<>();
 
         // resetting this counter too
         workersCounter.set(0);
@@ -564,6 +852,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         protected int queueSize = 5;
         protected MessageHandler handler;
         protected Double boundary = null;
+        protected long[] buckets = null;
 
         /**
          * This
@@ -634,6 +923,28 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             return this;
         }
 
+        /**
+         * This method enables bucketed updates: each bucket is encoded and sent separately, in background,
+         * overlapping with next iteration. See {@link EncodedGradientsAccumulator#getBucketBoundaries(Model, long)}
+         *
+         * PLEASE NOTE: queues and buffer memory will hold queueSize * numBuckets messages
+         *
+         * Default value: null (updates are encoded as a whole)
+         * @param boundaries bucket boundaries within flattened params, starting with 0 and ending with params length
+         * @return
+         */
+        public Builder bucketBoundaries(@NonNull long... boundaries) {
+            if (boundaries.length < 2 || boundaries[0] != 0)
+                throw new DL4JInvalidConfigException("Bucket boundaries should start with 0 and define at least one bucket");
+
+            for (int i = 1; i < boundaries.length; i++)
+                if (boundaries[i] <= boundaries[i - 1])
+                    throw new DL4JInvalidConfigException("Bucket boundaries should be strictly increasing");
+
+            this.buckets = boundaries;
+            return this;
+        }
+
         public EncodedGradientsAccumulator build() {
             if (handler == null) {
                 if (boundary == null)
@@ -643,7 +954,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             }
 
             EncodedGradientsAccumulator accumulator =
-                            new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary);
+                            new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary, buckets);
 
             return accumulator;
         }
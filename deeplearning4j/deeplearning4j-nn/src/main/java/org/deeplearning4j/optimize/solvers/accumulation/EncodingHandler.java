@@ -127,14 +127,35 @@ public class EncodingHandler implements MessageHandler {
         compressor.configure(threshold);
     }
 
-    public INDArray encodeUpdates(INDArray updates) {
-        // special op should be called here for encoding
+    protected void initializeThreadState() {
         if (bitmapMode.get() == null) {
             bitmapMode.set(new AtomicBoolean(true));
             currentThreshold.set(new AtomicDouble(threshold));
             iterations.set(new AtomicLong(0));
             lastStep.set(new AtomicLong(0));
         }
+    }
+
+    /**
+     * This method steps threshold down, if updates are sparse enough and enough iterations passed since last step
+     *
+     * @param encodingRatio percentage of updates that were encoded
+     */
+    protected void stepDown(double encodingRatio) {
+        // and we don't step down too early, so we wait for 50 iterations at least to step down
+        if (minThreshold <= currentThreshold.get().get()
+                        && minThreshold < currentThreshold.get().get() - thresholdStep
+                        && iterations.get().get() > lastStep.get().get() + stepDelay
+                        && encodingRatio < stepTrigger) {
+            currentThreshold.get().addAndGet(-thresholdStep);
+            lastStep.set(iterations.get());
+            log.debug("Threshold steps down to {}", currentThreshold.get().get());
+        }
+    }
+
+    public INDArray encodeUpdates(INDArray updates) {
+        // special op should be called here for encoding
+        initializeThreadState();
 
         iterations.get().incrementAndGet();
 
@@ -178,15 +199,7 @@ public class EncodingHandler implements MessageHandler {
 
 
                 // after encoding is finished, and updates are sparse enough - let's step down a bit
-                // and we don't step down too early, so we wait for 50 iterations at least to step down
-                if (minThreshold <= currentThreshold.get().get()
-                                && minThreshold < currentThreshold.get().get() - thresholdStep
-                                && iterations.get().get() > lastStep.get().get() + stepDelay
-                                && encodingRatio < stepTrigger) {
-                    currentThreshold.get().addAndGet(-thresholdStep);
-                    lastStep.set(iterations.get());
-                    log.debug("Threshold steps down to {}", currentThreshold.get().get());
-                }
+                stepDown(encodingRatio);
             }
         } else {
             DataBuffer buffer = Nd4j.getDataBufferFactory().createInt(updates.lengthLong() / 16 + 5);
@@ -207,6 +220,51 @@ public class EncodingHandler implements MessageHandler {
         return encoded;
     }
 
+    /**
+     * This method encodes one bucket of a larger update, i.e. params [offset, offset + updates.length()) of the model,
+     * with current threshold of this thread
+     *
+     * @see #encodeUpdates(INDArray, long, long, double)
+     */
+    public INDArray encodeUpdates(INDArray updates, long offset, long totalLength) {
+        initializeThreadState();
+        return encodeUpdates(updates, offset, totalLength, currentThreshold.get().get());
+    }
+
+    /**
+     * This method encodes one bucket of a larger update, i.e. params [offset, offset + updates.length()) of the model.
+     *
+     * Buckets always use sparse threshold encoding, capped at length / 16 values (same size as bitmap encoding would take),
+     * whatever is left stays in the bucket residual. Indices are shifted by offset, and header holds totalLength,
+     * so receivers decode message into full updates array exactly as any other threshold-encoded message.
+     *
+     * @param updates bucket residual, must be a standalone array, not a view
+     * @param offset offset of this bucket within flattened params
+     * @param totalLength length of flattened params
+     * @param threshold encoding threshold
+     * @return encoded message, or null if bucket is too sparse to share anything
+     */
+    protected INDArray encodeUpdates(INDArray updates, long offset, long totalLength, double threshold) {
+        int limit = (int) Math.max(updates.lengthLong() / 16, 2);
+        if (boundary != null)
+            limit = Math.min(limit, (int) Math.max(updates.lengthLong() * boundary, 2));
+
+        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(updates, threshold, limit);
+        if (encoded == null)
+            return null;
+
+        DataBuffer buffer = encoded.data();
+        int cnt = buffer.getInt(0);
+        for (int e = 4; e < cnt + 4; e++) {
+            // indices are 1-based, and sign holds sign of update
+            int idx = buffer.getInt(e);
+            buffer.put(e, (int) (idx > 0 ? idx + offset : idx - offset));
+        }
+        buffer.put(1, (int) totalLength);
+
+        return encoded;
+    }
+
     @Deprecated
     public INDArray decodeUpdates(INDArray message) {
         // special op should be called here for decoding
@@ -237,4 +295,40 @@ public class EncodingHandler implements MessageHandler {
         } else
             return false;
     }
+
+    /**
+     * This method encodes and sends all buckets of one update, last bucket first.
+     *
+     * Threshold adaptation works as for whole updates: threshold decay is decided once per update, from the overall
+     * encoding ratio, and each shakeFrequency iterations buckets are encoded with 1/3 of current threshold.
+     * Since bitmap messages can't be shifted, dense buckets are capped instead of falling back to bitmap encoding.
+     *
+     * @param buckets bucket residuals, standalone arrays
+     * @param boundaries bucket boundaries within flattened params: 0, end of first bucket, ..., params length
+     * @return number of messages sent
+     */
+    public int broadcastUpdates(INDArray[] buckets, long[] boundaries) {
+        initializeThreadState();
+        long iteration = iterations.get().incrementAndGet();
+
+        boolean shake = shakeFrequency != 0 && iteration % shakeFrequency == 0;
+        double bucketThreshold = shake ? currentThreshold.get().get() / 3 : currentThreshold.get().get();
+
+        long totalLength = boundaries[boundaries.length - 1];
+        long encoded = 0;
+        int sent = 0;
+        for (int b = buckets.length - 1; b >= 0; b--) {
+            INDArray message = encodeUpdates(buckets[b], boundaries[b], totalLength, bucketThreshold);
+            if (message != null) {
+                encoded += message.data().getInt(0);
+                sendMessage(message);
+                sent++;
+            }
+        }
+
+        if (!shake && encoded < totalLength / 16)
+            stepDown(encoded * 100.0 / totalLength);
+
+        return sent;
+    }
 }
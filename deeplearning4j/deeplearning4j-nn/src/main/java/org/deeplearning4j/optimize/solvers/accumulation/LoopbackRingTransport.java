@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This RingTransport implementation connects workers within single JVM.
+ * Only serialized chunks are passed between workers, so nothing is shared besides bytes: same as over the wire.
+ */
+public class LoopbackRingTransport implements RingTransport {
+    protected final BlockingQueue<byte[]> inbox;
+    protected final BlockingQueue<byte[]> outbox;
+
+    protected LoopbackRingTransport(@NonNull BlockingQueue<byte[]> inbox, @NonNull BlockingQueue<byte[]> outbox) {
+        this.inbox = inbox;
+        this.outbox = outbox;
+    }
+
+    /**
+     * This method creates ring of given number of workers
+     *
+     * @param numWorkers
+     * @return transports, indexed by rank
+     */
+    public static LoopbackRingTransport[] createRing(int numWorkers) {
+        List<BlockingQueue<byte[]>> queues = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++)
+            queues.add(new LinkedBlockingQueue<byte[]>());
+
+        LoopbackRingTransport[] transports = new LoopbackRingTransport[numWorkers];
+        for (int i = 0; i < numWorkers; i++)
+            transports[i] = new LoopbackRingTransport(queues.get(i), queues.get((i + 1) % numWorkers));
+
+        return transports;
+    }
+
+    @Override
+    public void send(@NonNull byte[] chunk) throws InterruptedException {
+        // sender is free to reuse its buffer
+        outbox.put(Arrays.copyOf(chunk, chunk.length));
+    }
+
+    @Override
+    public byte[] receive(long timeout) throws InterruptedException, TimeoutException {
+        byte[] chunk = inbox.poll(timeout, TimeUnit.MILLISECONDS);
+        if (chunk == null)
+            throw new TimeoutException("No chunk received within " + timeout + " ms");
+
+        return chunk;
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.util.AtomicThrowable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This MessageHandler implementation does the same as EncodingHandler, but instead of passing encoded messages
+ * to local workers only, it merges them with messages of other nodes via {@link SparseRingReducer}.
+ * Merged messages (including our own updates) are then passed to local workers, as usual.
+ *
+ * Ring rounds are driven by single background thread per node, not by workers: each round shares messages of all local
+ * workers encoded since previous round, possibly none. So nodes don't have to make the same number of calls,
+ * and there's one collective operation per round, regardless of number of local workers.
+ *
+ * PLEASE NOTE: {@link #finishEpoch()} should be called on every node at the end of each epoch, even if node had no data.
+ * Rounds go on until all nodes are finished, so they all stop at the same round. If ring fails or times out,
+ * all subsequent calls of this handler fail.
+ */
+public class RingEncodingHandler extends EncodingHandler {
+    // how long ring thread waits for new messages before running empty round, in milliseconds
+    protected static final long IDLE_TIMEOUT = 10L;
+
+    protected final SparseRingReducer reducer;
+    protected final List<INDArray> pending = new ArrayList<>();
+    protected final AtomicThrowable throwable = new AtomicThrowable();
+    protected final AtomicBoolean finishing = new AtomicBoolean(false);
+    protected Thread ring;
+
+    /**
+     * This method builds new RingEncodingHandler instance
+     *
+     * @param reducer ring of this node
+     * @param threshold Initial encoding threshold
+     */
+    public RingEncodingHandler(@NonNull SparseRingReducer reducer, double threshold) {
+        super(threshold);
+        this.reducer = reducer;
+    }
+
+    /**
+     * This method builds new RingEncodingHandler instance
+     *
+     * @param reducer ring of this node
+     * @param threshold Initial encoding threshold
+     * @param minThreshold Minimal encoding threshold (for threshold decay)
+     * @param thresholdStep Decay step for threshold decay
+     * @param stepTrigger Sparse/Dense ratio that will trigger decay step. In range 0..100
+     * @param stepDelay Minimal number of iterations between decay steps
+     * @param shakeFrequency How ofter we'll be sending dense updates with lower threshold
+     * @param boundary
+     */
+    public RingEncodingHandler(@NonNull SparseRingReducer reducer, double threshold, double minThreshold,
+                    double thresholdStep, double stepTrigger, int stepDelay, int shakeFrequency, Double boundary) {
+        super(threshold, minThreshold, thresholdStep, stepTrigger, stepDelay, shakeFrequency, boundary);
+        this.reducer = reducer;
+    }
+
+    /**
+     * Encoded messages are held back until next ring round
+     *
+     * @param message
+     */
+    @Override
+    protected void sendMessage(INDArray message) {
+        synchronized (pending) {
+            pending.add(message);
+            pending.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean broadcastUpdates(INDArray updates) {
+        checkFailure();
+        startRing();
+        return super.broadcastUpdates(updates);
+    }
+
+    @Override
+    public int broadcastUpdates(INDArray[] buckets, long[] boundaries) {
+        checkFailure();
+        startRing();
+        return super.broadcastUpdates(buckets, boundaries);
+    }
+
+    /**
+     * This method blocks until all nodes in ring called this method, and all messages held back were merged
+     * and passed to local workers
+     */
+    public void finishEpoch() {
+        checkFailure();
+
+        Thread thread;
+        synchronized (this) {
+            startRing();
+            thread = ring;
+        }
+
+        finishing.set(true);
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            synchronized (this) {
+                ring = null;
+            }
+            finishing.set(false);
+        }
+
+        checkFailure();
+    }
+
+    protected synchronized void startRing() {
+        if (ring != null)
+            return;
+
+        ring = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runRounds();
+            }
+        }, "RingEncodingHandler-" + reducer.rank);
+        ring.setDaemon(true);
+        ring.start();
+    }
+
+    /**
+     * This method runs ring rounds, until all nodes are finished or ring fails
+     */
+    protected void runRounds() {
+        try {
+            while (true) {
+                List<INDArray> messages;
+                boolean done;
+                synchronized (pending) {
+                    // nothing to share yet, so we give workers a moment instead of spinning empty rounds
+                    if (pending.isEmpty() && !finishing.get())
+                        pending.wait(IDLE_TIMEOUT);
+
+                    messages = new ArrayList<>(pending);
+                    pending.clear();
+                    done = finishing.get() && messages.isEmpty();
+                }
+
+                SparseRingReducer.Round round = reducer.allReduce(messages, done);
+                for (INDArray message : round.getMessages())
+                    accumulator.receiveUpdate(message);
+
+                if (round.getNumDone() == reducer.numWorkers)
+                    return;
+            }
+        } catch (Exception e) {
+            throwable.setIfFirst(e);
+        }
+    }
+
+    protected void checkFailure() {
+        if (throwable.isTriggered())
+            throw new RuntimeException(throwable.get());
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This interface describes link between worker and its neighbours in ring, as used by {@link SparseRingReducer}.
+ * Chunks are passed around as serialized bytes, so any transport capable of moving byte arrays will do.
+ *
+ * PLEASE NOTE: chunks should be received in the same order as they were sent by previous worker
+ */
+public interface RingTransport {
+
+    /**
+     * This method sends serialized chunk to next worker in ring
+     *
+     * @param chunk
+     */
+    void send(byte[] chunk) throws InterruptedException;
+
+    /**
+     * This method blocks until next serialized chunk from previous worker in ring arrives
+     *
+     * @param timeout maximal time to wait, in milliseconds
+     * @return
+     * @throws TimeoutException if nothing arrived within given time
+     */
+    byte[] receive(long timeout) throws InterruptedException, TimeoutException;
+}
@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class does ring all-reduce of threshold/bitmap encoded updates: reduce-scatter followed by all-gather.
+ * Instead of every update being sent to every worker, each worker sends 2 * (N - 1) chunks of merged updates to next worker in ring,
+ * so traffic doesn't go through single node.
+ *
+ * Updates are kept sparse on every hop: entries for the same index are merged, opposite signs cancel out.
+ * Merge is exact for messages that share threshold, messages with different thresholds are carried separately.
+ * Result is a list of threshold-encoded messages, decodable as usual, which sum up to updates of all workers.
+ * Each index appears at most once per message: index updated k times with the same threshold ends up
+ * in message with k times larger threshold, so messages are safe to decode in parallel.
+ *
+ * Traffic per worker is up to 2 * (N - 1) / N of merged updates size, and merged updates get denser as N grows.
+ * So it's below broadcast of own updates to N - 1 workers only if updates of different workers overlap or cancel out,
+ * and up to 2x above it if they don't overlap at all.
+ *
+ * Every round also counts workers that flagged themselves as done, so all workers can agree on the last round,
+ * even if they had different amount of updates to share.
+ *
+ * PLEASE NOTE: this class isn't bound to any transport, chunks are serialized and passed via given {@link RingTransport}
+ */
+@Slf4j
+public class SparseRingReducer {
+    public static final long DEFAULT_TIMEOUT = 300000L;
+
+    protected final int rank;
+    protected final int numWorkers;
+    protected final long length;
+    protected final long chunkSize;
+    protected final RingTransport transport;
+    protected final long timeout;
+
+    // number of encoded entries sent by this worker so far
+    @Getter
+    protected long sentEntries = 0;
+
+    // number of serialized bytes sent by this worker so far
+    @Getter
+    protected long sentBytes = 0;
+
+    /**
+     * @param rank position of this worker in ring, in range 0..numWorkers-1
+     * @param numWorkers number of workers in ring
+     * @param length length of updates array
+     * @param transport link to previous (rank - 1) and next (rank + 1) workers in ring
+     */
+    public SparseRingReducer(int rank, int numWorkers, long length, @NonNull RingTransport transport) {
+        this(rank, numWorkers, length, transport, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param rank position of this worker in ring, in range 0..numWorkers-1
+     * @param numWorkers number of workers in ring
+     * @param length length of updates array
+     * @param transport link to previous (rank - 1) and next (rank + 1) workers in ring
+     * @param timeout how long to wait for chunk from previous worker, in milliseconds
+     */
+    public SparseRingReducer(int rank, int numWorkers, long length, @NonNull RingTransport transport, long timeout) {
+        if (numWorkers < 1 || rank < 0 || rank >= numWorkers)
+            throw new DL4JInvalidConfigException("Rank [" + rank + "] doesn't fit into ring of [" + numWorkers + "] workers");
+
+        this.rank = rank;
+        this.numWorkers = numWorkers;
+        this.length = length;
+        this.chunkSize = (length + numWorkers - 1) / numWorkers;
+        this.transport = transport;
+        this.timeout = timeout;
+    }
+
+    /**
+     * This method merges given updates of this worker with updates of all other workers in ring.
+     * All workers in ring should call this method, otherwise it'll fail once timeout is reached.
+     *
+     * @param updates threshold or bitmap encoded messages of this worker, possibly empty
+     * @return threshold encoded messages, identical for all workers
+     */
+    public List<INDArray> allReduce(@NonNull List<INDArray> updates) throws InterruptedException, TimeoutException {
+        return allReduce(updates, false).getMessages();
+    }
+
+    /**
+     * This method merges given updates of this worker with updates of all other workers in ring,
+     * and counts workers that are done.
+     *
+     * @param updates threshold or bitmap encoded messages of this worker, possibly empty
+     * @param done true if this worker has nothing more to share
+     * @return threshold encoded messages and number of workers that are done, identical for all workers
+     */
+    public Round allReduce(@NonNull List<INDArray> updates, boolean done)
+                    throws InterruptedException, TimeoutException {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int c = 0; c < numWorkers; c++)
+            chunks.add(new Chunk(new HashMap<Integer, int[]>(), done ? 1 : 0));
+
+        for (INDArray message : updates)
+            scatter(message, chunks);
+
+        // reduce-scatter: after N - 1 steps this worker holds fully merged chunk rank + 1
+        for (int s = 0; s < numWorkers - 1; s++) {
+            send(chunks.get(mod(rank - s)));
+
+            Chunk chunk = chunks.get(mod(rank - s - 1));
+            Chunk received = receive();
+            for (Map.Entry<Integer, int[]> e : received.entries.entrySet())
+                chunk.entries.put(e.getKey(), merge(chunk.entries.containsKey(e.getKey())
+                                ? chunk.entries.get(e.getKey()) : new int[0], e.getValue()));
+            chunk.done += received.done;
+        }
+
+        // all-gather: merged chunks go around the ring once more, replacing partial ones
+        for (int s = 0; s < numWorkers - 1; s++) {
+            send(chunks.get(mod(rank + 1 - s)));
+            chunks.set(mod(rank - s), receive());
+        }
+
+        // chunks are consecutive index ranges, so concatenation keeps entries sorted
+        Map<Integer, List<int[]>> byThreshold = new HashMap<>();
+        for (Chunk chunk : chunks)
+            for (Map.Entry<Integer, int[]> e : chunk.entries.entrySet()) {
+                if (!byThreshold.containsKey(e.getKey()))
+                    byThreshold.put(e.getKey(), new ArrayList<int[]>());
+                byThreshold.get(e.getKey()).add(e.getValue());
+            }
+
+        Map<Integer, int[]> merged = new HashMap<>();
+        for (Map.Entry<Integer, List<int[]>> e : byThreshold.entrySet()) {
+            int cnt = 0;
+            for (int[] entries : e.getValue())
+                cnt += entries.length;
+
+            int[] all = new int[cnt];
+            int pos = 0;
+            for (int[] entries : e.getValue()) {
+                System.arraycopy(entries, 0, all, pos, entries.length);
+                pos += entries.length;
+            }
+            merged.put(e.getKey(), all);
+        }
+
+        List<INDArray> result = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> e : splitRepeated(merged).entrySet())
+            if (e.getValue().length > 0)
+                result.add(toMessage(e.getKey(), e.getValue()));
+
+        // fully merged chunks carry the same count
+        return new Round(result, chunks.get(0).done);
+    }
+
+    /**
+     * This method moves repeated entries out, so each index appears at most once per threshold:
+     * index repeated k times with threshold t becomes single entry with threshold k * t.
+     * Entries moved to threshold that's already there are merged, and split again if they repeat there.
+     */
+    protected static Map<Integer, int[]> splitRepeated(Map<Integer, int[]> byThreshold) {
+        Map<Integer, int[]> result = new HashMap<>(byThreshold);
+        boolean repeated = true;
+        while (repeated) {
+            repeated = false;
+            for (Map.Entry<Integer, int[]> e : new ArrayList<>(result.entrySet())) {
+                int[] entries = e.getValue();
+
+                // entries are sorted, and merged entries of one index always share sign
+                Map<Integer, List<Integer>> byMultiplicity = new HashMap<>();
+                int from = 0;
+                while (from < entries.length) {
+                    int to = from;
+                    while (to < entries.length && entries[to] == entries[from])
+                        to++;
+
+                    if (!byMultiplicity.containsKey(to - from))
+                        byMultiplicity.put(to - from, new ArrayList<Integer>());
+                    byMultiplicity.get(to - from).add(entries[from]);
+                    from = to;
+                }
+
+                if (byMultiplicity.size() == 1 && byMultiplicity.containsKey(1))
+                    continue;
+
+                repeated = true;
+                result.remove(e.getKey());
+                float threshold = Float.intBitsToFloat(e.getKey());
+                for (Map.Entry<Integer, List<Integer>> m : byMultiplicity.entrySet()) {
+                    int[] single = new int[m.getValue().size()];
+                    for (int i = 0; i < single.length; i++)
+                        single[i] = m.getValue().get(i);
+
+                    int key = Float.floatToIntBits(threshold * m.getKey());
+                    result.put(key, result.containsKey(key) ? merge(result.get(key), single) : single);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    protected int mod(int chunk) {
+        return ((chunk % numWorkers) + numWorkers) % numWorkers;
+    }
+
+    protected void send(Chunk chunk) throws InterruptedException {
+        byte[] bytes = serialize(chunk);
+        for (int[] entries : chunk.entries.values())
+            sentEntries += entries.length;
+        sentBytes += bytes.length;
+
+        transport.send(bytes);
+    }
+
+    protected Chunk receive() throws InterruptedException, TimeoutException {
+        return deserialize(transport.receive(timeout));
+    }
+
+    /**
+     * This method serializes chunk as: number of workers done, number of thresholds,
+     * then threshold bits, number of entries and entries for each one
+     */
+    protected static byte[] serialize(Chunk chunk) {
+        int size = 2;
+        for (int[] entries : chunk.entries.values())
+            if (entries.length > 0)
+                size += 2 + entries.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size * 4);
+        buffer.putInt(chunk.done);
+        buffer.putInt(0);
+        int cnt = 0;
+        for (Map.Entry<Integer, int[]> e : chunk.entries.entrySet()) {
+            if (e.getValue().length == 0)
+                continue;
+
+            buffer.putInt(e.getKey());
+            buffer.putInt(e.getValue().length);
+            for (int entry : e.getValue())
+                buffer.putInt(entry);
+            cnt++;
+        }
+        buffer.putInt(4, cnt);
+
+        return buffer.array();
+    }
+
+    protected static Chunk deserialize(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Chunk chunk = new Chunk(new HashMap<Integer, int[]>(), buffer.getInt());
+        int cnt = buffer.getInt();
+        for (int i = 0; i < cnt; i++) {
+            int thresholdBits = buffer.getInt();
+            int[] entries = new int[buffer.getInt()];
+            for (int j = 0; j < entries.length; j++)
+                entries[j] = buffer.getInt();
+
+            chunk.entries.put(thresholdBits, entries);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * This method splits entries of given message into chunks, merging them with entries already there
+     */
+    protected void scatter(INDArray message, List<Chunk> chunks) {
+        int[] header = header(message);
+        if (header[1] != length)
+            throw new DL4JInvalidConfigException("Message encodes [" + header[1] + "] updates, but ring expects ["
+                            + length + "]");
+
+        int[] entries = sort(entries(message));
+
+        int from = 0;
+        while (from < entries.length) {
+            int c = (int) ((Math.abs(entries[from]) - 1) / chunkSize);
+            int to = from;
+            while (to < entries.length && (Math.abs(entries[to]) - 1) / chunkSize == c)
+                to++;
+
+            Map<Integer, int[]> chunk = chunks.get(c).entries;
+            chunk.put(header[2], merge(chunk.containsKey(header[2]) ? chunk.get(header[2]) : new int[0],
+                            Arrays.copyOfRange(entries, from, to)));
+            from = to;
+        }
+    }
+
+    protected static int[] header(INDArray message) {
+        DataBuffer buffer = message.data();
+        return new int[] {buffer.getInt(0), buffer.getInt(1), buffer.getInt(2), buffer.getInt(3)};
+    }
+
+    /**
+     * This method returns signed 1-based indices of given message, as in threshold encoding
+     */
+    protected static int[] entries(INDArray message) {
+        int[] header = header(message);
+        if (header[3] == ThresholdCompression.FLEXIBLE_ENCODING) {
+            int[] data = message.data().asInt();
+            return Arrays.copyOfRange(data, 4, 4 + header[0]);
+        } else if (header[3] == ThresholdCompression.BITMAP_ENCODING) {
+            // bitmap messages are dense anyway, so we just decode them. bitmap decoder fills FLOAT arrays only
+            DataBuffer buffer = Nd4j.getDataBufferFactory().createFloat(header[1]);
+            INDArray dense = Nd4j.createArrayFromShapeBuffer(buffer,
+                            Nd4j.getShapeInfoProvider().createShapeInformation(new long[] {1, header[1]}));
+            Nd4j.getExecutioner().bitmapDecode(message, dense);
+
+            double[] values = dense.data().asDouble();
+            int cnt = 0;
+            for (double v : values)
+                if (v != 0.0)
+                    cnt++;
+
+            int[] entries = new int[cnt];
+            int pos = 0;
+            for (int i = 0; i < values.length; i++)
+                if (values[i] != 0.0)
+                    entries[pos++] = values[i] > 0 ? i + 1 : -(i + 1);
+
+            return entries;
+        } else
+            throw new DL4JInvalidConfigException("Unknown compression header received: " + header[3]);
+    }
+
+    protected INDArray toMessage(int thresholdBits, int[] entries) {
+        int[] data = new int[entries.length + 4];
+        data[0] = entries.length;
+        data[1] = (int) length;
+        data[2] = thresholdBits;
+        data[3] = ThresholdCompression.FLEXIBLE_ENCODING;
+        System.arraycopy(entries, 0, data, 4, entries.length);
+
+        DataBuffer buffer = Nd4j.getDataBufferFactory().createInt(data);
+        return Nd4j.createArrayFromShapeBuffer(buffer,
+                        Nd4j.getShapeInfoProvider().createShapeInformation(new long[] {1, data.length}));
+    }
+
+    /**
+     * This method sorts signed entries by index, keeping signs in place
+     */
+    protected static int[] sort(int[] entries) {
+        long[] keys = new long[entries.length];
+        for (int i = 0; i < entries.length; i++)
+            keys[i] = ((long) Math.abs(entries[i]) << 1) | (entries[i] < 0 ? 1 : 0);
+
+        Arrays.sort(keys);
+
+        int[] result = new int[entries.length];
+        for (int i = 0; i < keys.length; i++)
+            result[i] = (keys[i] & 1) == 1 ? -(int) (keys[i] >> 1) : (int) (keys[i] >> 1);
+
+        return result;
+    }
+
+    /**
+     * This method merges 2 sorted lists of entries: each entry stands for +/- threshold at its index,
+     * so entries of opposite signs at the same index cancel each other out
+     */
+    protected static int[] merge(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < b.length) {
+            int idx;
+            if (j >= b.length || (i < a.length && Math.abs(a[i]) <= Math.abs(b[j])))
+                idx = Math.abs(a[i]);
+            else
+                idx = Math.abs(b[j]);
+
+            int net = 0;
+            while (i < a.length && Math.abs(a[i]) == idx)
+                net += a[i++] > 0 ? 1 : -1;
+            while (j < b.length && Math.abs(b[j]) == idx)
+                net += b[j++] > 0 ? 1 : -1;
+
+            for (int c = 0; c < Math.abs(net); c++)
+                out[k++] = net > 0 ? idx : -idx;
+        }
+
+        return Arrays.copyOf(out, k);
+    }
+
+    /**
+     * Entries of one chunk of updates, by threshold bits, and number of workers done that contributed to it
+     */
+    @AllArgsConstructor
+    protected static class Chunk {
+        protected Map<Integer, int[]> entries;
+        protected int done;
+    }
+
+    /**
+     * Result of single allReduce round
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Round {
+        // merged messages of all workers
+        private List<INDArray> messages;
+        // number of workers that flagged themselves as done in this round
+        private int numDone;
+    }
+}
@@ -18,10 +18,16 @@ package org.deeplearning4j.optimize.solvers.accumulation;
 
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.optimize.stepfunctions.GradientStepFunction;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -88,6 +94,199 @@ public class EncodedGradientsAccumulatorTest {
     }
 
 
+    @Test
+    public void testBucketBoundaries() throws Exception {
+        long[] boundaries = EncodedGradientsAccumulator.getBucketBoundaries(new long[] {10, 5, 100, 0, 3, 2}, 12);
+        assertArrayEquals(new long[] {0, 15, 115, 120}, boundaries);
+
+        boundaries = EncodedGradientsAccumulator.getBucketBoundaries(new long[] {10, 5, 100, 0, 3, 2}, 1000);
+        assertArrayEquals(new long[] {0, 120}, boundaries);
+    }
+
+    /**
+     * Bucket messages should be decodable into full updates array, as any other message
+     */
+    @Test
+    public void testBucketEncoding() throws Exception {
+        EncodingHandler handler = new EncodingHandler(1e-3);
+
+        INDArray bucket = getGradients(400, 10, 2e-3);
+        INDArray encoded = handler.encodeUpdates(bucket, 600, 1000);
+        assertEquals(10, encoded.data().getInt(0));
+        assertEquals(1000, encoded.data().getInt(1));
+
+        INDArray updates = Nd4j.create(1000);
+        Nd4j.getExecutioner().thresholdDecode(encoded, updates);
+        for (int i = 0; i < 1000; i++)
+            assertEquals("Failed at " + i, i >= 600 && i < 610 ? 1e-3 : 0.0, updates.getDouble(i), 1e-5);
+
+        // whatever wasn't sent stays in residual
+        assertEquals(1e-2, bucket.sumNumber().doubleValue(), 1e-5);
+    }
+
+    @Test
+    public void testBucketedStore() throws Exception {
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(1)
+                        .messageHandler(new EncodingHandler(1e-3)).bucketBoundaries(0, 400, 1000).build();
+        accumulator.fallbackToSingleConsumerMode(true);
+        accumulator.touch();
+
+        INDArray gradients = Nd4j.create(1, 1000);
+        for (int i = 0; i < 10; i++) {
+            gradients.putScalar(i, 2e-3);
+            gradients.putScalar(990 + i, 2e-3);
+        }
+
+        accumulator.storeUpdate(gradients);
+        accumulator.inFlight.get(Thread.currentThread().getId()).get();
+        assertEquals(2, accumulator.messages.get(0).size());
+
+        // last layers go first
+        INDArray first = accumulator.messages.get(0).peek();
+        assertTrue(first.data().getInt(4) > 400);
+
+        INDArray updates = Nd4j.create(1, 1000);
+        while (!accumulator.messages.get(0).isEmpty())
+            Nd4j.getExecutioner().thresholdDecode(accumulator.messages.get(0).poll(), updates);
+
+        assertEquals(2e-2, updates.sumNumber().doubleValue(), 1e-5);
+        assertEquals(1e-3, updates.getDouble(995), 1e-5);
+        assertEquals(0.0, updates.getDouble(500), 1e-5);
+    }
+
+    /**
+     * More buckets than queueSize, several iterations without applyUpdate() in between: this shouldn't block
+     */
+    @Test(timeout = 30000L)
+    public void testBucketedQueueCapacity() throws Exception {
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(1)
+                        .messageHandler(new EncodingHandler(1e-3)).memoryParameters(1024 * 1024L, 2)
+                        .bucketBoundaries(getBoundaries(8, 200)).build();
+        accumulator.fallbackToSingleConsumerMode(true);
+        accumulator.touch();
+
+        INDArray params = Nd4j.create(1, 1600);
+        INDArray updates = Nd4j.create(1, 1600);
+        for (int i = 0; i < 10; i++) {
+            accumulator.storeUpdate(getBucketedGradients(8, 200, 5, 2e-3));
+            if (i % 3 == 2)
+                accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+        }
+
+        accumulator.waitForBuckets();
+        accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+
+        // everything stored was either applied or is still waiting in residuals
+        double stored = 10 * 8 * 5 * 2e-3;
+        assertEquals(stored, params.sumNumber().doubleValue() + residualSum(accumulator), 1e-4);
+        assertTrue(params.sumNumber().doubleValue() > 0.0);
+    }
+
+    @Test(timeout = 30000L)
+    public void testBucketedMultipleWorkers() throws Exception {
+        final int numWorkers = 2;
+        final int iterations = 10;
+        final EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(numWorkers)
+                        .messageHandler(new EncodingHandler(1e-3)).memoryParameters(1024 * 1024L, 2)
+                        .bucketBoundaries(getBoundaries(8, 200)).build();
+        accumulator.fallbackToSingleConsumerMode(true);
+
+        final CyclicBarrier barrier = new CyclicBarrier(numWorkers);
+        final INDArray[] applied = new INDArray[numWorkers];
+        final double[] residuals = new double[numWorkers];
+        final AtomicReference<Throwable> exception = new AtomicReference<>();
+
+        Thread[] threads = new Thread[numWorkers];
+        for (int e = 0; e < numWorkers; e++) {
+            final int w = e;
+            threads[e] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        accumulator.touch();
+
+                        INDArray params = Nd4j.create(1, 1600);
+                        INDArray updates = Nd4j.create(1, 1600);
+                        for (int i = 0; i < iterations; i++) {
+                            accumulator.storeUpdate(getBucketedGradients(8, 200, 5 + w, 2e-3));
+                            accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+                        }
+
+                        // all updates of all workers are in queues after this barrier
+                        accumulator.waitForBuckets();
+                        barrier.await();
+                        accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+
+                        applied[w] = params;
+                        residuals[w] = residualSum(accumulator);
+                    } catch (Throwable t) {
+                        exception.set(t);
+                    }
+                }
+            });
+            threads[e].start();
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        if (exception.get() != null)
+            throw new RuntimeException(exception.get());
+
+        double sent = 0.0;
+        for (int w = 0; w < numWorkers; w++)
+            sent += iterations * 8 * (5 + w) * 2e-3 - residuals[w];
+
+        // each worker gets updates of all workers, including its own
+        for (int w = 0; w < numWorkers; w++)
+            assertEquals("Worker " + w, sent, applied[w].sumNumber().doubleValue(), 1e-4);
+    }
+
+    @Test
+    public void testBucketedThresholdDecay() throws Exception {
+        EncodingHandler handler = new EncodingHandler(1e-3, 1e-5, 1e-4, 10.0, 2, 0);
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(1).messageHandler(handler)
+                        .memoryParameters(1024 * 1024L, 2).bucketBoundaries(getBoundaries(8, 200)).build();
+
+        long[] boundaries = getBoundaries(8, 200);
+        for (int i = 0; i < 10; i++) {
+            INDArray[] buckets = new INDArray[8];
+            for (int b = 0; b < buckets.length; b++)
+                buckets[b] = getGradients(200, 2, 2e-3);
+
+            handler.broadcastUpdates(buckets, boundaries);
+            accumulator.messages.get(0).clear();
+        }
+
+        // updates are sparse, so threshold goes down same way as without buckets
+        assertTrue(handler.currentThreshold.get().get() < 1e-3);
+    }
+
+    protected long[] getBoundaries(int numBuckets, long bucketLength) {
+        long[] boundaries = new long[numBuckets + 1];
+        for (int b = 1; b <= numBuckets; b++)
+            boundaries[b] = b * bucketLength;
+
+        return boundaries;
+    }
+
+    protected INDArray getBucketedGradients(int numBuckets, int bucketLength, int numPositives, double value) {
+        INDArray grad = Nd4j.create(1, numBuckets * bucketLength);
+        for (int b = 0; b < numBuckets; b++)
+            for (int i = 0; i < numPositives; i++)
+                grad.putScalar(b * bucketLength + i, value);
+
+        return grad;
+    }
+
+    protected double residualSum(EncodedGradientsAccumulator accumulator) {
+        double sum = 0.0;
+        for (INDArray r : accumulator.residuals.get())
+            sum += r.sumNumber().doubleValue();
+
+        return sum;
+    }
+
     protected INDArray getGradients(int length, int numPositives, double value) {
         INDArray grad = Nd4j.create(length);
 
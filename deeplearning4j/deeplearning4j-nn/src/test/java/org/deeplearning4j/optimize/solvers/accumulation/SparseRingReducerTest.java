@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.optimize.stepfunctions.GradientStepFunction;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Ring of workers within single JVM, connected via loopback transport
+ */
+@Slf4j
+public class SparseRingReducerTest {
+
+    private static List<List<INDArray>> runRing(List<List<INDArray>> updates, int length) throws Exception {
+        return runRing(updates, createRing(updates.size(), length));
+    }
+
+    private static SparseRingReducer[] createRing(int numWorkers, long length) {
+        LoopbackRingTransport[] transports = LoopbackRingTransport.createRing(numWorkers);
+        SparseRingReducer[] reducers = new SparseRingReducer[numWorkers];
+        for (int i = 0; i < numWorkers; i++)
+            reducers[i] = new SparseRingReducer(i, numWorkers, length, transports[i]);
+
+        return reducers;
+    }
+
+    private static List<List<INDArray>> runRing(final List<List<INDArray>> updates, SparseRingReducer[] reducers)
+                    throws Exception {
+        final int numWorkers = updates.size();
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<List<INDArray>>> futures = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            final int rank = i;
+            final SparseRingReducer reducer = reducers[rank];
+            futures.add(executor.submit(new Callable<List<INDArray>>() {
+                @Override
+                public List<INDArray> call() throws Exception {
+                    return reducer.allReduce(updates.get(rank));
+                }
+            }));
+        }
+
+        List<List<INDArray>> results = new ArrayList<>();
+        for (Future<List<INDArray>> future : futures)
+            results.add(future.get());
+
+        executor.shutdown();
+        return results;
+    }
+
+    private static INDArray decode(List<INDArray> messages, int length) {
+        INDArray updates = Nd4j.create(1, length);
+        for (INDArray message : messages)
+            Nd4j.getExecutioner().thresholdDecode(message, updates);
+        return updates;
+    }
+
+    @Test
+    public void testAllReduce() throws Exception {
+        int length = 1003;
+        Random rng = new Random(12345);
+
+        for (int numWorkers : new int[] {1, 2, 5}) {
+            INDArray expected = Nd4j.create(1, length);
+            List<List<INDArray>> updates = new ArrayList<>();
+            for (int w = 0; w < numWorkers; w++) {
+                INDArray gradients = Nd4j.create(1, length);
+                for (int i = 0; i < 50; i++)
+                    gradients.putScalar(rng.nextInt(length), rng.nextBoolean() ? 2e-3 : -2e-3);
+
+                INDArray encoded = Nd4j.getExecutioner().thresholdEncode(gradients, 1e-3);
+                Nd4j.getExecutioner().thresholdDecode(encoded, expected);
+                updates.add(Collections.singletonList(encoded));
+            }
+
+            for (List<INDArray> result : runRing(updates, length))
+                assertEquals(expected, decode(result, length));
+        }
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        int length = 100;
+        INDArray gradients = Nd4j.create(1, length);
+        for (int i = 0; i < 10; i++)
+            gradients.putScalar(i * 7, 2e-3);
+
+        INDArray positive = Nd4j.getExecutioner().thresholdEncode(gradients.dup(), 1e-3);
+        INDArray negative = Nd4j.getExecutioner().thresholdEncode(gradients.neg(), 1e-3);
+
+        List<List<INDArray>> updates = new ArrayList<>();
+        updates.add(Collections.singletonList(positive));
+        updates.add(Collections.singletonList(negative));
+        updates.add(Collections.<INDArray>emptyList());
+
+        for (List<INDArray> result : runRing(updates, length))
+            assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testTrafficVsBroadcast() throws Exception {
+        int length = 1000;
+        int numWorkers = 4;
+
+        // all workers update the same indices, so merged chunks stay as sparse as updates of single worker
+        INDArray gradients = Nd4j.create(1, length);
+        for (int i = 0; i < 100; i++)
+            gradients.putScalar(i * 10, 2e-3);
+
+        List<List<INDArray>> updates = new ArrayList<>();
+        long broadcast = 0;
+        for (int w = 0; w < numWorkers; w++) {
+            INDArray encoded = Nd4j.getExecutioner().thresholdEncode(gradients.dup(), 1e-3);
+            broadcast += (numWorkers - 1) * encoded.data().getInt(0);
+            updates.add(Collections.singletonList(encoded));
+        }
+
+        SparseRingReducer[] reducers = createRing(numWorkers, length);
+        runRing(updates, reducers);
+
+        long sent = 0;
+        for (SparseRingReducer reducer : reducers)
+            sent += reducer.getSentEntries();
+
+        assertTrue("Ring: " + sent + ", broadcast: " + broadcast, sent < broadcast);
+    }
+
+    @Test
+    public void testBitmapMessages() throws Exception {
+        int length = 1000;
+        INDArray gradients = Nd4j.create(1, length);
+        for (int i = 0; i < length; i += 2)
+            gradients.putScalar(i, i % 4 == 0 ? 2e-3 : -2e-3);
+
+        // dense updates end up in bitmap encoding
+        DataBuffer buffer = Nd4j.getDataBufferFactory().createInt(length / 16 + 5);
+        INDArray bitmap = Nd4j.createArrayFromShapeBuffer(buffer, gradients.shapeInfoDataBuffer());
+        Nd4j.getExecutioner().bitmapEncode(gradients, bitmap, 1e-3);
+
+        INDArray sparse = Nd4j.create(1, length);
+        sparse.putScalar(1, 2e-3);
+        sparse.putScalar(4, -2e-3);
+        INDArray threshold = Nd4j.getExecutioner().thresholdEncode(sparse, 1e-3);
+
+        INDArray expected = Nd4j.create(1, length);
+        for (int i = 0; i < length; i += 2)
+            expected.putScalar(i, i % 4 == 0 ? 1e-3 : -1e-3);
+        expected.putScalar(1, 1e-3);
+        expected.putScalar(4, 0.0);
+
+        List<List<INDArray>> updates = new ArrayList<>();
+        updates.add(Collections.singletonList(bitmap));
+        updates.add(Collections.singletonList(threshold));
+        updates.add(Collections.<INDArray>emptyList());
+
+        for (List<INDArray> result : runRing(updates, length))
+            assertEquals(expected, decode(result, length));
+    }
+
+    @Test(timeout = 30000L)
+    public void testAccumulatorIntegration() throws Exception {
+        final int length = 1000;
+        final int numNodes = 3;
+        final int iterations = 5;
+
+        SparseRingReducer[] reducers = createRing(numNodes, length);
+        final RingEncodingHandler[] handlers = new RingEncodingHandler[numNodes];
+        final EncodedGradientsAccumulator[] accumulators = new EncodedGradientsAccumulator[numNodes];
+        for (int n = 0; n < numNodes; n++) {
+            handlers[n] = new RingEncodingHandler(reducers[n], 1e-3);
+            accumulators[n] = new EncodedGradientsAccumulator.Builder(1).messageHandler(handlers[n]).build();
+            accumulators[n].fallbackToSingleConsumerMode(true);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numNodes);
+        List<Future<INDArray>> futures = new ArrayList<>();
+        for (int n = 0; n < numNodes; n++) {
+            final int node = n;
+            futures.add(executor.submit(new Callable<INDArray>() {
+                @Override
+                public INDArray call() throws Exception {
+                    EncodedGradientsAccumulator accumulator = accumulators[node];
+                    accumulator.touch();
+
+                    INDArray params = Nd4j.create(1, length);
+                    INDArray updates = Nd4j.create(1, length);
+                    for (int i = 0; i < iterations; i++) {
+                        INDArray gradients = Nd4j.create(1, length);
+                        for (int e = 0; e < 10; e++)
+                            gradients.putScalar(node * 100 + e, 2e-3);
+
+                        accumulator.storeUpdate(gradients);
+                        accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+                    }
+
+                    // ring runs in background, so the last rounds are only guaranteed to be in after epoch end
+                    handlers[node].finishEpoch();
+                    accumulator.applyUpdate(new GradientStepFunction(), params, updates);
+                    return params;
+                }
+            }));
+        }
+
+        List<INDArray> params = new ArrayList<>();
+        for (Future<INDArray> future : futures)
+            params.add(future.get());
+        executor.shutdown();
+
+        // each node got updates of all nodes, one threshold per iteration per value
+        INDArray expected = Nd4j.create(1, length);
+        for (int n = 0; n < numNodes; n++)
+            for (int e = 0; e < 10; e++)
+                expected.putScalar(n * 100 + e, iterations * 1e-3);
+
+        for (INDArray p : params)
+            assertEquals(expected, p);
+    }
+
+    @Test
+    public void testUniqueIndices() throws Exception {
+        int length = 100;
+        int numWorkers = 4;
+
+        // all workers update the same indices, so merged values are multiples of threshold
+        INDArray gradients = Nd4j.create(1, length);
+        for (int i = 0; i < 10; i++)
+            gradients.putScalar(i * 3, i % 2 == 0 ? 2e-3 : -2e-3);
+
+        List<List<INDArray>> updates = new ArrayList<>();
+        INDArray expected = Nd4j.create(1, length);
+        for (int w = 0; w < numWorkers; w++) {
+            INDArray encoded = Nd4j.getExecutioner().thresholdEncode(gradients.dup(), 1e-3);
+            Nd4j.getExecutioner().thresholdDecode(encoded, expected);
+            updates.add(Collections.singletonList(encoded));
+        }
+
+        for (List<INDArray> result : runRing(updates, length)) {
+            assertEquals(expected, decode(result, length));
+
+            // each index goes out once, with threshold scaled instead
+            Set<Integer> indices = new HashSet<>();
+            for (INDArray message : result) {
+                int[] entries = SparseRingReducer.entries(message);
+                for (int entry : entries)
+                    assertTrue("Index repeated: " + Math.abs(entry), indices.add(Math.abs(entry)));
+            }
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testTimeout() throws Exception {
+        LoopbackRingTransport[] transports = LoopbackRingTransport.createRing(2);
+
+        // second worker never shows up
+        SparseRingReducer reducer = new SparseRingReducer(0, 2, 100, transports[0], 500L);
+        try {
+            reducer.allReduce(Collections.<INDArray>emptyList());
+            fail("Ring round should time out");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+}
@@ -24,8 +24,12 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchController;
+import org.deeplearning4j.parallelism.inference.InferenceMetricsListener;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.RequestMetrics;
+import org.deeplearning4j.parallelism.inference.observers.AdaptiveInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
@@ -39,6 +43,7 @@ import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -58,6 +63,8 @@ public class ParallelInference {
     private int batchLimit;
     private InferenceMode inferenceMode;
     private int queueLimit;
+    private long targetLatency;
+    private InferenceMetricsListener metricsListener;
 
     // this queue
     private BlockingQueue<InferenceObservable> observables;
@@ -66,6 +73,7 @@ public class ParallelInference {
 
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
+    private AdaptiveBatchController controller;
 
 
 
@@ -73,6 +81,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_TARGET_LATENCY_MS = 100;
 
 
 
@@ -138,9 +147,22 @@ public class ParallelInference {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
             provider = new ObservablesProvider(nanos, batchLimit, observables);
+        } else if (inferenceMode == InferenceMode.ADAPTIVE) {
+            log.info("Initializing AdaptiveObservablesProvider...");
+            controller = new AdaptiveBatchController(targetLatency, batchLimit, workers);
+            provider = new AdaptiveObservablesProvider(controller, observables);
         }
     }
 
+    /**
+     * This method returns AdaptiveBatchController used in ADAPTIVE inference mode, or null for other modes
+     *
+     * @return
+     */
+    public AdaptiveBatchController getAdaptiveBatchController() {
+        return controller;
+    }
+
     protected long getWorkerCounter(int workerIdx) {
         return zoo[workerIdx].getCounterValue();
     }
@@ -162,6 +184,9 @@ public class ParallelInference {
         }
         zoo = null;
 
+        if (provider instanceof AdaptiveObservablesProvider)
+            ((AdaptiveObservablesProvider) provider).shutdown();
+
         System.gc();
     }
 
@@ -230,6 +255,7 @@ public class ParallelInference {
 
         BasicInferenceObserver observer = new BasicInferenceObserver();
         InferenceObservable observable;
+        long submittedAt = System.nanoTime();
 
         if (inferenceMode == InferenceMode.SEQUENTIAL) {
             observable = new BasicInferenceObservable(input, inputMasks);
@@ -254,9 +280,21 @@ public class ParallelInference {
             throw new RuntimeException(e);
         }
 
+        if (observable instanceof AdaptiveInferenceObservable)
+            reportMetrics((AdaptiveInferenceObservable) observable, submittedAt);
+
         return observable.getOutput();
     }
 
+    protected void reportMetrics(AdaptiveInferenceObservable observable, long submittedAt) {
+        long finishedAt = observable.getFinishedAt();
+        controller.requestFinished(finishedAt - submittedAt);
+
+        if (metricsListener != null)
+            metricsListener.requestFinished(new RequestMetrics(observable.getStartedAt() - submittedAt,
+                            observable.getComputeTime(), observable.getCounter()));
+    }
+
 
     public static class Builder {
         private Model model;
@@ -264,6 +302,8 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long targetLatency = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_LATENCY_MS);
+        private InferenceMetricsListener metricsListener;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -276,6 +316,8 @@ public class ParallelInference {
          * SEQUENTIAL: Input will be sent to last-used worker unmodified.
          * BATCHED: Multiple inputs will be packed into single batch, and
          * sent to last-used device.
+         * ADAPTIVE: Multiple inputs will be packed into single batch, batch size and
+         * flush timeout are derived from target latency and measured forward pass time.
          *
          * @param inferenceMode
          * @return
@@ -337,6 +379,41 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines target p99 latency for ADAPTIVE inference mode.
+         * Batch size limit and flush timeout will be adjusted to stay within this value.
+         *
+         * Default value: 100 ms
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL and BATCHED inference modes
+         *
+         * @param latency
+         * @param timeUnit
+         * @return
+         */
+        public Builder targetLatency(long latency, @NonNull TimeUnit timeUnit) {
+            if (latency < 1)
+                throw new IllegalStateException("Target latency should be positive value");
+
+            this.targetLatency = timeUnit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * This method allows to receive per-request queue wait and compute time metrics.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL and BATCHED inference modes
+         *
+         * @param listener
+         * @return
+         */
+        public Builder metricsListener(InferenceMetricsListener listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
@@ -349,6 +426,8 @@ public class ParallelInference {
             inference.inferenceMode = this.inferenceMode;
             inference.model = this.model;
             inference.workers = this.workers;
+            inference.targetLatency = this.targetLatency;
+            inference.metricsListener = this.metricsListener;
 
             inference.init();
 
@@ -560,4 +639,125 @@ public class ParallelInference {
             }
         }
     }
+
+
+    /**
+     * This class packs inputs into batches for ADAPTIVE inference mode.
+     * Open batch is handed over to workers once it's full, once there's idle worker, or once flush timeout passes.
+     */
+    protected static class AdaptiveObservablesProvider extends ObservablesProvider {
+        private final BlockingQueue<InferenceObservable> targetQueue;
+        private final AdaptiveBatchController controller;
+        private final AtomicBoolean shouldWork = new AtomicBoolean(true);
+        private final Thread flusher;
+
+        private AdaptiveInferenceObservable currentObservable;
+        private final Object locker = new Object();
+
+        protected AdaptiveObservablesProvider(@NonNull AdaptiveBatchController controller,
+                        @NonNull BlockingQueue<InferenceObservable> queue) {
+            super(0L, Integer.MAX_VALUE, queue);
+            this.targetQueue = queue;
+            this.controller = controller;
+
+            this.flusher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flushLoop();
+                }
+            });
+            this.flusher.setDaemon(true);
+            this.flusher.setName("AdaptiveBatchFlusher");
+            this.flusher.start();
+        }
+
+        @Override
+        protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            AdaptiveInferenceObservable observable;
+            AdaptiveInferenceObservable ready = null;
+            synchronized (locker) {
+                if (currentObservable == null)
+                    currentObservable = new AdaptiveInferenceObservable(controller);
+
+                observable = currentObservable;
+                observable.addInput(input, inputMask);
+                observable.addObserver(observer);
+
+                if (controller.shouldFlush(observable.getCounter(), targetQueue.size(),
+                                System.nanoTime() - observable.getCreatedAt()))
+                    ready = detach();
+                else
+                    locker.notifyAll();
+            }
+
+            if (ready != null)
+                dispatch(ready);
+
+            return observable;
+        }
+
+        protected void flushLoop() {
+            try {
+                while (shouldWork.get()) {
+                    AdaptiveInferenceObservable ready = null;
+                    synchronized (locker) {
+                        if (currentObservable == null) {
+                            locker.wait();
+                            continue;
+                        }
+
+                        int batchSize = currentObservable.getCounter();
+                        int queued = targetQueue.size();
+                        long waitTime = System.nanoTime() - currentObservable.getCreatedAt();
+
+                        if (controller.shouldFlush(batchSize, queued, waitTime)) {
+                            ready = detach();
+                        } else {
+                            long timeout = controller.getFlushTimeout(batchSize, queued) - waitTime;
+
+                            // we also wake up periodically, since workers might become idle meanwhile
+                            timeout = Math.min(timeout, TimeUnit.MILLISECONDS.toNanos(1));
+                            TimeUnit.NANOSECONDS.timedWait(locker, Math.max(1000L, timeout));
+                        }
+                    }
+
+                    if (ready != null)
+                        dispatch(ready);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * This method closes open batch, so no more inputs are added to it. Should be called within locker only.
+         */
+        private AdaptiveInferenceObservable detach() {
+            AdaptiveInferenceObservable observable = currentObservable;
+            currentObservable = null;
+            return observable;
+        }
+
+        /**
+         * This method hands over closed batch to workers. Called outside of locker, since put might block
+         * while queue is full, and new inputs should still be accepted meanwhile.
+         */
+        private void dispatch(AdaptiveInferenceObservable observable) {
+            // batch is accounted as in-flight before put, since worker might finish it before we return from put
+            controller.batchDispatched();
+            try {
+                targetQueue.put(observable);
+            } catch (InterruptedException e) {
+                controller.batchCancelled();
+                observable.cancel(e);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        protected void shutdown() {
+            shouldWork.set(false);
+            flusher.interrupt();
+        }
+    }
 }
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class makes batching decisions for ADAPTIVE inference mode.
+ *
+ * It keeps exponentially-weighted linear fit of forward pass time as function of batch size (t = a + b * n),
+ * and tracks observed end-to-end request latencies. Observed p99 latency is compared against target latency, and
+ * the latency budget used for batching decisions is shrunk or relaxed accordingly.
+ *
+ * PLEASE NOTE: This class is thread-safe
+ */
+@Slf4j
+public class AdaptiveBatchController {
+    protected static final double DECAY = 0.95;
+    protected static final int LATENCY_WINDOW = 1024;
+    protected static final int LATENCY_CHECK_FREQUENCY = 128;
+    protected static final double MIN_HEADROOM = 0.1;
+
+    private final long targetLatency;
+    private final int batchLimit;
+    private final int workers;
+
+    // weighted sums for online least squares fit of forward time vs batch size
+    private double sumW;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+
+    // ring buffer of observed end-to-end latencies
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyPosition;
+    private int latencyCount;
+    private long requestsSinceCheck;
+
+    // fraction of target latency we're allowed to plan for
+    private volatile double headroom = 1.0;
+    private volatile long observedP99 = 0L;
+
+    // number of batches handed over to workers, and not finished yet
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final Object locker = new Object();
+
+    /**
+     *
+     * @param targetLatencyNanos target p99 latency, in nanoseconds
+     * @param batchLimit maximal number of requests packed into single batch
+     * @param workers number of inference workers
+     */
+    public AdaptiveBatchController(long targetLatencyNanos, int batchLimit, int workers) {
+        if (targetLatencyNanos <= 0)
+            throw new IllegalStateException("Target latency should be positive value");
+
+        if (batchLimit < 1)
+            throw new IllegalStateException("Batch limit should be positive value");
+
+        if (workers < 1)
+            throw new IllegalStateException("Workers should be positive value");
+
+        this.targetLatency = targetLatencyNanos;
+        this.batchLimit = batchLimit;
+        this.workers = workers;
+    }
+
+    /**
+     * This method returns latency budget used for batching decisions, in nanoseconds
+     *
+     * @return
+     */
+    public long getEffectiveLatency() {
+        return (long) (targetLatency * headroom);
+    }
+
+    /**
+     * This method returns p99 latency observed during last check, in nanoseconds
+     *
+     * @return
+     */
+    public long getObservedP99() {
+        return observedP99;
+    }
+
+    /**
+     * This method returns number of batches currently processed by workers
+     *
+     * @return
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * This method returns estimated forward pass time for given batch size, in nanoseconds
+     *
+     * @param batchSize
+     * @return
+     */
+    public long estimateForwardTime(int batchSize) {
+        synchronized (locker) {
+            if (sumW == 0.0)
+                return 0L;
+
+            double meanX = sumX / sumW;
+            double meanY = sumY / sumW;
+            double varX = sumXX / sumW - meanX * meanX;
+
+            double a, b;
+            if (varX < 1e-6) {
+                // all observations have the same batch size, so we assume time is proportional to batch size
+                a = 0.0;
+                b = meanY / meanX;
+            } else {
+                b = (sumXY / sumW - meanX * meanY) / varX;
+                a = meanY - b * meanX;
+
+                // forward pass time can't decrease with batch size
+                if (b < 0.0) {
+                    a = meanY;
+                    b = 0.0;
+                }
+            }
+
+            return Math.max(0L, (long) (a + b * batchSize));
+        }
+    }
+
+    /**
+     * This method returns maximal batch size that fits into latency budget
+     *
+     * @return
+     */
+    public int getBatchLimit() {
+        // half of the budget is reserved for queueing
+        long budget = getEffectiveLatency() / 2;
+        int limit = 1;
+        for (int e = 2; e <= batchLimit; e++) {
+            if (estimateForwardTime(e) > budget)
+                break;
+
+            limit = e;
+        }
+
+        return limit;
+    }
+
+    /**
+     * This method returns how long open batch may wait for additional requests, in nanoseconds
+     *
+     * @param batchSize number of requests in open batch
+     * @param queuedBatches number of batches waiting for worker
+     * @return
+     */
+    public long getFlushTimeout(int batchSize, int queuedBatches) {
+        long forward = estimateForwardTime(Math.max(1, batchSize));
+
+        // every queued batch delays us, but workers are processing them in parallel
+        long backlog = (long) Math.ceil(queuedBatches / (double) workers) * estimateForwardTime(getBatchLimit());
+
+        return Math.max(0L, getEffectiveLatency() - forward - backlog);
+    }
+
+    /**
+     * This method checks if open batch should be handed over to workers right now
+     *
+     * @param batchSize number of requests in open batch
+     * @param queuedBatches number of batches waiting for worker
+     * @param waitTime time spent by the oldest request in open batch, in nanoseconds
+     * @return
+     */
+    public boolean shouldFlush(int batchSize, int queuedBatches, long waitTime) {
+        if (batchSize < 1)
+            return false;
+
+        // there's idle worker available, so there's no reason to wait
+        if (queuedBatches == 0 && inFlight.get() < workers)
+            return true;
+
+        if (batchSize >= getBatchLimit())
+            return true;
+
+        return waitTime >= getFlushTimeout(batchSize, queuedBatches);
+    }
+
+    /**
+     * This method should be called once batch is handed over to workers
+     */
+    public void batchDispatched() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * This method should be called if batch wasn't handed over to workers after all
+     */
+    public void batchCancelled() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * This method should be called once worker finished processing of the batch
+     *
+     * @param batchSize number of requests in batch
+     * @param forwardTime time spent on batch, in nanoseconds
+     */
+    public void batchFinished(int batchSize, long forwardTime) {
+        inFlight.decrementAndGet();
+
+        synchronized (locker) {
+            sumW = sumW * DECAY + 1.0;
+            sumX = sumX * DECAY + batchSize;
+            sumY = sumY * DECAY + forwardTime;
+            sumXX = sumXX * DECAY + (double) batchSize * batchSize;
+            sumXY = sumXY * DECAY + (double) batchSize * forwardTime;
+        }
+    }
+
+    /**
+     * This method should be called once request is finished
+     *
+     * @param latency end-to-end request latency, in nanoseconds
+     */
+    public void requestFinished(long latency) {
+        long[] snapshot = null;
+        synchronized (locker) {
+            latencies[latencyPosition] = latency;
+            latencyPosition = (latencyPosition + 1) % LATENCY_WINDOW;
+            latencyCount = Math.min(LATENCY_WINDOW, latencyCount + 1);
+
+            if (++requestsSinceCheck >= LATENCY_CHECK_FREQUENCY) {
+                requestsSinceCheck = 0;
+                snapshot = Arrays.copyOf(latencies, latencyCount);
+            }
+        }
+
+        if (snapshot != null)
+            updateHeadroom(snapshot);
+    }
+
+    protected void updateHeadroom(long[] snapshot) {
+        Arrays.sort(snapshot);
+        long p99 = snapshot[Math.min(snapshot.length - 1, (int) Math.ceil(snapshot.length * 0.99) - 1)];
+        observedP99 = p99;
+
+        // multiplicative decrease, additive increase
+        if (p99 > targetLatency)
+            headroom = Math.max(MIN_HEADROOM, headroom * 0.8);
+        else if (p99 < targetLatency * 0.8)
+            headroom = Math.min(1.0, headroom + 0.05);
+
+        if (log.isDebugEnabled())
+            log.debug("Observed p99 latency: {} us; headroom: {}", p99 / 1000, headroom);
+    }
+}
@@ -14,6 +14,7 @@
  * SPDX-License-Identifier: Apache-2.0
  ******************************************************************************/
 
+
 package org.deeplearning4j.parallelism.inference;
 
 /**
@@ -22,4 +23,5 @@ package org.deeplearning4j.parallelism.inference;
 public enum InferenceMode {
     SEQUENTIAL, // input will be passed into the model as is
     BATCHED, // input will be included into the batch
+    ADAPTIVE, // input will be included into the batch, batch size and flush timeout are derived from target latency
 }
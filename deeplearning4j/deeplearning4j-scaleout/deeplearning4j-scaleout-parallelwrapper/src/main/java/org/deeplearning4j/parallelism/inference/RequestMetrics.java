@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * This class holds timings for single request processed in ADAPTIVE inference mode
+ */
+@Data
+@AllArgsConstructor
+public class RequestMetrics {
+    // time between request submission and start of batch processing, in nanoseconds
+    private long queueWaitTime;
+    // time spent by worker on the batch this request was packed into, in nanoseconds
+    private long computeTime;
+    // number of requests in the batch
+    private int batchSize;
+}
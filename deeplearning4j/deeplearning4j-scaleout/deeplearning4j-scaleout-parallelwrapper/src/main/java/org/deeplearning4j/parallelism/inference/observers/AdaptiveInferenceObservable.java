@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchController;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class implements BATCHED inference use case, with timings tracking for ADAPTIVE inference mode
+ */
+@Slf4j
+public class AdaptiveInferenceObservable extends BatchedInferenceObservable {
+    private final AdaptiveBatchController controller;
+
+    @Getter
+    private final long createdAt = System.nanoTime();
+    @Getter
+    private volatile long startedAt;
+    @Getter
+    private volatile long finishedAt;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    public AdaptiveInferenceObservable(@NonNull AdaptiveBatchController controller) {
+        super();
+        this.controller = controller;
+    }
+
+    @Override
+    public List<Pair<INDArray[], INDArray[]>> getInputBatches() {
+        if (startedAt == 0L)
+            startedAt = System.nanoTime();
+
+        return super.getInputBatches();
+    }
+
+    @Override
+    public void setOutputBatches(List<INDArray[]> output) {
+        super.setOutputBatches(output);
+        markFinished();
+    }
+
+    @Override
+    public void setOutputException(Exception exception) {
+        markFinished();
+        super.setOutputException(exception);
+    }
+
+    /**
+     * This method returns time spent by worker on this batch, in nanoseconds
+     *
+     * @return
+     */
+    public long getComputeTime() {
+        return finishedAt - startedAt;
+    }
+
+    /**
+     * This method notifies observers about failure of batch that never reached workers, so it's not accounted
+     * as finished batch
+     *
+     * @param exception
+     */
+    public void cancel(Exception exception) {
+        finished.set(true);
+        super.setOutputException(exception);
+    }
+
+    /**
+     * Batch is accounted once, even if worker reports failure after its output was already set
+     */
+    protected void markFinished() {
+        if (!finished.compareAndSet(false, true))
+            return;
+
+        finishedAt = System.nanoTime();
+        if (startedAt == 0L)
+            startedAt = finishedAt;
+
+        controller.batchFinished(getCounter(), getComputeTime());
+    }
+}
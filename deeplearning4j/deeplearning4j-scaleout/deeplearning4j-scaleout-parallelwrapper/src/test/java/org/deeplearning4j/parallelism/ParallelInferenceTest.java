@@ -31,8 +31,10 @@ import org.nd4j.linalg.io.ClassPathResource;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMetricsListener;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.RequestMetrics;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
 import org.deeplearning4j.util.ModelSerializer;
@@ -49,6 +51,7 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -199,6 +202,38 @@ public class ParallelInferenceTest {
     }
 
 
+    @Test(timeout = 30000L)
+    public void testInferenceAdaptive1() throws Exception {
+        final Queue<RequestMetrics> metrics = new LinkedBlockingQueue<>();
+
+        ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.ADAPTIVE).batchLimit(8)
+                .targetLatency(50, TimeUnit.MILLISECONDS).metricsListener(new InferenceMetricsListener() {
+                    @Override
+                    public void requestFinished(RequestMetrics m) {
+                        metrics.add(m);
+                    }
+                }).workers(2).build();
+
+        INDArray array1 = inf.output(iterator.next().getFeatures());
+        assertFalse(array1.isAttached());
+
+        iterator.reset();
+
+        evalClassifcationMultipleThreads(inf, iterator, 20);
+
+        assertTrue(metrics.size() > 1);
+        for (RequestMetrics m : metrics) {
+            assertTrue(m.getQueueWaitTime() >= 0);
+            assertTrue(m.getComputeTime() >= 0);
+            assertTrue(m.getBatchSize() >= 1 && m.getBatchSize() <= 8);
+        }
+
+        assertEquals(0, inf.getAdaptiveBatchController().getInFlight());
+
+        inf.shutdown();
+    }
+
+
     @Test
     public void testProvider1() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
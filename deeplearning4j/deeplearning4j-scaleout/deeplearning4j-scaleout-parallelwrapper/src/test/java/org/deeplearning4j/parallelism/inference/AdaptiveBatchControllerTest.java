@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+public class AdaptiveBatchControllerTest {
+
+    @Test
+    public void testForwardTimeEstimation1() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(TimeUnit.MILLISECONDS.toNanos(100), 64, 1);
+
+        // t = 1ms + 0.5ms * n
+        for (int e = 0; e < 100; e++) {
+            int batchSize = 1 + e % 16;
+            controller.batchDispatched();
+            controller.batchFinished(batchSize, 1000000L + 500000L * batchSize);
+        }
+
+        assertEquals(6000000L, controller.estimateForwardTime(10), 10000L);
+        assertEquals(0, controller.getInFlight());
+
+        // half of 100ms budget fits 98 examples, so limit should be capped by batchLimit
+        assertEquals(64, controller.getBatchLimit());
+    }
+
+    @Test
+    public void testBatchLimit1() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(TimeUnit.MILLISECONDS.toNanos(10), 64, 1);
+
+        // 1ms per example, so only 5 examples fit into half of 10ms budget
+        for (int e = 0; e < 50; e++) {
+            controller.batchDispatched();
+            controller.batchFinished(4, 4000000L);
+        }
+
+        assertEquals(5, controller.getBatchLimit());
+    }
+
+    @Test
+    public void testShouldFlush1() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(TimeUnit.MILLISECONDS.toNanos(10), 64, 2);
+
+        for (int e = 0; e < 50; e++) {
+            controller.batchDispatched();
+            controller.batchFinished(2, 2000000L);
+        }
+
+        // idle workers available
+        assertTrue(controller.shouldFlush(1, 0, 0L));
+
+        // empty batch is never flushed
+        assertFalse(controller.shouldFlush(0, 0, Long.MAX_VALUE));
+
+        controller.batchDispatched();
+        controller.batchDispatched();
+
+        // all workers busy, batch isn't full yet, and there's still time to wait
+        assertFalse(controller.shouldFlush(1, 0, 0L));
+
+        // batch is full
+        assertTrue(controller.shouldFlush(controller.getBatchLimit(), 0, 0L));
+
+        // flush timeout passed
+        assertTrue(controller.shouldFlush(1, 0, controller.getFlushTimeout(1, 0)));
+    }
+
+    @Test
+    public void testHeadroom1() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(TimeUnit.MILLISECONDS.toNanos(10), 64, 1);
+
+        long effective = controller.getEffectiveLatency();
+
+        // all requests are way above target latency
+        for (int e = 0; e < AdaptiveBatchController.LATENCY_CHECK_FREQUENCY; e++)
+            controller.requestFinished(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), controller.getObservedP99());
+        assertTrue(controller.getEffectiveLatency() < effective);
+    }
+}
@@ -58,6 +58,21 @@ public class SharedTrainingConfiguration implements Serializable {
     @Builder.Default protected double stepTrigger = 0.0;
     @Builder.Default protected int stepDelay = 3;
     @Builder.Default protected int shakeFrequency = 0;
+
+    /**
+     * Minimal number of params per bucket for bucketed updates encoding. 0 means updates are encoded as a whole
+     */
+    @Builder.Default protected long bucketSize = 0L;
+
+    /**
+     * Number of nodes in ring, if updates are merged via ring all-reduce. 0 means updates are broadcasted
+     */
+    @Builder.Default protected int ringSize = 0;
+
+    /**
+     * Rank of this node in ring. -1 means rank is taken from DL4J_RING_RANK environment variable
+     */
+    @Builder.Default protected int ringRank = -1;
     protected String messageHandlerClass;
 
 
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.spark.parameterserver.networking;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.optimize.solvers.accumulation.RingTransport;
+import org.deeplearning4j.spark.parameterserver.networking.messages.SilentRingMessage;
+import org.nd4j.parameterserver.distributed.VoidParameterServer;
+import org.nd4j.parameterserver.distributed.transport.Transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This RingTransport implementation passes ring chunks over VoidParameterServer, wrapped into {@link SilentRingMessage}.
+ *
+ * VoidParameterServer has no direct client -> client channel, so chunks go through shard. Shard remembers originator
+ * of each rank on first contact, and passes every chunk to originator of its target rank only. Chunks for rank
+ * that hasn't contacted shard yet are held there until it does. Each endpoint introduces itself with its first send.
+ *
+ * Messages are numbered, so out-of-order and duplicate deliveries are handled here.
+ */
+@Slf4j
+public class VoidRingTransport implements RingTransport {
+    // ring endpoints living in this JVM, by rank
+    protected static final Map<Integer, VoidRingTransport> endpoints = new ConcurrentHashMap<>();
+
+    // shard side: originator of each rank, and messages waiting for their target rank to show up
+    protected static final Map<Integer, Long> originators = new HashMap<>();
+    protected static final Map<Integer, List<SilentRingMessage>> parked = new HashMap<>();
+
+    protected final int rank;
+    protected final int numWorkers;
+
+    protected final Map<Long, byte[]> received = new HashMap<>();
+    protected long nextReceive = 0;
+    protected long nextSend = 0;
+
+    /**
+     * @param rank position of this worker in ring, in range 0..numWorkers-1
+     * @param numWorkers number of workers in ring
+     */
+    public VoidRingTransport(int rank, int numWorkers) {
+        if (numWorkers < 1 || rank < 0 || rank >= numWorkers)
+            throw new DL4JInvalidConfigException("Rank [" + rank + "] doesn't fit into ring of [" + numWorkers + "] workers");
+
+        this.rank = rank;
+        this.numWorkers = numWorkers;
+
+        if (endpoints.putIfAbsent(rank, this) != null)
+            throw new DL4JInvalidConfigException("Rank [" + rank + "] is already registered in this JVM");
+    }
+
+    /**
+     * This method passes incoming message to endpoint with matching rank, if it lives in this JVM
+     *
+     * @param message
+     */
+    public static void deliver(@NonNull SilentRingMessage message) {
+        if (message.isIntroduction())
+            return;
+
+        VoidRingTransport endpoint = endpoints.get(message.getTargetRank());
+        if (endpoint != null)
+            endpoint.received(message.getSequence(), message.getChunk());
+    }
+
+    /**
+     * This method is used on shard: originator of given message is registered for its source rank,
+     * and message is passed to originator registered for its target rank
+     *
+     * @param message
+     * @param transport shard transport
+     */
+    public static void route(@NonNull SilentRingMessage message, @NonNull Transport transport) {
+        List<SilentRingMessage> ready = new ArrayList<>();
+        List<Long> targets = new ArrayList<>();
+        synchronized (originators) {
+            originators.put(message.getSourceRank(), message.getOriginatorId());
+
+            List<SilentRingMessage> waiting = parked.remove(message.getSourceRank());
+            if (waiting != null)
+                for (SilentRingMessage m : waiting) {
+                    ready.add(m);
+                    targets.add(message.getOriginatorId());
+                }
+
+            if (!message.isIntroduction()) {
+                Long target = originators.get(message.getTargetRank());
+                if (target != null) {
+                    ready.add(message);
+                    targets.add(target);
+                } else {
+                    if (!parked.containsKey(message.getTargetRank()))
+                        parked.put(message.getTargetRank(), new ArrayList<SilentRingMessage>());
+                    parked.get(message.getTargetRank()).add(message);
+                }
+            }
+        }
+
+        for (int i = 0; i < ready.size(); i++)
+            forward(ready.get(i), targets.get(i), transport);
+    }
+
+    protected static void forward(SilentRingMessage message, long originatorId, Transport transport) {
+        if (originatorId == transport.getOwnOriginatorId()) {
+            deliver(message);
+        } else {
+            // feedback messages are sent to their originator only
+            message.setOriginatorId(originatorId);
+            transport.sendMessage(message);
+        }
+    }
+
+    protected synchronized void received(long sequence, byte[] chunk) {
+        // duplicates are possible if there's more than one shard
+        if (sequence < nextReceive || received.containsKey(sequence))
+            return;
+
+        received.put(sequence, chunk);
+        notifyAll();
+    }
+
+    @Override
+    public void send(@NonNull byte[] chunk) {
+        long sequence;
+        synchronized (this) {
+            // shard should know where we are before anything is sent to us
+            if (nextSend == 0)
+                transmit(SilentRingMessage.introduction(rank));
+
+            sequence = nextSend++;
+        }
+
+        transmit(new SilentRingMessage(chunk, rank, (rank + 1) % numWorkers, sequence));
+    }
+
+    protected void transmit(SilentRingMessage message) {
+        if (!message.isIntroduction() && endpoints.containsKey(message.getTargetRank()))
+            deliver(message);
+        else
+            VoidParameterServer.getInstance().execDistributedImmediately(message);
+    }
+
+    @Override
+    public synchronized byte[] receive(long timeout) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!received.containsKey(nextReceive)) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+                throw new TimeoutException("Rank [" + rank + "] got no chunk [" + nextReceive + "] within " + timeout
+                                + " ms");
+
+            wait(left);
+        }
+
+        return received.remove(nextReceive++);
+    }
+
+    /**
+     * This method removes this endpoint from ring
+     */
+    public void close() {
+        endpoints.remove(rank, this);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.spark.parameterserver.networking.messages;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.spark.parameterserver.networking.VoidRingTransport;
+import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
+import org.nd4j.parameterserver.distributed.enums.NodeRole;
+import org.nd4j.parameterserver.distributed.logic.Storage;
+import org.nd4j.parameterserver.distributed.logic.completion.Clipboard;
+import org.nd4j.parameterserver.distributed.messages.BaseVoidMessage;
+import org.nd4j.parameterserver.distributed.messages.RequestMessage;
+import org.nd4j.parameterserver.distributed.messages.TrainingMessage;
+import org.nd4j.parameterserver.distributed.training.TrainingDriver;
+import org.nd4j.parameterserver.distributed.transport.Transport;
+
+/**
+ * This message carries serialized ring chunk from one worker to the next one in ring.
+ * Shard passes it to the originator registered for target rank only, see {@link VoidRingTransport#route}.
+ * Message without chunk just introduces its source rank to shard.
+ */
+@Slf4j
+public class SilentRingMessage extends BaseVoidMessage implements TrainingMessage, RequestMessage {
+
+    @Getter
+    protected int sourceRank;
+    @Getter
+    protected int targetRank;
+    @Getter
+    protected long sequence;
+    @Getter
+    protected byte[] chunk;
+    protected long frameId;
+
+    protected SilentRingMessage() {
+        // feedback type, so shard sends it to single client
+        super(19);
+    }
+
+    public SilentRingMessage(@NonNull byte[] chunk, int sourceRank, int targetRank, long sequence) {
+        this();
+        this.chunk = chunk;
+        this.sourceRank = sourceRank;
+        this.targetRank = targetRank;
+        this.sequence = sequence;
+    }
+
+    /**
+     * This method creates message that just registers given rank at shard
+     *
+     * @param rank
+     * @return
+     */
+    public static SilentRingMessage introduction(int rank) {
+        return new SilentRingMessage(new byte[0], rank, rank, -1);
+    }
+
+    public boolean isIntroduction() {
+        return sequence < 0;
+    }
+
+    @Override
+    public void attachContext(VoidConfiguration voidConfiguration, TrainingDriver<? extends TrainingMessage> trainer,
+                    Clipboard clipboard, Transport transport, Storage storage, NodeRole role, short shardIndex) {
+        this.voidConfiguration = voidConfiguration;
+        this.trainer = trainer;
+        this.transport = transport;
+        this.role = role;
+    }
+
+    @Override
+    public void processMessage() {
+        if (role == NodeRole.SHARD)
+            VoidRingTransport.route(this, transport);
+        else
+            VoidRingTransport.deliver(this);
+    }
+
+    @Override
+    public byte getCounter() {
+        return 0;
+    }
+
+    @Override
+    public long getFrameId() {
+        return frameId;
+    }
+
+    @Override
+    public void setFrameId(long frameId) {
+        this.frameId = frameId;
+    }
+
+    @Override
+    public boolean isJoinSupported() {
+        return false;
+    }
+}
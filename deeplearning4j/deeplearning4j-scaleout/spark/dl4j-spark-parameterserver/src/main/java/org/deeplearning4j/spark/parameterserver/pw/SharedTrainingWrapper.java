@@ -30,12 +30,15 @@ import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.optimize.listeners.SleepyTrainingListener;
 import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.MessageHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.RingEncodingHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.SparseRingReducer;
 import org.deeplearning4j.parallelism.ParallelWrapper;
 import org.deeplearning4j.spark.parameterserver.conf.SharedTrainingConfiguration;
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualDataSetIterator;
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualIterator;
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualMultiDataSetIterator;
 import org.deeplearning4j.spark.parameterserver.networking.SilentTrainingDriver;
+import org.deeplearning4j.spark.parameterserver.networking.VoidRingTransport;
 import org.deeplearning4j.spark.parameterserver.networking.WiredEncodingHandler;
 import org.deeplearning4j.spark.parameterserver.networking.messages.SilentIntroductoryMessage;
 import org.deeplearning4j.spark.parameterserver.training.SharedTrainingResult;
@@ -92,11 +95,32 @@ public class SharedTrainingWrapper {
     protected Model originalModel;
 
     protected SilentTrainingDriver driver;
+    protected RingEncodingHandler ringHandler;
 
     protected SharedTrainingWrapper() {
         init();
     }
 
+    /**
+     * This method returns ring rank of this node: either configured one, or one defined via
+     * {@link DL4JEnvironmentVars#DL4J_RING_RANK}, since single configuration is shared by all nodes
+     */
+    protected static int getRingRank(SharedTrainingConfiguration configuration) {
+        if (configuration.getRingRank() >= 0)
+            return configuration.getRingRank();
+
+        String rank = System.getenv(DL4JEnvironmentVars.DL4J_RING_RANK);
+        if (rank == null)
+            throw new DL4JInvalidConfigException("Ring all-reduce is enabled, but " + DL4JEnvironmentVars.DL4J_RING_RANK
+                            + " isn't defined for this node");
+
+        try {
+            return Integer.parseInt(rank.trim());
+        } catch (NumberFormatException e) {
+            throw new DL4JInvalidConfigException("Can't parse " + DL4JEnvironmentVars.DL4J_RING_RANK + ": [" + rank + "]");
+        }
+    }
+
     protected void init() {
         // instantiate some stuff here
         iteratorsDS = new CopyOnWriteArrayList<>();
@@ -249,13 +273,30 @@ public class SharedTrainingWrapper {
                     }
                 }
 
-                MessageHandler handler = new WiredEncodingHandler(trainingConfiguration.getThreshold(),
-                                trainingConfiguration.getMinThreshold(), trainingConfiguration.getThresholdStep(),
-                                trainingConfiguration.getStepTrigger(), trainingConfiguration.getStepDelay(),
-                                trainingConfiguration.getShakeFrequency());
-
                 // this accumulator will provide sharing gradients over network, via WiredEncodedHandler. But we create it only once
                 if (accumulator == null) {
+                    MessageHandler handler;
+                    if (trainingConfiguration.getRingSize() > 0) {
+                        // updates are merged over ring of nodes instead of being broadcasted
+                        int rank = getRingRank(trainingConfiguration);
+                        SparseRingReducer reducer = new SparseRingReducer(rank, trainingConfiguration.getRingSize(),
+                                        model.params().length(),
+                                        new VoidRingTransport(rank, trainingConfiguration.getRingSize()));
+
+                        ringHandler = new RingEncodingHandler(reducer, trainingConfiguration.getThreshold(),
+                                        trainingConfiguration.getMinThreshold(),
+                                        trainingConfiguration.getThresholdStep(),
+                                        trainingConfiguration.getStepTrigger(), trainingConfiguration.getStepDelay(),
+                                        trainingConfiguration.getShakeFrequency(), null);
+                        handler = ringHandler;
+                    } else {
+                        handler = new WiredEncodingHandler(trainingConfiguration.getThreshold(),
+                                        trainingConfiguration.getMinThreshold(),
+                                        trainingConfiguration.getThresholdStep(),
+                                        trainingConfiguration.getStepTrigger(), trainingConfiguration.getStepDelay(),
+                                        trainingConfiguration.getShakeFrequency());
+                    }
+
                     /**
                      *  We know, that updates are guaranteed to have MAX size of params / 16. So, here we go.
                      *  I.e. for model with 100m params, that's 400m of floats (or 800m of doubles)
@@ -269,9 +310,15 @@ public class SharedTrainingWrapper {
                     val bufferSize = trainingConfiguration.getBufferSize() > 0 ? trainingConfiguration.getBufferSize()
                                     : EncodedGradientsAccumulator.getOptimalBufferSize(model, numWorkers, 2);
 
-                    accumulator = new EncodedGradientsAccumulator.Builder(numWorkers).messageHandler(handler)
+                    val builder = new EncodedGradientsAccumulator.Builder(numWorkers).messageHandler(handler)
                                     .encodingThreshold(trainingConfiguration.getThreshold())
-                                    .memoryParameters(bufferSize, queueSize).build();
+                                    .memoryParameters(bufferSize, queueSize);
+
+                    if (trainingConfiguration.getBucketSize() > 0)
+                        builder.bucketBoundaries(EncodedGradientsAccumulator.getBucketBoundaries(model,
+                                        trainingConfiguration.getBucketSize()));
+
+                    accumulator = builder.build();
 
                     // FIXME: implement support for Custom transport implementation
                     Transport transport =
@@ -405,6 +452,17 @@ public class SharedTrainingWrapper {
                 exception = t;
             }
 
+            // ring rounds go on until every node is done with this epoch
+            if (ringHandler != null) {
+                try {
+                    ringHandler.finishEpoch();
+                } catch (Throwable t) {
+                    log.warn("Exception encountered during ring all-reduce", t);
+                    if (!exceptionEncountered.getAndSet(true))
+                        exception = t;
+                }
+            }
+
 
             // conditionally shutdown & reset ParallelWrapper
             if (trainingConfiguration.isEpochReset()) {
@@ -107,6 +107,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
     protected double stepTrigger = 0.05;
     protected int stepDelay = 50;
     protected int shakeFrequency;
+    protected long bucketSize = 0L;
+    protected int ringSize = 0;
 
     protected Repartition repartition;
     protected RepartitionStrategy repartitionStrategy;
@@ -246,7 +248,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         SharedTrainingConfiguration configuration = SharedTrainingConfiguration.builder().threshold(threshold)
                         .minThreshold(minThreshold).shakeFrequency(shakeFrequency).thresholdStep(thresholdStep)
                         .stepTrigger(stepTrigger).stepDelay(stepDelay).voidConfiguration(voidConfiguration)
-                        .debugLongerIterations(debugLongerIterations).numberOfWorkersPerNode(numWorkersPerNode).build();
+                        .debugLongerIterations(debugLongerIterations).numberOfWorkersPerNode(numWorkersPerNode)
+                        .bucketSize(bucketSize).ringSize(ringSize).build();
 
         if (collectTrainingStats)
             stats.logBroadcastStart();
@@ -275,6 +278,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                         .voidConfiguration(voidConfiguration).debugLongerIterations(debugLongerIterations)
                         .numberOfWorkersPerNode(numWorkersPerNode)
                         .prefetchSize(workerPrefetchBatches)
+                        .bucketSize(bucketSize)
+                        .ringSize(ringSize)
                 .build();
 
         if (collectTrainingStats)
@@ -827,6 +832,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         protected double stepTrigger = 0.05;
         protected int stepDelay = 50;
         protected int shakeFrequency = 0;
+        protected long bucketSize = 0L;
+        protected int ringSize = 0;
         @Deprecated
         protected Repartition repartition = Repartition.Always;
         @Deprecated
@@ -1058,6 +1065,40 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             return this;
         }
 
+        /**
+         * This method enables bucketed updates: consecutive layers are grouped into buckets of at least bucketSize params,
+         * and each bucket is encoded and sent separately, in background, while executor goes on with next iteration.
+         * Smaller buckets give finer-grained messages, larger buckets give fewer messages.
+         *
+         * Default value: 0 (disabled, updates are encoded as a whole)
+         * @param bucketSize minimal number of params per bucket
+         * @return
+         */
+        public Builder bucketSize(long bucketSize) {
+            if (bucketSize < 0)
+                throw new DL4JInvalidConfigException("bucketSize should be non-negative value");
+
+            this.bucketSize = bucketSize;
+            return this;
+        }
+
+        /**
+         * This method enables ring all-reduce: instead of broadcasting encoded updates to all nodes via master,
+         * each node merges its updates with updates of other nodes and passes them to next node in ring.
+         * Rank of each node in ring should be defined via DL4J_RING_RANK environment variable, in range 0..ringSize-1
+         *
+         * Default value: 0 (disabled, updates are broadcasted)
+         * @param ringSize number of nodes in ring
+         * @return
+         */
+        public Builder ringAllReduce(int ringSize) {
+            if (ringSize < 0)
+                throw new DL4JInvalidConfigException("ringSize should be non-negative value");
+
+            this.ringSize = ringSize;
+            return this;
+        }
+
         /**
          * Batch size value,  used for repartition purposes
          *
@@ -1144,6 +1185,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             if (transport != null)
                 master.transport = this.transport;
 
+            master.bucketSize = this.bucketSize;
+            master.ringSize = this.ringSize;
+
             return master;
         }
     }
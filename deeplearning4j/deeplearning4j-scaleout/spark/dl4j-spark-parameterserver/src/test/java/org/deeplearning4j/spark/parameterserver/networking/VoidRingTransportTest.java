@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.spark.parameterserver.networking;
+
+import org.deeplearning4j.optimize.solvers.accumulation.SparseRingReducer;
+import org.deeplearning4j.spark.parameterserver.networking.messages.SilentRingMessage;
+import org.junit.After;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.parameterserver.distributed.messages.VoidMessage;
+import org.nd4j.parameterserver.distributed.transport.BaseTransport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VoidRingTransportTest {
+
+    /**
+     * Ring messages go through VoidMessage serialization, as they would over the wire, but skip the network itself
+     */
+    private static class SerializingRingTransport extends VoidRingTransport {
+        private SerializingRingTransport(int rank, int numWorkers) {
+            super(rank, numWorkers);
+        }
+
+        @Override
+        protected void transmit(SilentRingMessage message) {
+            SilentRingMessage received = VoidMessage.fromBytes(message.asBytes());
+            deliver(received);
+        }
+    }
+
+    /**
+     * Shard side transport, that just records unicast targets of feedback messages
+     */
+    private static class RecordingTransport extends BaseTransport {
+        private final List<Long> targets = new ArrayList<>();
+        private final List<VoidMessage> sent = new ArrayList<>();
+
+        private RecordingTransport(long originatorId) {
+            this.originatorId = originatorId;
+        }
+
+        @Override
+        protected void sendCoordinationCommand(VoidMessage message) {
+            fail("Ring messages shouldn't go to shards");
+        }
+
+        @Override
+        protected void sendFeedbackToClient(VoidMessage message) {
+            targets.add(message.getOriginatorId());
+            sent.add(message);
+        }
+    }
+
+    private static SilentRingMessage fromClient(SilentRingMessage message, long originatorId) {
+        message.setOriginatorId(originatorId);
+        return message;
+    }
+
+    @After
+    public void tearDown() {
+        VoidRingTransport.originators.clear();
+        VoidRingTransport.parked.clear();
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        VoidRingTransport transport = new VoidRingTransport(1, 2);
+        try {
+            // out of order, with duplicate
+            VoidRingTransport.deliver(new SilentRingMessage(new byte[] {2}, 0, 1, 1));
+            VoidRingTransport.deliver(new SilentRingMessage(new byte[] {1}, 0, 1, 0));
+            VoidRingTransport.deliver(new SilentRingMessage(new byte[] {2}, 0, 1, 1));
+            VoidRingTransport.deliver(new SilentRingMessage(new byte[] {3}, 0, 1, 2));
+
+            // messages for other ranks are ignored
+            VoidRingTransport.deliver(new SilentRingMessage(new byte[] {9}, 1, 0, 0));
+
+            assertArrayEquals(new byte[] {1}, transport.receive(1000L));
+            assertArrayEquals(new byte[] {2}, transport.receive(1000L));
+            assertArrayEquals(new byte[] {3}, transport.receive(1000L));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testReceiveTimeout() throws Exception {
+        VoidRingTransport transport = new VoidRingTransport(0, 2);
+        try {
+            transport.receive(100L);
+            fail("Nothing was delivered, so receive should time out");
+        } catch (TimeoutException e) {
+            // expected
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        RecordingTransport shard = new RecordingTransport(100L);
+
+        // rank 1 introduces itself, nothing to forward yet
+        VoidRingTransport.route(fromClient(SilentRingMessage.introduction(1), 11L), shard);
+        assertTrue(shard.targets.isEmpty());
+
+        // chunk from rank 0 goes to originator of rank 1 only
+        VoidRingTransport.route(fromClient(new SilentRingMessage(new byte[] {1}, 0, 1, 0), 10L), shard);
+        assertEquals(Collections.singletonList(11L), shard.targets);
+
+        // rank 2 is unknown yet, so chunk is held on shard
+        VoidRingTransport.route(fromClient(new SilentRingMessage(new byte[] {2}, 1, 2, 0), 11L), shard);
+        assertEquals(1, shard.targets.size());
+
+        // and sent once rank 2 shows up
+        VoidRingTransport.route(fromClient(SilentRingMessage.introduction(2), 12L), shard);
+        assertEquals(2, shard.targets.size());
+        assertEquals(12L, (long) shard.targets.get(1));
+        assertArrayEquals(new byte[] {2}, ((SilentRingMessage) shard.sent.get(1)).getChunk());
+    }
+
+    @Test(timeout = 30000L)
+    public void testAllReduce() throws Exception {
+        final int numWorkers = 3;
+        final int length = 100;
+
+        final SparseRingReducer[] reducers = new SparseRingReducer[numWorkers];
+        List<VoidRingTransport> transports = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            transports.add(new SerializingRingTransport(i, numWorkers));
+            reducers[i] = new SparseRingReducer(i, numWorkers, length, transports.get(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<Future<List<INDArray>>> futures = new ArrayList<>();
+            for (int i = 0; i < numWorkers; i++) {
+                final int rank = i;
+                futures.add(executor.submit(new Callable<List<INDArray>>() {
+                    @Override
+                    public List<INDArray> call() throws Exception {
+                        INDArray gradients = Nd4j.create(1, length);
+                        gradients.putScalar(rank * 10, 2e-3);
+                        gradients.putScalar(50, -2e-3);
+
+                        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(gradients, 1e-3);
+                        return reducers[rank].allReduce(Collections.singletonList(encoded));
+                    }
+                }));
+            }
+
+            INDArray expected = Nd4j.create(1, length);
+            for (int i = 0; i < numWorkers; i++)
+                expected.putScalar(i * 10, 1e-3);
+            expected.putScalar(50, -numWorkers * 1e-3);
+
+            for (Future<List<INDArray>> future : futures) {
+                INDArray updates = Nd4j.create(1, length);
+                for (INDArray message : future.get())
+                    Nd4j.getExecutioner().thresholdDecode(message, updates);
+
+                assertEquals(expected, updates);
+            }
+        } finally {
+            executor.shutdown();
+            for (VoidRingTransport transport : transports)
+                transport.close();
+        }
+    }
+}
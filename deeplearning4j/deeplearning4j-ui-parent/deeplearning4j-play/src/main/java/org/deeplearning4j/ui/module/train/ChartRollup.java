@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.ui.module.train;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Multi-resolution rollup of the chart series of one worker, maintained incrementally as updates are added, so that
+ * the chart data can be returned without decoding all of the updates on every request.<br>
+ * Level k aggregates 2^k consecutive updates per bucket, and keeps its most recent {@code capacity} buckets. For each
+ * series, a bucket keeps the minimum and maximum values (in the order they occurred), so spikes are not lost when
+ * downsampling. All series share the same buckets, so they also share the same x values (iteration counts).<br>
+ * Not thread safe: callers should synchronize on the rollup.
+ */
+public class ChartRollup {
+
+    private final int capacity;
+    private final Map<String, Integer> seriesIndex = new LinkedHashMap<>();
+    private final List<Level> levels = new ArrayList<>();
+    @Getter
+    private long lastTimestamp = Long.MIN_VALUE;
+    @Getter
+    private long numUpdates;
+
+    /**
+     * @param capacity Maximum number of buckets per resolution level. Should be at least the maximum number of buckets
+     *                 queried
+     */
+    public ChartRollup(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2, got " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add the values of one update. Series that are not present in this update are recorded as NaN
+     *
+     * @param timestamp Time stamp of the update. Used to only add updates once: see {@link #getLastTimestamp()}
+     * @param x         X value (iteration count)
+     * @param values    Values for each series
+     */
+    public void add(long timestamp, int x, Map<String, Double> values) {
+        for (String s : values.keySet()) {
+            if (!seriesIndex.containsKey(s))
+                seriesIndex.put(s, seriesIndex.size());
+        }
+        float[] v = new float[seriesIndex.size()];
+        Arrays.fill(v, Float.NaN);
+        for (Map.Entry<String, Double> e : values.entrySet()) {
+            Double d = e.getValue();
+            if (d != null)
+                v[seriesIndex.get(e.getKey())] = d.floatValue();
+        }
+
+        Bucket b = new Bucket(x, v);
+        int level = 0;
+        while (b != null) {
+            if (level == levels.size())
+                levels.add(new Level());
+            b = levels.get(level++).add(b);
+        }
+
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        numUpdates++;
+    }
+
+    /**
+     * Get the downsampled series, starting at the given x value
+     *
+     * @param fromX      First x value of interest: use Integer.MIN_VALUE for all values
+     * @param maxBuckets Maximum number of buckets. Each bucket results in up to 2 points (min and max)
+     */
+    public Series query(int fromX, int maxBuckets) {
+        //Finest level that still has all the buckets from fromX, and not too many of them
+        List<Bucket> selected = null;
+        for (int i = 0; i < levels.size(); i++) {
+            List<Bucket> buckets = bucketsFrom(i, fromX);
+            if (levels.get(i).covers(fromX) && buckets.size() <= maxBuckets) {
+                selected = buckets;
+                break;
+            }
+        }
+
+        List<Integer> x = new ArrayList<>();
+        Map<String, List<Double>> values = new LinkedHashMap<>();
+        for (String s : seriesIndex.keySet()) {
+            values.put(s, new ArrayList<Double>());
+        }
+        if (selected == null)
+            return new Series(x, values);
+
+        for (Bucket b : selected) {
+            boolean single = b.count == 1;
+            x.add(b.firstX);
+            if (!single)
+                x.add(b.lastX);
+            for (Map.Entry<String, Integer> e : seriesIndex.entrySet()) {
+                int i = e.getValue();
+                List<Double> list = values.get(e.getKey());
+                if (i >= b.min.length) {
+                    list.add(Double.NaN);
+                    if (!single)
+                        list.add(Double.NaN);
+                } else if (single) {
+                    list.add((double) b.min[i]);
+                } else if (b.minLast.get(i)) {
+                    list.add((double) b.max[i]);
+                    list.add((double) b.min[i]);
+                } else {
+                    list.add((double) b.min[i]);
+                    list.add((double) b.max[i]);
+                }
+            }
+        }
+        return new Series(x, values);
+    }
+
+    /**
+     * Buckets of the given level, followed by the incomplete buckets of the finer levels: the most recent updates are
+     * only in those, until enough of them have been added to complete a bucket at this level
+     */
+    private List<Bucket> bucketsFrom(int level, int fromX) {
+        List<Bucket> out = new ArrayList<>();
+        for (Bucket b : levels.get(level).buckets) {
+            if (b.lastX >= fromX)
+                out.add(b);
+        }
+        for (int i = level; i > 0; i--) {
+            Bucket open = levels.get(i).open;
+            if (open != null && open.lastX >= fromX)
+                out.add(open);
+        }
+        return out;
+    }
+
+    @AllArgsConstructor
+    @Data
+    public static class Series {
+        private List<Integer> x;
+        private Map<String, List<Double>> values;
+    }
+
+    private class Level {
+        private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+        private Bucket open;
+        private boolean truncated;
+
+        /**
+         * Merge a bucket from the level below (or a single update, for level 0)
+         *
+         * @return Bucket to pass to the next level, if one was completed
+         */
+        private Bucket add(Bucket b) {
+            boolean first = levels.get(0) == this;
+            Bucket completed = null;
+            if (first) {
+                completed = b;
+            } else if (open == null) {
+                //Copy: the bucket is also kept by the level below
+                open = b.copy();
+            } else {
+                open.merge(b);
+                completed = open;
+                open = null;
+            }
+
+            if (completed != null) {
+                buckets.addLast(completed);
+                if (buckets.size() > capacity) {
+                    buckets.removeFirst();
+                    truncated = true;
+                }
+            }
+            return completed;
+        }
+
+        private boolean covers(int fromX) {
+            return !truncated || (!buckets.isEmpty() && buckets.getFirst().firstX <= fromX);
+        }
+    }
+
+    private static class Bucket {
+        private int firstX;
+        private int lastX;
+        private int count;
+        private float[] min;
+        private float[] max;
+        //For each series: true if the minimum occurred after the maximum
+        private BitSet minLast = new BitSet();
+
+        private Bucket(int x, float[] values) {
+            this.firstX = x;
+            this.lastX = x;
+            this.count = 1;
+            this.min = values;
+            this.max = values.clone();
+        }
+
+        private Bucket copy() {
+            Bucket b = new Bucket(firstX, min.clone());
+            b.lastX = lastX;
+            b.count = count;
+            b.max = max.clone();
+            b.minLast = (BitSet) minLast.clone();
+            return b;
+        }
+
+        private void merge(Bucket later) {
+            int n = Math.max(min.length, later.min.length);
+            if (min.length < n) {
+                min = grow(min, n);
+                max = grow(max, n);
+            }
+            for (int i = 0; i < later.min.length; i++) {
+                boolean newMin = later.min[i] < min[i] || Float.isNaN(min[i]);
+                boolean newMax = later.max[i] > max[i] || Float.isNaN(max[i]);
+                if (newMin)
+                    min[i] = later.min[i];
+                if (newMax)
+                    max[i] = later.max[i];
+                if (newMin && newMax) {
+                    minLast.set(i, later.minLast.get(i));
+                } else if (newMin) {
+                    minLast.set(i, true);
+                } else if (newMax) {
+                    minLast.set(i, false);
+                }
+            }
+            lastX = later.lastX;
+            count += later.count;
+        }
+
+        private static float[] grow(float[] in, int n) {
+            float[] out = Arrays.copyOf(in, n);
+            Arrays.fill(out, in.length, n, Float.NaN);
+            return out;
+        }
+    }
+}
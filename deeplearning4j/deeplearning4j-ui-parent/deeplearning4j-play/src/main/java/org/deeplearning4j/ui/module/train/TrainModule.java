@@ -57,6 +57,7 @@ import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static play.mvc.Results.ok;
@@ -81,6 +82,13 @@ public class TrainModule implements UIModule {
 
     private static final ObjectMapper JSON = new ObjectMapper();
 
+    private static final String SCORE_SERIES = "score";
+    private static final String RATIO_SERIES_PREFIX = "ratio/";
+    private static final String STDEV_GRADIENTS_SERIES_PREFIX = "stdevGradients/";
+    private static final String STDEV_UPDATES_SERIES_PREFIX = "stdevUpdates/";
+    private static final String STDEV_ACTIVATIONS_SERIES_PREFIX = "stdevActivations/";
+    private static final int ROLLUP_BATCH_SIZE = 1000;
+
     private enum ModelType {
         MLN, CG, Layer
     };
@@ -92,6 +100,8 @@ public class TrainModule implements UIModule {
     private Map<String, AtomicInteger> workerIdxCount = Collections.synchronizedMap(new HashMap<>()); //Key: session ID
     private Map<String, Map<Integer, String>> workerIdxToName = Collections.synchronizedMap(new HashMap<>()); //Key: session ID
     private Map<String, Long> lastUpdateForSession = Collections.synchronizedMap(new HashMap<>());
+    private Map<Pair<String, String>, ChartRollup> overviewRollups = Collections.synchronizedMap(new HashMap<>()); //Key: session ID, worker ID
+    private Set<Pair<String, String>> updatedRollups = ConcurrentHashMap.newKeySet(); //Rollups with updates not added yet
 
     public TrainModule() {
         String maxChartPointsProp = System.getProperty(DL4JSystemProperties.CHART_MAX_POINTS_PROPERTY);
@@ -153,6 +163,11 @@ public class TrainModule implements UIModule {
                     knownSessionIDs.put(sse.getSessionID(), sse.getStatsStorage());
                 }
 
+                if (sse.getEventType() == StatsStorageListener.EventType.PostUpdate && sse.getWorkerID() != null) {
+                    //Only marked here: new updates are decoded by the next request for the rollup
+                    updatedRollups.add(new Pair<>(sse.getSessionID(), sse.getWorkerID()));
+                }
+
                 Long lastUpdate = lastUpdateForSession.get(sse.getSessionID());
                 if (lastUpdate == null) {
                     lastUpdateForSession.put(sse.getSessionID(), sse.getTimestamp());
@@ -187,6 +202,10 @@ public class TrainModule implements UIModule {
                 knownSessionIDs.remove(s);
             }
         }
+        synchronized (overviewRollups) {
+            overviewRollups.keySet().removeIf(k -> !knownSessionIDs.containsKey(k.getFirst()));
+        }
+        updatedRollups.removeIf(k -> !knownSessionIDs.containsKey(k.getFirst()));
     }
 
     private void getDefaultSession() {
@@ -345,6 +364,118 @@ public class TrainModule implements UIModule {
         return Double.isFinite(d) ? d : NAN_REPLACEMENT_VALUE;
     }
 
+    /**
+     * Get the downsampled overview chart series for a worker. The rollup for the worker is created on first use, from
+     * a bounded subsample of the stored updates; after that, only updates reported since the last request (see
+     * {@link #reportStorageEvents(Collection)}) are decoded here
+     */
+    private ChartRollup.Series getOverviewSeries(StatsStorage ss, String sessionID, String workerID) {
+        ChartRollup rollup;
+        boolean created = false;
+        Pair<String, String> key = new Pair<>(sessionID, workerID);
+        synchronized (overviewRollups) {
+            rollup = overviewRollups.get(key);
+            if (rollup == null) {
+                rollup = new ChartRollup(maxChartPoints);
+                overviewRollups.put(key, rollup);
+                created = true;
+            }
+        }
+
+        synchronized (rollup) {
+            if (created)
+                seedRollup(rollup, ss, sessionID, workerID);
+            //Flag is cleared before decoding, so updates reported meanwhile are picked up by the next request
+            if (updatedRollups.remove(key) || created)
+                addNewUpdates(rollup, ss, sessionID, workerID);
+            return rollup.query(Integer.MIN_VALUE, maxChartPoints);
+        }
+    }
+
+    /**
+     * Seed a new rollup with at most maxChartPoints of the stored updates, subsampled uniformly as for the model page,
+     * so the first request doesn't decode the whole history of a long run. Callers should synchronize on the rollup
+     */
+    private void seedRollup(ChartRollup rollup, StatsStorage ss, String sessionID, String workerID) {
+        long[] allTimes = ss.getAllUpdateTimes(sessionID, StatsListener.TYPE_ID, workerID);
+        if (allTimes == null || allTimes.length <= maxChartPoints)
+            return; //Few enough to add all of them
+
+        int subsamplingFrequency = allTimes.length / maxChartPoints;
+        LongArrayList timesToQuery = new LongArrayList(maxChartPoints + 2);
+        int i = 0;
+        for (; i < allTimes.length; i += subsamplingFrequency) {
+            timesToQuery.add(allTimes[i]);
+        }
+        if ((i - subsamplingFrequency) != allTimes.length - 1) {
+            //Also add final point
+            timesToQuery.add(allTimes[allTimes.length - 1]);
+        }
+        addUpdates(rollup, ss, sessionID, workerID, timesToQuery.toArray());
+    }
+
+    /**
+     * Decode the updates stored after the last update of the rollup, and add them to it. Callers should synchronize
+     * on the rollup
+     */
+    private static void addNewUpdates(ChartRollup rollup, StatsStorage ss, String sessionID, String workerID) {
+        List<Persistable> updates =
+                        ss.getAllUpdatesAfter(sessionID, StatsListener.TYPE_ID, workerID, rollup.getLastTimestamp());
+        if (updates == null)
+            return;
+        for (Persistable p : updates) {
+            if (p instanceof StatsReport) {
+                addToRollup(rollup, (StatsReport) p);
+            }
+        }
+    }
+
+    private static void addUpdates(ChartRollup rollup, StatsStorage ss, String sessionID, String workerID,
+                    long[] times) {
+        for (int i = 0; i < times.length; i += ROLLUP_BATCH_SIZE) {
+            long[] batch = Arrays.copyOfRange(times, i, Math.min(times.length, i + ROLLUP_BATCH_SIZE));
+            for (Persistable p : ss.getUpdates(sessionID, StatsListener.TYPE_ID, workerID, batch)) {
+                if (p instanceof StatsReport) {
+                    addToRollup(rollup, (StatsReport) p);
+                }
+            }
+        }
+    }
+
+    private static void addToRollup(ChartRollup rollup, StatsReport sr) {
+        Map<String, Double> values = new HashMap<>();
+        values.put(SCORE_SERIES, sr.getScore());
+
+        //Update ratios: mean magnitudes(updates) / mean magnitudes (parameters)
+        Map<String, Double> updateMM = sr.getMeanMagnitudes(StatsType.Updates);
+        Map<String, Double> paramMM = sr.getMeanMagnitudes(StatsType.Parameters);
+        if (updateMM != null && paramMM != null && updateMM.size() > 0 && paramMM.size() > 0) {
+            for (String s : paramMM.keySet()) {
+                if (!s.toLowerCase().endsWith("w"))
+                    continue; //TODO: more robust "weights only" approach...
+                values.put(RATIO_SERIES_PREFIX + s, updateMM.getOrDefault(s, 0.0) / paramMM.get(s));
+            }
+        }
+
+        //Standard deviations: gradients, updates, activations
+        putSeries(values, STDEV_GRADIENTS_SERIES_PREFIX, sr.getStdev(StatsType.Gradients), true);
+        putSeries(values, STDEV_UPDATES_SERIES_PREFIX, sr.getStdev(StatsType.Updates), true);
+        putSeries(values, STDEV_ACTIVATIONS_SERIES_PREFIX, sr.getStdev(StatsType.Activations), false);
+
+        rollup.add(sr.getTimeStamp(), sr.getIterationCount(), values);
+    }
+
+    private static void putSeries(Map<String, Double> values, String prefix, Map<String, Double> stats,
+                    boolean weightsOnly) {
+        if (stats == null)
+            return;
+        for (Map.Entry<String, Double> e : stats.entrySet()) {
+            if (weightsOnly && !e.getKey().toLowerCase().endsWith("w"))
+                continue; //TODO: more robust "weights only" approach...
+            values.put(prefix + e.getKey(), e.getValue());
+        }
+    }
+
     private static void cleanLegacyIterationCounts(List<Integer> iterationCounts) {
         if (!iterationCounts.isEmpty()) {
             boolean allEqual = true;
@@ -397,27 +528,15 @@ public class TrainModule implements UIModule {
         result.put("scores", scores);
         result.put("scoresIter", scoresIterCount);
 
-        //Get scores info
-        long[] allTimes = (noData ? null : ss.getAllUpdateTimes(currentSessionID, StatsListener.TYPE_ID, wid));
-        List<Persistable> updates = null;
-        if(allTimes != null && allTimes.length > maxChartPoints){
-            int subsamplingFrequency = allTimes.length / maxChartPoints;
-            LongArrayList timesToQuery = new LongArrayList(maxChartPoints+2);
-            int i=0;
-            for(; i<allTimes.length; i+= subsamplingFrequency){
-                timesToQuery.add(allTimes[i]);
-            }
-            if((i-subsamplingFrequency) != allTimes.length-1){
-                //Also add final point
-                timesToQuery.add(allTimes[allTimes.length-1]);
+        //Get scores info: downsampled series from the rollup for this worker
+        StatsReport last = null;
+        if (!noData) {
+            Persistable p = ss.getLatestUpdate(currentSessionID, StatsListener.TYPE_ID, wid);
+            if (p instanceof StatsReport) {
+                last = (StatsReport) p;
+            } else {
+                noData = true;
             }
-            updates = ss.getUpdates(currentSessionID, StatsListener.TYPE_ID, wid, timesToQuery.toArray());
-        } else if(allTimes != null) {
-            //Don't subsample
-            updates = ss.getAllUpdatesAfter(currentSessionID, StatsListener.TYPE_ID, wid, 0);
-        }
-        if (updates == null || updates.isEmpty()) {
-            noData = true;
         }
 
         //Collect update ratios for weights
@@ -433,134 +552,39 @@ public class TrainModule implements UIModule {
         result.put("stdevUpdates", stdevUpdates);
 
         if (!noData) {
-            Persistable u = updates.get(0);
-            if (u instanceof StatsReport) {
-                StatsReport sp = (StatsReport) u;
-                Map<String, Double> map = sp.getMeanMagnitudes(StatsType.Parameters);
-                if (map != null) {
-                    for (String s : map.keySet()) {
-                        if (!s.toLowerCase().endsWith("w"))
-                            continue; //TODO: more robust "weights only" approach...
-                        updateRatios.put(s, new ArrayList<>());
-                    }
+            ChartRollup.Series series = getOverviewSeries(ss, currentSessionID, wid);
+            scoresIterCount.addAll(series.getX());
+            for (Map.Entry<String, List<Double>> e : series.getValues().entrySet()) {
+                List<Double> values = e.getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    values.set(i, fixNaN(values.get(i)));
                 }
 
-                Map<String, Double> stdGrad = sp.getStdev(StatsType.Gradients);
-                if (stdGrad != null) {
-                    for (String s : stdGrad.keySet()) {
-                        if (!s.toLowerCase().endsWith("w"))
-                            continue; //TODO: more robust "weights only" approach...
-                        stdevGradients.put(s, new ArrayList<>());
-                    }
-                }
-
-                Map<String, Double> stdUpdate = sp.getStdev(StatsType.Updates);
-                if (stdUpdate != null) {
-                    for (String s : stdUpdate.keySet()) {
-                        if (!s.toLowerCase().endsWith("w"))
-                            continue; //TODO: more robust "weights only" approach...
-                        stdevUpdates.put(s, new ArrayList<>());
-                    }
-                }
-
-
-                Map<String, Double> stdAct = sp.getStdev(StatsType.Activations);
-                if (stdAct != null) {
-                    for (String s : stdAct.keySet()) {
-                        stdevActivations.put(s, new ArrayList<>());
-                    }
+                String key = e.getKey();
+                if (SCORE_SERIES.equals(key)) {
+                    scores.addAll(values);
+                } else if (key.startsWith(RATIO_SERIES_PREFIX)) {
+                    updateRatios.put(key.substring(RATIO_SERIES_PREFIX.length()), values);
+                } else if (key.startsWith(STDEV_GRADIENTS_SERIES_PREFIX)) {
+                    stdevGradients.put(key.substring(STDEV_GRADIENTS_SERIES_PREFIX.length()), values);
+                } else if (key.startsWith(STDEV_UPDATES_SERIES_PREFIX)) {
+                    stdevUpdates.put(key.substring(STDEV_UPDATES_SERIES_PREFIX.length()), values);
+                } else if (key.startsWith(STDEV_ACTIVATIONS_SERIES_PREFIX)) {
+                    stdevActivations.put(key.substring(STDEV_ACTIVATIONS_SERIES_PREFIX.length()), values);
                 }
             }
         }
 
-        StatsReport last = null;
-        int lastIterCount = -1;
         //Legacy issue - Spark training - iteration counts are used to be reset... which means: could go 0,1,2,0,1,2, etc...
         //Or, it could equally go 4,8,4,8,... or 5,5,5,5 - depending on the collection and averaging frequencies
         //Now, it should use the proper iteration counts
         boolean needToHandleLegacyIterCounts = false;
-        if (!noData) {
-            double lastScore;
-
-            int totalUpdates = updates.size();
-            int subsamplingFrequency = 1;
-            if (totalUpdates > maxChartPoints) {
-                subsamplingFrequency = totalUpdates / maxChartPoints;
-            }
-
-            int pCount = -1;
-            int lastUpdateIdx = updates.size() - 1;
-            for (Persistable u : updates) {
-                pCount++;
-                if (!(u instanceof StatsReport))
-                    continue;
-
-                last = (StatsReport) u;
-                int iterCount = last.getIterationCount();
-
-                if (iterCount <= lastIterCount) {
-                    needToHandleLegacyIterCounts = true;
-                }
-                lastIterCount = iterCount;
-
-                if (pCount > 0 && subsamplingFrequency > 1 && pCount % subsamplingFrequency != 0) {
-                    //Skip this - subsample the data
-                    if (pCount != lastUpdateIdx)
-                        continue; //Always keep the most recent value
-                }
-
-                scoresIterCount.add(iterCount);
-                lastScore = last.getScore();
-                if (Double.isFinite(lastScore)) {
-                    scores.add(lastScore);
-                } else {
-                    scores.add(NAN_REPLACEMENT_VALUE);
-                }
-
-
-                //Update ratios: mean magnitudes(updates) / mean magnitudes (parameters)
-                Map<String, Double> updateMM = last.getMeanMagnitudes(StatsType.Updates);
-                Map<String, Double> paramMM = last.getMeanMagnitudes(StatsType.Parameters);
-                if (updateMM != null && paramMM != null && updateMM.size() > 0 && paramMM.size() > 0) {
-                    for (String s : updateRatios.keySet()) {
-                        List<Double> ratioHistory = updateRatios.get(s);
-                        double currUpdate = updateMM.getOrDefault(s, 0.0);
-                        double currParam = paramMM.getOrDefault(s, 0.0);
-                        double ratio = currUpdate / currParam;
-                        if (Double.isFinite(ratio)) {
-                            ratioHistory.add(ratio);
-                        } else {
-                            ratioHistory.add(NAN_REPLACEMENT_VALUE);
-                        }
-                    }
-                }
-
-                //Standard deviations: gradients, updates, activations
-                Map<String, Double> stdGrad = last.getStdev(StatsType.Gradients);
-                Map<String, Double> stdUpd = last.getStdev(StatsType.Updates);
-                Map<String, Double> stdAct = last.getStdev(StatsType.Activations);
-
-                if (stdGrad != null) {
-                    for (String s : stdevGradients.keySet()) {
-                        double d = stdGrad.getOrDefault(s, 0.0);
-                        stdevGradients.get(s).add(fixNaN(d));
-                    }
-                }
-                if (stdUpd != null) {
-                    for (String s : stdevUpdates.keySet()) {
-                        double d = stdUpd.getOrDefault(s, 0.0);
-                        stdevUpdates.get(s).add(fixNaN(d));
-                    }
-                }
-                if (stdAct != null) {
-                    for (String s : stdevActivations.keySet()) {
-                        double d = stdAct.getOrDefault(s, 0.0);
-                        stdevActivations.get(s).add(fixNaN(d));
-                    }
-                }
+        for (int i = 1; i < scoresIterCount.size(); i++) {
+            if (scoresIterCount.get(i) <= scoresIterCount.get(i - 1)) {
+                needToHandleLegacyIterCounts = true;
+                break;
             }
         }
-
         if (needToHandleLegacyIterCounts) {
             cleanLegacyIterationCounts(scoresIterCount);
         }
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.ui.module.train;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestChartRollup {
+
+    @Test
+    public void testRawPoints() {
+        ChartRollup rollup = new ChartRollup(16);
+        for (int i = 0; i < 5; i++) {
+            rollup.add(100 + i, i, Collections.singletonMap("score", (double) i));
+        }
+        assertEquals(104, rollup.getLastTimestamp());
+
+        ChartRollup.Series s = rollup.query(Integer.MIN_VALUE, 16);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), s.getX());
+        assertEquals(Arrays.asList(0.0, 1.0, 2.0, 3.0, 4.0), s.getValues().get("score"));
+    }
+
+    @Test
+    public void testDownsampling() {
+        ChartRollup rollup = new ChartRollup(16);
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Double> values = new HashMap<>();
+            values.put("score", i == 377 ? 1000.0 : 1.0);
+            if (i >= 500)
+                values.put("late", (double) i);
+            rollup.add(i, i, values);
+        }
+        assertEquals(1000, rollup.getNumUpdates());
+
+        ChartRollup.Series s = rollup.query(Integer.MIN_VALUE, 16);
+        List<Integer> x = s.getX();
+        assertTrue(x.size() <= 32);
+        assertEquals(0, (int) x.get(0));
+        assertEquals(999, (int) x.get(x.size() - 1));
+        for (int i = 1; i < x.size(); i++) {
+            assertTrue(x.get(i) > x.get(i - 1));
+        }
+
+        //Spike is kept by the min/max buckets, and all series are aligned with x
+        List<Double> score = s.getValues().get("score");
+        assertEquals(x.size(), score.size());
+        assertTrue(score.contains(1000.0));
+        List<Double> late = s.getValues().get("late");
+        assertEquals(x.size(), late.size());
+        assertTrue(Double.isNaN(late.get(0)));
+        assertEquals(999.0, late.get(late.size() - 1), 0.0);
+
+        //Recent range: finer resolution
+        ChartRollup.Series recent = rollup.query(900, 16);
+        assertTrue(recent.getX().get(0) > 800 && recent.getX().get(0) <= 900);
+        assertEquals(999, (int) recent.getX().get(recent.getX().size() - 1));
+        assertTrue(recent.getX().size() <= 32);
+    }
+}
@@ -25,7 +25,6 @@ import org.deeplearning4j.api.storage.listener.RoutingIterationListener;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
-import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.api.BaseTrainingListener;
@@ -34,8 +33,11 @@ import org.deeplearning4j.ui.stats.impl.DefaultStatsInitializationConfiguration;
 import org.deeplearning4j.ui.stats.impl.DefaultStatsUpdateConfiguration;
 import org.deeplearning4j.util.UIDProvider;
 import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.nativeblas.NativeOps;
 import org.nd4j.nativeblas.NativeOpsHolder;
@@ -48,17 +50,32 @@ import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BaseStatsListener: a general purpose listener for collecting and reporting system and model information.
  * <p>
  * Serves as a base for different ways of storing the collected data
+ * <p>
+ * To reduce the overhead on training, histograms and summary stats can be calculated on subsampled arrays (see
+ * {@link StatsUpdateConfiguration#maxSampleSize()}), and on a background thread (see
+ * {@link StatsUpdateConfiguration#asyncStats()}). In the reports, the stats collection duration is the time spent in
+ * the listener on the training thread since the previous report: background work is not included.
  *
  * @author Alex Black
  */
 @Slf4j
 public abstract class BaseStatsListener implements RoutingIterationListener {
     public static final String TYPE_ID = "StatsListener";
+    /**
+     * Maximum number of reports waiting for the background thread: further reports only keep their cheap stats
+     * (score, learning rates, memory, performance, garbage collection), without histograms and summary stats
+     */
+    public static final int MAX_PENDING_REPORTS = 4;
 
     private enum StatType {
         Mean, Stdev, MeanMagnitude
@@ -86,6 +103,18 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
     private Map<String, Double> stdevGradient;
     private Map<String, Double> meanMagGradients;
 
+    //Copies of the gradients and activations for async stats, as they are only available in their callbacks
+    private Map<String, INDArray> gradientSnapshot;
+    private Map<String, INDArray> activationSnapshot;
+
+    //Time spent in the listener on the training thread
+    private long listenerTimeNanos;
+    private long listenerTimeNanosSinceLastReport;
+
+    private transient ExecutorService statsExecutor;
+    private final AtomicInteger pendingReports = new AtomicInteger();
+    private final AtomicInteger droppedReports = new AtomicInteger();
+
     private static class ModelInfo implements Serializable {
         private final Model model;
         private long initTime;
@@ -260,56 +289,70 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
 
     @Override
     public void onForwardPass(Model model, Map<String, INDArray> activations) {
+        long start = System.nanoTime();
         int iterCount = getModelInfo(model).iterCount;
         if (calcFromActivations() && updateConfig.reportingFrequency() > 0
                 && (iterCount == 0 || iterCount % updateConfig.reportingFrequency() == 0)) {
-            if (updateConfig.collectHistograms(StatsType.Activations)) {
-                activationHistograms = getHistograms(activations, updateConfig.numHistogramBins(StatsType.Activations));
-            }
-            if (updateConfig.collectMean(StatsType.Activations)) {
-                meanActivations = calculateSummaryStats(activations, StatType.Mean);
-            }
-            if (updateConfig.collectStdev(StatsType.Activations)) {
-                stdevActivations = calculateSummaryStats(activations, StatType.Stdev);
-            }
-            if (updateConfig.collectMeanMagnitudes(StatsType.Activations)) {
-                meanMagActivations = calculateSummaryStats(activations, StatType.MeanMagnitude);
+            if (updateConfig.asyncStats()) {
+                activationSnapshot = backgroundBusy() ? null : snapshot(activations);
+            } else {
+                activations = snapshot(activations);
+                if (updateConfig.collectHistograms(StatsType.Activations)) {
+                    activationHistograms = getHistograms(activations, updateConfig.numHistogramBins(StatsType.Activations));
+                }
+                if (updateConfig.collectMean(StatsType.Activations)) {
+                    meanActivations = calculateSummaryStats(activations, StatType.Mean);
+                }
+                if (updateConfig.collectStdev(StatsType.Activations)) {
+                    stdevActivations = calculateSummaryStats(activations, StatType.Stdev);
+                }
+                if (updateConfig.collectMeanMagnitudes(StatsType.Activations)) {
+                    meanMagActivations = calculateSummaryStats(activations, StatType.MeanMagnitude);
+                }
             }
         }
+        addListenerTime(start);
     }
 
     @Override
     public void onGradientCalculation(Model model) {
+        long start = System.nanoTime();
         int iterCount = getModelInfo(model).iterCount;
         if (calcFromGradients() && updateConfig.reportingFrequency() > 0
                 && (iterCount == 0 || iterCount % updateConfig.reportingFrequency() == 0)) {
-            Gradient g = model.gradient();
-            if (updateConfig.collectHistograms(StatsType.Gradients)) {
-                gradientHistograms = getHistograms(g.gradientForVariable(), updateConfig.numHistogramBins(StatsType.Gradients));
-            }
+            if (updateConfig.asyncStats()) {
+                gradientSnapshot = backgroundBusy() ? null : snapshot(model.gradient().gradientForVariable());
+            } else {
+                Map<String, INDArray> gradients = snapshot(model.gradient().gradientForVariable());
+                if (updateConfig.collectHistograms(StatsType.Gradients)) {
+                    gradientHistograms = getHistograms(gradients, updateConfig.numHistogramBins(StatsType.Gradients));
+                }
 
-            if (updateConfig.collectMean(StatsType.Gradients)) {
-                meanGradients = calculateSummaryStats(g.gradientForVariable(), StatType.Mean);
-            }
-            if (updateConfig.collectStdev(StatsType.Gradients)) {
-                stdevGradient = calculateSummaryStats(g.gradientForVariable(), StatType.Stdev);
-            }
-            if (updateConfig.collectMeanMagnitudes(StatsType.Gradients)) {
-                meanMagGradients = calculateSummaryStats(g.gradientForVariable(), StatType.MeanMagnitude);
+                if (updateConfig.collectMean(StatsType.Gradients)) {
+                    meanGradients = calculateSummaryStats(gradients, StatType.Mean);
+                }
+                if (updateConfig.collectStdev(StatsType.Gradients)) {
+                    stdevGradient = calculateSummaryStats(gradients, StatType.Stdev);
+                }
+                if (updateConfig.collectMeanMagnitudes(StatsType.Gradients)) {
+                    meanMagGradients = calculateSummaryStats(gradients, StatType.MeanMagnitude);
+                }
             }
         }
+        addListenerTime(start);
     }
 
     private boolean calcFromActivations() {
-        return updateConfig.collectMean(StatsType.Activations) || updateConfig.collectStdev(StatsType.Activations)
-                || updateConfig.collectMeanMagnitudes(StatsType.Activations)
-                || updateConfig.collectHistograms(StatsType.Activations);
+        return calcFrom(StatsType.Activations);
     }
 
     private boolean calcFromGradients() {
-        return updateConfig.collectMean(StatsType.Gradients) || updateConfig.collectStdev(StatsType.Gradients)
-                || updateConfig.collectMeanMagnitudes(StatsType.Gradients)
-                || updateConfig.collectHistograms(StatsType.Gradients);
+        return calcFrom(StatsType.Gradients);
+    }
+
+    private boolean calcFrom(StatsType type) {
+        return updateConfig.collectMean(type) || updateConfig.collectStdev(type)
+                || updateConfig.collectMeanMagnitudes(type) || updateConfig.collectHistograms(type);
     }
 
     @Override
@@ -319,6 +362,7 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
 
     @Override
     public void iterationDone(Model model, int iteration, int epoch) {
+        long start = System.nanoTime();
 
         ModelInfo modelInfo = getModelInfo(model);
         boolean backpropParamsOnly = backpropParamsOnly(model);
@@ -335,6 +379,7 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
 
         if (updateConfig.reportingFrequency() > 1 && (iteration == 0 || iteration % updateConfig.reportingFrequency() != 0)) {
             modelInfo.iterCount = iteration;
+            addListenerTime(start);
             return;
         }
 
@@ -472,110 +517,246 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
         }
 
 
-        //--- Histograms ---
+        //--- Histograms and Summary Stats: Mean, Variance, Mean Magnitudes ---
 
-        if (updateConfig.collectHistograms(StatsType.Parameters)) {
-            Map<String, Histogram> paramHistograms = getHistograms(model.paramTable(backpropParamsOnly),
-                    updateConfig.numHistogramBins(StatsType.Parameters));
-            report.reportHistograms(StatsType.Parameters, paramHistograms);
-        }
+        //Gradients and activations were handled in their callbacks; parameters and updates are handled here.
+        //If the background thread is behind, the arrays are not copied and the report only keeps its cheap stats
+        final boolean skipArrayStats = updateConfig.asyncStats() && backgroundBusy();
+        final Map<String, INDArray> params = !skipArrayStats && calcFrom(StatsType.Parameters)
+                ? snapshot(model.paramTable(backpropParamsOnly)) : null;
+        final Map<String, INDArray> updates = !skipArrayStats && calcFrom(StatsType.Updates)
+                ? snapshot(model.gradient().gradientForVariable()) : null;
 
-        if (updateConfig.collectHistograms(StatsType.Gradients)) {
-            report.reportHistograms(StatsType.Gradients, gradientHistograms);
-        }
+        modelInfo.lastReportTime = currentTime;
+        modelInfo.lastReportIteration = iteration;
+        report.reportIterationCount(iteration);
+        modelInfo.iterCount = iteration;
 
-        if (updateConfig.collectHistograms(StatsType.Updates)) {
-            Map<String, Histogram> updateHistograms = getHistograms(model.gradient().gradientForVariable(),
-                    updateConfig.numHistogramBins(StatsType.Updates));
-            report.reportHistograms(StatsType.Updates, updateHistograms);
-        }
+        if (updateConfig.asyncStats()) {
+            final Map<String, INDArray> gradients = skipArrayStats ? null : gradientSnapshot;
+            final Map<String, INDArray> activations = skipArrayStats ? null : activationSnapshot;
+            if (skipArrayStats) {
+                int skipped = droppedReports.incrementAndGet();
+                log.debug("StatsListener background thread is behind: histograms and summary stats skipped for {} reports so far",
+                        skipped);
+            }
+            final StatsReport asyncReport = report;
+            asyncReport.reportStatsCollectionDurationMS(takeListenerTimeMs(start));
+            start = System.nanoTime();
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    reportArrayStats(asyncReport, StatsType.Parameters, params);
+                    reportArrayStats(asyncReport, StatsType.Gradients, gradients);
+                    reportArrayStats(asyncReport, StatsType.Updates, updates);
+                    reportArrayStats(asyncReport, StatsType.Activations, activations);
+                    router.putUpdate(asyncReport);
+                }
+            });
+        } else {
+            reportArrayStats(report, StatsType.Parameters, params);
+            reportArrayStats(report, StatsType.Updates, updates);
 
-        if (updateConfig.collectHistograms(StatsType.Activations)) {
-            report.reportHistograms(StatsType.Activations, activationHistograms);
+            if (updateConfig.collectHistograms(StatsType.Gradients)) {
+                report.reportHistograms(StatsType.Gradients, gradientHistograms);
+            }
+            if (updateConfig.collectHistograms(StatsType.Activations)) {
+                report.reportHistograms(StatsType.Activations, activationHistograms);
+            }
+            if (updateConfig.collectMean(StatsType.Gradients)) {
+                report.reportMean(StatsType.Gradients, meanGradients);
+            }
+            if (updateConfig.collectMean(StatsType.Activations)) {
+                report.reportMean(StatsType.Activations, meanActivations);
+            }
+            if (updateConfig.collectStdev(StatsType.Gradients)) {
+                report.reportStdev(StatsType.Gradients, stdevGradient);
+            }
+            if (updateConfig.collectStdev(StatsType.Activations)) {
+                report.reportStdev(StatsType.Activations, stdevActivations);
+            }
+            if (updateConfig.collectMeanMagnitudes(StatsType.Gradients)) {
+                report.reportMeanMagnitudes(StatsType.Gradients, meanMagGradients);
+            }
+            if (updateConfig.collectMeanMagnitudes(StatsType.Activations)) {
+                report.reportMeanMagnitudes(StatsType.Activations, meanMagActivations);
+            }
+
+            //Amount of time required to calculate all histograms, means etc.
+            report.reportStatsCollectionDurationMS(takeListenerTimeMs(start));
+            start = System.nanoTime();
+            this.router.putUpdate(report);
         }
 
+        activationHistograms = null;
+        meanActivations = null;
+        stdevActivations = null;
+        meanMagActivations = null;
+        gradientHistograms = null;
+        meanGradients = null;
+        stdevGradient = null;
+        meanMagGradients = null;
+        gradientSnapshot = null;
+        activationSnapshot = null;
+        addListenerTime(start);
+    }
 
-        //--- Summary Stats: Mean, Variance, Mean Magnitudes ---
+    /**
+     * @return Total time spent in this listener on the training thread, in milliseconds. Background work for
+     * {@link StatsUpdateConfiguration#asyncStats()} is not included
+     */
+    public long getListenerTimeMs() {
+        return listenerTimeNanos / 1000000;
+    }
 
-        if (updateConfig.collectMean(StatsType.Parameters)) {
-            Map<String, Double> meanParams = calculateSummaryStats(model.paramTable(backpropParamsOnly), StatType.Mean);
-            report.reportMean(StatsType.Parameters, meanParams);
-        }
+    /**
+     * @return Number of reports without histograms and summary stats, because the background thread could not keep
+     * up (async stats only). These reports still have their score, learning rates, memory, performance and garbage
+     * collection stats
+     */
+    public int getDroppedReports() {
+        return droppedReports.get();
+    }
 
-        if (updateConfig.collectMean(StatsType.Gradients)) {
-            report.reportMean(StatsType.Gradients, meanGradients);
+    /**
+     * Wait for all the reports submitted to the background thread to be routed (async stats only)
+     */
+    public void flush() {
+        if (statsExecutor == null)
+            return;
+        try {
+            statsExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    //No op
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        if (updateConfig.collectMean(StatsType.Updates)) {
-            Map<String, Double> meanUpdates =
-                    calculateSummaryStats(model.gradient().gradientForVariable(), StatType.Mean);
-            report.reportMean(StatsType.Updates, meanUpdates);
-        }
+    private void addListenerTime(long startNanos) {
+        long t = System.nanoTime() - startNanos;
+        listenerTimeNanos += t;
+        listenerTimeNanosSinceLastReport += t;
+    }
 
-        if (updateConfig.collectMean(StatsType.Activations)) {
-            report.reportMean(StatsType.Activations, meanActivations);
-        }
+    private int takeListenerTimeMs(long startNanos) {
+        addListenerTime(startNanos);
+        int ms = (int) (listenerTimeNanosSinceLastReport / 1000000);
+        listenerTimeNanosSinceLastReport = 0;
+        return ms;
+    }
 
+    private boolean backgroundBusy() {
+        return pendingReports.get() >= MAX_PENDING_REPORTS;
+    }
 
-        if (updateConfig.collectStdev(StatsType.Parameters)) {
-            Map<String, Double> stdevParams =
-                    calculateSummaryStats(model.paramTable(backpropParamsOnly), StatType.Stdev);
-            report.reportStdev(StatsType.Parameters, stdevParams);
+    /**
+     * Run the task on the background thread. Reports without array stats are cheap to route, and still go through the
+     * background thread so that reports are routed in order
+     */
+    private void submit(final Runnable task) {
+        if (statsExecutor == null) {
+            statsExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setDaemon(true);
+                    t.setName("StatsListener-" + sessionID);
+                    return t;
+                }
+            });
         }
+        pendingReports.incrementAndGet();
+        statsExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.warn("Error calculating or routing stats", t);
+                } finally {
+                    pendingReports.decrementAndGet();
+                }
+            }
+        });
+    }
 
-        if (updateConfig.collectStdev(StatsType.Gradients)) {
-            report.reportStdev(StatsType.Gradients, stdevGradient);
+    /**
+     * Subsample the arrays (if {@link StatsUpdateConfiguration#maxSampleSize()} is set), and copy them out of any
+     * workspace (if {@link StatsUpdateConfiguration#asyncStats()} is set), as the originals keep changing during
+     * training
+     */
+    private Map<String, INDArray> snapshot(Map<String, INDArray> source) {
+        int maxSampleSize = updateConfig.maxSampleSize();
+        boolean copy = updateConfig.asyncStats();
+        if (source == null || (maxSampleSize <= 0 && !copy))
+            return source;
+
+        Map<String, INDArray> out = new LinkedHashMap<>();
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (Map.Entry<String, INDArray> entry : source.entrySet()) {
+                INDArray arr = entry.getValue();
+                if (maxSampleSize > 0 && arr.length() > maxSampleSize) {
+                    arr = subsample(arr, maxSampleSize).dup();
+                } else if (copy) {
+                    arr = arr.dup();
+                }
+                out.put(entry.getKey(), arr);
+            }
         }
+        return out;
+    }
 
-        if (updateConfig.collectStdev(StatsType.Updates)) {
-            Map<String, Double> stdevUpdates =
-                    calculateSummaryStats(model.gradient().gradientForVariable(), StatType.Stdev);
-            report.reportStdev(StatsType.Updates, stdevUpdates);
-        }
+    /**
+     * Regular strided subset of the array, with at most (approximately) maxSize values: the largest dimensions are
+     * strided first
+     */
+    private static INDArray subsample(INDArray arr, long maxSize) {
+        long factor = (arr.length() + maxSize - 1) / maxSize;
+        Integer[] dims = new Integer[arr.rank()];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = i;
+        }
+        final long[] shape = arr.shape();
+        Arrays.sort(dims, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer d1, Integer d2) {
+                return Long.compare(shape[d2], shape[d1]);
+            }
+        });
 
-        if (updateConfig.collectStdev(StatsType.Activations)) {
-            report.reportStdev(StatsType.Activations, stdevActivations);
+        INDArrayIndex[] indices = new INDArrayIndex[arr.rank()];
+        Arrays.fill(indices, NDArrayIndex.all());
+        for (int d : dims) {
+            if (factor <= 1)
+                break;
+            long stride = Math.min(factor, shape[d]);
+            indices[d] = NDArrayIndex.interval(0, stride, shape[d]);
+            factor = (factor + stride - 1) / stride;
         }
+        return arr.get(indices);
+    }
 
-
-        if (updateConfig.collectMeanMagnitudes(StatsType.Parameters)) {
-            Map<String, Double> meanMagParams =
-                    calculateSummaryStats(model.paramTable(backpropParamsOnly), StatType.MeanMagnitude);
-            report.reportMeanMagnitudes(StatsType.Parameters, meanMagParams);
+    private void reportArrayStats(StatsReport report, StatsType type, Map<String, INDArray> arrays) {
+        if (arrays == null)
+            return;
+        if (updateConfig.collectHistograms(type)) {
+            report.reportHistograms(type, getHistograms(arrays, updateConfig.numHistogramBins(type)));
         }
-
-        if (updateConfig.collectMeanMagnitudes(StatsType.Gradients)) {
-            report.reportMeanMagnitudes(StatsType.Gradients, meanMagGradients);
+        if (updateConfig.collectMean(type)) {
+            report.reportMean(type, calculateSummaryStats(arrays, StatType.Mean));
         }
-
-        if (updateConfig.collectMeanMagnitudes(StatsType.Updates)) {
-            Map<String, Double> meanMagUpdates =
-                    calculateSummaryStats(model.gradient().gradientForVariable(), StatType.MeanMagnitude);
-            report.reportMeanMagnitudes(StatsType.Updates, meanMagUpdates);
+        if (updateConfig.collectStdev(type)) {
+            report.reportStdev(type, calculateSummaryStats(arrays, StatType.Stdev));
         }
-
-        if (updateConfig.collectMeanMagnitudes(StatsType.Activations)) {
-            report.reportMeanMagnitudes(StatsType.Activations, meanMagActivations);
+        if (updateConfig.collectMeanMagnitudes(type)) {
+            report.reportMeanMagnitudes(type, calculateSummaryStats(arrays, StatType.MeanMagnitude));
         }
-
-
-        long endTime = getTime();
-        report.reportStatsCollectionDurationMS((int) (endTime - currentTime)); //Amount of time required to alculate all histograms, means etc.
-        modelInfo.lastReportTime = currentTime;
-        modelInfo.lastReportIteration = iteration;
-        report.reportIterationCount(iteration);
-
-        this.router.putUpdate(report);
-
-        modelInfo.iterCount = iteration;
-        activationHistograms = null;
-        meanActivations = null;
-        stdevActivations = null;
-        meanMagActivations = null;
-        gradientHistograms = null;
-        meanGradients = null;
-        stdevGradient = null;
-        meanMagGradients = null;
     }
 
     private long getTime() {
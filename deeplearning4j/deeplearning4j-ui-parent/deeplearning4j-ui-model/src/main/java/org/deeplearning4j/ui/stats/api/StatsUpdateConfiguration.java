@@ -102,4 +102,18 @@ public interface StatsUpdateConfiguration extends Serializable {
      */
     boolean collectMeanMagnitudes(StatsType type);
 
+    //--- Overhead ---
+
+    /**
+     * Maximum number of values of each parameter/gradient/update/activation array used to calculate the histograms
+     * and summary stats. Larger arrays are subsampled with a regular stride. 0 or negative: use all values
+     */
+    int maxSampleSize();
+
+    /**
+     * If true: copies of the (possibly subsampled) arrays are taken on the training thread, and the histograms and
+     * summary stats are calculated and the report is routed (and encoded) on a background thread
+     */
+    boolean asyncStats();
+
 }
@@ -50,6 +50,8 @@ public class DefaultStatsUpdateConfiguration implements StatsUpdateConfiguration
     private boolean collectMeanMagnitudesGradients = true;
     private boolean collectMeanMagnitudesUpdates = true;
     private boolean collectMeanMagnitudesActivations = true;
+    private int maxSampleSize = 0;
+    private boolean asyncStats = false;
 
     private DefaultStatsUpdateConfiguration(Builder b) {
         this.reportingFrequency = b.reportingFrequency;
@@ -74,6 +76,8 @@ public class DefaultStatsUpdateConfiguration implements StatsUpdateConfiguration
         this.collectMeanMagnitudesGradients = b.collectMeanMagnitudesGradients;
         this.collectMeanMagnitudesUpdates = b.collectMeanMagnitudesUpdates;
         this.collectMeanMagnitudesActivations = b.collectMeanMagnitudesActivations;
+        this.maxSampleSize = b.maxSampleSize;
+        this.asyncStats = b.asyncStats;
     }
 
     @Override
@@ -166,6 +170,16 @@ public class DefaultStatsUpdateConfiguration implements StatsUpdateConfiguration
         return false;
     }
 
+    @Override
+    public int maxSampleSize() {
+        return maxSampleSize;
+    }
+
+    @Override
+    public boolean asyncStats() {
+        return asyncStats;
+    }
+
     public static class Builder {
         private int reportingFrequency = DEFAULT_REPORTING_FREQUENCY;
         private boolean collectPerformanceStats = true;
@@ -189,6 +203,8 @@ public class DefaultStatsUpdateConfiguration implements StatsUpdateConfiguration
         private boolean collectMeanMagnitudesGradients = true;
         private boolean collectMeanMagnitudesUpdates = true;
         private boolean collectMeanMagnitudesActivations = true;
+        private int maxSampleSize = 0;
+        private boolean asyncStats = false;
 
         public Builder reportingFrequency(int reportingFrequency) {
             this.reportingFrequency = reportingFrequency;
@@ -300,6 +316,24 @@ public class DefaultStatsUpdateConfiguration implements StatsUpdateConfiguration
             return this;
         }
 
+        /**
+         * Maximum number of values of each array used to calculate the histograms and summary stats. Larger arrays
+         * are subsampled with a regular stride. 0 (default): use all values
+         */
+        public Builder maxSampleSize(int maxSampleSize) {
+            this.maxSampleSize = maxSampleSize;
+            return this;
+        }
+
+        /**
+         * If true: calculate the histograms and summary stats, and route the reports, on a background thread.
+         * Only copies of the (possibly subsampled) arrays are taken on the training thread. Default: false
+         */
+        public Builder asyncStats(boolean asyncStats) {
+            this.asyncStats = asyncStats;
+            return this;
+        }
+
         public DefaultStatsUpdateConfiguration build() {
             return new DefaultStatsUpdateConfiguration(this);
         }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.ui.storage.segmented;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One append-only segment file of a {@link SegmentedFileStatsStorage}.<br>
+ * Each record is stored as: length of the body (int), CRC32 of the body (int), body. Records are read from a read-only
+ * memory mapping of the segment; records appended after the segment was last mapped are read with positional reads.
+ */
+class Segment {
+
+    static final int HEADER_BYTES = 8;
+
+    private final int id;
+    private final File file;
+    private final FileChannel channel;
+    private long size;
+    private volatile MappedByteBuffer mapped;
+
+    Segment(int id, File file) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        this.size = channel.size();
+    }
+
+    int getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Append a record to the end of the segment
+     *
+     * @return Offset of the record
+     */
+    long append(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(body.length).putInt((int) crc.getValue());
+        header.flip();
+        ByteBuffer[] buffers = new ByteBuffer[] {header, ByteBuffer.wrap(body)};
+
+        long offset = size;
+        channel.position(offset);
+        while (buffers[1].hasRemaining()) {
+            channel.write(buffers);
+        }
+        size += HEADER_BYTES + body.length;
+        return offset;
+    }
+
+    /**
+     * Flush the segment to disk, and map it for reading. No more records should be appended after this
+     */
+    void seal() throws IOException {
+        channel.force(false);
+        map();
+    }
+
+    void map() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * Remove an incomplete record at the end of the segment (torn write)
+     */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+        map();
+    }
+
+    /**
+     * Check the record at the given offset, which must have been mapped
+     *
+     * @param verifyCrc If true: check the CRC32 of the record body
+     * @return Offset of the next record, or -1 if the record is incomplete or corrupt
+     */
+    long next(long offset, boolean verifyCrc) {
+        MappedByteBuffer m = mapped;
+        if (offset + HEADER_BYTES > m.limit())
+            return -1;
+        int length = m.getInt((int) offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > m.limit())
+            return -1;
+        if (verifyCrc) {
+            ByteBuffer body = slice(m, offset + HEADER_BYTES, length);
+            CRC32 crc = new CRC32();
+            byte[] temp = new byte[Math.min(length, 8192)];
+            while (body.hasRemaining()) {
+                int n = Math.min(temp.length, body.remaining());
+                body.get(temp, 0, n);
+                crc.update(temp, 0, n);
+            }
+            if ((int) crc.getValue() != m.getInt((int) offset + 4))
+                return -1;
+        }
+        return offset + HEADER_BYTES + length;
+    }
+
+    /**
+     * @return Body of the record at the given offset
+     */
+    ByteBuffer read(long offset) throws IOException {
+        MappedByteBuffer m = mapped;
+        if (m != null && offset + HEADER_BYTES <= m.limit()) {
+            int length = m.getInt((int) offset);
+            if (offset + HEADER_BYTES + length <= m.limit()) {
+                return slice(m, offset + HEADER_BYTES, length);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        readFully(body, offset + HEADER_BYTES);
+        body.flip();
+        return body;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw new EOFException("Unexpected end of segment " + file + " at position " + position);
+            position += n;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, int length) {
+        //Duplicate: the position and limit of the mapped buffer are shared between threads
+        ByteBuffer b = buffer.duplicate();
+        b.position((int) offset);
+        b.limit((int) offset + length);
+        return b.slice();
+    }
+
+    void close() throws IOException {
+        mapped = null;
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    void delete() throws IOException {
+        mapped = null;
+        channel.close();
+        if (!file.delete())
+            throw new IOException("Could not delete segment " + file);
+    }
+}
@@ -0,0 +1,750 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.ui.storage.segmented;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.api.storage.*;
+import org.deeplearning4j.ui.storage.BaseCollectionStatsStorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A file-based {@link StatsStorage} implementation for long-running training jobs, that accumulate a large number of
+ * updates.<br>
+ * All records (the encoded {@link Persistable}s, with a small header) are appended sequentially to segment files in a
+ * directory; a new segment is started once the current one reaches the maximum segment size. Only the storage
+ * metadata and static info are kept in memory: updates are indexed by session/type/worker ID and time stamp, and are
+ * read back from the memory-mapped segments when queried. Latest update and time range queries only touch the
+ * matching records.<br>
+ * The index is rebuilt from the record headers when the storage is opened; an incomplete record at the end of the
+ * last segment (crash during a write) is discarded.<br>
+ * Superseded records (same ID and time stamp) and records from sessions removed with {@link #removeSession(String)}
+ * stay on disk until {@link #compact()} is called.<br>
+ * The storage format is not compatible with {@link org.deeplearning4j.ui.storage.FileStatsStorage} or
+ * {@link org.deeplearning4j.ui.storage.sqlite.J7FileStatsStorage}
+ */
+@Slf4j
+public class SegmentedFileStatsStorage extends BaseCollectionStatsStorage {
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d+)\\.bin");
+
+    private static final byte KIND_METADATA = 0;
+    private static final byte KIND_STATIC_INFO = 1;
+    private static final byte KIND_UPDATE = 2;
+    private static final byte KIND_REMOVE_SESSION = 3;
+
+    //Record locations: segment ID in the upper bits, offset in the segment in the lower 40 bits
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+
+    //Write lock: appending, compaction and removal. Read lock: reading records, as compaction moves them
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private Segment active;
+    private int nextSegmentId;
+    private long nextSequence;
+    private volatile boolean isClosed = false;
+
+    //Locations of the latest metadata and static info records, for compaction
+    private final Map<SessionTypeId, Long> storageMetaDataLocations = new HashMap<>();
+    private final Map<SessionTypeWorkerId, Long> staticInfoLocations = new HashMap<>();
+    //Sequence number of the removal of each session, while the session records may still be on disk
+    private final Map<String, Long> removedSessions = new HashMap<>();
+
+    /**
+     * @param directory Directory for the segment files. Created if it doesn't exist
+     */
+    public SegmentedFileStatsStorage(@NonNull File directory) {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param directory       Directory for the segment files. Created if it doesn't exist
+     * @param maxSegmentBytes Size at which a new segment is started
+     */
+    public SegmentedFileStatsStorage(@NonNull File directory, long maxSegmentBytes) {
+        if (maxSegmentBytes <= 0 || maxSegmentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid maximum segment size: " + maxSegmentBytes
+                            + " (must be between 1 and " + Integer.MAX_VALUE + " bytes)");
+        if (!directory.exists() && !directory.mkdirs())
+            throw new RuntimeException("Could not create storage directory " + directory);
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException("Not a directory: " + directory);
+
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+
+        sessionIDs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        storageMetaData = new ConcurrentHashMap<>();
+        staticInfo = new ConcurrentHashMap<>();
+
+        try {
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening SegmentedFileStatsStorage in " + directory, e);
+        }
+    }
+
+    private void load() throws IOException {
+        TreeMap<Integer, File> files = new TreeMap<>();
+        File[] list = directory.listFiles();
+        if (list != null) {
+            for (File f : list) {
+                Matcher m = SEGMENT_PATTERN.matcher(f.getName());
+                if (m.matches())
+                    files.put(Integer.parseInt(m.group(1)), f);
+            }
+        }
+
+        for (Map.Entry<Integer, File> e : files.entrySet()) {
+            Segment s = new Segment(e.getKey(), e.getValue());
+            s.map();
+            segments.put(s.getId(), s);
+
+            //Only the last segment can have been written to when the JVM died
+            boolean last = e.getKey().equals(files.lastKey());
+            long offset = 0;
+            while (offset < s.size()) {
+                long next = s.next(offset, last);
+                if (next < 0) {
+                    if (last) {
+                        log.warn("Discarding incomplete record at the end of {} (offset {})", s.getFile(), offset);
+                        s.truncate(offset);
+                    } else {
+                        log.warn("Skipping corrupt records in {} from offset {}", s.getFile(), offset);
+                    }
+                    break;
+                }
+                index(location(s.getId(), offset));
+                offset = next;
+            }
+        }
+
+        applyRemovedSessions();
+        for (SessionTypeWorkerId id : staticInfo.keySet()) {
+            sessionIDs.add(id.getSessionID());
+        }
+
+        nextSegmentId = files.isEmpty() ? 0 : files.lastKey() + 1;
+        if (!files.isEmpty() && segments.lastEntry().getValue().size() < maxSegmentBytes) {
+            active = segments.lastEntry().getValue();
+        } else {
+            active = newSegment();
+        }
+    }
+
+    private void index(long location) throws IOException {
+        Record r = readRecord(location, false);
+        nextSequence = Math.max(nextSequence, r.sequence + 1);
+        switch (r.kind) {
+            case KIND_METADATA:
+                SessionTypeId stId = new SessionTypeId(r.sessionID, r.typeID);
+                Long prevMeta = storageMetaDataLocations.get(stId);
+                if (prevMeta == null || sequence(prevMeta) < r.sequence) {
+                    storageMetaDataLocations.put(stId, location);
+                    storageMetaData.put(stId, (StorageMetaData) readRecord(location, true).value);
+                }
+                break;
+            case KIND_STATIC_INFO:
+                SessionTypeWorkerId stwId = new SessionTypeWorkerId(r.sessionID, r.typeID, r.workerID);
+                Long prevStatic = staticInfoLocations.get(stwId);
+                if (prevStatic == null || sequence(prevStatic) < r.sequence) {
+                    staticInfoLocations.put(stwId, location);
+                    staticInfo.put(stwId, readRecord(location, true).value);
+                }
+                break;
+            case KIND_UPDATE:
+                UpdateIndex index = getUpdateMap(r.sessionID, r.typeID, r.workerID, true);
+                Long prevUpdate = index.locations.get(r.timestamp);
+                if (prevUpdate == null || sequence(prevUpdate) < r.sequence) {
+                    index.putLocation(r.timestamp, location);
+                }
+                break;
+            case KIND_REMOVE_SESSION:
+                Long prevRemoval = removedSessions.get(r.sessionID);
+                if (prevRemoval == null || prevRemoval < r.sequence) {
+                    removedSessions.put(r.sessionID, r.sequence);
+                }
+                break;
+            default:
+                throw new IOException("Unknown record type " + r.kind + " at " + location);
+        }
+    }
+
+    /**
+     * Records are not indexed in sequence order (compacted segments come after the segment being written to at the
+     * time), so the session removals are only applied once all the segments have been read
+     */
+    private void applyRemovedSessions() throws IOException {
+        for (Map.Entry<String, Long> e : removedSessions.entrySet()) {
+            String sessionID = e.getKey();
+            long removedAt = e.getValue();
+
+            Iterator<Map.Entry<SessionTypeId, Long>> metaIter = storageMetaDataLocations.entrySet().iterator();
+            while (metaIter.hasNext()) {
+                Map.Entry<SessionTypeId, Long> m = metaIter.next();
+                if (sessionID.equals(m.getKey().getSessionID()) && sequence(m.getValue()) < removedAt) {
+                    storageMetaData.remove(m.getKey());
+                    metaIter.remove();
+                }
+            }
+
+            Iterator<Map.Entry<SessionTypeWorkerId, Long>> staticIter = staticInfoLocations.entrySet().iterator();
+            while (staticIter.hasNext()) {
+                Map.Entry<SessionTypeWorkerId, Long> m = staticIter.next();
+                if (sessionID.equals(m.getKey().getSessionID()) && sequence(m.getValue()) < removedAt) {
+                    staticInfo.remove(m.getKey());
+                    staticIter.remove();
+                }
+            }
+
+            Iterator<Map.Entry<SessionTypeWorkerId, Map<Long, Persistable>>> updateIter =
+                            updates.entrySet().iterator();
+            while (updateIter.hasNext()) {
+                Map.Entry<SessionTypeWorkerId, Map<Long, Persistable>> m = updateIter.next();
+                if (!sessionID.equals(m.getKey().getSessionID()))
+                    continue;
+                UpdateIndex index = (UpdateIndex) m.getValue();
+                for (Map.Entry<Long, Long> u : index.locations.entrySet()) {
+                    if (sequence(u.getValue()) < removedAt) {
+                        index.removeLocation(u.getKey());
+                    }
+                }
+                if (index.locations.isEmpty()) {
+                    updateIter.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected UpdateIndex getUpdateMap(String sessionID, String typeID, String workerID, boolean createIfRequired) {
+        SessionTypeWorkerId id = new SessionTypeWorkerId(sessionID, typeID, workerID);
+        UpdateIndex index = (UpdateIndex) updates.get(id);
+        if (index == null && createIfRequired) {
+            //Only called with createIfRequired while holding the write lock
+            index = new UpdateIndex();
+            updates.put(id, index);
+        }
+        return index;
+    }
+
+    // ----- Queries that use the time index -----
+
+    @Override
+    public Persistable getLatestUpdate(String sessionID, String typeID, String workerID) {
+        UpdateIndex index = getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null)
+            return null;
+        lock.readLock().lock();
+        try {
+            Map.Entry<Long, Long> last = index.locations.lastEntry();
+            return last == null ? null : readValue(last.getValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, String workerID, long timestamp) {
+        List<Persistable> list = new ArrayList<>();
+        UpdateIndex index = getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null)
+            return list;
+        lock.readLock().lock();
+        try {
+            for (Long location : index.locations.tailMap(timestamp, false).values()) {
+                list.add(readValue(location));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return list;
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, long timestamp) {
+        List<Persistable> list = new ArrayList<>();
+        for (SessionTypeWorkerId stw : staticInfo.keySet()) {
+            if (stw.getSessionID().equals(sessionID) && stw.getTypeID().equals(typeID)) {
+                list.addAll(getAllUpdatesAfter(sessionID, typeID, stw.getWorkerID(), timestamp));
+            }
+        }
+
+        //Sort by time stamp
+        Collections.sort(list, new Comparator<Persistable>() {
+            @Override
+            public int compare(Persistable o1, Persistable o2) {
+                return Long.compare(o1.getTimeStamp(), o2.getTimeStamp());
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public long[] getAllUpdateTimes(String sessionID, String typeID, String workerID) {
+        UpdateIndex index = getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null)
+            return new long[0];
+        //Keys are already sorted, but may be added concurrently
+        List<Long> times = new ArrayList<>(index.locations.keySet());
+        long[] ret = new long[times.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = times.get(i);
+        }
+        return ret;
+    }
+
+    // ----- Store new info -----
+
+    @Override
+    public void putStaticInfo(Persistable staticInfo) {
+        List<StatsStorageEvent> sses = checkStorageEvents(staticInfo);
+        SessionTypeWorkerId id = new SessionTypeWorkerId(staticInfo.getSessionID(), staticInfo.getTypeID(),
+                        staticInfo.getWorkerID());
+        lock.writeLock().lock();
+        try {
+            long location = append(KIND_STATIC_INFO, staticInfo.getSessionID(), staticInfo.getTypeID(),
+                            staticInfo.getWorkerID(), staticInfo.getTimeStamp(), staticInfo);
+            staticInfoLocations.put(id, location);
+            this.staticInfo.put(id, staticInfo);
+            sessionIDs.add(staticInfo.getSessionID());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostStaticInfo, staticInfo.getSessionID(),
+                            staticInfo.getTypeID(), staticInfo.getWorkerID(), staticInfo.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putUpdate(Persistable update) {
+        List<StatsStorageEvent> sses = checkStorageEvents(update);
+        lock.writeLock().lock();
+        try {
+            long location = append(KIND_UPDATE, update.getSessionID(), update.getTypeID(), update.getWorkerID(),
+                            update.getTimeStamp(), update);
+            getUpdateMap(update.getSessionID(), update.getTypeID(), update.getWorkerID(), true)
+                            .putLocation(update.getTimeStamp(), location);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostUpdate, update.getSessionID(),
+                            update.getTypeID(), update.getWorkerID(), update.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putStorageMetaData(StorageMetaData storageMetaData) {
+        List<StatsStorageEvent> sses = checkStorageEvents(storageMetaData);
+        SessionTypeId id = new SessionTypeId(storageMetaData.getSessionID(), storageMetaData.getTypeID());
+        lock.writeLock().lock();
+        try {
+            long location = append(KIND_METADATA, storageMetaData.getSessionID(), storageMetaData.getTypeID(),
+                            storageMetaData.getWorkerID(), storageMetaData.getTimeStamp(), storageMetaData);
+            storageMetaDataLocations.put(id, location);
+            this.storageMetaData.put(id, storageMetaData);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostMetaData,
+                            storageMetaData.getSessionID(), storageMetaData.getTypeID(), storageMetaData.getWorkerID(),
+                            storageMetaData.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    // ----- Maintenance -----
+
+    /**
+     * Remove all the metadata, static info and updates of a session. The records are removed from disk on the next
+     * call to {@link #compact()}
+     *
+     * @param sessionID Session to remove
+     */
+    public void removeSession(String sessionID) {
+        lock.writeLock().lock();
+        try {
+            long location = append(KIND_REMOVE_SESSION, sessionID, null, null, System.currentTimeMillis(), null);
+            removedSessions.put(sessionID, sequence(location));
+
+            for (SessionTypeId id : new ArrayList<>(storageMetaData.keySet())) {
+                if (sessionID.equals(id.getSessionID())) {
+                    storageMetaData.remove(id);
+                    storageMetaDataLocations.remove(id);
+                }
+            }
+            for (SessionTypeWorkerId id : new ArrayList<>(staticInfo.keySet())) {
+                if (sessionID.equals(id.getSessionID())) {
+                    staticInfo.remove(id);
+                    staticInfoLocations.remove(id);
+                }
+            }
+            for (SessionTypeWorkerId id : new ArrayList<>(updates.keySet())) {
+                if (sessionID.equals(id.getSessionID())) {
+                    updates.remove(id);
+                }
+            }
+            sessionIDs.remove(sessionID);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the records that are still in use (i.e., not superseded or removed) into new segments, and delete the
+     * old segments. Blocks all reads and writes while running
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            active.seal();
+            List<Segment> old = new ArrayList<>(segments.values());
+            Compaction c = new Compaction();
+
+            for (Map.Entry<SessionTypeId, Long> e : storageMetaDataLocations.entrySet()) {
+                e.setValue(c.copy(e.getValue()));
+            }
+            for (Map.Entry<SessionTypeWorkerId, Long> e : staticInfoLocations.entrySet()) {
+                e.setValue(c.copy(e.getValue()));
+            }
+            for (Map<Long, Persistable> m : updates.values()) {
+                UpdateIndex index = (UpdateIndex) m;
+                for (Map.Entry<Long, Long> e : index.locations.entrySet()) {
+                    index.locations.put(e.getKey(), c.copy(e.getValue()));
+                }
+            }
+            if (c.out != null)
+                c.out.seal();
+
+            //Delete in order: a session removal record is always in a later segment than the records it removes
+            for (Segment s : old) {
+                segments.remove(s.getId());
+                s.delete();
+            }
+            removedSessions.clear();
+            active = newSegment();
+            log.info("Compacted {} segments into {} in {}", old.size(), c.count, directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private class Compaction {
+        private Segment out;
+        private int count;
+
+        private long copy(long location) throws IOException {
+            ByteBuffer body = segments.get(segmentId(location)).read(offset(location));
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            if (out == null || (out.size() > 0 && out.size() + Segment.HEADER_BYTES + bytes.length > maxSegmentBytes)) {
+                if (out != null)
+                    out.seal();
+                out = newSegment();
+                count++;
+            }
+            return location(out.getId(), out.append(bytes));
+        }
+    }
+
+    /**
+     * @return Directory containing the segment files
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Number of segment files
+     */
+    public int getNumSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Segment s : segments.values()) {
+                s.close();
+            }
+            isClosed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedFileStatsStorage(" + directory.getPath() + ")";
+    }
+
+    // ----- Record encoding -----
+
+    private Segment newSegment() throws IOException {
+        int id = nextSegmentId++;
+        Segment s = new Segment(id, new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)));
+        segments.put(id, s);
+        return s;
+    }
+
+    private long append(byte kind, String sessionID, String typeID, String workerID, long timestamp, Persistable p)
+                    throws IOException {
+        if (isClosed)
+            throw new IllegalStateException("Cannot write to closed storage " + this);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(kind);
+        dos.writeLong(nextSequence++);
+        writeString(dos, sessionID);
+        writeString(dos, typeID);
+        writeString(dos, workerID);
+        dos.writeLong(timestamp);
+        writeString(dos, p == null ? null : p.getClass().getName());
+        if (p != null)
+            p.encode(dos);
+        dos.flush();
+        byte[] body = baos.toByteArray();
+
+        if (active.size() > 0 && active.size() + Segment.HEADER_BYTES + body.length > maxSegmentBytes) {
+            active.seal();
+            active = newSegment();
+        }
+        return location(active.getId(), active.append(body));
+    }
+
+    private Record readRecord(long location, boolean decode) throws IOException {
+        Segment s = segments.get(segmentId(location));
+        if (s == null)
+            throw new IOException("No segment for record location " + location);
+        ByteBuffer body = s.read(offset(location));
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(body));
+
+        Record r = new Record();
+        r.kind = in.readByte();
+        r.sequence = in.readLong();
+        r.sessionID = readString(in);
+        r.typeID = readString(in);
+        r.workerID = readString(in);
+        r.timestamp = in.readLong();
+        String className = readString(in);
+        if (decode && className != null) {
+            Persistable p;
+            try {
+                p = (Persistable) Class.forName(className).newInstance();
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                throw new RuntimeException(e); //Shouldn't normally happen...
+            }
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            p.decode(bytes);
+            r.value = p;
+        }
+        return r;
+    }
+
+    private Persistable readValue(long location) {
+        try {
+            return readRecord(location, true).value;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long sequence(long location) throws IOException {
+        return readRecord(location, false).sequence;
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << OFFSET_BITS) | offset;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    private static long offset(long location) {
+        return location & OFFSET_MASK;
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        dos.writeBoolean(s != null);
+        if (s != null)
+            dos.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class Record {
+        private byte kind;
+        private long sequence;
+        private String sessionID;
+        private String typeID;
+        private String workerID;
+        private long timestamp;
+        private Persistable value;
+    }
+
+    /**
+     * Time index of the updates for one session/type/worker. Implements the map used by
+     * {@link BaseCollectionStatsStorage}: updates are read from the segments when they are accessed
+     */
+    private class UpdateIndex extends AbstractMap<Long, Persistable> {
+        private final ConcurrentSkipListMap<Long, Long> locations = new ConcurrentSkipListMap<>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        private void putLocation(long timestamp, long location) {
+            if (locations.put(timestamp, location) == null)
+                count.incrementAndGet();
+        }
+
+        private void removeLocation(long timestamp) {
+            if (locations.remove(timestamp) != null)
+                count.decrementAndGet();
+        }
+
+        @Override
+        public Persistable get(Object timestamp) {
+            lock.readLock().lock();
+            try {
+                Long location = locations.get(timestamp);
+                return location == null ? null : readValue(location);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object timestamp) {
+            return locations.containsKey(timestamp);
+        }
+
+        @Override
+        public int size() {
+            return count.get();
+        }
+
+        @Override
+        public Set<Long> keySet() {
+            return locations.keySet();
+        }
+
+        @Override
+        public Set<Entry<Long, Persistable>> entrySet() {
+            //Values are read lazily, one at a time
+            return new AbstractSet<Entry<Long, Persistable>>() {
+                @Override
+                public Iterator<Entry<Long, Persistable>> iterator() {
+                    final Iterator<Long> iter = locations.keySet().iterator();
+                    return new Iterator<Entry<Long, Persistable>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Long, Persistable> next() {
+                            Long timestamp = iter.next();
+                            return new SimpleImmutableEntry<>(timestamp, get(timestamp));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count.get();
+                }
+            };
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -18,21 +18,31 @@ package org.deeplearning4j.ui.stats;
 
 import org.deeplearning4j.api.storage.Persistable;
 import org.deeplearning4j.api.storage.StatsStorage;
+import org.deeplearning4j.api.storage.StatsStorageRouter;
+import org.deeplearning4j.api.storage.StorageMetaData;
 import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.ui.stats.api.StatsReport;
+import org.deeplearning4j.ui.stats.api.StatsType;
+import org.deeplearning4j.ui.stats.api.SummaryType;
+import org.deeplearning4j.ui.stats.impl.DefaultStatsUpdateConfiguration;
 import org.deeplearning4j.ui.storage.mapdb.MapDBStatsStorage;
 import org.junit.Test;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by Alex on 07/10/2016.
@@ -92,4 +102,144 @@ public class TestStatsListener {
 
     }
 
+    @Test
+    public void testSampledAsyncStats() {
+        DataSet ds = new IrisDataSetIterator(150, 150).next();
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT).list()
+                        .layer(0, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(4).nOut(3).build())
+                        .pretrain(false).backprop(true).build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        StatsStorage ss = new MapDBStatsStorage(); //in-memory
+        StatsListener listener = new StatsListener(ss, null, new DefaultStatsUpdateConfiguration.Builder()
+                        .reportingFrequency(1).maxSampleSize(5).asyncStats(true).build(), null, null);
+        net.setListeners(listener);
+
+        for (int i = 0; i < 3; i++) {
+            net.fit(ds);
+        }
+        listener.flush();
+
+        String sessionID = ss.listSessionIDs().get(0);
+        String workerID = ss.listWorkerIDsForSession(sessionID).get(0);
+        List<Persistable> updates =
+                        ss.getAllUpdatesAfter(sessionID, StatsListener.TYPE_ID, workerID, 0);
+        assertEquals(0, listener.getDroppedReports());
+        assertEquals(3, updates.size());
+        for (Persistable p : updates) {
+            StatsReport report = (StatsReport) p;
+            //0_W has 12 values: subsampled, but still reported
+            assertNotNull(report.getHistograms(StatsType.Parameters).get("0_W"));
+            assertNotNull(report.getMeanMagnitudes(StatsType.Updates).get("0_W"));
+            assertTrue(report.getStatsCollectionDurationMs() >= 0);
+        }
+    }
+
+    @Test
+    public void testAsyncStatsBackgroundBehind() throws Exception {
+        DataSet ds = new IrisDataSetIterator(150, 150).next();
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT).list()
+                        .layer(0, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(4).nOut(3).build())
+                        .pretrain(false).backprop(true).build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Background thread is blocked on the first report, so it falls behind as soon as MAX_PENDING_REPORTS are queued
+        StatsStorage ss = new MapDBStatsStorage(); //in-memory
+        CountDownLatch release = new CountDownLatch(1);
+        StatsListener listener = new StatsListener(new BlockingRouter(ss, release), null,
+                        new DefaultStatsUpdateConfiguration.Builder().reportingFrequency(1).asyncStats(true).build(),
+                        null, null);
+        net.setListeners(listener);
+
+        int numIterations = BaseStatsListener.MAX_PENDING_REPORTS + 3;
+        for (int i = 0; i < numIterations; i++) {
+            net.fit(ds);
+        }
+        release.countDown();
+        listener.flush();
+
+        assertEquals(numIterations - BaseStatsListener.MAX_PENDING_REPORTS, listener.getDroppedReports());
+
+        String sessionID = ss.listSessionIDs().get(0);
+        String workerID = ss.listWorkerIDsForSession(sessionID).get(0);
+        List<Persistable> updates = ss.getAllUpdatesAfter(sessionID, StatsListener.TYPE_ID, workerID, 0);
+        //No report is dropped: reports routed while the background thread is behind only skip the array stats
+        assertEquals(numIterations, updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            StatsReport report = (StatsReport) updates.get(i);
+            boolean full = i < BaseStatsListener.MAX_PENDING_REPORTS;
+
+            assertTrue(report.hasScore());
+            assertTrue(report.hasLearningRates());
+            assertTrue(report.hasMemoryUse());
+            assertTrue(report.hasPerformance());
+
+            for (StatsType type : new StatsType[] {StatsType.Parameters, StatsType.Gradients, StatsType.Updates}) {
+                assertEquals(full, report.hasHistograms(type));
+                assertEquals(full, report.hasSummaryStats(type, SummaryType.Mean));
+                assertEquals(full, report.hasSummaryStats(type, SummaryType.Stdev));
+                assertEquals(full, report.hasSummaryStats(type, SummaryType.MeanMagnitudes));
+            }
+            if (!full) {
+                assertFalse(report.hasHistograms(StatsType.Activations));
+            }
+        }
+    }
+
+    /**
+     * Router that blocks the caller of the first putUpdate until released
+     */
+    private static class BlockingRouter implements StatsStorageRouter {
+        private final StatsStorageRouter delegate;
+        private final CountDownLatch release;
+
+        private BlockingRouter(StatsStorageRouter delegate, CountDownLatch release) {
+            this.delegate = delegate;
+            this.release = release;
+        }
+
+        @Override
+        public void putStorageMetaData(StorageMetaData storageMetaData) {
+            delegate.putStorageMetaData(storageMetaData);
+        }
+
+        @Override
+        public void putStorageMetaData(Collection<? extends StorageMetaData> storageMetaData) {
+            delegate.putStorageMetaData(storageMetaData);
+        }
+
+        @Override
+        public void putStaticInfo(Persistable staticInfo) {
+            delegate.putStaticInfo(staticInfo);
+        }
+
+        @Override
+        public void putStaticInfo(Collection<? extends Persistable> staticInfo) {
+            delegate.putStaticInfo(staticInfo);
+        }
+
+        @Override
+        public void putUpdate(Persistable update) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            delegate.putUpdate(update);
+        }
+
+        @Override
+        public void putUpdate(Collection<? extends Persistable> updates) {
+            for (Persistable p : updates)
+                putUpdate(p);
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.deeplearning4j.ui.stats.impl.SbeStatsReport;
 import org.deeplearning4j.ui.stats.impl.java.JavaStatsInitializationReport;
 import org.deeplearning4j.ui.stats.impl.java.JavaStatsReport;
 import org.deeplearning4j.ui.storage.mapdb.MapDBStatsStorage;
+import org.deeplearning4j.ui.storage.segmented.SegmentedFileStatsStorage;
 import org.deeplearning4j.ui.storage.sqlite.J7FileStatsStorage;
 import org.junit.Rule;
 import org.junit.Test;
@@ -54,7 +55,7 @@ public class TestStatsStorage {
     public void testStatsStorage() throws IOException {
 
         for (boolean useJ7Storage : new boolean[] {false, true}) {
-            for (int i = 0; i < 3; i++) {
+            for (int i = 0; i < 4; i++) {
 
                 StatsStorage ss;
                 switch (i) {
@@ -71,6 +72,9 @@ public class TestStatsStorage {
                     case 2:
                         ss = new InMemoryStatsStorage();
                         break;
+                    case 3:
+                        ss = new SegmentedFileStatsStorage(testDir.newFolder());
+                        break;
                     default:
                         throw new RuntimeException();
                 }
@@ -208,20 +212,24 @@ public class TestStatsStorage {
     public void testFileStatsStore() throws IOException {
 
         for (boolean useJ7Storage : new boolean[] {false, true}) {
-            for (int i = 0; i < 2; i++) {
+            for (int i = 0; i < 3; i++) {
                 File f;
                 if (i == 0) {
                     f = createTempFile("TestMapDbStatsStore", ".db");
-                } else {
+                } else if (i == 1) {
                     f = createTempFile("TestSqliteStatsStore", ".db");
+                } else {
+                    f = createTempFile("TestSegmentedStatsStore", "");
                 }
 
                 f.delete(); //Don't want file to exist...
                 StatsStorage ss;
                 if (i == 0) {
                     ss = new MapDBStatsStorage.Builder().file(f).build();
-                } else {
+                } else if (i == 1) {
                     ss = new J7FileStatsStorage(f);
+                } else {
+                    ss = new SegmentedFileStatsStorage(f);
                 }
 
 
@@ -327,8 +335,10 @@ public class TestStatsStorage {
 
                 if (i == 0) {
                     ss = new MapDBStatsStorage.Builder().file(f).build();
-                } else {
+                } else if (i == 1) {
                     ss = new J7FileStatsStorage(f);
+                } else {
+                    ss = new SegmentedFileStatsStorage(f);
                 }
 
 
@@ -353,6 +363,58 @@ public class TestStatsStorage {
         }
     }
 
+    @Test
+    public void testSegmentedStatsStorageCompaction() throws IOException {
+        File dir = testDir.newFolder();
+        //Small segments: a few records each
+        SegmentedFileStatsStorage ss = new SegmentedFileStatsStorage(dir, 1024);
+
+        for (int sid = 0; sid < 2; sid++) {
+            ss.putStaticInfo(getInitReport(sid, 0, 0, false));
+            for (int t = 0; t < 50; t++) {
+                ss.putUpdate(getReport(sid, 0, 0, 1000 + t, false));
+            }
+        }
+        //Same time stamp: replaces the previous update
+        ss.putUpdate(getReport(0, 0, 0, 1000, false));
+        assertTrue(ss.getNumSegments() > 2);
+        assertEquals(50, ss.getNumUpdateRecordsFor("sid0", "tid0", "wid0"));
+        assertEquals(getReport(0, 0, 0, 1049, false), ss.getLatestUpdate("sid0", "tid0", "wid0"));
+        assertEquals(9, ss.getAllUpdatesAfter("sid1", "tid0", "wid0", 1040).size());
+
+        ss.removeSession("sid1");
+        assertEquals(Collections.singletonList("sid0"), ss.listSessionIDs());
+        assertNull(ss.getLatestUpdate("sid1", "tid0", "wid0"));
+
+        //Removal and replaced update are persisted, before and after compaction
+        for (boolean compact : new boolean[] {false, true}) {
+            if (compact) {
+                int before = ss.getNumSegments();
+                ss.compact();
+                assertTrue(ss.getNumSegments() < before);
+            }
+            ss.close();
+            ss = new SegmentedFileStatsStorage(dir, 1024);
+
+            assertEquals(Collections.singletonList("sid0"), ss.listSessionIDs());
+            assertEquals(0, ss.getNumUpdateRecordsFor("sid1"));
+            assertEquals(50, ss.getNumUpdateRecordsFor("sid0"));
+            assertEquals(getInitReport(0, 0, 0, false), ss.getStaticInfo("sid0", "tid0", "wid0"));
+            assertEquals(getReport(0, 0, 0, 1000, false), ss.getUpdate("sid0", "tid0", "wid0", 1000));
+
+            List<Persistable> after = ss.getAllUpdatesAfter("sid0", "tid0", "wid0", 1020);
+            assertEquals(29, after.size());
+            for (int j = 0; j < after.size(); j++) {
+                assertEquals(1021 + j, after.get(j).getTimeStamp());
+            }
+        }
+
+        //Still writable after compaction
+        ss.putUpdate(getReport(0, 0, 0, 2000, false));
+        assertEquals(getReport(0, 0, 0, 2000, false), ss.getLatestUpdate("sid0", "tid0", "wid0"));
+        ss.close();
+    }
+
     private static StatsInitializationReport getInitReport(int idNumber, int tid, int wid, boolean useJ7Storage) {
         StatsInitializationReport rep;
         if (useJ7Storage) {
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.linalg.api.ops.*;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.transforms.arithmetic.*;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+
+import java.util.*;
+
+/**
+ * Finds the chains of elementwise ops that can be replaced by a
+ * {@link org.nd4j.linalg.api.ops.impl.meta.FusedElementwiseOp}, see {@link SameDiff#fuseElementwiseOps(String...)}.
+ *
+ * Two ops are linked when the output of the first one is only used as the first input of the second one, and isn't a
+ * requested output. The output of each op has the shape of its first input, so a whole chain can run in one array.
+ */
+public class ElementwiseFusion {
+
+    private ElementwiseFusion() {}
+
+    /**
+     * Legacy transform, scalar, pairwise and broadcast ops, and the broadcastable arithmetic custom ops
+     */
+    public static boolean isFusable(DifferentialFunction function) {
+        if (function instanceof CustomOp)
+            return function instanceof AddOp || function instanceof SubOp || function instanceof MulOp
+                            || function instanceof DivOp || function instanceof RSubOp || function instanceof RDivOp
+                            || function instanceof BiasAdd;
+
+        if (!(function instanceof Op) || function instanceof GradientOp || function instanceof RandomOp
+                        || ((Op) function).isExecSpecial())
+            return false;
+        if (function instanceof BroadcastOp)
+            return true;
+        return (function instanceof TransformOp || function instanceof ScalarOp) && function.getDimensions() == null;
+    }
+
+    /**
+     * @param outputs variables that must still be available after fusion
+     * @return chains of at least 2 ops, in execution order
+     */
+    public static List<List<DifferentialFunction>> findChains(SameDiff sameDiff, Collection<String> outputs) {
+        DifferentialFunction[] functions = sameDiff.functions();
+        for (DifferentialFunction function : functions) {
+            //intermediates are needed by the backward pass
+            if (function instanceof GradientBackwardsMarker)
+                return Collections.emptyList();
+        }
+
+        Set<String> keep = new HashSet<>(outputs);
+        Map<String, DifferentialFunction> next = new HashMap<>();
+        Set<String> linked = new HashSet<>();
+        for (DifferentialFunction function : functions) {
+            if (!isLinkable(sameDiff, function))
+                continue;
+
+            String out = sameDiff.getOutputsForFunction(function)[0];
+            if (keep.contains(out) || sameDiff.isPlaceHolder(out))
+                continue;
+
+            List<DifferentialFunction> consumers = sameDiff.getVariableArgOfFunctions(out);
+            if (consumers == null || consumers.size() != 1)
+                continue;
+            DifferentialFunction consumer = consumers.get(0);
+            if (consumer == function || !isLinkable(sameDiff, consumer)
+                            || !out.equals(sameDiff.getInputsForFunction(consumer)[0]))
+                continue;
+
+            next.put(function.getOwnName(), consumer);
+            linked.add(consumer.getOwnName());
+        }
+
+        List<List<DifferentialFunction>> chains = new ArrayList<>();
+        for (DifferentialFunction function : functions) {
+            if (!next.containsKey(function.getOwnName()) || linked.contains(function.getOwnName()))
+                continue;
+
+            List<DifferentialFunction> chain = new ArrayList<>();
+            DifferentialFunction current = function;
+            while (current != null) {
+                chain.add(current);
+                current = next.get(current.getOwnName());
+            }
+            chains.add(chain);
+        }
+        return chains;
+    }
+
+    private static boolean isLinkable(SameDiff sameDiff, DifferentialFunction function) {
+        if (!isFusable(function) || !sameDiff.hasArgs(function))
+            return false;
+        String[] inputs = sameDiff.getInputsForFunction(function);
+        String[] outputs = sameDiff.getOutputsForFunction(function);
+        return inputs.length >= 1 && inputs.length <= 2 && outputs != null && outputs.length == 1;
+    }
+}
@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.util.DetachedOps;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.api.ops.impl.controlflow.If;
+import org.nd4j.linalg.api.ops.impl.controlflow.While;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.BaseCompatOp;
+import org.nd4j.linalg.api.ops.impl.meta.FusedElementwiseOp;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+import org.nd4j.linalg.api.ops.impl.transforms.temp.ExternalErrorsFunction;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Inference executor for a {@link SameDiff} graph, driven by the requested outputs.
+ *
+ * For each signature (requested outputs + placeholder names) the minimal subgraph needed to compute the outputs
+ * is extracted once and cached. Ops of the subgraph are dispatched to a fork-join pool as soon as all their inputs
+ * are available, so independent branches run concurrently.
+ *
+ * Unlike {@link SameDiff#execWithPlaceHolder(Map)}, arrays computed for a request are kept in a per-request map
+ * instead of the SameDiff instance, so one session can serve concurrent requests against a shared graph.
+ * Custom ops are executed as fresh op instances, legacy ops as detached copies (see {@link DetachedOps}):
+ * the ops of the graph are never modified, and nothing is written to the graph during inference.
+ * Variables and constants are read from the graph and must not be modified while requests are running.
+ *
+ * Graphs with control flow (loops, conditions, TensorArrays) have no static dependency structure, and are not supported.
+ */
+@Slf4j
+public class InferenceSession {
+
+    @Getter
+    private final SameDiff sameDiff;
+    private final ForkJoinPool pool;
+    private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+    public InferenceSession(@NonNull SameDiff sameDiff) {
+        this(sameDiff, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param sameDiff   graph to execute
+     * @param numThreads number of threads used to execute independent ops
+     */
+    public InferenceSession(@NonNull SameDiff sameDiff, int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("numThreads should be positive, got " + numThreads);
+        this.sameDiff = sameDiff;
+        this.pool = new ForkJoinPool(numThreads);
+    }
+
+    /**
+     * Compute the requested outputs
+     *
+     * @param placeholders values of the placeholders, by name. Only the placeholders required by the outputs are needed
+     * @param outputs      names of the variables to compute
+     * @return the arrays for the requested outputs, by name
+     */
+    public Map<String, INDArray> output(Map<String, INDArray> placeholders, @NonNull String... outputs) {
+        if (placeholders == null)
+            placeholders = Collections.emptyMap();
+        if (outputs.length == 0)
+            throw new IllegalArgumentException("No outputs requested");
+
+        Plan plan = getPlan(placeholders.keySet(), outputs);
+
+        final Map<String, INDArray> values = new ConcurrentHashMap<>(placeholders);
+        if (plan.ops.length > 0) {
+            final AtomicIntegerArray pending = new AtomicIntegerArray(plan.numDependencies);
+            final Run run = new Run(plan, values, pending);
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(run.tasks(run.plan.sources));
+                }
+            });
+        }
+
+        Map<String, INDArray> ret = new LinkedHashMap<>();
+        for (String output : outputs) {
+            INDArray arr = get(values, output);
+            if (arr == null)
+                throw new ND4JIllegalStateException("No array was computed for output \"" + output + "\"");
+            ret.put(output, arr);
+        }
+        return ret;
+    }
+
+    /**
+     * Compute a single output
+     */
+    public INDArray output(Map<String, INDArray> placeholders, @NonNull String output) {
+        return output(placeholders, new String[] {output}).get(output);
+    }
+
+    /**
+     * Drop the cached plans. Must be called after the graph was modified
+     */
+    public void clearPlans() {
+        plans.clear();
+    }
+
+    /**
+     * Shut down the thread pool of this session
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Names of the ops executed for the given signature, in a valid execution order
+     */
+    public List<String> getOps(Collection<String> placeholders, String... outputs) {
+        Plan plan = getPlan(placeholders, outputs);
+        List<String> ret = new ArrayList<>(plan.ops.length);
+        for (DifferentialFunction function : plan.ops)
+            ret.add(function.getOwnName());
+        return ret;
+    }
+
+    private Plan getPlan(Collection<String> placeholders, String[] outputs) {
+        String key = signature(placeholders, outputs);
+        Plan plan = plans.get(key);
+        if (plan == null) {
+            //plan building resolves op properties from the graph: one at a time
+            synchronized (this) {
+                plan = plans.get(key);
+                if (plan == null) {
+                    plan = buildPlan(placeholders, outputs);
+                    plans.put(key, plan);
+                    log.debug("Inference plan for {}: {} ops", key, plan.ops.length);
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static String signature(Collection<String> placeholders, String[] outputs) {
+        List<String> sortedOutputs = new ArrayList<>(Arrays.asList(outputs));
+        List<String> sortedPlaceholders = new ArrayList<>(placeholders);
+        Collections.sort(sortedOutputs);
+        Collections.sort(sortedPlaceholders);
+        return sortedOutputs + "|" + sortedPlaceholders;
+    }
+
+    /**
+     * Walk back from the outputs to the placeholders, variables and constants, collecting the required ops in
+     * topological order
+     */
+    private Plan buildPlan(Collection<String> placeholders, String[] outputs) {
+        Set<String> provided = new HashSet<>(placeholders);
+        List<DifferentialFunction> ops = new ArrayList<>();
+        Map<String, Integer> opIndex = new HashMap<>();
+        Set<String> visiting = new HashSet<>();
+
+        for (String output : outputs)
+            visit(output, provided, ops, opIndex, visiting);
+
+        int n = ops.size();
+        int[] numDependencies = new int[n];
+        List<Set<Integer>> successors = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            successors.add(new LinkedHashSet<Integer>());
+
+        String[][] inputs = new String[n][];
+        String[][] outputNames = new String[n][];
+        List<Integer> sources = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            DifferentialFunction function = ops.get(i);
+            inputs[i] = sameDiff.hasArgs(function) ? sameDiff.getInputsForFunction(function) : new String[0];
+            outputNames[i] = sameDiff.getOutputsForFunction(function);
+            if (outputNames[i] == null || outputNames[i].length == 0)
+                throw new ND4JIllegalStateException("No outputs for op \"" + function.getOwnName() + "\"");
+
+            Set<Integer> producers = new HashSet<>();
+            for (String input : inputs[i]) {
+                Integer producer = producer(input, provided, opIndex);
+                if (producer != null)
+                    producers.add(producer);
+            }
+            numDependencies[i] = producers.size();
+            for (Integer producer : producers)
+                successors.get(producer).add(i);
+            if (producers.isEmpty())
+                sources.add(i);
+
+            //ops are copied under this lock while requests are running
+            synchronized (function) {
+                function.resolvePropertiesFromSameDiffBeforeExecution();
+            }
+        }
+
+        int[][] successorArrays = new int[n][];
+        for (int i = 0; i < n; i++) {
+            successorArrays[i] = new int[successors.get(i).size()];
+            int j = 0;
+            for (Integer s : successors.get(i))
+                successorArrays[i][j++] = s;
+        }
+
+        int[] sourceArray = new int[sources.size()];
+        for (int i = 0; i < sourceArray.length; i++)
+            sourceArray[i] = sources.get(i);
+
+        return new Plan(ops.toArray(new DifferentialFunction[n]), inputs, outputNames, numDependencies, successorArrays,
+                        sourceArray);
+    }
+
+    private Integer producer(String variable, Set<String> provided, Map<String, Integer> opIndex) {
+        if (provided.contains(variable))
+            return null;
+        DifferentialFunction function = sameDiff.getVariableOutputFunction(variable);
+        return function == null ? null : opIndex.get(function.getOwnName());
+    }
+
+    private void visit(String variable, Set<String> provided, List<DifferentialFunction> ops,
+                    Map<String, Integer> opIndex, Set<String> visiting) {
+        if (provided.contains(variable))
+            return;
+
+        if (sameDiff.getVariable(variable) == null)
+            throw new ND4JIllegalStateException("No variable named \"" + variable + "\" in the graph");
+        if (sameDiff.isPlaceHolder(variable))
+            throw new ND4JIllegalStateException("No value provided for placeholder \"" + variable + "\"");
+
+        DifferentialFunction function = sameDiff.getVariableOutputFunction(variable);
+        if (function == null) {
+            if (sameDiff.getArrForVarName(variable) == null)
+                throw new ND4JIllegalStateException("Variable \"" + variable + "\" has no array, and isn't the output of an op");
+            return;
+        }
+
+        String name = function.getOwnName();
+        if (opIndex.containsKey(name))
+            return;
+        if (!visiting.add(name))
+            throw new ND4JIllegalStateException("Cycle in the graph at op \"" + name + "\"");
+
+        if (function instanceof BaseCompatOp || function instanceof If || function instanceof While
+                        || function instanceof BaseTensorOp || function instanceof GradientBackwardsMarker
+                        || function instanceof ExternalErrorsFunction)
+            throw new ND4JIllegalStateException("Op \"" + name + "\" of type " + function.getClass().getSimpleName()
+                            + " is not supported for inference sessions: control flow requires SameDiff.exec()");
+
+        if (sameDiff.hasArgs(function)) {
+            for (String input : sameDiff.getInputsForFunction(function))
+                visit(input, provided, ops, opIndex, visiting);
+        }
+
+        visiting.remove(name);
+        opIndex.put(name, ops.size());
+        ops.add(function);
+    }
+
+    private INDArray get(Map<String, INDArray> values, String variable) {
+        INDArray arr = values.get(variable);
+        return arr != null ? arr : sameDiff.getArrForVarName(variable);
+    }
+
+    private void execute(Plan plan, int idx, Map<String, INDArray> values) {
+        DifferentialFunction function = plan.ops[idx];
+        String[] inputNames = plan.inputs[idx];
+        INDArray[] inputs = new INDArray[inputNames.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = get(values, inputNames[i]);
+            if (inputs[i] == null)
+                throw new ND4JIllegalStateException("No array for input \"" + inputNames[i] + "\" of op \""
+                                + function.getOwnName() + "\"");
+        }
+
+        String[] outputNames = plan.outputs[idx];
+        if (function instanceof FusedElementwiseOp) {
+            values.put(outputNames[0], ((FusedElementwiseOp) function).exec(inputs));
+        } else if (function instanceof CustomOp) {
+            INDArray[] outputs = execCustom((CustomOp) function, inputs);
+            for (int i = 0; i < outputNames.length && i < outputs.length; i++)
+                values.put(outputNames[i], outputs[i]);
+        } else if (function instanceof Op) {
+            values.put(outputNames[0], execLegacy((Op) function, inputs, outputNames[0]));
+        } else {
+            throw new ND4JIllegalStateException("Unknown function type: " + function.getClass().getName());
+        }
+    }
+
+    /**
+     * Custom ops hold their arrays: execute a fresh op with the same arguments
+     */
+    private INDArray[] execCustom(CustomOp function, INDArray[] inputs) {
+        val builder = DynamicCustomOp.builder(function.opName()).addInputs(inputs);
+        for (long i : function.iArgs())
+            builder.addIntegerArguments(i);
+        double[] tArgs = function.tArgs();
+        if (tArgs.length > 0) {
+            Double[] boxed = new Double[tArgs.length];
+            for (int i = 0; i < tArgs.length; i++)
+                boxed[i] = tArgs[i];
+            builder.addFloatingPointArguments(boxed);
+        }
+
+        DynamicCustomOp op = builder.build();
+        Nd4j.getExecutioner().exec(op);
+        return op.outputArguments();
+    }
+
+    /**
+     * Legacy ops are executed as detached copies, with this request's arrays. Outputs are allocated here (or by the
+     * executioner for reductions), so the op never falls back to the arrays of the graph
+     */
+    private INDArray execLegacy(Op op, INDArray[] inputs, String outputName) {
+        INDArray x = inputs.length > 0 ? inputs[0] : null;
+        INDArray y = inputs.length > 1 ? inputs[1] : null;
+        INDArray z = null;
+        if (!DetachedOps.isReduction(op))
+            z = x != null ? Nd4j.createUninitialized(x.shape(), x.ordering())
+                            : Nd4j.createUninitialized(sameDiff.getShapeForVarName(outputName));
+        return DetachedOps.exec(op, x, y, z);
+    }
+
+    private static class Plan {
+        private final DifferentialFunction[] ops;
+        private final String[][] inputs;
+        private final String[][] outputs;
+        private final int[] numDependencies;
+        private final int[][] successors;
+        private final int[] sources;
+
+        private Plan(DifferentialFunction[] ops, String[][] inputs, String[][] outputs, int[] numDependencies,
+                        int[][] successors, int[] sources) {
+            this.ops = ops;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.numDependencies = numDependencies;
+            this.successors = successors;
+            this.sources = sources;
+        }
+    }
+
+    /**
+     * State of one request: values computed so far, and number of unfinished dependencies of each op
+     */
+    private class Run {
+        private final Plan plan;
+        private final Map<String, INDArray> values;
+        private final AtomicIntegerArray pending;
+
+        private Run(Plan plan, Map<String, INDArray> values, AtomicIntegerArray pending) {
+            this.plan = plan;
+            this.values = values;
+            this.pending = pending;
+        }
+
+        private List<OpTask> tasks(int[] ops) {
+            List<OpTask> ret = new ArrayList<>(ops.length);
+            for (int op : ops)
+                ret.add(new OpTask(this, op));
+            return ret;
+        }
+    }
+
+    private class OpTask extends RecursiveAction {
+        private final Run run;
+        private final int idx;
+
+        private OpTask(Run run, int idx) {
+            this.run = run;
+            this.idx = idx;
+        }
+
+        @Override
+        protected void compute() {
+            execute(run.plan, idx, run.values);
+
+            List<OpTask> ready = new ArrayList<>();
+            for (int successor : run.plan.successors[idx]) {
+                if (run.pending.decrementAndGet(successor) == 0)
+                    ready.add(new OpTask(run, successor));
+            }
+            if (ready.size() == 1)
+                ready.get(0).compute();
+            else if (!ready.isEmpty())
+                invokeAll(ready);
+        }
+    }
+}
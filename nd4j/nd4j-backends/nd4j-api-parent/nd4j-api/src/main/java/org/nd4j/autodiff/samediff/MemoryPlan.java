@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.impl.controlflow.If;
+import org.nd4j.linalg.api.ops.impl.controlflow.While;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.BaseCompatOp;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+import org.nd4j.linalg.api.ops.impl.transforms.temp.ExternalErrorsFunction;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * Static memory plan for {@link SameDiff#exec()}, computed once from the graph by {@link SameDiff#planMemory(String...)}.
+ *
+ * An intermediate is an op output that is consumed by a later op, and isn't one of the requested outputs.
+ * Its lifetime spans the execution steps from the op producing it to its last consumer.
+ * Intermediates with known shapes are assigned to slots of a single arena buffer (greedy best-fit, in execution
+ * order), so arrays with non-overlapping lifetimes share memory. During execution op outputs are written directly
+ * into their slots, and all intermediates are released from the SameDiff instance right after their last use.
+ *
+ * Graphs with control flow (loops, conditions, TensorArrays) don't have a static execution order, so they are
+ * not planned: {@link #isPlanned()} returns false, and execution is unchanged.
+ */
+@Slf4j
+public class MemoryPlan {
+
+    @Getter
+    private final int numSteps;
+    @Getter
+    private final boolean planned;
+    @Getter
+    private final int numIntermediates;
+    @Getter
+    private final int numSlots;
+    /** Bytes used by the intermediates if all of them are kept until the end of execution */
+    @Getter
+    private final long naivePeakBytes;
+    /** Bytes of the arena: sum of the slot sizes */
+    @Getter
+    private final long plannedPeakBytes;
+    /** Max bytes of intermediates alive at the same time: lower bound for any plan */
+    @Getter
+    private final long livePeakBytes;
+
+    private final Map<String, Integer> slotForVariable;
+    private final long[] slotOffsets;
+    private final long[] slotLengths;
+    private final Map<Integer, List<String>> releasedAfter;
+
+    private DataBuffer arena;
+
+    private MemoryPlan(int numSteps, boolean planned, int numIntermediates, long naivePeakBytes, long livePeakBytes,
+                    Map<String, Integer> slotForVariable, long[] slotLengths, Map<Integer, List<String>> releasedAfter) {
+        this.numSteps = numSteps;
+        this.planned = planned;
+        this.numIntermediates = numIntermediates;
+        this.naivePeakBytes = naivePeakBytes;
+        this.livePeakBytes = livePeakBytes;
+        this.slotForVariable = slotForVariable;
+        this.slotLengths = slotLengths;
+        this.releasedAfter = releasedAfter;
+        this.numSlots = slotLengths.length;
+
+        this.slotOffsets = new long[slotLengths.length];
+        long offset = 0;
+        for (int i = 0; i < slotLengths.length; i++) {
+            slotOffsets[i] = offset;
+            offset += slotLengths[i];
+        }
+        this.plannedPeakBytes = offset * Nd4j.sizeOfDataType();
+    }
+
+    /**
+     * Compute the plan for the given functions, in execution order
+     *
+     * @param sameDiff SameDiff instance the functions belong to
+     * @param functions functions, in the order they are executed by {@link SameDiff#exec()}
+     * @param outputs names of the variables whose arrays should be kept after execution. Variables not consumed
+     *                by any op are always kept
+     */
+    public static MemoryPlan plan(@NonNull SameDiff sameDiff, @NonNull DifferentialFunction[] functions,
+                    @NonNull Collection<String> outputs) {
+        int numSteps = functions.length;
+        Map<String, Integer> producedAt = new LinkedHashMap<>();
+        Map<String, Integer> lastUse = new HashMap<>();
+        Set<String> external = new HashSet<>();
+
+        for (int i = 0; i < numSteps; i++) {
+            DifferentialFunction function = functions[i];
+            if (function instanceof SDVariable || function instanceof GradientBackwardsMarker)
+                continue;
+
+            if (function instanceof BaseCompatOp || function instanceof If || function instanceof While
+                            || function instanceof BaseTensorOp) {
+                log.info("Graph contains control flow op [{}], memory planning is disabled", function.opName());
+                return new MemoryPlan(numSteps, false, 0, 0, 0, Collections.<String, Integer>emptyMap(), new long[0],
+                                Collections.<Integer, List<String>>emptyMap());
+            }
+
+            String[] inputs = sameDiff.hasArgs(function) ? sameDiff.getInputsForFunction(function) : null;
+            if (inputs != null)
+                for (String input : inputs)
+                    lastUse.put(input, i);
+
+            String[] outputNames = sameDiff.getOutputsForFunction(function);
+            if (outputNames != null)
+                for (String output : outputNames) {
+                    if (!producedAt.containsKey(output))
+                        producedAt.put(output, i);
+                    // arrays of these are provided by the user
+                    if (function instanceof ExternalErrorsFunction)
+                        external.add(output);
+                }
+        }
+
+        // in-place ops may write into their input arrays, so inputs have to live as long as outputs do
+        for (int i = numSteps - 1; i >= 0; i--) {
+            DifferentialFunction function = functions[i];
+            boolean inPlace = function instanceof CustomOp ? ((CustomOp) function).isInplaceCall() : function.isInPlace();
+            if (!inPlace || function instanceof SDVariable || !sameDiff.hasArgs(function))
+                continue;
+
+            String[] outputNames = sameDiff.getOutputsForFunction(function);
+            if (outputNames == null)
+                continue;
+
+            int end = i;
+            for (String output : outputNames) {
+                Integer last = lastUse.get(output);
+                end = Math.max(end, last == null || outputs.contains(output) ? numSteps : last);
+            }
+            for (String input : sameDiff.getInputsForFunction(function))
+                if (lastUse.containsKey(input))
+                    lastUse.put(input, Math.max(lastUse.get(input), end));
+        }
+
+        // greedy best-fit slot assignment, in execution order
+        long elementSize = Nd4j.sizeOfDataType();
+        Map<String, Integer> slotForVariable = new HashMap<>();
+        Map<Integer, List<String>> releasedAfter = new HashMap<>();
+        Map<Integer, List<String>> producedBy = new HashMap<>();
+        Map<String, Long> lengths = new HashMap<>();
+        int numIntermediates = 0;
+        long naivePeak = 0;
+
+        for (Map.Entry<String, Integer> e : producedAt.entrySet()) {
+            String name = e.getKey();
+            Integer last = lastUse.get(name);
+            // last use at numSteps: input of an in-place op whose output is kept
+            if (last == null || last <= e.getValue() || last >= numSteps || outputs.contains(name)
+                            || external.contains(name))
+                continue;
+
+            numIntermediates++;
+            list(releasedAfter, last).add(name);
+
+            long length = length(sameDiff.getShapeForVarName(name));
+            if (length > 0) {
+                lengths.put(name, length);
+                list(producedBy, e.getValue()).add(name);
+                naivePeak += length * elementSize;
+            }
+        }
+
+        List<Long> slots = new ArrayList<>();
+        List<Integer> freeSlots = new ArrayList<>();
+        long live = 0;
+        long livePeak = 0;
+        for (int i = 0; i < numSteps; i++) {
+            // slots of arrays last used by the previous op can be reused now
+            List<String> released = releasedAfter.get(i - 1);
+            if (released != null)
+                for (String name : released) {
+                    Integer slot = slotForVariable.get(name);
+                    if (slot != null) {
+                        freeSlots.add(slot);
+                        live -= lengths.get(name);
+                    }
+                }
+
+            List<String> produced = producedBy.get(i);
+            if (produced == null)
+                continue;
+
+            for (String name : produced) {
+                long length = lengths.get(name);
+                int best = -1;
+                for (int f = 0; f < freeSlots.size(); f++) {
+                    long capacity = slots.get(freeSlots.get(f));
+                    if (capacity >= length && (best < 0 || capacity < slots.get(freeSlots.get(best))))
+                        best = f;
+                }
+
+                // no free slot is large enough: grow the largest free one, as nothing lives in it
+                if (best < 0 && !freeSlots.isEmpty()) {
+                    best = 0;
+                    for (int f = 1; f < freeSlots.size(); f++)
+                        if (slots.get(freeSlots.get(f)) > slots.get(freeSlots.get(best)))
+                            best = f;
+                    slots.set(freeSlots.get(best), length);
+                }
+
+                int slot;
+                if (best >= 0) {
+                    slot = freeSlots.remove(best);
+                } else {
+                    slot = slots.size();
+                    slots.add(length);
+                }
+
+                slotForVariable.put(name, slot);
+                live += length;
+                livePeak = Math.max(livePeak, live);
+            }
+        }
+
+        long[] slotLengths = new long[slots.size()];
+        for (int i = 0; i < slotLengths.length; i++)
+            slotLengths[i] = slots.get(i);
+
+        return new MemoryPlan(numSteps, true, numIntermediates, naivePeak, livePeak * elementSize, slotForVariable,
+                        slotLengths, releasedAfter);
+    }
+
+    private static long length(long[] shape) {
+        if (shape == null || shape.length == 0)
+            return -1;
+
+        long length = 1;
+        for (long s : shape) {
+            if (s < 1)
+                return -1;
+            length *= s;
+        }
+        return length;
+    }
+
+    private static List<String> list(Map<Integer, List<String>> map, int key) {
+        List<String> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * @return names of the variables whose arrays aren't needed anymore once the op at the given step was executed
+     */
+    public List<String> getReleasedAfter(int step) {
+        List<String> list = releasedAfter.get(step);
+        return list == null ? Collections.<String>emptyList() : list;
+    }
+
+    /**
+     * Get the array for the given variable within its arena slot
+     *
+     * @param varName variable name
+     * @param shape current shape of the variable
+     * @return view of the arena, or null if the variable has no slot or doesn't fit into it
+     */
+    public INDArray arrayFor(String varName, long[] shape) {
+        Integer slot = slotForVariable.get(varName);
+        long length = length(shape);
+        if (slot == null || length < 1 || length > slotLengths[slot])
+            return null;
+
+        return Nd4j.create(arena(), shape, Nd4j.getStrides(shape, 'c'), slotOffsets[slot], 'c');
+    }
+
+    protected synchronized DataBuffer arena() {
+        if (arena == null)
+            arena = Nd4j.createBuffer(slotOffsets.length == 0 ? 1
+                            : slotOffsets[slotOffsets.length - 1] + slotLengths[slotLengths.length - 1]);
+        return arena;
+    }
+
+    /**
+     * Release the arena memory. It will be allocated again by the next execution
+     */
+    public synchronized void releaseArena() {
+        arena = null;
+    }
+
+    public String summary() {
+        if (!planned)
+            return "Memory plan: not planned (graph has control flow)";
+
+        return String.format("Memory plan: %d intermediates in %d slots; naive peak: %.2f MB, planned peak: %.2f MB"
+                        + " (%.1f%%), live peak: %.2f MB", numIntermediates, numSlots, naivePeakBytes / 1048576.0,
+                        plannedPeakBytes / 1048576.0,
+                        naivePeakBytes == 0 ? 100.0 : 100.0 * plannedPeakBytes / naivePeakBytes,
+                        livePeakBytes / 1048576.0);
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+}
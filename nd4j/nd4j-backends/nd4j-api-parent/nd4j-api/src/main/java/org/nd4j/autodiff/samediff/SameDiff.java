@@ -62,6 +62,7 @@ import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.GRUCellConfiguration
 import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.LSTMCellConfiguration;
 import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.SRUCellConfiguration;
 import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.SRUConfiguration;
+import org.nd4j.linalg.api.ops.impl.meta.FusedElementwiseOp;
 import org.nd4j.linalg.api.ops.impl.shape.Eye;
 import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
 import org.nd4j.linalg.api.ops.impl.shape.tensorops.TensorArrayV3;
@@ -9914,6 +9915,8 @@ public class SameDiff {
 
     private Pair<Map<SDVariable, DifferentialFunction>, List<DifferentialFunction>> exec_cache;
 
+    private MemoryPlan memoryPlan;
+
     /**
      * Clear the execution cache, if it is present
      */
@@ -9921,6 +9924,161 @@ public class SameDiff {
         exec_cache = null;
     }
 
+    /**
+     * Compute a static memory plan from the lifetimes of the intermediate arrays, and use it for subsequent
+     * calls to {@link #exec()}: intermediates share slots of a single arena, and are released right after
+     * their last use. See {@link MemoryPlan} for details.<br>
+     * Sizes are taken from the current arrays or shapes of the variables, so planning after the first
+     * execution gives the best results.<br>
+     * PLEASE NOTE: with a memory plan, arrays of intermediate variables are not available after execution.
+     * Only the given outputs, and variables that aren't used as input by any op, keep their arrays.
+     *
+     * @param outputs names of the variables whose arrays should be available after execution
+     * @return the memory plan
+     */
+    public MemoryPlan planMemory(String... outputs) {
+        if (!resolvedVariables)
+            resolveVariablesWith(new LinkedHashMap<String, INDArray>());
+
+        memoryPlan = MemoryPlan.plan(this, functions(), Arrays.asList(outputs));
+        log.info(memoryPlan.summary());
+        return memoryPlan;
+    }
+
+    /**
+     * @return the memory plan used by {@link #exec()}, or null if none
+     */
+    public MemoryPlan getMemoryPlan() {
+        return memoryPlan;
+    }
+
+    /**
+     * Stop using the memory plan: all arrays are allocated separately, and kept after execution
+     */
+    public void clearMemoryPlan() {
+        memoryPlan = null;
+    }
+
+    /**
+     * Associate the output variables of the function with their slots of the memory plan arena, if shapes fit
+     */
+    private void bindPlannedOutputs(MemoryPlan plan, DifferentialFunction function) {
+        String[] outputNames = getOutputsForFunction(function);
+        if (outputNames == null)
+            return;
+
+        for (String outputName : outputNames) {
+            INDArray arr = plan.arrayFor(outputName, getShapeForVarName(outputName));
+            if (arr == null)
+                continue;
+
+            putOrUpdateArrayForVarName(outputName, arr);
+            if (function instanceof Op && !(function instanceof CustomOp))
+                ((Op) function).setZ(arr);
+        }
+    }
+
+    /**
+     * Release the arrays that the memory plan doesn't need after the given step
+     */
+    private void releasePlannedArrays(MemoryPlan plan, int step) {
+        for (String varName : plan.getReleasedAfter(step)) {
+            INDArray arr = variableNameToArr.remove(varName);
+            // keep the shape, so the next execution can put the array into its slot before the op is executed
+            if (arr != null)
+                variableNameToShape.put(varName, arr.shape());
+        }
+    }
+
+    /**
+     * Replace chains of elementwise ops (transform, scalar, pairwise and broadcast ops) by a single
+     * {@link FusedElementwiseOp}, that runs the whole chain in one output array. See {@link ElementwiseFusion}
+     * for the ops that are fused.<br>
+     * PLEASE NOTE: this is an inference-only rewrite. Variables inside the chains are removed from the graph,
+     * and the fused graph can't be differentiated. Graphs that already contain the backward pass are left unchanged.
+     *
+     * @param outputs names of the variables that must still be available after fusion
+     * @return the number of ops removed from the graph
+     */
+    public int fuseElementwiseOps(String... outputs) {
+        List<List<DifferentialFunction>> chains = ElementwiseFusion.findChains(this, Arrays.asList(outputs));
+        int removed = 0;
+        for (List<DifferentialFunction> chain : chains) {
+            replaceWithFusedOp(chain);
+            removed += chain.size() - 1;
+        }
+
+        if (!chains.isEmpty()) {
+            exec_cache = null;
+            if (memoryPlan != null) {
+                log.info("Graph was modified by op fusion: memory plan is cleared");
+                memoryPlan = null;
+            }
+        }
+        log.info("Fused {} chains of elementwise ops: {} ops removed", chains.size(), removed);
+        return removed;
+    }
+
+    /**
+     * Replace the chain of ops by a fused op, at the position of the last op of the chain in the execution order
+     */
+    private void replaceWithFusedOp(List<DifferentialFunction> chain) {
+        DifferentialFunction last = chain.get(chain.size() - 1);
+        String outputName = getOutputsForFunction(last)[0];
+
+        //inputs of the first op, then the second input of each following op
+        List<String> argNames = new ArrayList<>(Arrays.asList(getInputsForFunction(chain.get(0))));
+        int[] sideInputs = new int[chain.size()];
+        sideInputs[0] = argNames.size() > 1 ? 1 : -1;
+        for (int i = 1; i < chain.size(); i++) {
+            String[] inputs = getInputsForFunction(chain.get(i));
+            sideInputs[i] = inputs.length > 1 ? argNames.size() : -1;
+            if (inputs.length > 1)
+                argNames.add(inputs[1]);
+        }
+
+        Set<String> removedFunctions = new HashSet<>();
+        for (int i = 0; i < chain.size(); i++) {
+            DifferentialFunction function = chain.get(i);
+            String ownName = function.getOwnName();
+            removedFunctions.add(ownName);
+
+            for (String input : incomingArgsReverse.remove(ownName)) {
+                List<DifferentialFunction> funcs = functionsArgsFor.get(input);
+                if (funcs != null)
+                    funcs.remove(function);
+            }
+            for (String output : outgoingArgsReverse.remove(ownName)) {
+                functionOutputFor.remove(output);
+                if (i < chain.size() - 1) {
+                    //intermediate: only used inside the chain
+                    variableMap.remove(output);
+                    variableNameToArr.remove(output);
+                    variableNameToShape.remove(output);
+                    functionsArgsFor.remove(output);
+                }
+            }
+            propertiesToResolve.remove(ownName);
+            placeHolderFunctions.remove(ownName);
+        }
+
+        SDVariable[] args = new SDVariable[argNames.size()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = getVariable(argNames.get(i));
+        FusedElementwiseOp fused = new FusedElementwiseOp(this, args, chain, sideInputs, getVariable(outputName));
+        addOutgoingFor(new String[] {outputName}, fused);
+
+        Map<String, DifferentialFunction> reordered = new LinkedHashMap<>();
+        for (Map.Entry<String, DifferentialFunction> entry : functionInstancesById.entrySet()) {
+            if (entry.getKey().equals(last.getOwnName()))
+                reordered.put(fused.getOwnName(), fused);
+            else if (!removedFunctions.contains(entry.getKey()) && entry.getValue() != fused)
+                reordered.put(entry.getKey(), entry.getValue());
+        }
+        functionInstancesById.clear();
+        functionInstancesById.putAll(reordered);
+    }
+
     /**
      * Execute the SameDiff instance using the current state<br>
      * After execution, the arrays for variables can be obtained using {@link #getArrForVarName(String)} or
@@ -9974,6 +10132,12 @@ public class SameDiff {
         //And, set the SameDiff instance on all variables, for exactly the same reason
         associateSameDiffWithOpsAndVariables();
 
+        MemoryPlan plan = memoryPlan;
+        if (plan != null && (!plan.isPlanned() || plan.getNumSteps() != funcs.size())) {
+            if (plan.isPlanned())
+                log.warn("Graph was modified after memory planning: memory plan is ignored. Call planMemory() again to update it");
+            plan = null;
+        }
 
 
         int i = 0;
@@ -9981,6 +10145,9 @@ public class SameDiff {
         for (; i < funcs.size(); i++) {
             ++exec_counter;
 
+            if (plan != null && i > 0)
+                releasePlannedArrays(plan, i - 1);
+
             if (log.isTraceEnabled()) {
                 val f = funcs.get(i);
                 String[] argNames = f.argNames();
@@ -10452,6 +10619,24 @@ public class SameDiff {
 
                 flowPath.markExecuted(differentialFunction.getOwnName(), true);
 
+            } else if (differentialFunction instanceof FusedElementwiseOp) {
+                if (log.isTraceEnabled())
+                    log.trace("Starting execution of fused elementwise op");
+
+                FusedElementwiseOp fused = (FusedElementwiseOp) differentialFunction;
+                val inputs = getInputVariablesForFunction(differentialFunction);
+                INDArray[] inputArrs = new INDArray[inputs.length];
+                for (int e = 0; e < inputs.length; e++)
+                    inputArrs[e] = inputs[e].getArr();
+
+                String outVarName = fused.outputVariable().getVarName();
+                INDArray z = fused.exec(inputArrs);
+                putOrUpdateShapeForVarName(outVarName, z.shape(), true);
+                putOrUpdateArrayForVarName(outVarName, z);
+
+                flowPath.markExecuted(differentialFunction.getOwnName(), true);
+
+                ops.add(differentialFunction);
             } else if (differentialFunction instanceof CustomOp) {
                 if (log.isTraceEnabled())
                     log.trace("Starting execution of CustomOp op");
@@ -10473,6 +10658,9 @@ public class SameDiff {
                     }
                 }
 
+                if (plan != null)
+                    bindPlannedOutputs(plan, customOp);
+
                 try {
                     customOp.populateInputsAndOutputsFromSameDiff();
                 } catch (Throwable t) {
@@ -10503,6 +10691,9 @@ public class SameDiff {
                 Op op = (Op) differentialFunction;
                 String outVarName = ((BaseOp) op).outputVariable().getVarName();
 
+                if (plan != null)
+                    bindPlannedOutputs(plan, op);
+
                 // ops in differential function might have stale NDArrays used. we should renew them
                 if(inputs != null && inputs.length > 0) {
                     op.setX(inputs[0].getArr());
@@ -10590,6 +10781,9 @@ public class SameDiff {
             }
         }
 
+        if (plan != null && !funcs.isEmpty())
+            releasePlannedArrays(plan, funcs.size() - 1);
+
         if (log.isTraceEnabled()) {
             log.trace("Execution complete");
         }
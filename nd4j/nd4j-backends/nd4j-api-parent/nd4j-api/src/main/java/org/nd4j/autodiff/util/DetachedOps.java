@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.util;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.Accumulation;
+import org.nd4j.linalg.api.ops.BaseOp;
+import org.nd4j.linalg.api.ops.BroadcastOp;
+import org.nd4j.linalg.api.ops.GradientOp;
+import org.nd4j.linalg.api.ops.IndexAccumulation;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Execution of legacy ops of a SameDiff graph on arbitrary arrays, without touching the graph.
+ *
+ * Legacy ops hold their x/y/z arrays, and write their output array back into the graph (see BaseOp.z()).
+ * Here a detached copy of the op is executed instead (see {@link BaseOp#detachedCopy()}). The original op
+ * is never modified, so copies can be executed concurrently.
+ */
+public class DetachedOps {
+
+    private DetachedOps() {}
+
+    /**
+     * Detached copy of the given op
+     *
+     * @throws ND4JIllegalStateException if the op doesn't support detached execution
+     */
+    public static Op copy(Op op) {
+        if (!(op instanceof BaseOp))
+            throw new ND4JIllegalStateException("Op " + op.getClass().getName() + " can't be executed detached from its graph");
+        return ((BaseOp) op).detachedCopy();
+    }
+
+    /**
+     * @return true if the given op allocates its own output when executed with {@link #exec(Op, INDArray, INDArray, INDArray)}
+     */
+    public static boolean isReduction(Op op) {
+        return op instanceof Accumulation || op instanceof IndexAccumulation;
+    }
+
+    /**
+     * Execute a copy of the given op
+     *
+     * @param op op of the graph, left untouched
+     * @param x  first input, may be null for ops without inputs
+     * @param y  second input, or null
+     * @param z  output array, ignored for reductions
+     * @return z, or the array allocated by the executioner for reductions
+     */
+    public static INDArray exec(Op op, INDArray x, INDArray y, INDArray z) {
+        Op copy = copy(op);
+        if (x != null)
+            copy.setX(x);
+        if (y != null)
+            copy.setY(y);
+
+        int[] dimensions = ((DifferentialFunction) copy).getDimensions();
+        if (isReduction(copy)) {
+            //z == x: the executioner allocates the result of the reduction
+            copy.setZ(x);
+            int[] axes = dimensions == null ? new int[] {Integer.MAX_VALUE} : dimensions;
+            if (copy instanceof Accumulation)
+                return Nd4j.getExecutioner().exec((Accumulation) copy, axes);
+            return Nd4j.getExecutioner().exec((IndexAccumulation) copy, axes);
+        }
+
+        copy.setZ(z);
+        if (dimensions == null) {
+            Nd4j.getExecutioner().exec(copy);
+        } else if (copy.isExecSpecial()) {
+            copy.exec();
+        } else if (copy instanceof BroadcastOp) {
+            Nd4j.getExecutioner().exec((BroadcastOp) copy, dimensions);
+        } else if (copy instanceof GradientOp) {
+            Nd4j.getExecutioner().exec(copy);
+        } else {
+            Nd4j.getExecutioner().exec(copy, dimensions);
+        }
+        return z;
+    }
+}
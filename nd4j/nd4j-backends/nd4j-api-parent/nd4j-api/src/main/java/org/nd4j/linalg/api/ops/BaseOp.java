@@ -44,7 +44,7 @@ import java.util.Map;
  * @author Adam Gibson
  */
 @Data
-public abstract class BaseOp extends DifferentialFunction implements Op {
+public abstract class BaseOp extends DifferentialFunction implements Op, Cloneable {
 
     protected INDArray x, y, z;
     protected long n;
@@ -72,6 +72,31 @@ public abstract class BaseOp extends DifferentialFunction implements Op {
         return false;
     }
 
+    /**
+     * Shallow copy of this op, detached from its graph: same configuration (extra args, dimensions, scalar and
+     * any subclass state), but no SameDiff instance, no x/y/z arrays and no vertex ids.
+     * The copy can be executed on arbitrary arrays without touching the graph or this op.
+     * Subclasses holding further references to graph state must override this method and clear them as well.
+     *
+     * @return the detached copy
+     */
+    public synchronized BaseOp detachedCopy() {
+        BaseOp copy;
+        try {
+            copy = (BaseOp) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new ND4JIllegalStateException("Unable to copy op " + opName(), e);
+        }
+        copy.sameDiff = null;
+        copy.x = null;
+        copy.y = null;
+        copy.z = null;
+        copy.xVertexId = null;
+        copy.yVertexId = null;
+        copy.zVertexId = null;
+        return copy;
+    }
+
     public static Type getOpType(Op op) {
         Type type = null;
 
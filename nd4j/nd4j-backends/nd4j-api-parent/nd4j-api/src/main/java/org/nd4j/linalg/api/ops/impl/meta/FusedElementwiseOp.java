@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.api.ops.impl.meta;
+
+import lombok.Getter;
+import lombok.val;
+import onnx.OnnxProto3;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.util.DetachedOps;
+import org.nd4j.imports.NoOpNameFoundException;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+import org.tensorflow.framework.AttrValue;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.NodeDef;
+
+import java.util.*;
+
+/**
+ * Chain of elementwise ops (transform, scalar, pairwise and broadcast ops), executed as a single SameDiff function.
+ * Created by {@link SameDiff#fuseElementwiseOps(String...)}: each op of the chain consumes the output of the previous one,
+ * and the intermediate variables are removed from the graph.
+ *
+ * The first op writes into a new array, all the following ops are executed in place on that array.
+ * On backends with a grid executioner, consecutive in-place ops on the same array are merged into meta ops.
+ *
+ * Args of this function are the inputs of the first op, followed by the second input of each following op (if any).
+ * This is an inference-only function: it can't be differentiated.
+ */
+public class FusedElementwiseOp extends DifferentialFunction {
+
+    @Getter
+    private List<DifferentialFunction> steps;
+    private int[] sideInputs;
+    private SDVariable output;
+
+    public FusedElementwiseOp() {}
+
+    /**
+     * @param args       inputs of the first op, followed by the side inputs of the other ops
+     * @param steps      ops of the chain, in execution order
+     * @param sideInputs for each op, index in args of its second input, or -1
+     * @param output     output variable of the last op
+     */
+    public FusedElementwiseOp(SameDiff sameDiff, SDVariable[] args, List<DifferentialFunction> steps, int[] sideInputs,
+                    SDVariable output) {
+        super(sameDiff, args);
+        if (steps.size() != sideInputs.length)
+            throw new IllegalArgumentException("Expected one side input index per step");
+        this.steps = new ArrayList<>(steps);
+        this.sideInputs = sideInputs;
+        this.output = output;
+    }
+
+    /**
+     * Execute the chain
+     *
+     * @param inputs arrays for the args of this function
+     * @return the output of the last op
+     */
+    public INDArray exec(INDArray... inputs) {
+        INDArray buffer = null;
+        for (int i = 0; i < steps.size(); i++) {
+            DifferentialFunction step = steps.get(i);
+            INDArray x = i == 0 ? inputs[0] : buffer;
+            INDArray y = sideInputs[i] >= 0 ? inputs[sideInputs[i]] : null;
+
+            if (step instanceof CustomOp) {
+                buffer = execCustom((CustomOp) step, x, y, buffer);
+            } else {
+                if (buffer == null)
+                    buffer = Nd4j.createUninitialized(x.shape(), x.ordering());
+                //detached copy: the step still has the output name of a removed variable
+                DetachedOps.exec((Op) step, x, y, buffer);
+            }
+        }
+        return buffer;
+    }
+
+    private static INDArray execCustom(CustomOp step, INDArray x, INDArray y, INDArray buffer) {
+        val builder = DynamicCustomOp.builder(step.opName());
+        if (y == null)
+            builder.addInputs(x);
+        else
+            builder.addInputs(x, y);
+
+        //broadcasting might make the output larger than x: the result can't be written in place then
+        boolean inPlace = buffer != null && (y == null || step instanceof BiasAdd
+                        || (Shape.areShapesBroadcastable(x.shape(), y.shape())
+                                        && Arrays.equals(Shape.broadcastOutputShape(x.shape(), y.shape()), x.shape())));
+        if (inPlace)
+            builder.addOutputs(buffer);
+
+        for (long i : step.iArgs())
+            builder.addIntegerArguments(i);
+        double[] tArgs = step.tArgs();
+        if (tArgs.length > 0) {
+            Double[] boxed = new Double[tArgs.length];
+            for (int i = 0; i < tArgs.length; i++)
+                boxed[i] = tArgs[i];
+            builder.addFloatingPointArguments(boxed);
+        }
+
+        DynamicCustomOp op = builder.build();
+        Nd4j.getExecutioner().exec(op);
+        return op.outputArguments()[0];
+    }
+
+    @Override
+    public SDVariable[] outputVariables(String baseName) {
+        return new SDVariable[] {output};
+    }
+
+    @Override
+    public List<long[]> calculateOutputShape() {
+        long[] shape = sameDiff.getShapeForVarName(args()[0].getVarName());
+        return shape == null ? Collections.<long[]>emptyList() : Collections.singletonList(shape);
+    }
+
+    @Override
+    public List<SDVariable> doDiff(List<SDVariable> f1) {
+        throw new UnsupportedOperationException("Fused ops are for inference only: differentiate the graph before fusion");
+    }
+
+    @Override
+    public void initFromTensorFlow(NodeDef nodeDef, SameDiff initWith, Map<String, AttrValue> attributesForNode, GraphDef graph) {
+
+    }
+
+    @Override
+    public void initFromOnnx(OnnxProto3.NodeProto node, SameDiff initWith, Map<String, OnnxProto3.AttributeProto> attributesForNode, OnnxProto3.GraphProto graph) {
+
+    }
+
+    @Override
+    public String onnxName() {
+        throw new NoOpNameFoundException("Not supported: " + opName());
+    }
+
+    @Override
+    public String tensorflowName() {
+        throw new NoOpNameFoundException("Not supported: " + opName());
+    }
+
+    @Override
+    public String opName() {
+        return "fused_elementwise";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FusedElementwiseOp(");
+        if (steps != null) {
+            for (int i = 0; i < steps.size(); i++)
+                sb.append(i > 0 ? ", " : "").append(steps.get(i).opName());
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -0,0 +1,597 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.api.iterator.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.options.ArrayOptionsHelper;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * DataSetCache implementation backed by single append-only memory-mapped file.
+ *
+ * Every DataSet is written as one record: small header with key, data types and shapes, followed by raw array
+ * contents, each block aligned to {@link #ALIGNMENT} bytes. Reads don't deserialize anything: INDArrays returned
+ * by {@link #get(String)} are created on top of the mapped region of the file, so repeated epochs over
+ * CachingDataSetIterator are served straight from the page cache.
+ *
+ * File is laid out in windows of fixed size, and records never cross window boundary, unless record is bigger than
+ * window itself. Index is kept in memory, and rebuilt from file on open, so cache can be reused across JVM runs.
+ *
+ * PLEASE NOTE: Every get() call maps its record with private (copy-on-write) mapping of its own, so in-place
+ * modifications of returned DataSet affect neither the file nor DataSets returned by other calls. Mapping is released
+ * once arrays created on top of it are garbage collected.
+ * PLEASE NOTE: Supported data types are FLOAT, DOUBLE, HALF, INT and LONG, as long as current backend supports them.
+ * Empty arrays are stored as well.
+ * PLEASE NOTE: File is written in native byte order, so it can't be shared between platforms with different endianness.
+ */
+@Slf4j
+public class MemoryMappedDataSetCache implements DataSetCache, Closeable {
+    public static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+    public static final int ALIGNMENT = 64;
+
+    protected static final long FILE_MAGIC = 0x4E44344A44534331L;
+    protected static final int FILE_VERSION = 1;
+    protected static final int RECORD_MAGIC = 0x44534352;
+
+    protected static final int RECORD_DATASET = 1;
+    protected static final int RECORD_COMPLETE = 2;
+    protected static final int RECORD_INCOMPLETE = 3;
+
+    // features, labels, features mask, labels mask
+    protected static final int NUM_ARRAYS = 4;
+
+    private final File file;
+    private final long windowSize;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    // mappings are kept alive as long as buffers created on top of them are reachable, even after cache is closed
+    private static final Set<MappingReference> mappings = new HashSet<>();
+    private static final ReferenceQueue<DataBuffer> collected = new ReferenceQueue<>();
+
+    private final Map<String, Long> index = new HashMap<>();
+    private final Set<String> completeNamespaces = new HashSet<>();
+
+    private long writePosition;
+    private boolean closed = false;
+
+    public MemoryMappedDataSetCache(File file) {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MemoryMappedDataSetCache(Path file) {
+        this(file.toFile());
+    }
+
+    public MemoryMappedDataSetCache(String file) {
+        this(new File(file));
+    }
+
+    /**
+     *
+     * @param file cache file, will be created if doesn't exist
+     * @param windowSize size of single layout window, in bytes. Must be multiple of ALIGNMENT, and can't exceed Integer.MAX_VALUE
+     */
+    public MemoryMappedDataSetCache(File file, long windowSize) {
+        if (file.exists() && !file.isFile()) {
+            throw new IllegalArgumentException("can't use path " + file + " as memory-mapped cache file "
+                            + "because it already exists, but is not a file");
+        }
+
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE || windowSize % ALIGNMENT != 0)
+            throw new IllegalArgumentException("Window size should be positive multiple of " + ALIGNMENT
+                            + ", not exceeding Integer.MAX_VALUE");
+
+        File parentDir = file.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs())
+            throw new IllegalStateException("ERROR: cannot create parent directory: " + parentDir);
+
+        this.file = file;
+        this.windowSize = windowSize;
+
+        try {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+
+            if (channel.size() == 0)
+                writeFileHeader();
+            else
+                rebuildIndex();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isComplete(String namespace) {
+        return completeNamespaces.contains(namespace);
+    }
+
+    @Override
+    public synchronized void setComplete(String namespace, boolean value) {
+        ensureOpen();
+
+        if (value == completeNamespaces.contains(namespace))
+            return;
+
+        ByteBuffer header = recordHeader(value ? RECORD_COMPLETE : RECORD_INCOMPLETE, namespace, null);
+        long position = allocate(header.capacity());
+        writeRecord(position, header, null, null);
+
+        if (value)
+            completeNamespaces.add(namespace);
+        else
+            completeNamespaces.remove(namespace);
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * This method returns DataSet stored under given key. Arrays of returned DataSet are views of private mapping
+     * of the record, no data is copied.
+     *
+     * @param key
+     * @return DataSet, or null if key wasn't stored yet
+     */
+    @Override
+    public synchronized DataSet get(String key) {
+        ensureOpen();
+
+        Long offset = index.get(key);
+        if (offset == null)
+            return null;
+
+        ByteBuffer record = mapRecord(offset);
+
+        // skipping magic and type
+        record.position(8);
+        record.getLong();
+        int keyLength = record.getInt();
+        record.position(record.position() + keyLength);
+
+        int numArrays = record.getInt();
+        INDArray[] arrays = new INDArray[NUM_ARRAYS];
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (int e = 0; e < numArrays; e++) {
+                int type = record.getInt();
+                if (type < 0)
+                    continue;
+
+                char order = (char) record.getInt();
+                int rank = record.getInt();
+                long[] shape = new long[rank];
+                for (int i = 0; i < rank; i++)
+                    shape[i] = record.getLong();
+
+                long dataOffset = record.getLong();
+                long length = record.getLong();
+
+                DataBuffer.Type dataType = DataBuffer.Type.values()[type];
+                if (length == 0) {
+                    arrays[e] = Nd4j.empty(dataType);
+                    continue;
+                }
+
+                int bytes = (int) (length * elementSize(dataType));
+
+                ByteBuffer slice = record.duplicate();
+                slice.limit((int) dataOffset + bytes);
+                slice.position((int) dataOffset);
+
+                DataBuffer buffer = Nd4j.createBuffer(slice.slice().order(ByteOrder.nativeOrder()), dataType, (int) length);
+                retain(buffer, record);
+
+                arrays[e] = Nd4j.create(buffer, shape, Nd4j.getStrides(shape, order), 0, order);
+                Nd4j.getAffinityManager().tagLocation(arrays[e], AffinityManager.Location.HOST);
+            }
+        }
+
+        return new DataSet(arrays[0], arrays[1], arrays[2], arrays[3]);
+    }
+
+    /**
+     * This method appends DataSet to the cache file. If key was stored before, new record supersedes old one.
+     *
+     * @param key
+     * @param dataSet
+     */
+    @Override
+    public synchronized void put(String key, DataSet dataSet) {
+        ensureOpen();
+
+        INDArray[] arrays = new INDArray[] {dataSet.getFeatures(), dataSet.getLabels(),
+                        dataSet.getFeaturesMaskArray(), dataSet.getLabelsMaskArray()};
+
+        for (int e = 0; e < arrays.length; e++)
+            arrays[e] = prepare(arrays[e]);
+
+        ByteBuffer header = recordHeader(RECORD_DATASET, key, arrays);
+        long[] dataOffsets = new long[NUM_ARRAYS];
+        long recordLength = align(header.capacity());
+        for (int e = 0; e < NUM_ARRAYS; e++) {
+            if (arrays[e] == null)
+                continue;
+
+            dataOffsets[e] = recordLength;
+            recordLength = align(recordLength + length(arrays[e]) * elementSize(dataType(arrays[e])));
+        }
+
+        if (recordLength > Integer.MAX_VALUE)
+            throw new IllegalStateException("ERROR: DataSet is too large for memory-mapped cache: " + recordLength + " bytes");
+
+        // now we know offsets, so we can fill them in
+        int pos = header.getInt(8 + 8) + 8 + 8 + 4 + 4;
+        for (int e = 0; e < NUM_ARRAYS; e++) {
+            if (arrays[e] == null) {
+                pos += 4;
+                continue;
+            }
+
+            pos += 4 + 4 + 4 + 8 * arrays[e].rank();
+            header.putLong(pos, dataOffsets[e]);
+            pos += 16;
+        }
+        header.putLong(8, recordLength);
+
+        long position = allocate(recordLength);
+        writeRecord(position, header, arrays, dataOffsets);
+
+        index.put(key, position);
+    }
+
+    /**
+     * This method returns cache file
+     *
+     * @return
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * This method returns number of bytes used by cache file, including superseded records
+     *
+     * @return
+     */
+    public synchronized long getFileSize() {
+        return writePosition;
+    }
+
+    /**
+     * This method closes cache file. Arrays obtained from this cache stay valid after this call.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        channel.close();
+        raf.close();
+    }
+
+    protected void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("ERROR: memory-mapped DataSet cache " + file + " was closed");
+    }
+
+    /**
+     * This method makes sure array is dense, lives on host, and has data type we can store
+     */
+    protected INDArray prepare(INDArray array) {
+        if (array == null)
+            return null;
+
+        if (array.isCompressed())
+            array = Nd4j.getCompressor().decompress(array);
+
+        switch (dataType(array)) {
+            case FLOAT:
+            case DOUBLE:
+            case HALF:
+            case INT:
+            case LONG:
+                break;
+            default:
+                throw new UnsupportedOperationException("ERROR: data type " + dataType(array)
+                                + " isn't supported by memory-mapped cache");
+        }
+
+        // empty arrays have no data to store
+        if (array.isEmpty())
+            return array;
+
+        if (array.isView() || array.data().length() != array.length())
+            array = array.dup(array.ordering());
+
+        Nd4j.getExecutioner().commit();
+        Nd4j.getAffinityManager().ensureLocation(array, AffinityManager.Location.HOST);
+
+        return array;
+    }
+
+    /**
+     * Record header layout:
+     * [int magic][int type][long record length][int key length][key bytes][int number of arrays]
+     * and for each array: [int data type, -1 for absent array] or
+     * [int data type][int order][int rank][long x rank shape][long data offset][long length]
+     */
+    protected ByteBuffer recordHeader(int type, String key, INDArray[] arrays) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        int size = 4 + 4 + 8 + 4 + keyBytes.length + 4;
+        if (arrays != null) {
+            for (INDArray array : arrays)
+                size += array == null ? 4 : 4 + 4 + 4 + 8 * array.rank() + 8 + 8;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        // magic is written separately, once record is complete
+        header.putInt(0);
+        header.putInt(type);
+        header.putLong(align(size));
+        header.putInt(keyBytes.length);
+        header.put(keyBytes);
+        header.putInt(arrays == null ? 0 : arrays.length);
+
+        if (arrays != null) {
+            for (INDArray array : arrays) {
+                if (array == null) {
+                    header.putInt(-1);
+                    continue;
+                }
+
+                header.putInt(dataType(array).ordinal());
+                header.putInt(array.ordering());
+                header.putInt(array.rank());
+                for (long dim : array.shape())
+                    header.putLong(dim);
+
+                // data offset will be filled in later
+                header.putLong(0L);
+                header.putLong(length(array));
+            }
+        }
+
+        header.rewind();
+        return header;
+    }
+
+    protected void writeRecord(long position, ByteBuffer header, INDArray[] arrays, long[] dataOffsets) {
+        try {
+            writeFully(header, position);
+
+            if (arrays != null) {
+                for (int e = 0; e < arrays.length; e++) {
+                    if (arrays[e] == null || arrays[e].isEmpty())
+                        continue;
+
+                    long bytes = arrays[e].length() * elementSize(arrays[e].data().dataType());
+                    ByteBuffer data = arrays[e].data().pointer().asByteBuffer();
+                    data.position(0);
+                    data.limit((int) bytes);
+
+                    writeFully(data, position + dataOffsets[e]);
+                }
+            }
+
+            // record becomes visible only once magic is in place
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            magic.putInt(RECORD_MAGIC);
+            magic.rewind();
+            writeFully(magic, position);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * This method picks position for the next record, making sure it doesn't cross window boundary
+     */
+    protected long allocate(long recordLength) {
+        long position = writePosition;
+        long windowEnd = (position / windowSize + 1) * windowSize;
+        if (position + recordLength > windowEnd)
+            position = windowEnd;
+
+        writePosition = align(position + recordLength);
+        return position;
+    }
+
+    /**
+     * This method maps single record. Each call creates new private mapping, so changes made through one mapping
+     * are never visible through others, nor written back to the file
+     */
+    protected ByteBuffer mapRecord(long offset) {
+        try {
+            long recordLength = readRecordLength(offset);
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.PRIVATE, offset, recordLength);
+            return mapping.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method keeps given mapping alive until given buffer is garbage collected
+     */
+    protected static void retain(DataBuffer buffer, ByteBuffer mapping) {
+        synchronized (mappings) {
+            Reference<? extends DataBuffer> reference;
+            while ((reference = collected.poll()) != null)
+                mappings.remove(reference);
+
+            mappings.add(new MappingReference(buffer, mapping));
+        }
+    }
+
+    protected long readRecordLength(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        channel.read(buffer, offset + 8);
+        return buffer.getLong(0);
+    }
+
+    protected void writeFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ALIGNMENT).order(ByteOrder.nativeOrder());
+        header.putLong(FILE_MAGIC);
+        header.putInt(FILE_VERSION);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1);
+        header.rewind();
+        writeFully(header, 0);
+        writePosition = ALIGNMENT;
+    }
+
+    /**
+     * This method scans existing file, and restores index and namespace flags.
+     * Incomplete record at the end of file (i.e. left by crashed process) is discarded.
+     */
+    protected void rebuildIndex() throws IOException {
+        long fileSize = channel.size();
+
+        ByteBuffer fileHeader = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+        channel.read(fileHeader, 0);
+        if (fileSize < ALIGNMENT || fileHeader.getLong(0) != FILE_MAGIC)
+            throw new IllegalStateException("ERROR: file " + file + " isn't memory-mapped DataSet cache");
+
+        if (fileHeader.getInt(8) != FILE_VERSION)
+            throw new IllegalStateException("ERROR: unsupported cache file version: " + fileHeader.getInt(8));
+
+        if (fileHeader.getInt(12) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1))
+            throw new IllegalStateException("ERROR: cache file " + file + " was written with different byte order");
+
+        ByteBuffer recordHeader = ByteBuffer.allocate(20).order(ByteOrder.nativeOrder());
+        long position = ALIGNMENT;
+        long validEnd = ALIGNMENT;
+        while (position + recordHeader.capacity() <= fileSize) {
+            recordHeader.clear();
+            channel.read(recordHeader, position);
+
+            if (recordHeader.getInt(0) != RECORD_MAGIC) {
+                // records are moved to next window if they don't fit into current one
+                if (position % windowSize == 0)
+                    break;
+
+                position = (position / windowSize + 1) * windowSize;
+                continue;
+            }
+
+            int type = recordHeader.getInt(4);
+            long recordLength = recordHeader.getLong(8);
+            int keyLength = recordHeader.getInt(16);
+            if (recordLength <= 0 || position + recordLength > fileSize)
+                break;
+
+            ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+            channel.read(keyBuffer, position + recordHeader.capacity());
+            String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+
+            switch (type) {
+                case RECORD_DATASET:
+                    index.put(key, position);
+                    break;
+                case RECORD_COMPLETE:
+                    completeNamespaces.add(key);
+                    break;
+                case RECORD_INCOMPLETE:
+                    completeNamespaces.remove(key);
+                    break;
+                default:
+                    throw new IllegalStateException("ERROR: unknown record type " + type + " at position " + position);
+            }
+
+            position = align(position + recordLength);
+            validEnd = position;
+        }
+
+        writePosition = validEnd;
+        if (validEnd < fileSize) {
+            log.warn("Discarding {} bytes of incomplete records at the end of {}", fileSize - validEnd, file);
+            channel.truncate(validEnd);
+        }
+
+        log.debug("Restored {} DataSets from {}", index.size(), file);
+    }
+
+    /**
+     * This method returns data type of given array, including empty arrays that have no data buffer
+     */
+    protected static DataBuffer.Type dataType(INDArray array) {
+        return array.isEmpty() ? ArrayOptionsHelper.dataType(array.shapeInfoJava()) : array.data().dataType();
+    }
+
+    protected static long length(INDArray array) {
+        return array.isEmpty() ? 0 : array.length();
+    }
+
+    protected static long align(long value) {
+        return (value + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    protected static int elementSize(DataBuffer.Type type) {
+        switch (type) {
+            case DOUBLE:
+            case LONG:
+                return 8;
+            case FLOAT:
+            case INT:
+                return 4;
+            case HALF:
+                return 2;
+            default:
+                throw new UnsupportedOperationException("ERROR: unsupported data type " + type);
+        }
+    }
+
+    protected static class MappingReference extends WeakReference<DataBuffer> {
+        // strong reference, so mapping isn't released while buffer is in use
+        private final ByteBuffer mapping;
+
+        protected MappingReference(DataBuffer buffer, ByteBuffer mapping) {
+            super(buffer, collected);
+            this.mapping = mapping;
+        }
+    }
+}
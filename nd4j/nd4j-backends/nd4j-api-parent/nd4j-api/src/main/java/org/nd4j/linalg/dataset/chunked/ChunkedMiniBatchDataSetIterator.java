@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSetIterator over chunked minibatch file written by {@link ChunkedMiniBatchWriter}.
+ *
+ * Reading and decompression of upcoming minibatches happens on background threads, so up to prefetchSize
+ * minibatches are ready by the time they're requested. Minibatches are always returned in file order.
+ *
+ * PLEASE NOTE: since this iterator prefetches on its own, there's no need to wrap it with AsyncDataSetIterator.
+ */
+@Slf4j
+public class ChunkedMiniBatchDataSetIterator implements DataSetIterator, Closeable {
+    public static final int DEFAULT_PREFETCH_SIZE = 8;
+    public static final int DEFAULT_WORKERS = 2;
+
+    private final ChunkedMiniBatchReader reader;
+    private final int prefetchSize;
+    private final ExecutorService executor;
+    private final Queue<Future<DataSet>> pending = new ArrayDeque<>();
+
+    private int nextToSubmit = 0;
+    private int nextToReturn = 0;
+    private DataSetPreProcessor preProcessor;
+
+    public ChunkedMiniBatchDataSetIterator(File file) throws IOException {
+        this(file, DEFAULT_PREFETCH_SIZE, DEFAULT_WORKERS);
+    }
+
+    /**
+     *
+     * @param file chunked minibatch file
+     * @param prefetchSize number of minibatches decoded ahead of consumer
+     * @param workers number of background threads used for reading and decompression
+     */
+    public ChunkedMiniBatchDataSetIterator(File file, int prefetchSize, int workers) throws IOException {
+        if (prefetchSize < 1)
+            throw new IllegalStateException("Prefetch size should be positive value");
+
+        if (workers < 1)
+            throw new IllegalStateException("Number of workers should be positive value");
+
+        this.reader = new ChunkedMiniBatchReader(file);
+        this.prefetchSize = prefetchSize;
+
+        // workers are attached to the same device as thread that created iterator
+        final Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        final AtomicInteger counter = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ChunkedMiniBatchPrefetch-" + counter.getAndIncrement());
+                t.setDaemon(true);
+                Nd4j.getAffinityManager().attachThreadToDevice(t, deviceId);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * This method returns number of minibatches in underlying file
+     *
+     * @return
+     */
+    public int numBatches() {
+        return reader.numBatches();
+    }
+
+    protected void fillQueue() {
+        while (pending.size() < prefetchSize && nextToSubmit < reader.numBatches()) {
+            final int index = nextToSubmit++;
+            pending.add(executor.submit(new Callable<DataSet>() {
+                @Override
+                public DataSet call() throws Exception {
+                    return reader.read(index);
+                }
+            }));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextToReturn < reader.numBatches();
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new IllegalStateException("No more minibatches available");
+
+        fillQueue();
+        Future<DataSet> future = pending.poll();
+        nextToReturn++;
+        fillQueue();
+
+        DataSet ds;
+        try {
+            ds = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to read minibatch " + (nextToReturn - 1), e.getCause());
+        }
+
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public int inputColumns() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        for (Future<DataSet> future : pending)
+            future.cancel(false);
+
+        pending.clear();
+        nextToSubmit = 0;
+        nextToReturn = 0;
+    }
+
+    @Override
+    public int batch() {
+        return reader.numBatches() > 0 ? reader.numExamples(0) : 0;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void remove() {
+        //no opt;
+    }
+
+    /**
+     * This method stops background threads, and closes underlying file
+     */
+    @Override
+    public void close() throws IOException {
+        reset();
+        executor.shutdownNow();
+        reader.close();
+    }
+}
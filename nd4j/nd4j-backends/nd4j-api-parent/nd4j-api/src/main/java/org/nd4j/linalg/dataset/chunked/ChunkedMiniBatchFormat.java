@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class describes chunked minibatch file layout, and provides block encoding/decoding.
+ *
+ * File layout:
+ * [long FILE_MAGIC][int VERSION]
+ * [minibatch 0][minibatch 1]...[minibatch N-1]
+ * [footer: int N, then for each minibatch: long offset, int length, int number of examples]
+ * [long footer offset][long FOOTER_MAGIC]
+ *
+ * Every minibatch consists of 4 blocks: features, labels, features mask, labels mask. Each block is compressed
+ * separately: [byte present][byte stored type][byte compression][byte order][int rank][long x rank shape]
+ * [int raw length][int compressed length][compressed bytes]. Array contents are always stored little-endian.
+ */
+public class ChunkedMiniBatchFormat {
+    public static final long FILE_MAGIC = 0x4E44344A43484E4BL;
+    public static final long FOOTER_MAGIC = 0x4E44344A464F4F54L;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_LENGTH = 12;
+    public static final int TRAILER_LENGTH = 16;
+    public static final int FOOTER_ENTRY_LENGTH = 16;
+
+    protected static final byte STORED_FLOAT = 0;
+    protected static final byte STORED_DOUBLE = 1;
+    protected static final byte STORED_HALF = 2;
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+
+    private ChunkedMiniBatchFormat() {
+        //
+    }
+
+    /**
+     * This method encodes DataSet into single minibatch record
+     *
+     * @param dataSet
+     * @param compression compression applied to every block
+     * @param halfPrecisionFeatures if true, features are stored as float16
+     * @return
+     */
+    public static byte[] encode(DataSet dataSet, ChunkCompression compression, boolean halfPrecisionFeatures) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+
+            encodeBlock(dos, dataSet.getFeatures(), compression, halfPrecisionFeatures);
+            encodeBlock(dos, dataSet.getLabels(), compression, false);
+            encodeBlock(dos, dataSet.getFeaturesMaskArray(), compression, false);
+            encodeBlock(dos, dataSet.getLabelsMaskArray(), compression, false);
+
+            dos.flush();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method decodes minibatch record into DataSet
+     *
+     * @param record
+     * @return
+     */
+    public static DataSet decode(byte[] record) {
+        try {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record));
+
+            INDArray features = decodeBlock(dis);
+            INDArray labels = decodeBlock(dis);
+            INDArray featuresMask = decodeBlock(dis);
+            INDArray labelsMask = decodeBlock(dis);
+
+            return new DataSet(features, labels, featuresMask, labelsMask);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static void encodeBlock(DataOutputStream dos, INDArray array, ChunkCompression compression,
+                    boolean halfPrecision) throws IOException {
+        if (array == null) {
+            dos.writeByte(0);
+            return;
+        }
+
+        if (array.isCompressed())
+            array = Nd4j.getCompressor().decompress(array);
+
+        if (array.isView() || array.data().length() != array.length())
+            array = array.dup(array.ordering());
+
+        byte storedType;
+        ByteBuffer raw;
+        if (halfPrecision) {
+            storedType = STORED_HALF;
+            float[] data = array.data().asFloat();
+            raw = ByteBuffer.allocate(data.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (float v : data)
+                raw.putShort(toHalf(v));
+        } else if (array.data().dataType() == DataBuffer.Type.DOUBLE) {
+            storedType = STORED_DOUBLE;
+            double[] data = array.data().asDouble();
+            raw = ByteBuffer.allocate(data.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+            raw.asDoubleBuffer().put(data);
+        } else {
+            storedType = STORED_FLOAT;
+            float[] data = array.data().asFloat();
+            raw = ByteBuffer.allocate(data.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+            raw.asFloatBuffer().put(data);
+        }
+
+        byte[] rawBytes = raw.array();
+        byte[] compressed = compress(rawBytes, compression);
+
+        dos.writeByte(1);
+        dos.writeByte(storedType);
+        dos.writeByte(compression.ordinal());
+        dos.writeByte(array.ordering());
+        dos.writeInt(array.rank());
+        for (long dim : array.shape())
+            dos.writeLong(dim);
+
+        dos.writeInt(rawBytes.length);
+        dos.writeInt(compressed.length);
+        dos.write(compressed);
+    }
+
+    protected static INDArray decodeBlock(DataInputStream dis) throws IOException {
+        if (dis.readByte() == 0)
+            return null;
+
+        byte storedType = dis.readByte();
+        ChunkCompression compression = ChunkCompression.values()[dis.readByte()];
+        char order = (char) dis.readByte();
+        int rank = dis.readInt();
+        long[] shape = new long[rank];
+        for (int e = 0; e < rank; e++)
+            shape[e] = dis.readLong();
+
+        int rawLength = dis.readInt();
+        byte[] compressed = new byte[dis.readInt()];
+        dis.readFully(compressed);
+
+        ByteBuffer raw = ByteBuffer.wrap(decompress(compressed, compression, rawLength)).order(ByteOrder.LITTLE_ENDIAN);
+        switch (storedType) {
+            case STORED_DOUBLE: {
+                double[] data = new double[rawLength / 8];
+                raw.asDoubleBuffer().get(data);
+                return Nd4j.create(data, shape, order);
+            }
+            case STORED_FLOAT: {
+                float[] data = new float[rawLength / 4];
+                raw.asFloatBuffer().get(data);
+                return Nd4j.create(data, shape, order);
+            }
+            case STORED_HALF: {
+                float[] data = new float[rawLength / 2];
+                for (int e = 0; e < data.length; e++)
+                    data[e] = fromHalf(raw.getShort());
+                return Nd4j.create(data, shape, order);
+            }
+            default:
+                throw new IllegalStateException("Unknown stored data type: " + storedType);
+        }
+    }
+
+    protected static byte[] compress(byte[] raw, ChunkCompression compression) {
+        switch (compression) {
+            case NONE:
+                return raw;
+            case LZ4: {
+                LZ4Compressor compressor = lz4.fastCompressor();
+                byte[] buffer = new byte[compressor.maxCompressedLength(raw.length)];
+                int length = compressor.compress(raw, 0, raw.length, buffer, 0, buffer.length);
+                byte[] result = new byte[length];
+                System.arraycopy(buffer, 0, result, 0, length);
+                return result;
+            }
+            case DEFLATE: {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    deflater.setInput(raw);
+                    deflater.finish();
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(raw.length / 2 + 64);
+                    byte[] buffer = new byte[64 * 1024];
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(buffer);
+                        baos.write(buffer, 0, length);
+                    }
+                    return baos.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown compression: " + compression);
+        }
+    }
+
+    protected static byte[] decompress(byte[] compressed, ChunkCompression compression, int rawLength) {
+        switch (compression) {
+            case NONE:
+                return compressed;
+            case LZ4: {
+                LZ4FastDecompressor decompressor = lz4.fastDecompressor();
+                byte[] result = new byte[rawLength];
+                decompressor.decompress(compressed, 0, result, 0, rawLength);
+                return result;
+            }
+            case DEFLATE: {
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    byte[] result = new byte[rawLength];
+                    int position = 0;
+                    while (position < rawLength && !inflater.finished()) {
+                        int length = inflater.inflate(result, position, rawLength - position);
+                        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                            throw new IllegalStateException("Truncated DEFLATE block");
+                        position += length;
+                    }
+                    return result;
+                } catch (DataFormatException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown compression: " + compression);
+        }
+    }
+
+    /**
+     * This method converts float to IEEE 754 half precision value, rounding to nearest even
+     *
+     * @param value
+     * @return
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        // NaN and infinity
+        if (exponent == 0xFF)
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+
+        int halfExponent = exponent - 127 + 15;
+
+        // overflow, goes to infinity
+        if (halfExponent >= 0x1F)
+            return (short) (sign | 0x7C00);
+
+        // subnormal half, or underflow to zero
+        if (halfExponent <= 0) {
+            if (halfExponent < -10)
+                return (short) sign;
+
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int midpoint = 1 << (shift - 1);
+            if (remainder > midpoint || (remainder == midpoint && (half & 1) != 0))
+                half++;
+
+            return (short) (sign | half);
+        }
+
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        // carry from rounding may propagate into exponent, which is exactly what we want
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0))
+            half++;
+
+        return (short) (sign | half);
+    }
+
+    /**
+     * This method converts IEEE 754 half precision value to float
+     *
+     * @param half
+     * @return
+     */
+    public static float fromHalf(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+
+        if (exponent == 0) {
+            if (mantissa == 0)
+                return Float.intBitsToFloat(sign);
+
+            // subnormal half becomes normal float
+            float value = mantissa / 16777216.0f;
+            return sign == 0 ? value : -value;
+        }
+
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
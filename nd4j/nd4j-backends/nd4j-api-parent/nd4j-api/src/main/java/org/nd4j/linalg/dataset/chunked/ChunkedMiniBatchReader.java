@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access reader for chunked minibatch files written by {@link ChunkedMiniBatchWriter}.
+ *
+ * PLEASE NOTE: This class is thread-safe, minibatches can be read and decoded from multiple threads at once.
+ */
+public class ChunkedMiniBatchReader implements Closeable {
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] examples;
+
+    public ChunkedMiniBatchReader(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+
+        try {
+            long size = channel.size();
+            if (size < ChunkedMiniBatchFormat.HEADER_LENGTH + ChunkedMiniBatchFormat.TRAILER_LENGTH)
+                throw new IllegalStateException("File " + file + " is too small to be chunked minibatch file");
+
+            ByteBuffer header = read(0, ChunkedMiniBatchFormat.HEADER_LENGTH);
+            if (header.getLong() != ChunkedMiniBatchFormat.FILE_MAGIC)
+                throw new IllegalStateException("File " + file + " isn't chunked minibatch file");
+
+            int version = header.getInt();
+            if (version != ChunkedMiniBatchFormat.VERSION)
+                throw new IllegalStateException("Unsupported chunked minibatch file version: " + version);
+
+            ByteBuffer trailer = read(size - ChunkedMiniBatchFormat.TRAILER_LENGTH, ChunkedMiniBatchFormat.TRAILER_LENGTH);
+            long footerOffset = trailer.getLong();
+            if (trailer.getLong() != ChunkedMiniBatchFormat.FOOTER_MAGIC)
+                throw new IllegalStateException("File " + file + " has no index footer. Was writer closed?");
+
+            ByteBuffer footer = read(footerOffset, (int) (size - ChunkedMiniBatchFormat.TRAILER_LENGTH - footerOffset));
+            int numBatches = footer.getInt();
+            offsets = new long[numBatches];
+            lengths = new int[numBatches];
+            examples = new int[numBatches];
+            for (int e = 0; e < numBatches; e++) {
+                offsets[e] = footer.getLong();
+                lengths[e] = footer.getInt();
+                examples[e] = footer.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method returns number of minibatches stored in file
+     *
+     * @return
+     */
+    public int numBatches() {
+        return offsets.length;
+    }
+
+    /**
+     * This method returns number of examples in specified minibatch
+     *
+     * @param index
+     * @return
+     */
+    public int numExamples(int index) {
+        return examples[index];
+    }
+
+    /**
+     * This method returns encoded minibatch, without decompression
+     *
+     * @param index
+     * @return
+     */
+    public byte[] readRecord(int index) throws IOException {
+        if (index < 0 || index >= offsets.length)
+            throw new IndexOutOfBoundsException("Minibatch index " + index + " is out of range [0, " + offsets.length + ")");
+
+        return read(offsets[index], lengths[index]).array();
+    }
+
+    /**
+     * This method reads and decodes specified minibatch
+     *
+     * @param index
+     * @return
+     */
+    public DataSet read(int index) throws IOException {
+        return ChunkedMiniBatchFormat.decode(readRecord(index));
+    }
+
+    protected ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        // positional reads don't touch channel position, so they're safe to use concurrently
+        while (buffer.hasRemaining()) {
+            int cnt = channel.read(buffer, position + buffer.position());
+            if (cnt < 0)
+                throw new EOFException("Unexpected end of file " + file);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        raf.close();
+    }
+}
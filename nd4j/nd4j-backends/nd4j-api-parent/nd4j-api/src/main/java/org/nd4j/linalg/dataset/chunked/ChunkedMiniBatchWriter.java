@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class writes minibatches into single chunked file, readable with {@link ChunkedMiniBatchReader}
+ * and {@link ChunkedMiniBatchDataSetIterator}.
+ *
+ * PLEASE NOTE: file isn't readable until {@link #close()} was called, since index footer is written there.
+ */
+@Slf4j
+public class ChunkedMiniBatchWriter implements Closeable {
+    private final File file;
+    private final ChunkCompression compression;
+    private final boolean halfPrecisionFeatures;
+    private final DataOutputStream stream;
+
+    private final List<long[]> entries = new ArrayList<>();
+    private long position;
+    private boolean closed = false;
+
+    public ChunkedMiniBatchWriter(File file) {
+        this(file, ChunkCompression.LZ4, false);
+    }
+
+    /**
+     *
+     * @param file output file, will be overwritten if exists
+     * @param compression compression applied to every array block
+     * @param halfPrecisionFeatures if true, features are stored as float16. Labels and masks are always stored as is.
+     */
+    public ChunkedMiniBatchWriter(File file, ChunkCompression compression, boolean halfPrecisionFeatures) {
+        this.file = file;
+        this.compression = compression;
+        this.halfPrecisionFeatures = halfPrecisionFeatures;
+
+        try {
+            this.stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024));
+            stream.writeLong(ChunkedMiniBatchFormat.FILE_MAGIC);
+            stream.writeInt(ChunkedMiniBatchFormat.VERSION);
+            position = ChunkedMiniBatchFormat.HEADER_LENGTH;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method appends DataSet to the file
+     *
+     * @param dataSet
+     */
+    public void write(DataSet dataSet) {
+        if (closed)
+            throw new IllegalStateException("Writer was closed already");
+
+        byte[] record = ChunkedMiniBatchFormat.encode(dataSet, compression, halfPrecisionFeatures);
+        try {
+            stream.write(record);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        entries.add(new long[] {position, record.length, dataSet.numExamples()});
+        position += record.length;
+    }
+
+    /**
+     * This method returns number of minibatches written so far
+     *
+     * @return
+     */
+    public int numBatches() {
+        return entries.size();
+    }
+
+    /**
+     * This method writes index footer, and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        long footerOffset = position;
+        stream.writeInt(entries.size());
+        for (val entry : entries) {
+            stream.writeLong(entry[0]);
+            stream.writeInt((int) entry[1]);
+            stream.writeInt((int) entry[2]);
+        }
+
+        stream.writeLong(footerOffset);
+        stream.writeLong(ChunkedMiniBatchFormat.FOOTER_MAGIC);
+        stream.close();
+
+        log.debug("Wrote {} minibatches to {}", entries.size(), file);
+    }
+
+    /**
+     * This method exports all minibatches produced by given iterator into single chunked file
+     *
+     * @param iterator source iterator, will be reset before export if reset is supported
+     * @param file output file
+     * @param compression compression applied to every array block
+     * @param halfPrecisionFeatures if true, features are stored as float16
+     * @return number of minibatches written
+     */
+    public static int export(DataSetIterator iterator, File file, ChunkCompression compression,
+                    boolean halfPrecisionFeatures) throws IOException {
+        if (iterator.resetSupported())
+            iterator.reset();
+
+        try (ChunkedMiniBatchWriter writer = new ChunkedMiniBatchWriter(file, compression, halfPrecisionFeatures)) {
+            while (iterator.hasNext())
+                writer.write(iterator.next());
+
+            return writer.numBatches();
+        }
+    }
+}
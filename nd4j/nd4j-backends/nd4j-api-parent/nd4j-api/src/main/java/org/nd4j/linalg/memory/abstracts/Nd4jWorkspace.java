@@ -25,6 +25,7 @@ import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.Pointer;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.memory.pointers.PagedPointer;
@@ -32,6 +33,8 @@ import org.nd4j.linalg.api.memory.pointers.PointersPair;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.MemoryManager;
+import org.nd4j.linalg.memory.provider.BasicWorkspaceManager;
+import org.nd4j.linalg.memory.stats.WorkspaceStatisticsCollector;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -126,6 +129,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
     protected AtomicLong generationId = new AtomicLong(0);
 
+    // statistics collector, only available if statistics gathering is enabled in workspace manager
+    protected WorkspaceStatisticsCollector statistics;
+
     // this memory manager implementation will be used to allocate real memory for this workspace
 
     public Nd4jWorkspace(@NonNull WorkspaceConfiguration configuration) {
@@ -400,6 +406,13 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
             else
                 pinnedAllocationsSize.addAndGet(requiredMemory);
 
+            if (statistics != null) {
+                if (!trimmer)
+                    statistics.spilled(requiredMemory);
+                else
+                    statistics.pinned(requiredMemory);
+            }
+
             if (isDebug.get())
                 log.info("Workspace [{}]: step: {}, spilled  {} bytes, capacity of {} elements", id, stepsCount.get(),
                                 requiredMemory, numElements);
@@ -443,6 +456,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
     @Override
     public void initializeWorkspace() {
+        // we'll need this for statistics
+        long previousSize = currentSize.get();
+
         // we can reallocate this workspace to larger size if that's needed and allowed by configuration
         if ((currentSize.get() < maxCycle.get() || currentSize.get() < cycleAllocations.get())
                         && workspaceConfiguration.getPolicySpill() == SpillPolicy.REALLOCATE
@@ -500,6 +516,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
                 // calling for implementation-specific workspace initialization. basically allocation happens there
                 init();
+
+                if (statistics != null)
+                    statistics.allocated(previousSize, currentSize.get());
             }
     }
 
@@ -670,6 +689,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
         lastCycleAllocations.set(cycleAllocations.get());
 
+        if (statistics != null)
+            statistics.cycleFinished(cycleAllocations.get(), currentSize.get());
+
         disabledCounter.set(0);
 
 
@@ -720,6 +742,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
         Nd4j.getMemoryManager().setCurrentWorkspace(this);
         isOpen.set(true);
 
+        // picking up statistics mode once per cycle
+        updateStatisticsCollector();
+
         // resetting workspace to 0 offset (if anything), not applicable to circular mode, sure
         if (workspaceConfiguration.getPolicyReset() == ResetPolicy.BLOCK_LEFT) {
             reset();
@@ -740,6 +765,17 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
         return this;
     }
 
+    /**
+     * This method attaches or detaches statistics collector, depending on workspace manager settings
+     */
+    protected void updateStatisticsCollector() {
+        MemoryWorkspaceManager manager = Nd4j.getWorkspaceManager();
+        if (!manager.isStatisticsEnabled())
+            statistics = null;
+        else if (statistics == null && manager instanceof BasicWorkspaceManager)
+            statistics = ((BasicWorkspaceManager) manager).getStatisticsCollector(this);
+    }
+
     /**
      * This method reset host/device offsets within workspace
      *
@@ -832,7 +868,10 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
         public GarbageWorkspaceReference(MemoryWorkspace referent, ReferenceQueue<? super MemoryWorkspace> queue) {
             super(referent, queue);
-            this.pointersPair = ((Nd4jWorkspace) referent).workspace;
+
+            // memory-mapped files can't be released as usual memory, so we don't touch them here
+            if (((Nd4jWorkspace) referent).workspaceConfiguration.getPolicyLocation() != LocationPolicy.MMAP)
+                this.pointersPair = ((Nd4jWorkspace) referent).workspace;
 
             this.id = referent.getId();
             this.threadId = referent.getThreadId();
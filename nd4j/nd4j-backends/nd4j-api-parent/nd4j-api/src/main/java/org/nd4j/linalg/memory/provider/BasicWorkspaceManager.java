@@ -23,18 +23,24 @@ import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.memory.pointers.PointersPair;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatisticsListener;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.linalg.memory.stats.WorkspaceStatisticsCollector;
 import org.nd4j.linalg.primitives.SynchronizedObject;
 import org.nd4j.util.StringUtils;
 
 import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 
@@ -55,6 +61,11 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
     // default mode is DISABLED, as in: production mode
     protected SynchronizedObject<DebugMode> debugMode = new SynchronizedObject<>(DebugMode.DISABLED);
 
+    // statistics are disabled by default as well
+    protected volatile boolean statisticsEnabled = false;
+    protected final List<WorkspaceStatisticsListener> statisticsListeners = new CopyOnWriteArrayList<>();
+    protected final Map<String, WorkspaceStatisticsCollector> statisticsCollectors = new ConcurrentHashMap<>();
+
     public BasicWorkspaceManager() {
         this(WorkspaceConfiguration.builder().initialSize(0).maxSize(0).overallocationLimit(0.3)
                         .policyAllocation(AllocationPolicy.OVERALLOCATE).policyLearning(LearningPolicy.FIRST_LOOP)
@@ -115,6 +126,96 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
         debugMode.set(mode);
     }
 
+    @Override
+    public void setStatisticsEnabled(boolean reallyEnable) {
+        statisticsEnabled = reallyEnable;
+    }
+
+    @Override
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    @Override
+    public void addStatisticsListener(@NonNull WorkspaceStatisticsListener listener) {
+        statisticsListeners.add(listener);
+    }
+
+    @Override
+    public void removeStatisticsListener(@NonNull WorkspaceStatisticsListener listener) {
+        statisticsListeners.remove(listener);
+    }
+
+    /**
+     * This method returns statistics collector for given workspace, creating one if necessary.
+     * Collectors are keyed by workspace id and thread id, so statistics survive workspace destruction & recreation
+     *
+     * @param workspace
+     * @return
+     */
+    public WorkspaceStatisticsCollector getStatisticsCollector(@NonNull Nd4jWorkspace workspace) {
+        String key = workspace.getId() + "_" + workspace.getThreadId();
+        WorkspaceStatisticsCollector collector = statisticsCollectors.get(key);
+        if (collector == null) {
+            collector = new WorkspaceStatisticsCollector(workspace.getId(), workspace.getThreadId(),
+                            workspace.getDeviceId(), statisticsListeners);
+            WorkspaceStatisticsCollector existing = statisticsCollectors.putIfAbsent(key, collector);
+            if (existing != null)
+                collector = existing;
+        }
+
+        return collector;
+    }
+
+    @Override
+    public List<WorkspaceStatistics> getWorkspaceStatistics() {
+        List<WorkspaceStatistics> result = new ArrayList<>();
+        for (WorkspaceStatisticsCollector collector : statisticsCollectors.values())
+            result.add(collector.snapshot());
+
+        Collections.sort(result, new Comparator<WorkspaceStatistics>() {
+            @Override
+            public int compare(WorkspaceStatistics o1, WorkspaceStatistics o2) {
+                int cmp = Long.compare(o1.getThreadId(), o2.getThreadId());
+                return cmp != 0 ? cmp : o1.getWorkspaceId().compareTo(o2.getWorkspaceId());
+            }
+        });
+
+        return result;
+    }
+
+    @Override
+    public String getStatisticsReport() {
+        List<WorkspaceStatistics> list = getWorkspaceStatistics();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-26s %8s %8s %8s %8s %10s %8s / %8s %8s / %8s %8s%n", "Workspace [thread]:",
+                        "Size", "Peak", "Learned", "Reallocs", "Cycles", "Spilled", "count", "Pinned", "count",
+                        "PeakCycle"));
+
+        for (WorkspaceStatistics stats : list) {
+            builder.append(String.format("%-26s %8s %8s %8s %8d %10d %8s / %8d %8s / %8d %8s%n",
+                            stats.getWorkspaceId() + " [" + stats.getThreadId() + "]:",
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getCurrentSize(), "", 2),
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getPeakSize(), "", 2),
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getLearnedSize(), "", 2),
+                            stats.getReallocations(), stats.getCycles(),
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getSpilledBytes(), "", 2),
+                            stats.getSpilledAllocations(),
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getPinnedBytes(), "", 2),
+                            stats.getPinnedAllocations(),
+                            StringUtils.TraditionalBinaryPrefix.long2String(stats.getPeakCycleAllocations(), "", 2)));
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (WorkspaceStatisticsCollector collector : statisticsCollectors.values())
+            collector.reset();
+    }
+
     /*
     @Override
     public MemoryWorkspace getWorkspaceForCurrentThread(@NonNull WorkspaceConfiguration configuration, @NonNull String id) {
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.memory.stats;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatisticsListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class accumulates statistics for single workspace.
+ * Instances are created by workspace manager only when statistics gathering is enabled, so disabled mode costs nothing beyond null check in workspace.
+ *
+ * PLEASE NOTE: updates come from the thread that owns workspace, but snapshots can be taken from any thread
+ */
+public class WorkspaceStatisticsCollector {
+    @Getter
+    private final String workspaceId;
+    @Getter
+    private final long threadId;
+    @Getter
+    private final int deviceId;
+
+    private final List<WorkspaceStatisticsListener> listeners;
+
+    private final AtomicLong currentSize = new AtomicLong(0);
+    private final AtomicLong peakSize = new AtomicLong(0);
+    private final AtomicLong learnedSize = new AtomicLong(0);
+    private final AtomicLong reallocations = new AtomicLong(0);
+    private final AtomicLong cycles = new AtomicLong(0);
+    private final AtomicLong lastCycleAllocations = new AtomicLong(0);
+    private final AtomicLong peakCycleAllocations = new AtomicLong(0);
+    private final AtomicLong spilledAllocations = new AtomicLong(0);
+    private final AtomicLong spilledBytes = new AtomicLong(0);
+    private final AtomicLong pinnedAllocations = new AtomicLong(0);
+    private final AtomicLong pinnedBytes = new AtomicLong(0);
+
+    /**
+     *
+     * @param workspaceId
+     * @param threadId
+     * @param deviceId
+     * @param listeners shared list of listeners, owned by workspace manager. Should be safe for concurrent iteration
+     */
+    public WorkspaceStatisticsCollector(@NonNull String workspaceId, long threadId, int deviceId,
+                    @NonNull List<WorkspaceStatisticsListener> listeners) {
+        this.workspaceId = workspaceId;
+        this.threadId = threadId;
+        this.deviceId = deviceId;
+        this.listeners = listeners;
+    }
+
+    /**
+     * This method should be called when allocation was spilled out of workspace
+     *
+     * @param bytes
+     */
+    public void spilled(long bytes) {
+        spilledAllocations.incrementAndGet();
+        spilledBytes.addAndGet(bytes);
+    }
+
+    /**
+     * This method should be called when pinned allocation was made, circular workspaces only
+     *
+     * @param bytes
+     */
+    public void pinned(long bytes) {
+        pinnedAllocations.incrementAndGet();
+        pinnedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * This method should be called once workspace memory was allocated as result of learning
+     *
+     * @param previousSize workspace size before reallocation, 0 if workspace wasn't allocated before
+     * @param newSize
+     */
+    public void allocated(long previousSize, long newSize) {
+        if (previousSize > 0 && previousSize != newSize)
+            reallocations.incrementAndGet();
+
+        learnedSize.set(newSize);
+        updateSize(newSize);
+
+        if (!listeners.isEmpty()) {
+            WorkspaceStatistics statistics = snapshot();
+            for (WorkspaceStatisticsListener listener : listeners)
+                listener.workspaceAllocated(statistics, previousSize);
+        }
+    }
+
+    /**
+     * This method should be called once workspace cycle is finished
+     *
+     * @param cycleAllocations number of bytes requested within this cycle, including spills
+     * @param size current workspace size
+     */
+    public void cycleFinished(long cycleAllocations, long size) {
+        cycles.incrementAndGet();
+        lastCycleAllocations.set(cycleAllocations);
+        if (cycleAllocations > peakCycleAllocations.get())
+            peakCycleAllocations.set(cycleAllocations);
+
+        updateSize(size);
+
+        if (!listeners.isEmpty()) {
+            WorkspaceStatistics statistics = snapshot();
+            for (WorkspaceStatisticsListener listener : listeners)
+                listener.cycleFinished(statistics);
+        }
+    }
+
+    protected void updateSize(long size) {
+        currentSize.set(size);
+        if (size > peakSize.get())
+            peakSize.set(size);
+    }
+
+    /**
+     * This method returns snapshot of current statistics
+     *
+     * @return
+     */
+    public WorkspaceStatistics snapshot() {
+        return WorkspaceStatistics.builder()
+                        .workspaceId(workspaceId)
+                        .threadId(threadId)
+                        .deviceId(deviceId)
+                        .currentSize(currentSize.get())
+                        .peakSize(peakSize.get())
+                        .learnedSize(learnedSize.get())
+                        .reallocations(reallocations.get())
+                        .cycles(cycles.get())
+                        .lastCycleAllocations(lastCycleAllocations.get())
+                        .peakCycleAllocations(peakCycleAllocations.get())
+                        .spilledAllocations(spilledAllocations.get())
+                        .spilledBytes(spilledBytes.get())
+                        .pinnedAllocations(pinnedAllocations.get())
+                        .pinnedBytes(pinnedBytes.get())
+                        .build();
+    }
+
+    /**
+     * This method resets all counters. Current size is kept as is, since it reflects workspace state
+     */
+    public void reset() {
+        peakSize.set(currentSize.get());
+        learnedSize.set(0);
+        reallocations.set(0);
+        cycles.set(0);
+        lastCycleAllocations.set(0);
+        peakCycleAllocations.set(0);
+        spilledAllocations.set(0);
+        spilledBytes.set(0);
+        pinnedAllocations.set(0);
+        pinnedBytes.set(0);
+    }
+}
@@ -20,6 +20,7 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.*;
 import org.nd4j.linalg.profiler.data.StackAggregator;
@@ -28,6 +29,9 @@ import org.nd4j.linalg.profiler.data.StringCounter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.nd4j.linalg.profiler.OpProfiler.PenaltyCause.NONE;
@@ -101,6 +105,9 @@ public class OpProfiler {
     @Getter
     private StringCounter blasOrderCounter = new StringCounter();
 
+    // latest workspace statistics, reported via WorkspaceProfilerListener
+    private Map<String, WorkspaceStatistics> workspaceStatistics = new ConcurrentHashMap<>();
+
 
     private final long THRESHOLD = 100000;
 
@@ -157,6 +164,7 @@ public class OpProfiler {
         blasOrderCounter.reset();
 
         orderCounter.reset();
+        workspaceStatistics.clear();
         listeners.clear();
     }
 
@@ -471,7 +479,34 @@ public class OpProfiler {
         System.out.println("Unique entries: " + blasAggregator.getUniqueBranchesNumber());
         blasAggregator.renderTree(false);
         System.out.println();
+        if (!workspaceStatistics.isEmpty()) {
+            log.info("--- Workspaces statistics: ---");
+            System.out.println(workspaceStatisticsAsString());
+            System.out.println();
+        }
+    }
+
+    /**
+     * This method stores latest statistics snapshot for given workspace
+     *
+     * @param statistics
+     */
+    public void processWorkspaceStatistics(WorkspaceStatistics statistics) {
+        workspaceStatistics.put(statistics.getWorkspaceId() + "_" + statistics.getThreadId(), statistics);
+    }
+
+    protected String workspaceStatisticsAsString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, WorkspaceStatistics> entry : new TreeMap<>(workspaceStatistics).entrySet()) {
+            WorkspaceStatistics stats = entry.getValue();
+            builder.append(entry.getKey()).append("  >>> size: [").append(stats.getCurrentSize())
+                            .append("] peak: [").append(stats.getPeakSize()).append("] reallocations: [")
+                            .append(stats.getReallocations()).append("] spilled: [").append(stats.getSpilledBytes())
+                            .append("] pinned: [").append(stats.getPinnedBytes()).append("] peak cycle: [")
+                            .append(stats.getPeakCycleAllocations()).append("]").append("\n");
+        }
 
+        return builder.toString();
     }
 
 
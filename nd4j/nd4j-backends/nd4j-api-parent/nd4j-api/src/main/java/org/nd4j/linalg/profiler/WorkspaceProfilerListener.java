@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.profiler;
+
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatisticsListener;
+
+/**
+ * This listener exports workspace statistics to OpProfiler, so they're printed out as part of OpProfiler dashboard.
+ *
+ * Usage:
+ *  Nd4j.getWorkspaceManager().setStatisticsEnabled(true);
+ *  Nd4j.getWorkspaceManager().addStatisticsListener(new WorkspaceProfilerListener());
+ */
+public class WorkspaceProfilerListener implements WorkspaceStatisticsListener {
+
+    @Override
+    public void cycleFinished(WorkspaceStatistics statistics) {
+        OpProfiler.getInstance().processWorkspaceStatistics(statistics);
+    }
+
+    @Override
+    public void workspaceAllocated(WorkspaceStatistics statistics, long previousSize) {
+        OpProfiler.getInstance().processWorkspaceStatistics(statistics);
+    }
+}
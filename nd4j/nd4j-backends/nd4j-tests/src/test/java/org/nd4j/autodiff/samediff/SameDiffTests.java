@@ -2990,4 +2990,157 @@ public class SameDiffTests {
         
     }
 
+    @Test
+    public void testMemoryPlan() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.var("in", Nd4j.rand(3, 4));
+        SDVariable a = sd.tanh("a", in);
+        SDVariable b = sd.sigmoid("b", a);
+        SDVariable c = sd.tanh("c", b);
+        SDVariable d = sd.sigmoid("d", c);
+        SDVariable out = sd.sum("out", d, 1);
+
+        sd.exec();
+        INDArray expected = out.getArr().dup();
+
+        //chain of 4 intermediates: each one is dead once the next one is computed, so 2 slots are enough
+        MemoryPlan plan = sd.planMemory("out");
+        assertTrue(plan.isPlanned());
+        assertEquals(4, plan.getNumIntermediates());
+        assertEquals(2, plan.getNumSlots());
+        assertEquals(4 * 12 * Nd4j.sizeOfDataType(), plan.getNaivePeakBytes());
+        assertEquals(2 * 12 * Nd4j.sizeOfDataType(), plan.getPlannedPeakBytes());
+        assertEquals(plan.getPlannedPeakBytes(), plan.getLivePeakBytes());
+
+        for (int i = 0; i < 2; i++) {
+            sd.exec();
+            assertEquals(expected, sd.getArrForVarName("out"));
+            assertNull(sd.getArrForVarName("b"));
+            assertNotNull(sd.getArrForVarName("in"));
+        }
+
+        sd.clearMemoryPlan();
+        sd.exec();
+        assertEquals(expected, sd.getArrForVarName("out"));
+        assertNotNull(sd.getArrForVarName("b"));
+    }
+
+    @Test
+    public void testInferenceSession() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.var("in", 3, 4);
+        sd.addAsPlaceHolder("in");
+        final INDArray w = Nd4j.rand(4, 5);
+        SDVariable weights = sd.var("w", w);
+        SDVariable mm = sd.mmul("mm", in, weights);
+        SDVariable a = sd.tanh("a", mm);
+        SDVariable b = sd.sigmoid("b", mm);
+        a.add("s", b);
+        sd.sum("sumA", a, 1);
+        sd.exp("unused", in);
+
+        final InferenceSession session = new InferenceSession(sd, 4);
+
+        //only the ops required by the outputs are executed
+        Set<String> placeholders = Collections.singleton("in");
+        assertEquals(3, session.getOps(placeholders, "sumA").size());
+        assertEquals(4, session.getOps(placeholders, "s").size());
+        assertEquals(5, session.getOps(placeholders, "s", "sumA").size());
+
+        //requests must leave the arrays of the graph alone
+        Map<String, INDArray> graphArrays = new HashMap<>();
+        for (SDVariable v : sd.variables())
+            graphArrays.put(v.getVarName(), sd.getArrForVarName(v.getVarName()));
+        INDArray wBefore = w.dup();
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10; i++) {
+                            INDArray x = Nd4j.rand(3, 4);
+                            Map<String, INDArray> out = session.output(Collections.singletonMap("in", x), "s", "sumA");
+
+                            INDArray expMm = x.mmul(w);
+                            INDArray expA = Transforms.tanh(expMm, true);
+                            INDArray expS = expA.add(Transforms.sigmoid(expMm, true));
+                            INDArray expSum = expA.sum(1);
+                            assertEquals(expS, out.get("s"));
+                            assertEquals(expSum, out.get("sumA").reshape(expSum.shape()));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        session.close();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (SDVariable v : sd.variables())
+            assertSame(v.getVarName(), graphArrays.get(v.getVarName()), sd.getArrForVarName(v.getVarName()));
+        assertEquals(wBefore, sd.getArrForVarName("w"));
+
+        try {
+            new InferenceSession(sd, 1).output(Collections.<String, INDArray>emptyMap(), "s");
+            fail("Expected missing placeholder error");
+        } catch (ND4JIllegalStateException e) {
+            //expected
+        }
+    }
+
+
+    private static SameDiff fusionGraph() {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.var("in", Nd4j.rand(3, 4));
+        SDVariable w = sd.var("w", Nd4j.rand(4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(3, 5));
+        SDVariable mm = sd.mmul("mm", in, w);
+        SDVariable z = mm.add("z", b);
+        SDVariable act = sd.tanh("act", z);
+        SDVariable scaled = act.mul("scaled", 2.0);
+        sd.sigmoid("out", scaled);
+        return sd;
+    }
+
+    @Test
+    public void testElementwiseFusion() {
+        SameDiff sd = fusionGraph();
+        sd.exec();
+        INDArray expected = sd.getArrForVarName("out").dup();
+        int numFunctions = sd.functions().length;
+
+        //add, tanh, mul, sigmoid: one fused op
+        assertEquals(3, sd.fuseElementwiseOps("out"));
+        assertEquals(numFunctions - 3, sd.functions().length);
+        assertNull(sd.getVariable("act"));
+        assertNotNull(sd.getVariable("mm"));
+
+        for (int i = 0; i < 2; i++) {
+            sd.exec();
+            assertEquals(expected, sd.getArrForVarName("out"));
+            //removed intermediates don't come back into the graph
+            assertNull(sd.getArrForVarName("act"));
+            assertNull(sd.getArrForVarName("scaled"));
+        }
+
+        InferenceSession session = new InferenceSession(sd, 2);
+        assertEquals(expected, session.output(Collections.<String, INDArray>emptyMap(), "out"));
+        session.close();
+        assertNull(sd.getArrForVarName("act"));
+
+        //requested outputs split the chains
+        sd = fusionGraph();
+        assertEquals(2, sd.fuseElementwiseOps("out", "act"));
+        sd.exec();
+        assertEquals(expected, sd.getArrForVarName("out"));
+        assertNotNull(sd.getArrForVarName("act"));
+    }
 }
@@ -1086,4 +1086,34 @@ public class TensorFlowImportTest extends BaseNd4jTest {
     public void testNonFrozenGraph1() throws Exception {
         val tg = TFGraphMapper.getInstance().importGraph(new ClassPathResource("tf_graphs/examples/unfrozen_simple_ae.pb").getInputStream());
     }
-}
\ No newline at end of file
+
+    @Ignore
+    @Test
+    public void benchmarkElementwiseFusion() throws Exception {
+        //inception: every convolution is followed by BiasAdd + Relu
+        Nd4j.create(1);
+        val tg = TFGraphMapper.getInstance().importGraph(new ClassPathResource("tf_graphs/tensorflow_inception_graph.pb").getInputStream());
+        val ipod = Nd4j.read(new DataInputStream(new ClassPathResource("tf_graphs/ipod.nd4").getInputStream()));
+        tg.updateVariable("input", ipod);
+
+        DifferentialFunction[] functions = tg.functions();
+        String output = tg.getOutputsForFunction(functions[functions.length - 1])[0];
+
+        INDArray expected = tg.execAndEndResult().dup();
+        double before = msPerExec(tg, 10);
+
+        int removed = tg.fuseElementwiseOps(output);
+        assertEquals(expected, tg.execAndEndResult());
+        double after = msPerExec(tg, 10);
+
+        log.info("{} ops, {} removed by fusion: {} ms per exec before, {} ms after", functions.length, removed, before, after);
+    }
+
+    private static double msPerExec(SameDiff sd, int iterations) {
+        sd.exec();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sd.exec();
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+}
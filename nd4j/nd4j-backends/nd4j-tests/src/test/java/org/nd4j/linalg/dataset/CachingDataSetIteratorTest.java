@@ -18,10 +18,13 @@ package org.nd4j.linalg.dataset;
 
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
@@ -29,9 +32,12 @@ import org.nd4j.linalg.dataset.api.iterator.SamplingDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.cache.DataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InFileDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InMemoryDataSetCache;
+import org.nd4j.linalg.dataset.api.iterator.cache.MemoryMappedDataSetCache;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -70,6 +76,143 @@ public class CachingDataSetIteratorTest extends BaseNd4jTest {
         FileUtils.deleteDirectory(cacheDir.toFile());
     }
 
+    @Test
+    public void testMemoryMapped() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File cacheFile = new File(cacheDir.toFile(), "cache.bin");
+
+        // small window, so records are spread across multiple mappings
+        MemoryMappedDataSetCache cache = new MemoryMappedDataSetCache(cacheFile, 8192);
+        runDataSetTest(cache);
+        cache.close();
+
+        // index and namespace flags should be restored from file
+        cache = new MemoryMappedDataSetCache(cacheFile, 8192);
+        assertTrue(cache.isComplete("test-namespace"));
+        assertTrue(cache.contains("data-set-cache-test-namespace-000000.bin"));
+
+        DataSet ds = cache.get("data-set-cache-test-namespace-000000.bin");
+        assertEquals(1000.0, ds.getFeatures().sumNumber());
+        assertEquals(0.0, ds.getLabels().sumNumber());
+        cache.close();
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testMemoryMappedRoundTrip() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File cacheFile = new File(cacheDir.toFile(), "cache.bin");
+
+        MemoryMappedDataSetCache cache = new MemoryMappedDataSetCache(cacheFile, 4096);
+
+        INDArray features = Nd4j.linspace(1, 24, 24).reshape('c', 2, 3, 4);
+        INDArray labels = Nd4j.linspace(1, 6, 6).reshape('f', 2, 3);
+        INDArray featuresMask = Nd4j.ones(2, 4);
+        DataSet original = new DataSet(features, labels, featuresMask, null);
+        cache.put("small", original);
+
+        // bigger than window, gets dedicated mapping
+        DataSet large = new DataSet(Nd4j.rand(64, 64), Nd4j.rand(64, 2).get(NDArrayIndex.all(), NDArrayIndex.point(1)));
+        cache.put("large", large);
+
+        // later put supersedes earlier one
+        DataSet replaced = new DataSet(Nd4j.zeros(2, 2), Nd4j.ones(2, 2));
+        cache.put("replaced", new DataSet(Nd4j.ones(2, 2), Nd4j.ones(2, 2)));
+        cache.put("replaced", replaced);
+
+        assertFalse(cache.contains("missing"));
+        assertNull(cache.get("missing"));
+
+        for (int e = 0; e < 2; e++) {
+            DataSet restored = cache.get("small");
+            assertEquals(features, restored.getFeatures());
+            assertEquals(labels, restored.getLabels());
+            assertEquals(featuresMask, restored.getFeaturesMaskArray());
+            assertNull(restored.getLabelsMaskArray());
+
+            assertEquals(large.getFeatures(), cache.get("large").getFeatures());
+            assertEquals(large.getLabels(), cache.get("large").getLabels());
+            assertEquals(replaced.getFeatures(), cache.get("replaced").getFeatures());
+
+            // second pass goes through reopened cache
+            cache.close();
+            cache = new MemoryMappedDataSetCache(cacheFile, 4096);
+        }
+
+        cache.close();
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testMemoryMappedCopies() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File cacheFile = new File(cacheDir.toFile(), "cache.bin");
+
+        MemoryMappedDataSetCache cache = new MemoryMappedDataSetCache(cacheFile, 4096);
+        cache.put("first", new DataSet(Nd4j.ones(2, 3), Nd4j.ones(2, 2)));
+
+        // in-place changes of returned DataSet shouldn't leak into next get() call
+        DataSet restored = cache.get("first");
+        restored.getFeatures().addi(10.0);
+        assertEquals(Nd4j.ones(2, 3), cache.get("first").getFeatures());
+
+        // arrays returned before stay valid while more records are appended
+        for (int i = 0; i < 10; i++)
+            cache.put("next-" + i, new DataSet(Nd4j.zeros(2, 3), Nd4j.zeros(2, 2)));
+        assertEquals(Nd4j.zeros(2, 3), cache.get("next-9").getFeatures());
+        assertEquals(Nd4j.ones(2, 3).addi(10.0), restored.getFeatures());
+
+        cache.close();
+        assertEquals(Nd4j.ones(2, 3).addi(10.0), restored.getFeatures());
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testMemoryMappedEmptyArrays() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File cacheFile = new File(cacheDir.toFile(), "cache.bin");
+
+        MemoryMappedDataSetCache cache = new MemoryMappedDataSetCache(cacheFile, 4096);
+        cache.put("empty", new DataSet(Nd4j.ones(2, 3), Nd4j.empty(DataBuffer.Type.FLOAT)));
+        cache.close();
+
+        cache = new MemoryMappedDataSetCache(cacheFile, 4096);
+        DataSet restored = cache.get("empty");
+        assertEquals(Nd4j.ones(2, 3), restored.getFeatures());
+        assertTrue(restored.getLabels().isEmpty());
+        cache.close();
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testMemoryMappedHalf() throws IOException {
+        long[] shape = new long[] {2, 2};
+        INDArray half;
+        try {
+            half = Nd4j.create(Nd4j.getDataBufferFactory().createHalf(new float[] {1, 2, 3, 4}, true), shape,
+                            Nd4j.getStrides(shape, 'c'), 0, 'c');
+        } catch (UnsupportedOperationException e) {
+            // current backend has no FP16 support
+            Assume.assumeTrue(false);
+            return;
+        }
+
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File cacheFile = new File(cacheDir.toFile(), "cache.bin");
+
+        try (MemoryMappedDataSetCache cache = new MemoryMappedDataSetCache(cacheFile, 4096)) {
+            cache.put("half", new DataSet(half, Nd4j.ones(2, 2)));
+
+            DataSet restored = cache.get("half");
+            assertEquals(DataBuffer.Type.HALF, restored.getFeatures().data().dataType());
+            assertEquals(half, restored.getFeatures());
+        } finally {
+            FileUtils.deleteDirectory(cacheDir.toFile());
+        }
+    }
+
     private void runDataSetTest(DataSetCache cache) {
         int rows = 500;
         int inputColumns = 100;
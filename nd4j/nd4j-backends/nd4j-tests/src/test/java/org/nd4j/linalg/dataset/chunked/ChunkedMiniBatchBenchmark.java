@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import org.apache.commons.io.FileUtils;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.ExistingMiniBatchDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark: one epoch over minibatches stored one-file-per-batch (ExistingMiniBatchDataSetIterator),
+ * versus the same minibatches stored in single chunked file with different compression settings.
+ *
+ * Run with main() method, or via JMH runner. Page cache should be dropped between runs to measure cold reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChunkedMiniBatchBenchmark {
+
+    @Param({"32"})
+    public int batchSize;
+
+    @Param({"3072"})
+    public int features;
+
+    @Param({"200"})
+    public int numBatches;
+
+    @Param({"NONE", "LZ4", "DEFLATE"})
+    public String compression;
+
+    @Param({"false", "true"})
+    public boolean halfPrecision;
+
+    private File rootDir;
+    private File singleFileDir;
+    private File chunkedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Nd4j.getRandom().setSeed(12345);
+
+        rootDir = Files.createTempDirectory("nd4j-chunked-benchmark").toFile();
+        singleFileDir = new File(rootDir, "single");
+        singleFileDir.mkdirs();
+        chunkedFile = new File(rootDir, "chunked.bin");
+
+        try (ChunkedMiniBatchWriter writer = new ChunkedMiniBatchWriter(chunkedFile,
+                        ChunkCompression.valueOf(compression), halfPrecision)) {
+            for (int e = 0; e < numBatches; e++) {
+                // quantized values, so compression has something to work with, like on real images
+                DataSet ds = new DataSet(Transforms.floor(Nd4j.rand(batchSize, features).muli(255), false).divi(255),
+                                Nd4j.zeros(batchSize, 10));
+                ds.save(new File(singleFileDir, String.format(ExistingMiniBatchDataSetIterator.DEFAULT_PATTERN, e)));
+                writer.write(ds);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Benchmark
+    public void oneFilePerBatch(Blackhole bh) {
+        DataSetIterator iterator = new ExistingMiniBatchDataSetIterator(singleFileDir);
+        while (iterator.hasNext())
+            bh.consume(iterator.next());
+    }
+
+    @Benchmark
+    public void chunked(Blackhole bh) throws IOException {
+        try (ChunkedMiniBatchDataSetIterator iterator = new ChunkedMiniBatchDataSetIterator(chunkedFile)) {
+            while (iterator.hasNext())
+                bh.consume(iterator.next());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(ChunkedMiniBatchBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
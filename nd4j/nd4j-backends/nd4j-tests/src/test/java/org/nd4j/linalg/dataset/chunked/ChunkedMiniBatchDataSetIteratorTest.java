@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.chunked;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.TestDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class ChunkedMiniBatchDataSetIteratorTest extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public ChunkedMiniBatchDataSetIteratorTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<DataSet> original = new ArrayList<>();
+        for (int e = 0; e < 13; e++) {
+            INDArray features = Nd4j.rand(new int[] {4, 3, 5});
+            INDArray labels = Nd4j.rand(4, 7).get(NDArrayIndex.all(), NDArrayIndex.interval(0, 2));
+            INDArray featuresMask = e % 2 == 0 ? Nd4j.ones(4, 5) : null;
+            original.add(new DataSet(features, labels, featuresMask, null));
+        }
+
+        for (ChunkCompression compression : ChunkCompression.values()) {
+            File file = testDir.newFile("chunked-" + compression + ".bin");
+            try (ChunkedMiniBatchWriter writer = new ChunkedMiniBatchWriter(file, compression, false)) {
+                for (DataSet ds : original)
+                    writer.write(ds);
+
+                assertEquals(13, writer.numBatches());
+            }
+
+            try (ChunkedMiniBatchDataSetIterator iterator = new ChunkedMiniBatchDataSetIterator(file, 3, 2)) {
+                assertEquals(13, iterator.numBatches());
+
+                // second epoch checks reset, and that prefetch restarts from the beginning
+                for (int epoch = 0; epoch < 2; epoch++) {
+                    int cnt = 0;
+                    while (iterator.hasNext()) {
+                        DataSet ds = iterator.next();
+                        DataSet exp = original.get(cnt++);
+
+                        assertEquals(exp.getFeatures(), ds.getFeatures());
+                        assertEquals(exp.getLabels(), ds.getLabels());
+                        assertEquals(exp.getFeaturesMaskArray(), ds.getFeaturesMaskArray());
+                        assertNull(ds.getLabelsMaskArray());
+                    }
+                    assertEquals(13, cnt);
+                    iterator.reset();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHalfPrecisionFeatures() throws Exception {
+        DataSet ds = new DataSet(Nd4j.rand(16, 10), Nd4j.rand(16, 3));
+        File file = testDir.newFile("chunked-half.bin");
+
+        int written = ChunkedMiniBatchWriter.export(new TestDataSetIterator(ds, 4), file, ChunkCompression.LZ4, true);
+        assertEquals(4, written);
+
+        try (ChunkedMiniBatchReader reader = new ChunkedMiniBatchReader(file)) {
+            assertEquals(4, reader.numBatches());
+
+            for (int e = 0; e < 4; e++) {
+                assertEquals(4, reader.numExamples(e));
+
+                DataSet restored = reader.read(e);
+                INDArray expFeatures = ds.getFeatures().get(NDArrayIndex.interval(e * 4, e * 4 + 4), NDArrayIndex.all());
+                INDArray expLabels = ds.getLabels().get(NDArrayIndex.interval(e * 4, e * 4 + 4), NDArrayIndex.all());
+
+                assertTrue(expFeatures.equalsWithEps(restored.getFeatures(), 1e-3));
+                // labels are never stored in reduced precision
+                assertEquals(expLabels, restored.getLabels());
+            }
+        }
+    }
+
+    @Test
+    public void testHalfConversion() {
+        float[] values = {0.0f, -0.0f, 1.0f, -2.5f, 65504.0f, 6.1035156e-5f, 5.9604645e-8f, 0.333251953125f};
+        for (float v : values)
+            assertEquals(v, ChunkedMiniBatchFormat.fromHalf(ChunkedMiniBatchFormat.toHalf(v)), 0.0f);
+
+        assertTrue(Float.isInfinite(ChunkedMiniBatchFormat.fromHalf(ChunkedMiniBatchFormat.toHalf(1e6f))));
+        assertTrue(Float.isNaN(ChunkedMiniBatchFormat.fromHalf(ChunkedMiniBatchFormat.toHalf(Float.NaN))));
+        assertEquals(0.0f, ChunkedMiniBatchFormat.fromHalf(ChunkedMiniBatchFormat.toHalf(1e-10f)), 0.0f);
+        assertEquals(1.0009766f, ChunkedMiniBatchFormat.fromHalf(ChunkedMiniBatchFormat.toHalf(1.0009f)), 0.0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnclosedWriter() throws Exception {
+        File file = testDir.newFile("chunked-unclosed.bin");
+        ChunkedMiniBatchWriter writer = new ChunkedMiniBatchWriter(file);
+        writer.write(new DataSet(Nd4j.rand(2, 2), Nd4j.rand(2, 2)));
+
+        new ChunkedMiniBatchReader(file);
+    }
+}
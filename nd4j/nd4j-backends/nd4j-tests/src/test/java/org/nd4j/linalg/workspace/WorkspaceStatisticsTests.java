@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.workspace;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.*;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatisticsListener;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+@RunWith(Parameterized.class)
+public class WorkspaceStatisticsTests extends BaseNd4jTest {
+
+    public WorkspaceStatisticsTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Before
+    public void turnMeUp() {
+        Nd4j.getWorkspaceManager().setStatisticsEnabled(false);
+        Nd4j.getWorkspaceManager().resetStatistics();
+    }
+
+    @After
+    public void turnMeDown() {
+        Nd4j.getWorkspaceManager().setStatisticsEnabled(false);
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    protected WorkspaceStatistics findStatistics(String id) {
+        for (val stats : Nd4j.getWorkspaceManager().getWorkspaceStatistics())
+            if (stats.getWorkspaceId().equals(id) && stats.getThreadId() == Thread.currentThread().getId())
+                return stats;
+
+        return null;
+    }
+
+    @Test
+    public void testStatisticsDisabled_1() {
+        assertFalse(Nd4j.getWorkspaceManager().isStatisticsEnabled());
+
+        val config = WorkspaceConfiguration.builder().initialSize(0).policyLearning(LearningPolicy.FIRST_LOOP).build();
+
+        for (int e = 0; e < 3; e++) {
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(config, "WS_STATS_DISABLED")) {
+                Nd4j.create(10, 10).assign(1.0f);
+            }
+        }
+
+        assertNull(findStatistics("WS_STATS_DISABLED"));
+    }
+
+    @Test
+    public void testStatisticsLearning_1() {
+        Nd4j.getWorkspaceManager().setStatisticsEnabled(true);
+
+        val config = WorkspaceConfiguration.builder().initialSize(0).overallocationLimit(0.0)
+                        .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.FIRST_LOOP)
+                        .policySpill(SpillPolicy.EXTERNAL).build();
+
+        val requiredMemory = 10 * 10 * Nd4j.sizeOfDataType();
+
+        // first cycle gets everything spilled, since workspace isn't initialized yet
+        for (int e = 0; e < 3; e++) {
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(config, "WS_STATS_LEARNING")) {
+                Nd4j.create(10, 10).assign(1.0f);
+            }
+        }
+
+        val stats = findStatistics("WS_STATS_LEARNING");
+        assertNotNull(stats);
+        log.info("Statistics report:\n{}", Nd4j.getWorkspaceManager().getStatisticsReport());
+
+        assertEquals(3, stats.getCycles());
+        assertEquals(1, stats.getSpilledAllocations());
+        assertEquals(requiredMemory, stats.getSpilledBytes());
+        assertEquals(0, stats.getPinnedBytes());
+        assertEquals(0, stats.getReallocations());
+        assertTrue(stats.getLearnedSize() >= requiredMemory);
+        assertEquals(stats.getLearnedSize(), stats.getCurrentSize());
+        assertEquals(requiredMemory, stats.getPeakCycleAllocations());
+        assertEquals(requiredMemory, stats.getLastCycleAllocations());
+    }
+
+    @Test
+    public void testStatisticsReallocation_1() {
+        Nd4j.getWorkspaceManager().setStatisticsEnabled(true);
+
+        val allocated = new AtomicInteger(0);
+        val cycles = new AtomicInteger(0);
+        val listener = new WorkspaceStatisticsListener() {
+            @Override
+            public void cycleFinished(WorkspaceStatistics statistics) {
+                if (statistics.getWorkspaceId().equals("WS_STATS_REALLOC"))
+                    cycles.incrementAndGet();
+            }
+
+            @Override
+            public void workspaceAllocated(WorkspaceStatistics statistics, long previousSize) {
+                if (statistics.getWorkspaceId().equals("WS_STATS_REALLOC"))
+                    allocated.incrementAndGet();
+            }
+        };
+
+        Nd4j.getWorkspaceManager().addStatisticsListener(listener);
+        try {
+            val config = WorkspaceConfiguration.builder().initialSize(0).overallocationLimit(0.0)
+                            .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.FIRST_LOOP)
+                            .policySpill(SpillPolicy.REALLOCATE).build();
+
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(config, "WS_STATS_REALLOC")) {
+                Nd4j.create(10, 10).assign(1.0f);
+            }
+
+            // this cycle doesn't fit into learned size, so workspace gets reallocated
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(config, "WS_STATS_REALLOC")) {
+                Nd4j.create(100, 10).assign(1.0f);
+            }
+
+            val stats = findStatistics("WS_STATS_REALLOC");
+            assertNotNull(stats);
+
+            assertEquals(2, stats.getCycles());
+            assertEquals(2, stats.getSpilledAllocations());
+            assertEquals(1, stats.getReallocations());
+            assertTrue(stats.getLearnedSize() >= 100 * 10 * Nd4j.sizeOfDataType());
+            assertEquals(stats.getCurrentSize(), stats.getPeakSize());
+
+            assertEquals(2, cycles.get());
+            assertEquals(2, allocated.get());
+        } finally {
+            Nd4j.getWorkspaceManager().removeStatisticsListener(listener);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import org.nd4j.linalg.api.memory.enums.DebugMode;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.stats.WorkspaceStatisticsListener;
 
 import java.util.List;
 
@@ -220,4 +222,52 @@ public interface MemoryWorkspaceManager {
      * @return True if any workspaces are open for this thread, false otherwise
      */
     boolean anyWorkspaceActiveForCurrentThread();
+
+    /**
+     * This method allows to enable or disable statistics gathering for all workspaces in this JVM.
+     * Default value: false
+     *
+     * PLEASE NOTE: workspaces pick up this flag when scope is entered, so change becomes visible with the next cycle
+     * @param reallyEnable
+     */
+    void setStatisticsEnabled(boolean reallyEnable);
+
+    /**
+     * This method returns true if workspace statistics gathering is enabled
+     * @return
+     */
+    boolean isStatisticsEnabled();
+
+    /**
+     * This method adds listener, that'll be notified about workspace cycles and (re)allocations
+     *
+     * PLEASE NOTE: listeners are notified only if statistics gathering is enabled
+     * @param listener
+     */
+    void addStatisticsListener(WorkspaceStatisticsListener listener);
+
+    /**
+     * This method removes previously added statistics listener
+     * @param listener
+     */
+    void removeStatisticsListener(WorkspaceStatisticsListener listener);
+
+    /**
+     * This method returns statistics snapshots for all workspaces, across all threads, gathered since statistics were enabled
+     *
+     * @return
+     */
+    List<WorkspaceStatistics> getWorkspaceStatistics();
+
+    /**
+     * This method returns human-readable report built from workspace statistics, across all threads
+     *
+     * @return
+     */
+    String getStatisticsReport();
+
+    /**
+     * This method resets all gathered workspace statistics
+     */
+    void resetStatistics();
 }
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.memory.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * This class is immutable snapshot of statistics gathered for specific workspace.
+ *
+ * PLEASE NOTE: byte counters are cumulative since statistics were enabled (or reset), everything else reflects current workspace state
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkspaceStatistics implements Serializable {
+    private String workspaceId;
+    private long threadId;
+    private int deviceId;
+
+    /**
+     * Current size of workspace, in bytes
+     */
+    private long currentSize;
+
+    /**
+     * Largest size this workspace was ever allocated with, in bytes
+     */
+    private long peakSize;
+
+    /**
+     * Size picked during last learning phase (initialization or reallocation), in bytes
+     */
+    private long learnedSize;
+
+    /**
+     * Number of times workspace memory was released and allocated again with a different size
+     */
+    private long reallocations;
+
+    /**
+     * Number of cycles finished
+     */
+    private long cycles;
+
+    /**
+     * Number of bytes requested within last finished cycle, including spills
+     */
+    private long lastCycleAllocations;
+
+    /**
+     * Largest number of bytes requested within single cycle, including spills
+     */
+    private long peakCycleAllocations;
+
+    /**
+     * Number and total size of allocations spilled out of workspace
+     */
+    private long spilledAllocations;
+    private long spilledBytes;
+
+    /**
+     * Number and total size of pinned allocations. Applicable to circular workspaces only
+     */
+    private long pinnedAllocations;
+    private long pinnedBytes;
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.memory.stats;
+
+/**
+ * This interface describes listener for workspace statistics.
+ *
+ * PLEASE NOTE: Methods are invoked synchronously from the thread that owns workspace, so implementations should be fast and thread-safe
+ */
+public interface WorkspaceStatisticsListener {
+
+    /**
+     * This method is called once workspace cycle is finished
+     *
+     * @param statistics
+     */
+    void cycleFinished(WorkspaceStatistics statistics);
+
+    /**
+     * This method is called once workspace memory was (re)allocated as result of learning
+     *
+     * @param statistics
+     * @param previousSize workspace size before reallocation, 0 for initial allocation
+     */
+    void workspaceAllocated(WorkspaceStatistics statistics, long previousSize);
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * Header of a single chunk of pipelined message. Layout, little-endian:
+ * [int magic][int chunk index][long publisher id][long message id][int number of chunks][int chunk size]
+ * [int message length][int payload length]
+ *
+ * Chunk payload always starts at chunkIndex * chunkSize within the message, so chunks can be written into
+ * reassembly buffer in any order.
+ */
+public class PipelinedChunkHeader {
+    public static final int MAGIC = 0x50434E4B;
+    public static final int LENGTH = 40;
+
+    protected static final int MAGIC_OFFSET = 0;
+    protected static final int CHUNK_INDEX_OFFSET = 4;
+    protected static final int PUBLISHER_ID_OFFSET = 8;
+    protected static final int MESSAGE_ID_OFFSET = 16;
+    protected static final int NUM_CHUNKS_OFFSET = 24;
+    protected static final int CHUNK_SIZE_OFFSET = 28;
+    protected static final int MESSAGE_LENGTH_OFFSET = 32;
+    protected static final int PAYLOAD_LENGTH_OFFSET = 36;
+
+    private PipelinedChunkHeader() {
+        //
+    }
+
+    public static void write(MutableDirectBuffer buffer, int offset, long publisherId, long messageId, int chunkIndex,
+                    int numChunks, int chunkSize, int messageLength, int payloadLength) {
+        buffer.putInt(offset + MAGIC_OFFSET, MAGIC, ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset + CHUNK_INDEX_OFFSET, chunkIndex, ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(offset + PUBLISHER_ID_OFFSET, publisherId, ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(offset + MESSAGE_ID_OFFSET, messageId, ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset + NUM_CHUNKS_OFFSET, numChunks, ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset + CHUNK_SIZE_OFFSET, chunkSize, ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset + MESSAGE_LENGTH_OFFSET, messageLength, ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset + PAYLOAD_LENGTH_OFFSET, payloadLength, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static boolean isValid(DirectBuffer buffer, int offset, int length) {
+        return length >= LENGTH && buffer.getInt(offset + MAGIC_OFFSET, ByteOrder.LITTLE_ENDIAN) == MAGIC;
+    }
+
+    public static int chunkIndex(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + CHUNK_INDEX_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static long publisherId(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + PUBLISHER_ID_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static long messageId(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + MESSAGE_ID_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static int numChunks(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + NUM_CHUNKS_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static int chunkSize(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + CHUNK_SIZE_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static int messageLength(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + MESSAGE_LENGTH_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static int payloadLength(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + PAYLOAD_LENGTH_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+}
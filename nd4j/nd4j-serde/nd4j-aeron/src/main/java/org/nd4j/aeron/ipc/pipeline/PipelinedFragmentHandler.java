@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.Header;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.nd4j.aeron.ipc.NDArrayCallback;
+import org.nd4j.aeron.ipc.NDArrayMessage;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fragment handler for pipelined messages. Chunks are copied straight into their place within pooled off-heap
+ * buffer, and message is decoded once last chunk arrives, regardless of lane it came from.
+ * Messages that stop receiving chunks are dropped by {@link #expireStale(long)}, and their buffers go back to the pool.
+ *
+ * PLEASE NOTE: This class is thread-safe, single instance is shared by all lanes
+ */
+@Slf4j
+public class PipelinedFragmentHandler implements FragmentHandler {
+    private final NDArrayCallback callback;
+    private final ReassemblyBufferPool pool;
+    private final Map<UUID, Reassembly> pending = new ConcurrentHashMap<>();
+
+    public PipelinedFragmentHandler(NDArrayCallback callback, ReassemblyBufferPool pool) {
+        this.callback = callback;
+        this.pool = pool;
+    }
+
+    /**
+     * This method returns number of messages partially received so far
+     *
+     * @return
+     */
+    public int numPending() {
+        return pending.size();
+    }
+
+    @Override
+    public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        if (!PipelinedChunkHeader.isValid(buffer, offset, length)) {
+            log.warn("Skipping fragment without pipelined chunk header, length {}", length);
+            return;
+        }
+
+        int messageLength = PipelinedChunkHeader.messageLength(buffer, offset);
+        int numChunks = PipelinedChunkHeader.numChunks(buffer, offset);
+        int chunkIndex = PipelinedChunkHeader.chunkIndex(buffer, offset);
+        int chunkSize = PipelinedChunkHeader.chunkSize(buffer, offset);
+        int payloadLength = PipelinedChunkHeader.payloadLength(buffer, offset);
+
+        UUID key = new UUID(PipelinedChunkHeader.publisherId(buffer, offset),
+                        PipelinedChunkHeader.messageId(buffer, offset));
+
+        if (chunkIndex < 0 || chunkIndex >= numChunks || (long) chunkIndex * chunkSize + payloadLength > messageLength
+                        || payloadLength != length - PipelinedChunkHeader.LENGTH) {
+            // message can't be completed without this chunk, so there's no point in holding its buffer
+            Reassembly reassembly = pending.get(key);
+            if (reassembly != null)
+                discard(key, reassembly);
+
+            throw new IllegalStateException("Corrupt chunk " + chunkIndex + " of " + numChunks);
+        }
+
+        Reassembly reassembly = pending.computeIfAbsent(key, k -> new Reassembly(pool.acquire(messageLength), numChunks));
+
+        // message was expired already, and its buffer might be used by another message by now
+        if (!reassembly.acquire())
+            return;
+
+        boolean complete = false;
+        try {
+            buffer.getBytes(offset + PipelinedChunkHeader.LENGTH, reassembly.buffer, chunkIndex * chunkSize,
+                            payloadLength);
+            reassembly.lastUpdate = System.currentTimeMillis();
+
+            // chunks write disjoint regions, and whoever writes the last one sees all of them
+            complete = reassembly.remaining.decrementAndGet() == 0;
+        } finally {
+            // last writer keeps its reference, so complete message can't be expired while it's decoded
+            if (!complete)
+                reassembly.release();
+        }
+
+        if (complete) {
+            pending.remove(key, reassembly);
+
+            NDArrayMessage message;
+            try {
+                // message decoding copies data out, so buffer can be reused right away
+                message = NDArrayMessage.fromBuffer(reassembly.buffer, 0);
+            } finally {
+                pool.release(reassembly.buffer);
+            }
+
+            callback.onNDArrayMessage(message);
+        }
+    }
+
+    /**
+     * This method drops partially received messages that got no chunks within given period of time,
+     * and returns their buffers to the pool
+     *
+     * @param timeout in milliseconds
+     * @return number of messages dropped
+     */
+    public int expireStale(long timeout) {
+        long now = System.currentTimeMillis();
+        int cnt = 0;
+        for (Map.Entry<UUID, Reassembly> entry : pending.entrySet()) {
+            if (now - entry.getValue().lastUpdate > timeout && discard(entry.getKey(), entry.getValue()))
+                cnt++;
+        }
+
+        if (cnt > 0)
+            log.warn("Dropped {} incomplete messages after {} ms without new chunks", cnt, timeout);
+
+        return cnt;
+    }
+
+    /**
+     * This method removes pending message and releases its buffer, unless some lane is copying chunk into it right now
+     */
+    protected boolean discard(UUID key, Reassembly reassembly) {
+        if (!reassembly.expire())
+            return false;
+
+        pending.remove(key, reassembly);
+        pool.release(reassembly.buffer);
+        return true;
+    }
+
+    protected static class Reassembly {
+        private final UnsafeBuffer buffer;
+        private final AtomicInteger remaining;
+        // number of lanes copying chunks right now, or -1 once message is expired
+        private final AtomicInteger writers = new AtomicInteger(0);
+        private volatile long lastUpdate = System.currentTimeMillis();
+
+        protected Reassembly(UnsafeBuffer buffer, int numChunks) {
+            this.buffer = buffer;
+            this.remaining = new AtomicInteger(numChunks);
+        }
+
+        protected boolean acquire() {
+            while (true) {
+                int current = writers.get();
+                if (current < 0)
+                    return false;
+
+                if (writers.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        protected void release() {
+            writers.decrementAndGet();
+        }
+
+        protected boolean expire() {
+            return writers.compareAndSet(0, -1);
+        }
+    }
+}
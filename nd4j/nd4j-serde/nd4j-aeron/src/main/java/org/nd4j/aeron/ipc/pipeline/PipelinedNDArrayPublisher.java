@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import io.aeron.Aeron;
+import io.aeron.Publication;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.nd4j.aeron.ipc.NDArrayMessage;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipelined NDArray publisher for aeron.
+ *
+ * Messages are split into fixed-size chunks, and chunks are striped across several lanes. Each lane is a separate
+ * aeron stream (streamId + lane index) with its own publication and sender thread, so large messages don't stall
+ * behind single monolithic send. Publication rate is driven by back-pressure: whenever receiver falls behind,
+ * sender backs off instead of sleeping for fixed period.
+ *
+ * Messages sent with this class must be received with {@link PipelinedNDArraySubscriber}, using the same
+ * channel, stream id and number of lanes.
+ */
+@Slf4j
+@Builder
+public class PipelinedNDArrayPublisher implements AutoCloseable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_LANES = 4;
+    public static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    // The channel (an endpoint identifier) to send the message to
+    private String channel;
+    // First stream id used, lanes use consecutive stream ids
+    private int streamId;
+    @Builder.Default
+    private int lanes = DEFAULT_LANES;
+    // chunk payload size, in bytes
+    @Builder.Default
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    // how long we wait for subscriber to show up, in milliseconds
+    @Builder.Default
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    // if true, arrays are compressed with GZIP before sending. Caller's arrays are left intact, compressed copy is sent
+    private boolean compress;
+    private Aeron.Context ctx;
+    private Aeron aeron;
+
+    private final long publisherId = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong messageCounter = new AtomicLong(0);
+
+    @Getter
+    private final AtomicLong backPressureEvents = new AtomicLong(0);
+    @Getter
+    private final AtomicLong bytesSent = new AtomicLong(0);
+
+    private final Object initLock = new Object();
+    private volatile boolean initialized;
+    private boolean ownAeron;
+    private Publication[] publications;
+    private UnsafeBuffer[] frames;
+    private ExecutorService executor;
+
+    protected void init() {
+        synchronized (initLock) {
+            if (initialized)
+                return;
+
+            channel = channel == null ? "aeron:udp?endpoint=localhost:40123" : channel;
+            streamId = streamId == 0 ? 10 : streamId;
+
+            if (lanes < 1)
+                throw new IllegalStateException("Number of lanes should be positive value");
+
+            if (chunkSize < 1)
+                throw new IllegalStateException("Chunk size should be positive value");
+
+            if (aeron == null) {
+                aeron = Aeron.connect(ctx == null ? new Aeron.Context() : ctx);
+                ownAeron = true;
+            }
+
+            publications = new Publication[lanes];
+            frames = new UnsafeBuffer[lanes];
+            for (int e = 0; e < lanes; e++) {
+                publications[e] = aeron.addPublication(channel, streamId + e);
+
+                // whole chunk should fit into single message
+                chunkSize = Math.min(chunkSize, publications[e].maxMessageLength() - PipelinedChunkHeader.LENGTH);
+            }
+
+            for (int e = 0; e < lanes; e++)
+                frames[e] = new UnsafeBuffer(ByteBuffer.allocateDirect(PipelinedChunkHeader.LENGTH + chunkSize));
+
+            if (lanes > 1) {
+                final AtomicInteger cnt = new AtomicInteger(0);
+                executor = Executors.newFixedThreadPool(lanes, r -> {
+                    Thread t = new Thread(r, "PipelinedPublisher-" + cnt.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+
+            log.info("Pipelined publisher on channel {}, streams {}..{}, chunk size {}", channel, streamId,
+                            streamId + lanes - 1, chunkSize);
+            initialized = true;
+        }
+    }
+
+    /**
+     * This method returns effective chunk size, which might be smaller than requested one due to aeron limits
+     *
+     * @return
+     */
+    public int getChunkSize() {
+        if (!initialized)
+            init();
+
+        return chunkSize;
+    }
+
+    /**
+     * Publish an ndarray to an aeron channel
+     *
+     * @param arr
+     * @throws Exception
+     */
+    public void publish(INDArray arr) throws Exception {
+        publish(NDArrayMessage.wholeArrayUpdate(arr));
+    }
+
+    /**
+     * Publish an ndarray message. This method blocks until all chunks are handed over to aeron.
+     *
+     * PLEASE NOTE: This method isn't thread-safe, messages should be published from one thread.
+     *
+     * @param message
+     * @throws Exception
+     */
+    public void publish(NDArrayMessage message) throws Exception {
+        if (!initialized)
+            init();
+
+        if (compress && !message.getArr().isCompressed())
+            message = NDArrayMessage.builder().arr(Nd4j.getCompressor().compress(message.getArr(), "GZIP"))
+                            .sent(message.getSent()).index(message.getIndex()).dimensions(message.getDimensions())
+                            .chunk(message.getChunk()).numChunks(message.getNumChunks()).build();
+
+        final DirectBuffer buffer = NDArrayMessage.toBuffer(message);
+        final long messageId = messageCounter.incrementAndGet();
+        final int messageLength = buffer.capacity();
+        final int numChunks = (messageLength + chunkSize - 1) / chunkSize;
+
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        if (executor == null || numChunks == 1) {
+            sendLane(0, 1, buffer, messageId, numChunks, messageLength, aborted);
+            return;
+        }
+
+        final int activeLanes = Math.min(lanes, numChunks);
+        final CountDownLatch finished = new CountDownLatch(activeLanes);
+        final CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        for (int e = 0; e < activeLanes; e++) {
+            final int lane = e;
+            completion.submit(() -> {
+                try {
+                    sendLane(lane, activeLanes, buffer, messageId, numChunks, messageLength, aborted);
+                    return null;
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        try {
+            // lanes are checked in completion order, so failure of any lane is seen right away
+            for (int e = 0; e < activeLanes; e++)
+                completion.take().get();
+        } catch (ExecutionException | InterruptedException e) {
+            // lanes reuse their frames, so remaining senders must stop before next message can be published
+            aborted.set(true);
+            finished.await();
+
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+
+            throw e;
+        }
+    }
+
+    /**
+     * This method sends every activeLanes-th chunk, starting from lane index, via lane's own publication
+     */
+    protected void sendLane(int lane, int activeLanes, DirectBuffer buffer, long messageId, int numChunks,
+                    int messageLength, AtomicBoolean aborted) throws InterruptedException {
+        Publication publication = publications[lane];
+        UnsafeBuffer frame = frames[lane];
+        IdleStrategy idle = new BackoffIdleStrategy(100, 10, TimeUnit.MICROSECONDS.toNanos(1),
+                        TimeUnit.MICROSECONDS.toNanos(100));
+
+        for (int chunk = lane; chunk < numChunks; chunk += activeLanes) {
+            int offset = chunk * chunkSize;
+            int payloadLength = Math.min(chunkSize, messageLength - offset);
+
+            PipelinedChunkHeader.write(frame, 0, publisherId, messageId, chunk, numChunks, chunkSize, messageLength,
+                            payloadLength);
+            frame.putBytes(PipelinedChunkHeader.LENGTH, buffer, offset, payloadLength);
+
+            offer(publication, frame, PipelinedChunkHeader.LENGTH + payloadLength, idle, aborted);
+        }
+    }
+
+    protected void offer(Publication publication, DirectBuffer frame, int length, IdleStrategy idle,
+                    AtomicBoolean aborted) throws InterruptedException {
+        long notConnectedSince = 0;
+        idle.reset();
+        while (true) {
+            long result = publication.offer(frame, 0, length);
+            if (result >= 0) {
+                bytesSent.addAndGet(length);
+                return;
+            }
+
+            // another lane failed, so this message won't be delivered anyway
+            if (aborted.get() || Thread.currentThread().isInterrupted())
+                throw new InterruptedException();
+
+            if (result == Publication.BACK_PRESSURED || result == Publication.ADMIN_ACTION) {
+                // receiver is behind, so we just back off and retry
+                backPressureEvents.incrementAndGet();
+                notConnectedSince = 0;
+            } else if (result == Publication.NOT_CONNECTED) {
+                if (notConnectedSince == 0)
+                    notConnectedSince = System.currentTimeMillis();
+                else if (System.currentTimeMillis() - notConnectedSince > connectTimeout)
+                    throw new IllegalStateException("Publication isn't connected to subscriber on channel " + channel
+                                    + " and stream " + publication.streamId());
+            } else if (result == Publication.CLOSED) {
+                throw new IllegalStateException("Publication is closed on channel " + channel + " and stream "
+                                + publication.streamId());
+            }
+
+            idle.idle();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (executor != null)
+            executor.shutdownNow();
+
+        if (publications != null)
+            for (Publication publication : publications)
+                CloseHelper.quietClose(publication);
+
+        if (ownAeron)
+            CloseHelper.quietClose(aeron);
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import io.aeron.Aeron;
+import io.aeron.FragmentAssembler;
+import io.aeron.Subscription;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.nd4j.aeron.ipc.NDArrayCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscriber for messages sent by {@link PipelinedNDArrayPublisher}.
+ *
+ * Every lane is polled by its own thread, chunks are reassembled into pooled off-heap buffers,
+ * and complete messages are passed to {@link NDArrayCallback}. Callback is invoked from lane thread
+ * that received the last chunk of the message.
+ *
+ * Message that fails to be processed is dropped, and lane keeps receiving: otherwise publisher
+ * would stall on back-pressure of that lane forever. Such failures are counted in {@link #getFailures()}.
+ */
+@Slf4j
+@Builder
+public class PipelinedNDArraySubscriber implements AutoCloseable {
+    public static final long DEFAULT_REASSEMBLY_TIMEOUT = 30000;
+
+    // The channel (an endpoint identifier) to receive messages from
+    private String channel;
+    // First stream id used, lanes use consecutive stream ids
+    private int streamId;
+    @Builder.Default
+    private int lanes = PipelinedNDArrayPublisher.DEFAULT_LANES;
+    // Maximum number of message fragments to receive during a single 'poll' operation
+    @Builder.Default
+    private int fragmentLimitCount = 1000;
+    // partially received messages are dropped if no chunks arrive for this long, in milliseconds
+    @Builder.Default
+    private long reassemblyTimeout = DEFAULT_REASSEMBLY_TIMEOUT;
+    private Aeron.Context ctx;
+    private Aeron aeron;
+    private NDArrayCallback ndArrayCallback;
+    private ReassemblyBufferPool bufferPool;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    @Getter
+    private final AtomicLong failures = new AtomicLong(0);
+    private boolean ownAeron;
+
+    /**
+     * This method starts lane threads, and returns once all subscriptions are registered
+     *
+     * @throws Exception
+     */
+    public synchronized void launch() throws Exception {
+        if (running.get())
+            return;
+
+        channel = channel == null ? "aeron:udp?endpoint=localhost:40123" : channel;
+        streamId = streamId == 0 ? 10 : streamId;
+        bufferPool = bufferPool == null ? new ReassemblyBufferPool() : bufferPool;
+
+        if (ndArrayCallback == null)
+            throw new IllegalStateException("NDArray callback must be specified in the builder.");
+
+        if (lanes < 1)
+            throw new IllegalStateException("Number of lanes should be positive value");
+
+        if (aeron == null) {
+            aeron = Aeron.connect(ctx == null ? new Aeron.Context() : ctx);
+            ownAeron = true;
+        }
+
+        running.set(true);
+        final PipelinedFragmentHandler handler = new PipelinedFragmentHandler(ndArrayCallback, bufferPool);
+        final CountDownLatch started = new CountDownLatch(lanes);
+        for (int e = 0; e < lanes; e++) {
+            final Subscription subscription = aeron.addSubscription(channel, streamId + e);
+            subscriptions.add(subscription);
+
+            Thread thread = new Thread(() -> {
+                // chunks bigger than MTU arrive as several fragments
+                FragmentAssembler assembler = new FragmentAssembler(handler);
+                IdleStrategy idle = new BackoffIdleStrategy(100, 10, TimeUnit.MICROSECONDS.toNanos(1),
+                                TimeUnit.MICROSECONDS.toNanos(100));
+                long nextExpiry = System.currentTimeMillis() + reassemblyTimeout;
+                started.countDown();
+                while (running.get()) {
+                    try {
+                        idle.idle(subscription.poll(assembler, fragmentLimitCount));
+
+                        if (System.currentTimeMillis() >= nextExpiry) {
+                            handler.expireStale(reassemblyTimeout);
+                            nextExpiry = System.currentTimeMillis() + reassemblyTimeout;
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                        log.error("Failed to process message on stream {}", subscription.streamId(), ex);
+                    }
+                }
+            }, "PipelinedSubscriber-" + (streamId + e));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        log.info("Pipelined subscriber on channel {}, streams {}..{}", channel, streamId, streamId + lanes - 1);
+    }
+
+    /**
+     * Returns true if the subscriber is launched
+     *
+     * @return
+     */
+    public boolean launched() {
+        return running.get();
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        running.set(false);
+        for (Thread thread : threads)
+            thread.join();
+
+        threads.clear();
+        for (Subscription subscription : subscriptions)
+            CloseHelper.quietClose(subscription);
+
+        subscriptions.clear();
+
+        if (ownAeron)
+            CloseHelper.quietClose(aeron);
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import org.agrona.BitUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of off-heap buffers used for reassembly of pipelined messages.
+ * Buffers are bucketed by power-of-two capacity, so messages of similar size share buffers.
+ *
+ * PLEASE NOTE: This class is thread-safe
+ */
+public class ReassemblyBufferPool {
+    public static final int DEFAULT_MAX_PER_BUCKET = 4;
+
+    private final int maxPerBucket;
+    private final Map<Integer, Queue<UnsafeBuffer>> buckets = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> bucketSizes = new ConcurrentHashMap<>();
+    private final AtomicInteger allocations = new AtomicInteger(0);
+
+    public ReassemblyBufferPool() {
+        this(DEFAULT_MAX_PER_BUCKET);
+    }
+
+    /**
+     *
+     * @param maxPerBucket maximal number of idle buffers kept for each capacity
+     */
+    public ReassemblyBufferPool(int maxPerBucket) {
+        this.maxPerBucket = maxPerBucket;
+    }
+
+    /**
+     * This method allocates buffers ahead of time, so first messages of given size don't pay for allocation
+     *
+     * @param length expected message length, in bytes
+     * @param count number of buffers
+     */
+    public void preallocate(int length, int count) {
+        int capacity = capacityFor(length);
+        for (int e = 0; e < count; e++)
+            release(allocate(capacity));
+    }
+
+    /**
+     * This method returns buffer with capacity of at least given length
+     *
+     * @param length
+     * @return
+     */
+    public UnsafeBuffer acquire(int length) {
+        int capacity = capacityFor(length);
+        Queue<UnsafeBuffer> queue = buckets.get(capacity);
+        UnsafeBuffer buffer = queue == null ? null : queue.poll();
+        if (buffer == null)
+            return allocate(capacity);
+
+        bucketSizes.get(capacity).decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * This method returns buffer back to the pool. Buffer must not be used after this call.
+     *
+     * @param buffer
+     */
+    public void release(UnsafeBuffer buffer) {
+        int capacity = buffer.capacity();
+        Queue<UnsafeBuffer> queue = buckets.computeIfAbsent(capacity, k -> new ConcurrentLinkedQueue<>());
+        AtomicInteger size = bucketSizes.computeIfAbsent(capacity, k -> new AtomicInteger(0));
+
+        // excess buffers are just left to GC
+        if (size.incrementAndGet() > maxPerBucket) {
+            size.decrementAndGet();
+            return;
+        }
+
+        queue.add(buffer);
+    }
+
+    /**
+     * This method returns number of buffers allocated by this pool so far
+     *
+     * @return
+     */
+    public int getAllocations() {
+        return allocations.get();
+    }
+
+    protected UnsafeBuffer allocate(int capacity) {
+        allocations.incrementAndGet();
+        return new UnsafeBuffer(ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder()));
+    }
+
+    protected static int capacityFor(int length) {
+        if (length <= 0)
+            throw new IllegalArgumentException("Buffer length should be positive value");
+
+        return BitUtil.findNextPositivePowerOfTwo(length);
+    }
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import io.aeron.Aeron;
+import io.aeron.driver.MediaDriver;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.aeron.ipc.AeronUtil;
+import org.nd4j.aeron.ipc.NDArrayCallback;
+import org.nd4j.aeron.ipc.NDArrayMessage;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class PipelinedNDArrayTransportTest {
+    private static final int MESSAGE_LENGTH = 100;
+    private static final int CHUNK_SIZE = 64;
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private String channel = "aeron:udp?endpoint=localhost:" + (40123 + new java.util.Random().nextInt(130));
+
+    @Before
+    public void before() {
+        mediaDriver = MediaDriver.launchEmbedded(AeronUtil.getMediaDriverContext(0));
+        aeron = Aeron.connect(new Aeron.Context().publicationConnectionTimeout(-1)
+                        .aeronDirectoryName(mediaDriver.aeronDirectoryName()).keepAliveInterval(10000)
+                        .errorHandler(err -> err.printStackTrace()));
+    }
+
+    @After
+    public void after() {
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test
+    public void testSingleLane() throws Exception {
+        runTransport(1, 20, 4096);
+    }
+
+    @Test
+    public void testMultipleLanes() throws Exception {
+        runTransport(3, 30, 8192);
+    }
+
+    @Test
+    public void testCompressedCopy() throws Exception {
+        INDArray array = Nd4j.rand(100, 50);
+        INDArray original = array.dup();
+
+        final List<INDArray> received = Collections.synchronizedList(new ArrayList<>());
+        PipelinedNDArraySubscriber subscriber = PipelinedNDArraySubscriber.builder().aeron(aeron).channel(channel)
+                        .streamId(40).lanes(2).ndArrayCallback(new CollectingCallback(received)).build();
+        subscriber.launch();
+
+        PipelinedNDArrayPublisher publisher = PipelinedNDArrayPublisher.builder().aeron(aeron).channel(channel)
+                        .streamId(40).lanes(2).chunkSize(4096).compress(true).build();
+        publisher.publish(array);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received.isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        // caller's array must stay intact, only the message is compressed
+        assertFalse(array.isCompressed());
+        assertEquals(original, array);
+
+        assertEquals(1, received.size());
+        assertEquals(original, Nd4j.getCompressor().decompress(received.get(0)));
+
+        publisher.close();
+        subscriber.close();
+    }
+
+    @Test
+    public void testStaleReassemblyReleased() {
+        ReassemblyBufferPool pool = new ReassemblyBufferPool();
+        PipelinedFragmentHandler handler =
+                        new PipelinedFragmentHandler(new CollectingCallback(new ArrayList<>()), pool);
+
+        // first of two chunks arrives, second one never does
+        UnsafeBuffer frame = chunkFrame(1, 0, 2);
+        handler.onFragment(frame, 0, frame.capacity(), null);
+        assertEquals(1, handler.numPending());
+        assertEquals(0, handler.expireStale(60000));
+
+        assertEquals(1, handler.expireStale(-1));
+        assertEquals(0, handler.numPending());
+
+        // buffer went back to the pool
+        pool.acquire(MESSAGE_LENGTH);
+        assertEquals(1, pool.getAllocations());
+    }
+
+    @Test
+    public void testCorruptChunkReleasesMessage() {
+        ReassemblyBufferPool pool = new ReassemblyBufferPool();
+        PipelinedFragmentHandler handler =
+                        new PipelinedFragmentHandler(new CollectingCallback(new ArrayList<>()), pool);
+
+        UnsafeBuffer frame = chunkFrame(1, 0, 2);
+        handler.onFragment(frame, 0, frame.capacity(), null);
+        assertEquals(1, handler.numPending());
+
+        UnsafeBuffer corrupt = chunkFrame(1, 5, 2);
+        try {
+            handler.onFragment(corrupt, 0, corrupt.capacity(), null);
+            fail("Corrupt chunk should be rejected");
+        } catch (IllegalStateException e) {
+            //
+        }
+
+        assertEquals(0, handler.numPending());
+        pool.acquire(MESSAGE_LENGTH);
+        assertEquals(1, pool.getAllocations());
+    }
+
+    protected static UnsafeBuffer chunkFrame(long messageId, int chunkIndex, int numChunks) {
+        UnsafeBuffer frame = new UnsafeBuffer(new byte[PipelinedChunkHeader.LENGTH + CHUNK_SIZE]);
+        PipelinedChunkHeader.write(frame, 0, 42, messageId, chunkIndex, numChunks, CHUNK_SIZE, MESSAGE_LENGTH,
+                        CHUNK_SIZE);
+        return frame;
+    }
+
+    protected static class CollectingCallback implements NDArrayCallback {
+        private final List<INDArray> received;
+
+        protected CollectingCallback(List<INDArray> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onNDArrayMessage(NDArrayMessage message) {
+            received.add(message.getArr());
+        }
+
+        @Override
+        public void onNDArrayPartial(INDArray arr, long idx, int... dimensions) {
+            //
+        }
+
+        @Override
+        public void onNDArray(INDArray arr) {
+            //
+        }
+    }
+
+    protected void runTransport(int lanes, int streamId, int chunkSize) throws Exception {
+        List<INDArray> arrays = new ArrayList<>();
+        // small message fits into one chunk, bigger ones are spread across all lanes
+        arrays.add(Nd4j.linspace(1, 10, 10));
+        arrays.add(Nd4j.rand(300, 200));
+        arrays.add(Nd4j.rand(1000, 100));
+
+        final List<INDArray> received = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch latch = new CountDownLatch(arrays.size());
+        ReassemblyBufferPool pool = new ReassemblyBufferPool();
+
+        PipelinedNDArraySubscriber subscriber = PipelinedNDArraySubscriber.builder().aeron(aeron).channel(channel)
+                        .streamId(streamId).lanes(lanes).bufferPool(pool).ndArrayCallback(new NDArrayCallback() {
+                            @Override
+                            public void onNDArrayMessage(NDArrayMessage message) {
+                                received.add(message.getArr());
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void onNDArrayPartial(INDArray arr, long idx, int... dimensions) {
+                                //
+                            }
+
+                            @Override
+                            public void onNDArray(INDArray arr) {
+                                //
+                            }
+                        }).build();
+        subscriber.launch();
+
+        PipelinedNDArrayPublisher publisher = PipelinedNDArrayPublisher.builder().aeron(aeron).channel(channel)
+                        .streamId(streamId).lanes(lanes).chunkSize(chunkSize).build();
+
+        for (int e = 0; e < arrays.size(); e++) {
+            publisher.publish(arrays.get(e));
+
+            // waiting for delivery, so messages arrive in the same order
+            long deadline = System.currentTimeMillis() + 30000;
+            while (received.size() <= e && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        for (int e = 0; e < arrays.size(); e++)
+            assertEquals(arrays.get(e), received.get(e));
+
+        // buffers are reused once messages are decoded
+        assertTrue(pool.getAllocations() <= arrays.size());
+        assertTrue(publisher.getBytesSent().get() > 0);
+
+        publisher.close();
+        subscriber.close();
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.aeron.ipc.pipeline;
+
+import io.aeron.Aeron;
+import io.aeron.driver.MediaDriver;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.nd4j.aeron.ipc.*;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local multi-process throughput/latency harness for aeron transports.
+ *
+ * This process acts as sender, and spawns receiver JVM. Each process runs its own embedded media driver, so traffic
+ * actually goes through UDP loopback. Receiver acknowledges every message with tiny array sent back to the sender.
+ * Monolithic {@link AeronNDArrayPublisher} is compared against {@link PipelinedNDArrayPublisher} with 1 and N lanes.
+ *
+ * Usage: PipelinedTransportBenchmark [array length] [number of messages] [lanes]
+ */
+@Slf4j
+public class PipelinedTransportBenchmark {
+    protected static final int DATA_PORT = 40523;
+    protected static final int ACK_PORT = 40524;
+    protected static final int LEGACY_STREAM = 100;
+    protected static final int PIPELINED_STREAM = 200;
+    protected static final int ACK_STREAM = 300;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("receiver")) {
+            runReceiver(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 25_000_000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int lanes = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        MediaDriver driver = launchDriver("sender");
+        Aeron aeron = connect(driver);
+
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process receiver = new ProcessBuilder(javaBin, "-cp", System.getProperty("java.class.path"),
+                        PipelinedTransportBenchmark.class.getName(), "receiver", String.valueOf(lanes)).inheritIO()
+                                        .start();
+
+        final AtomicInteger acks = new AtomicInteger(0);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        AeronNDArraySubscriber ackSubscriber = AeronNDArraySubscriber.startSubscriber(aeron, "localhost", ACK_PORT,
+                        new SimpleCallback() {
+                            @Override
+                            public void onNDArrayMessage(NDArrayMessage message) {
+                                acks.incrementAndGet();
+                            }
+                        }, ACK_STREAM, running);
+
+        try {
+            INDArray array = Nd4j.rand(1, length);
+            log.info("Array size: {} MB", length * array.data().getElementSize() / (1024 * 1024));
+
+            AeronNDArrayPublisher legacy = AeronNDArrayPublisher.builder().aeron(aeron)
+                            .channel(AeronUtil.aeronChannel("localhost", DATA_PORT)).streamId(LEGACY_STREAM)
+                            .compress(false).publishRetryTimeOut(3000).build();
+            measure("monolithic", array, messages, acks, arr -> legacy.publish(arr));
+            legacy.close();
+
+            for (int l : new int[] {1, lanes}) {
+                PipelinedNDArrayPublisher pipelined = PipelinedNDArrayPublisher.builder().aeron(aeron)
+                                .channel(AeronUtil.aeronChannel("localhost", DATA_PORT)).streamId(PIPELINED_STREAM)
+                                .lanes(l).build();
+                measure("pipelined x" + l, array, messages, acks, arr -> pipelined.publish(arr));
+                log.info("pipelined x{}: {} back-pressure events", l, pipelined.getBackPressureEvents().get());
+                pipelined.close();
+            }
+        } finally {
+            running.set(false);
+            receiver.destroy();
+            receiver.waitFor(10, TimeUnit.SECONDS);
+            CloseHelper.quietClose(ackSubscriber);
+            CloseHelper.quietClose(aeron);
+            CloseHelper.quietClose(driver);
+        }
+    }
+
+    protected static void measure(String name, INDArray array, int messages, AtomicInteger acks, Sender sender)
+                    throws Exception {
+        // latency: one message in flight
+        long[] latencies = new long[messages];
+        for (int e = 0; e < messages; e++) {
+            int expected = acks.get() + 1;
+            long time = System.nanoTime();
+            sender.send(array);
+            awaitAcks(acks, expected);
+            latencies[e] = System.nanoTime() - time;
+        }
+        Arrays.sort(latencies);
+
+        // throughput: all messages back to back
+        int expected = acks.get() + messages;
+        long time = System.nanoTime();
+        for (int e = 0; e < messages; e++)
+            sender.send(array);
+        awaitAcks(acks, expected);
+        long total = System.nanoTime() - time;
+
+        double megabytes = (double) messages * array.length() * array.data().getElementSize() / (1024 * 1024);
+        log.info("{}: p50 latency {} ms, p99 latency {} ms, throughput {} MB/s", name,
+                        latencies[messages / 2] / 1000000, latencies[Math.max(0, (int) Math.ceil(messages * 0.99) - 1)] / 1000000,
+                        String.format("%.1f", megabytes / (total / 1e9)));
+    }
+
+    protected static void awaitAcks(AtomicInteger acks, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 120000;
+        while (acks.get() < expected) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("Receiver didn't acknowledge message in time");
+            Thread.sleep(1);
+        }
+    }
+
+    protected static void runReceiver(int lanes) throws Exception {
+        MediaDriver driver = launchDriver("receiver");
+        Aeron aeron = connect(driver);
+
+        AeronNDArrayPublisher ack = AeronNDArrayPublisher.builder().aeron(aeron)
+                        .channel(AeronUtil.aeronChannel("localhost", ACK_PORT)).streamId(ACK_STREAM).compress(false)
+                        .build();
+        final INDArray ackArray = Nd4j.scalar(1.0);
+
+        NDArrayCallback callback = new SimpleCallback() {
+            @Override
+            public void onNDArrayMessage(NDArrayMessage message) {
+                try {
+                    synchronized (ack) {
+                        ack.publish(ackArray);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AeronNDArraySubscriber legacy = AeronNDArraySubscriber.startSubscriber(aeron, "localhost", DATA_PORT, callback,
+                        LEGACY_STREAM, running);
+
+        PipelinedNDArraySubscriber pipelined = PipelinedNDArraySubscriber.builder().aeron(aeron)
+                        .channel(AeronUtil.aeronChannel("localhost", DATA_PORT)).streamId(PIPELINED_STREAM)
+                        .lanes(lanes).ndArrayCallback(callback).build();
+        pipelined.launch();
+
+        // sender destroys this process once benchmark is over
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running.set(false);
+            CloseHelper.quietClose(pipelined);
+            CloseHelper.quietClose(legacy);
+            CloseHelper.quietClose(ack);
+            CloseHelper.quietClose(aeron);
+            CloseHelper.quietClose(driver);
+        }));
+
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    protected static MediaDriver launchDriver(String role) {
+        // every process needs its own driver directory
+        MediaDriver.Context ctx = AeronUtil.getMediaDriverContext(0);
+        ctx.aeronDirectoryName(System.getProperty("java.io.tmpdir") + File.separator + "aeron-benchmark-" + role + "-"
+                        + UUID.randomUUID());
+        return MediaDriver.launchEmbedded(ctx);
+    }
+
+    protected static Aeron connect(MediaDriver driver) {
+        return Aeron.connect(new Aeron.Context().publicationConnectionTimeout(-1)
+                        .aeronDirectoryName(driver.aeronDirectoryName()).keepAliveInterval(10000)
+                        .errorHandler(err -> err.printStackTrace()));
+    }
+
+    protected interface Sender {
+        void send(INDArray array) throws Exception;
+    }
+
+    protected static abstract class SimpleCallback implements NDArrayCallback {
+        @Override
+        public void onNDArrayPartial(INDArray arr, long idx, int... dimensions) {
+            //
+        }
+
+        @Override
+        public void onNDArray(INDArray arr) {
+            //
+        }
+    }
+}
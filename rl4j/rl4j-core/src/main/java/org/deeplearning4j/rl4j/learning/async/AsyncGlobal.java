@@ -16,8 +16,10 @@
 
 package org.deeplearning4j.rl4j.learning.async;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.rl4j.network.NeuralNet;
@@ -25,6 +27,7 @@ import org.nd4j.linalg.primitives.Pair;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author rubenfiszel (ruben.fiszel@epfl.ch) on 8/5/16.
@@ -33,9 +36,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Gradient Descent: Hogwild! It is a way to apply gradients
  * and modify a model in a lock-free manner.
  *
- * As a way to implement this with dl4j, it is unfortunately
- * necessary at the time of writing to apply the gradient
- * (update the parameters) on a single separate global thread.
+ * By default (UpdateMode.QUEUE), the gradients are applied
+ * (the parameters updated) on a single separate global thread.
  *
  * This Central thread for Asynchronous Method of reinforcement learning
  * enqueue the gradients coming from the different threads and update its
@@ -46,30 +48,60 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * This is similar to RMSProp with shared g and momentum
  *
- * When Hogwild! is implemented, this could be replaced by a simple data
- * structure
+ * With UpdateMode.LOCKED or UpdateMode.HOGWILD, the worker threads apply
+ * their gradients to the shared model themselves in enqueue(), either one at a time
+ * or without any lock, and the global thread is not started.
  *
+ * Every applied gradient increments the version of the model, so that workers only
+ * copy the parameters when they changed. The target is published as an immutable
+ * snapshot: a new clone of the model replaces the previous one on every target update,
+ * so workers can read it without locking.
  *
  */
 @Slf4j
 public class AsyncGlobal<NN extends NeuralNet> extends Thread {
 
+    public enum UpdateMode {
+        /**
+         * gradients are queued and applied on the global thread
+         */
+        QUEUE,
+        /**
+         * workers apply their gradients directly, one at a time
+         */
+        LOCKED,
+        /**
+         * workers apply their gradients directly without any lock, as in Hogwild!
+         * Updates can overlap, which is tolerated by asynchronous SGD. Listeners of the
+         * model are then called concurrently.
+         */
+        HOGWILD
+    }
+
     @Getter
     final private NN current;
     final private ConcurrentLinkedQueue<Pair<Gradient[], Integer>> queue;
     final private AsyncConfiguration a3cc;
     @Getter
+    final private UpdateMode updateMode;
+    @Getter
     private AtomicInteger T = new AtomicInteger(0);
+    final private AtomicLong version = new AtomicLong(0);
     @Getter
-    private NN target;
+    private volatile Snapshot<NN> targetSnapshot;
     @Getter
     @Setter
     private boolean running = true;
 
     public AsyncGlobal(NN initial, AsyncConfiguration a3cc) {
+        this(initial, a3cc, UpdateMode.QUEUE);
+    }
+
+    public AsyncGlobal(NN initial, AsyncConfiguration a3cc, UpdateMode updateMode) {
         this.current = initial;
-        target = (NN) initial.clone();
         this.a3cc = a3cc;
+        this.updateMode = updateMode;
+        targetSnapshot = new Snapshot<>(0, (NN) initial.clone());
         queue = new ConcurrentLinkedQueue<>();
     }
 
@@ -77,8 +109,55 @@ public class AsyncGlobal<NN extends NeuralNet> extends Thread {
         return T.get() >= a3cc.getMaxStep();
     }
 
+    /**
+     * @return the latest target. It is shared between threads and should only be read.
+     */
+    public NN getTarget() {
+        return targetSnapshot.getNet();
+    }
+
+    /**
+     * @return number of gradients applied to the current model so far
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return true if gradients are applied on the global thread, which then needs to be started
+     */
+    public boolean isQueued() {
+        return updateMode == UpdateMode.QUEUE;
+    }
+
     public void enqueue(Gradient[] gradient, Integer nstep) {
-        queue.add(new Pair<>(gradient, nstep));
+        if (isQueued())
+            queue.add(new Pair<>(gradient, nstep));
+        else
+            applyGradient(gradient, nstep);
+    }
+
+    /**
+     * Copy the parameters of the current model into net, unless they did not change since knownVersion
+     *
+     * @param net where to copy the parameters
+     * @param knownVersion version of the parameters already in net, -1 if unknown
+     * @return version of the parameters now in net
+     */
+    public long syncCurrent(NN net, long knownVersion) {
+        if (updateMode == UpdateMode.HOGWILD) {
+            long v = version.get();
+            if (v != knownVersion)
+                net.copy(current);
+            return v;
+        }
+
+        synchronized (this) {
+            long v = version.get();
+            if (v != knownVersion)
+                net.copy(current);
+            return v;
+        }
     }
 
     @Override
@@ -87,22 +166,54 @@ public class AsyncGlobal<NN extends NeuralNet> extends Thread {
         while (!isTrainingComplete() && running) {
             if (!queue.isEmpty()) {
                 Pair<Gradient[], Integer> pair = queue.poll();
-                T.addAndGet(pair.getSecond());
-                Gradient[] gradient = pair.getFirst();
-                synchronized (this) {
-                    current.applyGradient(gradient, pair.getSecond());
-                }
-                if (a3cc.getTargetDqnUpdateFreq() != -1
-                                && T.get() / a3cc.getTargetDqnUpdateFreq() > (T.get() - pair.getSecond())
-                                                / a3cc.getTargetDqnUpdateFreq()) {
-                    log.info("TARGET UPDATE at T = " + T.get());
-                    synchronized (this) {
-                        target.copy(current);
-                    }
-                }
+                applyGradient(pair.getFirst(), pair.getSecond());
+            }
+        }
+
+    }
+
+    private void applyGradient(Gradient[] gradient, int nstep) {
+        int t = T.addAndGet(nstep);
+        if (updateMode == UpdateMode.HOGWILD) {
+            current.applyGradient(gradient, nstep);
+            version.incrementAndGet();
+        } else {
+            synchronized (this) {
+                current.applyGradient(gradient, nstep);
+                version.incrementAndGet();
             }
         }
 
+        if (a3cc.getTargetDqnUpdateFreq() != -1
+                        && t / a3cc.getTargetDqnUpdateFreq() > (t - nstep) / a3cc.getTargetDqnUpdateFreq()) {
+            log.info("TARGET UPDATE at T = " + t);
+            updateTarget();
+        }
+    }
+
+    private void updateTarget() {
+        NN target;
+        long v;
+        if (updateMode == UpdateMode.HOGWILD) {
+            v = version.get();
+            target = (NN) current.clone();
+        } else {
+            synchronized (this) {
+                v = version.get();
+                target = (NN) current.clone();
+            }
+        }
+        targetSnapshot = new Snapshot<>(v, target);
+    }
+
+    /**
+     * Immutable parameters of a model, with the version of the model they were taken from
+     */
+    @AllArgsConstructor
+    @Value
+    public static class Snapshot<NN> {
+        long version;
+        NN net;
     }
 
 }
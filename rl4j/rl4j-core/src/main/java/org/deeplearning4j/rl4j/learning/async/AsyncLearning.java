@@ -16,8 +16,11 @@
 
 package org.deeplearning4j.rl4j.learning.async;
 
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.rl4j.learning.Learning;
+import org.deeplearning4j.rl4j.mdp.VectorMDP;
 import org.deeplearning4j.rl4j.network.NeuralNet;
 import org.deeplearning4j.rl4j.space.ActionSpace;
 import org.deeplearning4j.rl4j.space.Encodable;
@@ -36,6 +39,18 @@ import org.nd4j.linalg.factory.Nd4j;
 public abstract class AsyncLearning<O extends Encodable, A, AS extends ActionSpace<A>, NN extends NeuralNet>
                 extends Learning<O, A, AS, NN> {
 
+    /**
+     * Number of copies of the MDP stepped together by each thread, see {@link VectorMDP}
+     */
+    @Getter
+    @Setter
+    private int envsPerThread = 1;
+    /**
+     * true to step the copies of the MDP of each thread in parallel
+     */
+    @Getter
+    @Setter
+    private boolean parallelEnvs = false;
 
     public AsyncLearning(AsyncConfiguration conf) {
         super(conf);
@@ -48,7 +63,9 @@ public abstract class AsyncLearning<O extends Encodable, A, AS extends ActionSpa
     protected abstract AsyncGlobal<NN> getAsyncGlobal();
 
     protected void startGlobalThread() {
-        getAsyncGlobal().start();
+        //with direct update modes, the threads apply their gradients themselves
+        if (getAsyncGlobal().isQueued())
+            getAsyncGlobal().start();
     }
 
     protected boolean isTrainingComplete() {
@@ -58,7 +75,9 @@ public abstract class AsyncLearning<O extends Encodable, A, AS extends ActionSpa
     public void launchThreads() {
         startGlobalThread();
         for (int i = 0; i < getConfiguration().getNumThread(); i++) {
-            Thread t = newThread(i);
+            AsyncThread t = newThread(i);
+            if (envsPerThread > 1)
+                t.setNumEnvs(envsPerThread, parallelEnvs);
             Nd4j.getAffinityManager().attachThreadToDevice(t,
                             i % Nd4j.getAffinityManager().getNumberOfDevices());
             t.start();
@@ -26,6 +26,7 @@ import org.deeplearning4j.rl4j.learning.IHistoryProcessor;
 import org.deeplearning4j.rl4j.learning.Learning;
 import org.deeplearning4j.rl4j.learning.StepCountable;
 import org.deeplearning4j.rl4j.mdp.MDP;
+import org.deeplearning4j.rl4j.mdp.VectorMDP;
 import org.deeplearning4j.rl4j.network.NeuralNet;
 import org.deeplearning4j.rl4j.policy.Policy;
 import org.deeplearning4j.rl4j.space.ActionSpace;
@@ -56,6 +57,8 @@ public abstract class AsyncThread<O extends Encodable, A, AS extends ActionSpace
     private IHistoryProcessor historyProcessor;
     @Getter
     private int lastMonitor = -Constants.MONITOR_FREQ;
+    @Getter
+    private VectorMDP<O, A, AS> vectorMdp;
 
     public AsyncThread(AsyncGlobal<NN> asyncGlobal, int threadNumber) {
         this.threadNumber = threadNumber;
@@ -69,6 +72,17 @@ public abstract class AsyncThread<O extends Encodable, A, AS extends ActionSpace
         this.historyProcessor = historyProcessor;
     }
 
+    /**
+     * Step numEnvs copies of the MDP together, the first being the MDP of this thread.
+     * Must be called before the thread is started.
+     *
+     * @param numEnvs number of environments, 1 to only use the MDP of this thread
+     * @param parallel true to step the environments in parallel
+     */
+    public void setNumEnvs(int numEnvs, boolean parallel) {
+        vectorMdp = numEnvs > 1 ? new VectorMDP<>(getMdp(), numEnvs, parallel) : null;
+    }
+
     protected void postEpoch() {
         if (getHistoryProcessor() != null)
             getHistoryProcessor().stopMonitor();
@@ -129,6 +143,8 @@ public abstract class AsyncThread<O extends Encodable, A, AS extends ActionSpace
             e.printStackTrace();
         } finally {
             postEpoch();
+            if (vectorMdp != null)
+                vectorMdp.close();
         }
     }
 
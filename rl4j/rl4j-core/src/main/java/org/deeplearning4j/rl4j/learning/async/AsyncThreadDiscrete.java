@@ -22,6 +22,7 @@ import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.rl4j.learning.IHistoryProcessor;
 import org.deeplearning4j.rl4j.learning.Learning;
 import org.deeplearning4j.rl4j.learning.sync.Transition;
+import org.deeplearning4j.rl4j.mdp.VectorMDP;
 import org.deeplearning4j.rl4j.network.NeuralNet;
 import org.deeplearning4j.rl4j.policy.Policy;
 import org.deeplearning4j.rl4j.space.DiscreteSpace;
@@ -30,6 +31,8 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.util.ArrayUtil;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 /**
@@ -43,12 +46,32 @@ public abstract class AsyncThreadDiscrete<O extends Encodable, NN extends Neural
 
     @Getter
     private NN current;
+    //version of the global parameters last copied into current and target
+    private long currentVersion = -1;
+    private NN target;
+    private long targetVersion = -1;
+    //last inputs and episode lengths of the environments of the VectorMDP, null when to be reset
+    private INDArray[] vectorInputs;
+    private int[] vectorLengths;
 
     public AsyncThreadDiscrete(AsyncGlobal<NN> asyncGlobal, int threadNumber) {
         super(asyncGlobal, threadNumber);
         synchronized (asyncGlobal) {
             current = (NN)asyncGlobal.getCurrent().clone();
         }
+        target = (NN) current.clone();
+    }
+
+    /**
+     * @return local copy of the latest target snapshot, only updated when a new one was published
+     */
+    protected NN getTarget() {
+        AsyncGlobal.Snapshot<NN> snapshot = getAsyncGlobal().getTargetSnapshot();
+        if (snapshot.getVersion() != targetVersion) {
+            target.copy(snapshot.getNet());
+            targetVersion = snapshot.getVersion();
+        }
+        return target;
     }
 
     /**
@@ -60,10 +83,10 @@ public abstract class AsyncThreadDiscrete<O extends Encodable, NN extends Neural
      * @return subepoch training informations
      */
     public SubEpochReturn<O> trainSubEpoch(O sObs, int nstep) {
+        if (getVectorMdp() != null)
+            return trainVectorSubEpoch(sObs, nstep);
 
-        synchronized (getAsyncGlobal()) {
-            current.copy(getAsyncGlobal().getCurrent());
-        }
+        currentVersion = getAsyncGlobal().syncCurrent(current, currentVersion);
         Stack<MiniTrans<Integer>> rewards = new Stack<>();
 
         O obs = sObs;
@@ -130,9 +153,8 @@ public abstract class AsyncThreadDiscrete<O extends Encodable, NN extends Neural
             INDArray[] output = null;
             if (getConf().getTargetDqnUpdateFreq() == -1)
                 output = current.outputAll(hstack);
-            else synchronized (getAsyncGlobal()) {
-                output = getAsyncGlobal().getTarget().outputAll(hstack);
-            }
+            else
+                output = getTarget().outputAll(hstack);
             double maxQ = Nd4j.max(output[0]).getDouble(0);
             rewards.add(new MiniTrans(hstack, null, output, maxQ));
         }
@@ -142,6 +164,102 @@ public abstract class AsyncThreadDiscrete<O extends Encodable, NN extends Neural
         return new SubEpochReturn<O>(i, obs, reward, current.getLatestScore());
     }
 
+    /**
+     * Same as trainSubEpoch(), over all the environments of the VectorMDP: the actions of all the environments are
+     * chosen with a single call to the policy network, and the gradient of each n-step rollout is enqueued.
+     * Environment 0 is the MDP of this thread, the others are reset as soon as they are done.
+     */
+    protected SubEpochReturn<O> trainVectorSubEpoch(O sObs, int nstep) {
+        if (getHistoryProcessor() != null || current.isRecurrent())
+            throw new IllegalStateException("A VectorMDP can not be used with a HistoryProcessor or a recurrent network");
+
+        currentVersion = getAsyncGlobal().syncCurrent(current, currentVersion);
+
+        VectorMDP<O, Integer, DiscreteSpace> vectorMdp = getVectorMdp();
+        int numEnvs = vectorMdp.getNumEnvs();
+        if (vectorInputs == null) {
+            vectorInputs = new INDArray[numEnvs];
+            vectorLengths = new int[numEnvs];
+        }
+        vectorInputs[0] = processHistory(Learning.getInput(getMdp(), sObs));
+        for (int j = 1; j < numEnvs; j++) {
+            if (vectorInputs[j] == null) {
+                vectorInputs[j] = processHistory(Learning.getInput(getMdp(), vectorMdp.reset(j)));
+                vectorLengths[j] = 0;
+            }
+        }
+
+        List<Stack<MiniTrans<Integer>>> rewards = new ArrayList<>(numEnvs);
+        for (int j = 0; j < numEnvs; j++)
+            rewards.add(new Stack<MiniTrans<Integer>>());
+        boolean[] terminal = new boolean[numEnvs];
+        List<Integer> actions = new ArrayList<>(numEnvs);
+
+        Policy<O, Integer> policy = getPolicy(current);
+        O obs = sObs;
+        double reward = 0;
+        int i = 0;
+        while (!terminal[0] && i < nstep) {
+            INDArray input = VectorMDP.stack(vectorInputs);
+            INDArray[] output = current.outputAll(input);
+            List<Integer> policyActions = policy.nextActions(input, output);
+
+            //environments that reached a terminal state wait for the end of the sub epoch
+            actions.clear();
+            for (int j = 0; j < numEnvs; j++)
+                actions.add(terminal[j] ? null : policyActions.get(j));
+
+            List<StepReply<O>> stepReplies = vectorMdp.step(actions);
+            for (int j = 0; j < numEnvs; j++) {
+                if (terminal[j])
+                    continue;
+
+                StepReply<O> stepReply = stepReplies.get(j);
+                rewards.get(j).add(new MiniTrans(vectorInputs[j], actions.get(j), rows(output, j),
+                                stepReply.getReward() * getConf().getRewardFactor()));
+                vectorInputs[j] = processHistory(Learning.getInput(getMdp(), stepReply.getObservation()));
+                vectorLengths[j]++;
+                terminal[j] = stepReply.isDone();
+
+                if (j == 0) {
+                    obs = stepReply.getObservation();
+                    reward += stepReply.getReward();
+                }
+            }
+            i++;
+        }
+
+        INDArray input = VectorMDP.stack(vectorInputs);
+        INDArray[] output = getConf().getTargetDqnUpdateFreq() == -1 ? current.outputAll(input)
+                        : getTarget().outputAll(input);
+        for (int j = 0; j < numEnvs; j++) {
+            Stack<MiniTrans<Integer>> envRewards = rewards.get(j);
+            if (terminal[j])
+                envRewards.add(new MiniTrans(vectorInputs[j], null, null, 0));
+            else {
+                INDArray[] envOutput = rows(output, j);
+                double maxQ = Nd4j.max(envOutput[0]).getDouble(0);
+                envRewards.add(new MiniTrans(vectorInputs[j], null, envOutput, maxQ));
+            }
+
+            if (j > 0 && (terminal[j] || vectorLengths[j] >= getConf().getMaxEpochStep()))
+                vectorInputs[j] = null;
+
+            int steps = envRewards.size() - 1;
+            if (steps > 0)
+                getAsyncGlobal().enqueue(calcGradient(current, envRewards), steps);
+        }
+
+        return new SubEpochReturn<O>(i, obs, reward, current.getLatestScore());
+    }
+
+    private static INDArray[] rows(INDArray[] output, int row) {
+        INDArray[] rows = new INDArray[output.length];
+        for (int k = 0; k < output.length; k++)
+            rows[k] = output[k].getRow(row);
+        return rows;
+    }
+
     protected INDArray processHistory(INDArray input) {
         IHistoryProcessor hp = getHistoryProcessor();
         INDArray[] history;
@@ -52,13 +52,21 @@ public abstract class A3CDiscrete<O extends Encodable> extends AsyncLearning<O,
 
     public A3CDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IActorCritic iActorCritic, A3CConfiguration conf,
                     DataManager dataManager) {
+        this(mdp, iActorCritic, conf, dataManager, AsyncGlobal.UpdateMode.QUEUE);
+    }
+
+    /**
+     * @param updateMode how the gradients of the threads are applied to the shared model
+     */
+    public A3CDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IActorCritic iActorCritic, A3CConfiguration conf,
+                    DataManager dataManager, AsyncGlobal.UpdateMode updateMode) {
         super(conf);
         this.iActorCritic = iActorCritic;
         this.mdp = mdp;
         this.configuration = conf;
         this.dataManager = dataManager;
         policy = new ACPolicy<>(iActorCritic, getRandom());
-        asyncGlobal = new AsyncGlobal<>(iActorCritic, conf);
+        asyncGlobal = new AsyncGlobal<>(iActorCritic, conf, updateMode);
         mdp.getActionSpace().setSeed(conf.getSeed());
     }
 
@@ -16,6 +16,7 @@
 
 package org.deeplearning4j.rl4j.learning.async.a3c.discrete;
 
+import org.deeplearning4j.rl4j.learning.async.AsyncGlobal;
 import org.deeplearning4j.rl4j.mdp.MDP;
 import org.deeplearning4j.rl4j.network.ac.*;
 import org.deeplearning4j.rl4j.space.DiscreteSpace;
@@ -38,6 +39,11 @@ public class A3CDiscreteDense<O extends Encodable> extends A3CDiscrete<O> {
         super(mdp, IActorCritic, conf, dataManager);
     }
 
+    public A3CDiscreteDense(MDP<O, Integer, DiscreteSpace> mdp, IActorCritic IActorCritic, A3CConfiguration conf,
+                    DataManager dataManager, AsyncGlobal.UpdateMode updateMode) {
+        super(mdp, IActorCritic, conf, dataManager, updateMode);
+    }
+
     public A3CDiscreteDense(MDP<O, Integer, DiscreteSpace> mdp, ActorCriticFactorySeparate factory,
                     A3CConfiguration conf, DataManager dataManager) {
         this(mdp, factory.buildActorCritic(mdp.getObservationSpace().getShape(), mdp.getActionSpace().getSize()), conf,
@@ -47,11 +47,19 @@ public abstract class AsyncNStepQLearningDiscrete<O extends Encodable>
 
     public AsyncNStepQLearningDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IDQN dqn, AsyncNStepQLConfiguration conf,
                     DataManager dataManager) {
+        this(mdp, dqn, conf, dataManager, AsyncGlobal.UpdateMode.QUEUE);
+    }
+
+    /**
+     * @param updateMode how the gradients of the threads are applied to the shared model
+     */
+    public AsyncNStepQLearningDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IDQN dqn, AsyncNStepQLConfiguration conf,
+                    DataManager dataManager, AsyncGlobal.UpdateMode updateMode) {
         super(conf);
         this.mdp = mdp;
         this.dataManager = dataManager;
         this.configuration = conf;
-        this.asyncGlobal = new AsyncGlobal<>(dqn, conf);
+        this.asyncGlobal = new AsyncGlobal<>(dqn, conf, updateMode);
         mdp.getActionSpace().setSeed(conf.getSeed());
     }
 
@@ -16,6 +16,7 @@
 
 package org.deeplearning4j.rl4j.learning.async.nstep.discrete;
 
+import org.deeplearning4j.rl4j.learning.async.AsyncGlobal;
 import org.deeplearning4j.rl4j.mdp.MDP;
 import org.deeplearning4j.rl4j.network.dqn.DQNFactory;
 import org.deeplearning4j.rl4j.network.dqn.DQNFactoryStdDense;
@@ -34,6 +35,11 @@ public class AsyncNStepQLearningDiscreteDense<O extends Encodable> extends Async
         super(mdp, dqn, conf, dataManager);
     }
 
+    public AsyncNStepQLearningDiscreteDense(MDP<O, Integer, DiscreteSpace> mdp, IDQN dqn,
+                    AsyncNStepQLConfiguration conf, DataManager dataManager, AsyncGlobal.UpdateMode updateMode) {
+        super(mdp, dqn, conf, dataManager, updateMode);
+    }
+
     public AsyncNStepQLearningDiscreteDense(MDP<O, Integer, DiscreteSpace> mdp, DQNFactory factory,
                     AsyncNStepQLConfiguration conf, DataManager dataManager) {
         this(mdp, factory.buildDQN(mdp.getObservationSpace().getShape(), mdp.getActionSpace().getSize()), conf,
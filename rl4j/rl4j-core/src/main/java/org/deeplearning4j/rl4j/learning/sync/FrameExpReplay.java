@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.rl4j.learning.Learning;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.BasicNDArrayCompressor;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Exp Replay implementation that stores frames in a single preallocated INDArray, used as a ring buffer.
+ *
+ * Transitions only keep the indices of their frames. Consecutive transitions share most of their history
+ * (the frames returned by the HistoryProcessor are the same INDArray instances), so each frame is stored once:
+ * a frame that is the same instance as one of the last historyLength + 1 stored frames is not copied again.
+ *
+ * getFrameBatch() gathers the frames of the sampled transitions with pullRows straight into reusable
+ * observation and next observation arrays, so no INDArray is allocated on training steps.
+ *
+ * The frame buffer holds maxSize + historyLength + 1 frames by default. If frames are not shared between
+ * transitions, old transitions are evicted once their frames get overwritten, so fewer than maxSize
+ * transitions may be available.
+ */
+@Slf4j
+public class FrameExpReplay<A> implements IExpReplay<A> {
+
+    @Getter
+    final private int maxSize;
+    @Getter
+    final private int batchSize;
+    @Getter
+    final private int historyLength;
+    final private int[] inputShape;
+    final private int frameLength;
+    final private int frameCapacity;
+    final protected Random random;
+
+    final private INDArray frames;
+    private long nextFrame = 0;
+    private long[] frameShape;
+
+    //last stored frames, for deduplication
+    final private INDArray[] recentSources;
+    final private long[] recentFrames;
+    private int recentPosition = 0;
+
+    //transitions, as a ring buffer of frame numbers
+    final private long[] obsFrames;
+    final private long[] nextObsFrames;
+    final private long[] oldestFrames;
+    final private Object[] actions;
+    final private double[] rewards;
+    final private boolean[] terminals;
+    private int head = 0;
+    @Getter
+    private int size = 0;
+
+    final private long[] tmpFrames;
+    final private int[] sampled;
+    private int[] obsRows;
+    private int[] nextObsRows;
+    private INDArray obsBuffer;
+    private INDArray nextObsBuffer;
+    private ReplayBatch<A> batch;
+
+    /**
+     * @param maxSize max number of transitions
+     * @param batchSize number of transitions returned by getBatch()/getFrameBatch()
+     * @param inputShape shape of a single network input, ie. {historyLength, height, width} with a HistoryProcessor
+     * @param historyLength number of frames stacked in an observation, 1 without a HistoryProcessor
+     * @param seed seed for the sampling
+     */
+    public FrameExpReplay(int maxSize, int batchSize, int[] inputShape, int historyLength, int seed) {
+        this(maxSize, batchSize, inputShape, historyLength, maxSize + historyLength + 1, seed);
+    }
+
+    /**
+     * @param frameCapacity number of frames allocated in the frame buffer
+     */
+    public FrameExpReplay(int maxSize, int batchSize, int[] inputShape, int historyLength, int frameCapacity,
+                    int seed) {
+        if (maxSize < 1 || batchSize < 1 || historyLength < 1)
+            throw new IllegalArgumentException("maxSize, batchSize and historyLength should be positive");
+        int inputLength = ArrayUtil.prod(inputShape);
+        if (inputLength % historyLength != 0)
+            throw new IllegalArgumentException("Input shape " + Arrays.toString(inputShape)
+                            + " is not made of " + historyLength + " frames");
+        if (frameCapacity < historyLength + 2)
+            throw new IllegalArgumentException("frameCapacity should be at least historyLength + 2");
+
+        this.maxSize = maxSize;
+        this.batchSize = batchSize;
+        this.historyLength = historyLength;
+        this.inputShape = inputShape.clone();
+        this.frameLength = inputLength / historyLength;
+        this.frameCapacity = frameCapacity;
+        this.random = new Random(seed);
+
+        this.frames = Nd4j.create(frameCapacity, frameLength);
+        this.recentSources = new INDArray[historyLength + 1];
+        this.recentFrames = new long[historyLength + 1];
+
+        this.obsFrames = new long[maxSize * historyLength];
+        this.nextObsFrames = new long[maxSize];
+        this.oldestFrames = new long[maxSize];
+        this.actions = new Object[maxSize];
+        this.rewards = new double[maxSize];
+        this.terminals = new boolean[maxSize];
+
+        this.tmpFrames = new long[historyLength + 1];
+        this.sampled = new int[batchSize];
+
+        log.info("Allocated frame buffer of {} frames of length {}", frameCapacity, frameLength);
+    }
+
+    public void store(Transition<A> transition) {
+        INDArray[] observation = transition.getObservation();
+        if (observation.length != historyLength)
+            throw new IllegalArgumentException("Expected an history of " + historyLength + " frames, got "
+                            + observation.length);
+
+        if (size == maxSize)
+            evictOldest();
+
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < historyLength; i++) {
+            tmpFrames[i] = addFrame(observation[i]);
+            oldest = Math.min(oldest, tmpFrames[i]);
+        }
+        tmpFrames[historyLength] = addFrame(transition.getNextObservation());
+        oldest = Math.min(oldest, tmpFrames[historyLength]);
+
+        int slot = (head + size) % maxSize;
+        System.arraycopy(tmpFrames, 0, obsFrames, slot * historyLength, historyLength);
+        nextObsFrames[slot] = tmpFrames[historyLength];
+        oldestFrames[slot] = oldest;
+        actions[slot] = transition.getAction();
+        rewards[slot] = transition.getReward();
+        terminals[slot] = transition.isTerminal();
+        size++;
+
+        onStore(slot);
+    }
+
+    public ArrayList<Transition<A>> getBatch() {
+        return getBatch(batchSize);
+    }
+
+    /**
+     * Sample transitions, as Transition objects. Frames are copied out of the frame buffer.
+     * Prefer getFrameBatch() when training.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<Transition<A>> getBatch(int size) {
+        int actualBatchSize = Math.min(Math.min(this.size, size), batchSize);
+        sample(actualBatchSize, sampled);
+
+        ArrayList<Transition<A>> batch = new ArrayList<>(actualBatchSize);
+        for (int i = 0; i < actualBatchSize; i++) {
+            int slot = sampled[i];
+            INDArray[] observation = new INDArray[historyLength];
+            for (int j = 0; j < historyLength; j++)
+                observation[j] = frame(obsFrames[slot * historyLength + j]);
+            batch.add(new Transition<>(observation, (A) actions[slot], rewards[slot], terminals[slot],
+                            frame(nextObsFrames[slot])));
+        }
+        return batch;
+    }
+
+    /**
+     * Sample a batch of transitions, and gather their frames into reusable arrays.
+     * The returned batch is only valid until the next call to this method.
+     */
+    public ReplayBatch<A> getFrameBatch() {
+        if (size == 0)
+            throw new IllegalStateException("Exp replay is empty");
+
+        int n = Math.min(size, batchSize);
+        if (batch == null || batch.getSize() != n) {
+            obsRows = new int[n * historyLength];
+            nextObsRows = new int[n * historyLength];
+            obsBuffer = Nd4j.create(n * historyLength, frameLength);
+            nextObsBuffer = Nd4j.create(n * historyLength, frameLength);
+            int[] shape = Learning.makeShape(n, inputShape);
+            batch = new ReplayBatch<>(n, obsBuffer.reshape(shape), nextObsBuffer.reshape(shape));
+        }
+
+        sample(n, sampled);
+        for (int i = 0; i < n; i++) {
+            int slot = sampled[i];
+            int offset = slot * historyLength;
+            //next observation is the history with the next frame appended in front, as in Transition.append()
+            nextObsRows[i * historyLength] = frameRow(nextObsFrames[slot]);
+            for (int j = 0; j < historyLength; j++) {
+                obsRows[i * historyLength + j] = frameRow(obsFrames[offset + j]);
+                if (j + 1 < historyLength)
+                    nextObsRows[i * historyLength + j + 1] = frameRow(obsFrames[offset + j]);
+            }
+            batch.set(i, slot, actions[slot], rewards[slot], terminals[slot]);
+        }
+
+        Nd4j.pullRows(frames, obsBuffer, 1, obsRows);
+        Nd4j.pullRows(frames, nextObsBuffer, 1, nextObsRows);
+
+        batch.setWeights(weights(batch.getIndices(), n));
+        return batch;
+    }
+
+    /**
+     * Update the priorities of sampled transitions. Does nothing, as transitions are sampled uniformly.
+     *
+     * @param indices indices of the transitions, as returned in ReplayBatch.getIndices()
+     * @param tdErrors TD errors of the transitions
+     */
+    public void updatePriorities(int[] indices, double[] tdErrors) {
+        //uniform sampling
+    }
+
+    /**
+     * Sample n distinct transitions, uniformly (Floyd's algorithm)
+     *
+     * @param n number of transitions
+     * @param out array to store the ring buffer slots of the sampled transitions
+     */
+    protected void sample(int n, int[] out) {
+        for (int i = 0; i < n; i++) {
+            int candidate = random.nextInt(size - n + i + 1);
+            for (int j = 0; j < i; j++) {
+                if (out[j] == candidate) {
+                    candidate = size - n + i;
+                    break;
+                }
+            }
+            out[i] = candidate;
+        }
+        for (int i = 0; i < n; i++)
+            out[i] = (head + out[i]) % maxSize;
+    }
+
+    /**
+     * @return importance sampling weights for the sampled slots, or null
+     */
+    protected double[] weights(int[] slots, int n) {
+        return null;
+    }
+
+    /**
+     * Called once a transition has been stored in the given slot
+     */
+    protected void onStore(int slot) {}
+
+    /**
+     * Called once the transition in the given slot has been evicted
+     */
+    protected void onEvict(int slot) {}
+
+    protected boolean isStored(int slot) {
+        return ((slot - head + maxSize) % maxSize) < size;
+    }
+
+    private void evictOldest() {
+        int slot = head;
+        actions[slot] = null;
+        head = (head + 1) % maxSize;
+        size--;
+        onEvict(slot);
+    }
+
+    private long addFrame(INDArray source) {
+        //the same instance was stored recently: share the frame
+        for (int i = 0; i < recentSources.length; i++) {
+            if (recentSources[i] == source)
+                return recentFrames[i];
+        }
+
+        long frame = nextFrame++;
+
+        //make sure no transition still refers to the frame being overwritten
+        while (size > 0 && oldestFrames[head] <= frame - frameCapacity)
+            evictOldest();
+
+        INDArray arr = source.isCompressed() ? BasicNDArrayCompressor.getInstance().decompress(source) : source;
+        if (arr.length() != frameLength)
+            throw new IllegalArgumentException("Expected frames of length " + frameLength + ", got " + arr.length());
+        if (frameShape == null)
+            frameShape = arr.shape();
+
+        frames.getRow(frameRow(frame)).assign(arr.reshape(1, frameLength));
+
+        recentSources[recentPosition] = source;
+        recentFrames[recentPosition] = frame;
+        recentPosition = (recentPosition + 1) % recentSources.length;
+
+        return frame;
+    }
+
+    private int frameRow(long frame) {
+        return (int) (frame % frameCapacity);
+    }
+
+    private INDArray frame(long frame) {
+        return frames.getRow(frameRow(frame)).dup().reshape(frameShape);
+    }
+}
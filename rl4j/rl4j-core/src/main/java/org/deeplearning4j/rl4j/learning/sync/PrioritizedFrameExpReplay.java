@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Proportional prioritized replay on top of {@link FrameExpReplay}.
+ *
+ * Transitions are sampled with probability p_i^alpha / sum_k p_k^alpha, where p_i = |TD error| + epsilon,
+ * using a {@link SumTree}. New transitions get the max priority seen so far, so they are sampled at least once.
+ * Importance sampling weights (N * P(i))^-beta / max_j w_j are returned with each batch; beta is
+ * annealed linearly to 1 by betaIncrement on every batch.
+ *
+ * http://arxiv.org/abs/1511.05952
+ */
+public class PrioritizedFrameExpReplay<A> extends FrameExpReplay<A> {
+
+    @Getter
+    final private double alpha;
+    @Getter
+    @Setter
+    private double beta;
+    @Getter
+    final private double betaIncrement;
+    @Getter
+    final private double epsilon;
+
+    final private SumTree tree;
+    private double maxPriority = 1.0;
+    private double[] weights;
+
+    public PrioritizedFrameExpReplay(int maxSize, int batchSize, int[] inputShape, int historyLength, int seed) {
+        this(maxSize, batchSize, inputShape, historyLength, seed, 0.6, 0.4, 1e-6, 1e-6);
+    }
+
+    /**
+     * @param alpha how much prioritization is used, 0 being uniform sampling
+     * @param beta initial importance sampling exponent, 1 being full correction
+     * @param betaIncrement increment of beta after each batch
+     * @param epsilon added to the absolute TD errors, so that no transition has a zero probability
+     */
+    public PrioritizedFrameExpReplay(int maxSize, int batchSize, int[] inputShape, int historyLength, int seed,
+                    double alpha, double beta, double betaIncrement, double epsilon) {
+        super(maxSize, batchSize, inputShape, historyLength, seed);
+        if (alpha < 0 || beta < 0 || epsilon <= 0)
+            throw new IllegalArgumentException("alpha and beta should be non-negative, epsilon positive");
+
+        this.alpha = alpha;
+        this.beta = beta;
+        this.betaIncrement = betaIncrement;
+        this.epsilon = epsilon;
+        this.tree = new SumTree(maxSize);
+    }
+
+    @Override
+    public void updatePriorities(int[] indices, double[] tdErrors) {
+        for (int i = 0; i < tdErrors.length; i++) {
+            //transition might have been evicted since it was sampled
+            if (!isStored(indices[i]))
+                continue;
+
+            double priority = Math.abs(tdErrors[i]) + epsilon;
+            maxPriority = Math.max(maxPriority, priority);
+            tree.update(indices[i], Math.pow(priority, alpha));
+        }
+    }
+
+    /**
+     * Stratified sampling: the total priority is split in n segments, and one transition is sampled per segment
+     */
+    @Override
+    protected void sample(int n, int[] out) {
+        double segment = tree.total() / n;
+        for (int i = 0; i < n; i++) {
+            out[i] = tree.find(segment * (i + random.nextDouble()));
+        }
+    }
+
+    @Override
+    protected double[] weights(int[] slots, int n) {
+        if (weights == null || weights.length != n)
+            weights = new double[n];
+
+        double total = tree.total();
+        int count = getSize();
+        double maxWeight = Math.pow(count * tree.min() / total, -beta);
+        for (int i = 0; i < n; i++) {
+            weights[i] = Math.pow(count * tree.get(slots[i]) / total, -beta) / maxWeight;
+        }
+
+        beta = Math.min(1.0, beta + betaIncrement);
+        return weights;
+    }
+
+    @Override
+    protected void onStore(int slot) {
+        tree.update(slot, Math.pow(maxPriority, alpha));
+    }
+
+    @Override
+    protected void onEvict(int slot) {
+        tree.update(slot, 0);
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * A batch of transitions sampled from a {@link FrameExpReplay}, already stacked into network inputs.
+ *
+ * The arrays are owned by the replay and are overwritten by the next call to getFrameBatch(),
+ * so they should not be kept across training steps.
+ */
+public class ReplayBatch<A> {
+
+    /**
+     * number of transitions in the batch
+     */
+    @Getter
+    final private int size;
+    /**
+     * observations, of shape [size, inputShape...]
+     */
+    @Getter
+    final private INDArray observations;
+    /**
+     * next observations, of shape [size, inputShape...]
+     */
+    @Getter
+    final private INDArray nextObservations;
+    final private Object[] actions;
+    @Getter
+    final private double[] rewards;
+    @Getter
+    final private boolean[] terminals;
+    /**
+     * replay indices of the transitions, to be passed back to updatePriorities()
+     */
+    @Getter
+    final private int[] indices;
+    /**
+     * importance sampling weights, or null if the transitions were sampled uniformly
+     */
+    @Getter
+    private double[] weights;
+
+    ReplayBatch(int size, INDArray observations, INDArray nextObservations) {
+        this.size = size;
+        this.observations = observations;
+        this.nextObservations = nextObservations;
+        this.actions = new Object[size];
+        this.rewards = new double[size];
+        this.terminals = new boolean[size];
+        this.indices = new int[size];
+    }
+
+    @SuppressWarnings("unchecked")
+    public A getAction(int i) {
+        return (A) actions[i];
+    }
+
+    void set(int i, int index, Object action, double reward, boolean terminal) {
+        indices[i] = index;
+        actions[i] = action;
+        rewards[i] = reward;
+        terminals[i] = terminal;
+    }
+
+    void setWeights(double[] weights) {
+        this.weights = weights;
+    }
+}
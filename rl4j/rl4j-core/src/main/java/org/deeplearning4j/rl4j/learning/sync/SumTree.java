@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+
+/**
+ * Binary tree over a fixed number of non-negative priorities, used for proportional prioritized replay.
+ * Both updating a priority and finding the element for a given prefix sum are O(log n).
+ * The minimum priority is tracked as well, for the importance sampling weights.
+ *
+ * Elements with priority 0 are never returned by find(), and are ignored by min().
+ */
+public class SumTree {
+
+    @Getter
+    final private int capacity;
+    final private int leaves;
+    final private double[] sums;
+    final private double[] mins;
+
+    public SumTree(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity should be positive");
+
+        this.capacity = capacity;
+        int n = 1;
+        while (n < capacity)
+            n <<= 1;
+        this.leaves = n;
+        this.sums = new double[2 * n];
+        this.mins = new double[2 * n];
+        java.util.Arrays.fill(mins, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param index index of the element, in [0, capacity)
+     * @param priority new priority of the element, 0 to remove it
+     */
+    public void update(int index, double priority) {
+        if (index < 0 || index >= capacity)
+            throw new IndexOutOfBoundsException("index " + index + " out of [0, " + capacity + ")");
+        if (priority < 0 || Double.isNaN(priority))
+            throw new IllegalArgumentException("priority should be non-negative, got " + priority);
+
+        int i = index + leaves;
+        sums[i] = priority;
+        mins[i] = priority > 0 ? priority : Double.POSITIVE_INFINITY;
+        for (i >>= 1; i >= 1; i >>= 1) {
+            sums[i] = sums[2 * i] + sums[2 * i + 1];
+            mins[i] = Math.min(mins[2 * i], mins[2 * i + 1]);
+        }
+    }
+
+    /**
+     * @return priority of the element
+     */
+    public double get(int index) {
+        return sums[index + leaves];
+    }
+
+    /**
+     * @return sum of all priorities
+     */
+    public double total() {
+        return sums[1];
+    }
+
+    /**
+     * @return minimal non-zero priority, or +inf if the tree is empty
+     */
+    public double min() {
+        return mins[1];
+    }
+
+    /**
+     * Find the element i such that sum(priorities[0..i-1]) <= prefixSum < sum(priorities[0..i])
+     * @param prefixSum value in [0, total())
+     * @return index of the element
+     */
+    public int find(double prefixSum) {
+        int i = 1;
+        while (i < leaves) {
+            int left = 2 * i;
+            if (prefixSum < sums[left] || sums[left + 1] == 0) {
+                i = left;
+            } else {
+                prefixSum -= sums[left];
+                i = left + 1;
+            }
+        }
+
+        //Guard against floating point rounding, which could end in an empty leaf
+        int index = i - leaves;
+        while (sums[index + leaves] == 0 && index > 0)
+            index--;
+        return index;
+    }
+}
@@ -45,8 +45,13 @@ import java.util.List;
 public abstract class QLearning<O extends Encodable, A, AS extends ActionSpace<A>>
                 extends SyncLearning<O, A, AS, IDQN> {
 
+    /**
+     * Defaults to an {@link ExpReplay}. Can be replaced before training, ie. by a
+     * {@link org.deeplearning4j.rl4j.learning.sync.FrameExpReplay} for large replay sizes
+     */
     @Getter
-    final private IExpReplay<A> expReplay;
+    @Setter
+    private IExpReplay<A> expReplay;
 
     public QLearning(QLConfiguration conf) {
         super(conf);
@@ -21,9 +21,12 @@ import lombok.Setter;
 import org.nd4j.linalg.primitives.Pair;
 import org.deeplearning4j.gym.StepReply;
 import org.deeplearning4j.rl4j.learning.Learning;
+import org.deeplearning4j.rl4j.learning.sync.FrameExpReplay;
+import org.deeplearning4j.rl4j.learning.sync.ReplayBatch;
 import org.deeplearning4j.rl4j.learning.sync.Transition;
 import org.deeplearning4j.rl4j.learning.sync.qlearning.QLearning;
 import org.deeplearning4j.rl4j.mdp.MDP;
+import org.deeplearning4j.rl4j.mdp.VectorMDP;
 import org.deeplearning4j.rl4j.network.dqn.IDQN;
 import org.deeplearning4j.rl4j.policy.DQNPolicy;
 import org.deeplearning4j.rl4j.policy.EpsGreedy;
@@ -38,6 +41,7 @@ import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.util.ArrayUtil;
 
 import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -69,6 +73,13 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
     private INDArray history[] = null;
     private double accuReward = 0;
     private int lastMonitor = -Constants.MONITOR_FREQ;
+    /**
+     * Optional copies of the MDP stepped together with it, see setVectorMdp()
+     */
+    @Getter
+    private VectorMDP<O, Integer, DiscreteSpace> vectorMdp;
+    private INDArray[] vectorObs;
+    private int[] vectorLengths;
 
 
     public QLearningDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IDQN dqn, QLConfiguration conf,
@@ -86,6 +97,41 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
     }
 
 
+    /**
+     * Step several copies of the MDP at every training step. Their actions are chosen with one
+     * batched call to the DQN, and all their transitions are stored in the exp replay.
+     *
+     * The step counter (and so maxStep, epsilon annealing and the target updates) counts the steps of the
+     * whole vector, and the DQN is still fitted once per step. Episodes of environment 0 are the epochs
+     * reported in the stats, the others are reset as soon as they are done.
+     * A HistoryProcessor is not supported, as it keeps the history of a single environment.
+     * The learning takes ownership of the VectorMDP: it's closed at the end of train(), or when replaced.
+     *
+     * @param vectorMdp environments to step, environment 0 being the MDP of this learning
+     */
+    public void setVectorMdp(VectorMDP<O, Integer, DiscreteSpace> vectorMdp) {
+        if (vectorMdp.getMdp(0) != mdp)
+            throw new IllegalArgumentException("The first environment of the VectorMDP should be the MDP of the learning");
+        if (this.vectorMdp != null && this.vectorMdp != vectorMdp)
+            this.vectorMdp.close();
+        this.vectorMdp = vectorMdp;
+        vectorObs = new INDArray[vectorMdp.getNumEnvs()];
+        vectorLengths = new int[vectorMdp.getNumEnvs()];
+    }
+
+    @Override
+    public void train() {
+        try {
+            super.train();
+        } finally {
+            //copies of the MDP and their threads are released, the MDP of this learning is left open
+            if (vectorMdp != null) {
+                vectorMdp.close();
+                vectorMdp = null;
+            }
+        }
+    }
+
     public void postEpoch() {
 
         if (getHistoryProcessor() != null)
@@ -113,6 +159,8 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
      * @return relevant info for next step
      */
     protected QLStepReturn<O> trainStep(O obs) {
+        if (vectorMdp != null)
+            return trainVectorStep(obs);
 
         Integer action;
         INDArray input = getInput(obs);
@@ -175,10 +223,8 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
             Transition<Integer> trans = new Transition(history, action, accuReward, stepReply.isDone(), nhistory[0]);
             getExpReplay().store(trans);
 
-            if (getStepCounter() > updateStart) {
-                Pair<INDArray, INDArray> targets = setTarget(getExpReplay().getBatch());
-                getCurrentDQN().fit(targets.getFirst(), targets.getSecond());
-            }
+            if (getStepCounter() > updateStart)
+                fitBatch();
 
             history = nhistory;
             accuReward = 0;
@@ -190,6 +236,71 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
     }
 
 
+    /**
+     * Step of training over all the environments of the VectorMDP
+     */
+    protected QLStepReturn<O> trainVectorStep(O obs) {
+        if (getHistoryProcessor() != null)
+            throw new IllegalStateException("A VectorMDP can not be used with a HistoryProcessor");
+
+        int numEnvs = vectorMdp.getNumEnvs();
+        int updateStart = getConfiguration().getUpdateStart() + getConfiguration().getBatchSize() + 1;
+
+        vectorObs[0] = getInput(obs);
+        for (int i = 1; i < numEnvs; i++) {
+            if (vectorObs[i] == null) {
+                vectorObs[i] = getInput(vectorMdp.reset(i));
+                vectorLengths[i] = 0;
+            }
+        }
+
+        INDArray[] inputs = new INDArray[numEnvs];
+        int[] shape = getMdp().getObservationSpace().getShape();
+        for (int i = 0; i < numEnvs; i++)
+            inputs[i] = shape.length > 1 ? vectorObs[i].reshape(Learning.makeShape(1, shape)) : vectorObs[i];
+        INDArray input = VectorMDP.stack(inputs);
+
+        //the Q-values of the whole batch are computed once, for the stats and the policy
+        INDArray output = getCurrentDQN().output(input);
+        INDArray qs = output.getRow(0);
+        Double maxQ = qs.getDouble(Learning.getMaxAction(qs));
+        List<Integer> actions = getEgPolicy().nextActions(input, new INDArray[] {output});
+        lastAction = actions.get(0);
+
+        List<StepReply<O>> stepReplies = vectorMdp.step(actions);
+        for (int i = 0; i < numEnvs; i++) {
+            StepReply<O> stepReply = stepReplies.get(i);
+            INDArray ninput = getInput(stepReply.getObservation());
+            Transition<Integer> trans = new Transition(new INDArray[] {vectorObs[i]}, actions.get(i),
+                            stepReply.getReward() * configuration.getRewardFactor(), stepReply.isDone(), ninput);
+            getExpReplay().store(trans);
+
+            vectorObs[i] = ninput;
+            vectorLengths[i]++;
+            //environment 0 is reset by trainEpoch()
+            if (i > 0 && (stepReply.isDone() || vectorLengths[i] >= getConfiguration().getMaxEpochStep()))
+                vectorObs[i] = null;
+        }
+
+        if (getStepCounter() > updateStart)
+            fitBatch();
+
+        return new QLStepReturn<O>(maxQ, getCurrentDQN().getLatestScore(), stepReplies.get(0));
+    }
+
+    protected void fitBatch() {
+        Pair<INDArray, INDArray> targets;
+        if (getExpReplay() instanceof FrameExpReplay) {
+            FrameExpReplay<Integer> frameExpReplay = (FrameExpReplay<Integer>) getExpReplay();
+            ReplayBatch<Integer> batch = frameExpReplay.getFrameBatch();
+            double[] tdErrors = new double[batch.getSize()];
+            targets = setTarget(batch, tdErrors);
+            frameExpReplay.updatePriorities(batch.getIndices(), tdErrors);
+        } else
+            targets = setTarget(getExpReplay().getBatch());
+        getCurrentDQN().fit(targets.getFirst(), targets.getSecond());
+    }
+
     protected Pair<INDArray, INDArray> setTarget(ArrayList<Transition<Integer>> transitions) {
         if (transitions.size() == 0)
             throw new IllegalArgumentException("too few transitions");
@@ -227,6 +338,38 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
                 }
             }
         }
+        double[] rewards = new double[size];
+        for (int i = 0; i < size; i++)
+            rewards[i] = transitions.get(i).getReward();
+
+        return setTarget(obs, nextObs, actions, rewards, areTerminal, null, null);
+    }
+
+    /**
+     * Compute the targets of a batch gathered by a {@link FrameExpReplay}
+     * @param batch the batch
+     * @param tdErrors array to store the (clamped) TD errors of the transitions
+     * @return the inputs and targets
+     */
+    protected Pair<INDArray, INDArray> setTarget(ReplayBatch<Integer> batch, double[] tdErrors) {
+        int size = batch.getSize();
+        int[] actions = new int[size];
+        for (int i = 0; i < size; i++)
+            actions[i] = batch.getAction(i);
+
+        return setTarget(batch.getObservations(), batch.getNextObservations(), actions, batch.getRewards(),
+                        batch.getTerminals(), batch.getWeights(), tdErrors);
+    }
+
+    /**
+     * @param weights importance sampling weights, scaling the difference between the target and the current output,
+     *                or null
+     * @param tdErrors array to store the (clamped) TD errors, or null
+     */
+    protected Pair<INDArray, INDArray> setTarget(INDArray obs, INDArray nextObs, int[] actions, double[] rewards,
+                    boolean[] areTerminal, double[] weights, double[] tdErrors) {
+        int size = actions.length;
+
         if (getHistoryProcessor() != null) {
             obs.muli(1.0 / getHistoryProcessor().getScale());
             nextObs.muli(1.0 / getHistoryProcessor().getScale());
@@ -248,7 +391,7 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
 
 
         for (int i = 0; i < size; i++) {
-            double yTar = transitions.get(i).getReward();
+            double yTar = rewards[i];
             if (!areTerminal[i]) {
                 double q = 0;
                 if (getConfiguration().isDoubleDQN()) {
@@ -267,6 +410,11 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
             double highB = previousV + getConfiguration().getErrorClamp();
             double clamped = Math.min(highB, Math.max(yTar, lowB));
 
+            if (tdErrors != null)
+                tdErrors[i] = clamped - previousV;
+            if (weights != null)
+                clamped = previousV + weights[i] * (clamped - previousV);
+
             dqnOutputAr.putScalar(i, actions[i], clamped);
         }
 
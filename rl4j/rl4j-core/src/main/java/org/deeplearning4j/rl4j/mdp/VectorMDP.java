@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.mdp;
+
+import org.deeplearning4j.gym.StepReply;
+import org.deeplearning4j.rl4j.space.ActionSpace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * N copies of an MDP stepped together, so that the actions of all of them
+ * can be chosen with a single call to the policy network.
+ *
+ * The first environment is the MDP given to the constructor, the others are
+ * created with MDP.newInstance(). Each environment is reset independently by the learner.
+ *
+ * Environments can be stepped in parallel, which pays off when a step is expensive
+ * (emulators, remote gym environments). For cheap MDPs the sequential stepping is faster.
+ */
+public class VectorMDP<O, A, AS extends ActionSpace<A>> {
+
+    final private List<MDP<O, A, AS>> mdps;
+    final private ExecutorService executor;
+
+    /**
+     * @param mdp first environment, copied with newInstance() for the others
+     * @param numEnvs number of environments
+     * @param parallel true to step the environments on a thread pool
+     */
+    public VectorMDP(MDP<O, A, AS> mdp, int numEnvs, boolean parallel) {
+        if (numEnvs < 1)
+            throw new IllegalArgumentException("numEnvs should be positive, got " + numEnvs);
+
+        mdps = new ArrayList<>(numEnvs);
+        mdps.add(mdp);
+        for (int i = 1; i < numEnvs; i++)
+            mdps.add(mdp.newInstance());
+
+        if (parallel && numEnvs > 1) {
+            executor = Executors.newFixedThreadPool(numEnvs, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else
+            executor = null;
+    }
+
+    public int getNumEnvs() {
+        return mdps.size();
+    }
+
+    public MDP<O, A, AS> getMdp(int i) {
+        return mdps.get(i);
+    }
+
+    public O reset(int i) {
+        return mdps.get(i).reset();
+    }
+
+    public boolean isDone(int i) {
+        return mdps.get(i).isDone();
+    }
+
+    /**
+     * Step all the environments
+     *
+     * @param actions one action per environment, null to leave an environment untouched
+     * @return the step replies, null for the environments that were not stepped
+     */
+    public List<StepReply<O>> step(final List<A> actions) {
+        if (actions.size() != mdps.size())
+            throw new IllegalArgumentException("Expected " + mdps.size() + " actions, got " + actions.size());
+
+        List<StepReply<O>> replies = new ArrayList<>(mdps.size());
+        if (executor == null) {
+            for (int i = 0; i < mdps.size(); i++)
+                replies.add(actions.get(i) == null ? null : mdps.get(i).step(actions.get(i)));
+            return replies;
+        }
+
+        List<Future<StepReply<O>>> futures = new ArrayList<>(mdps.size());
+        for (int i = 0; i < mdps.size(); i++) {
+            final MDP<O, A, AS> mdp = mdps.get(i);
+            final A action = actions.get(i);
+            futures.add(action == null ? null : executor.submit(new Callable<StepReply<O>>() {
+                @Override
+                public StepReply<O> call() {
+                    return mdp.step(action);
+                }
+            }));
+        }
+        try {
+            for (Future<StepReply<O>> future : futures)
+                replies.add(future == null ? null : future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return replies;
+    }
+
+    /**
+     * Stack inputs that have a batch dimension of 1 into a single batch
+     */
+    public static INDArray stack(INDArray[] inputs) {
+        return Nd4j.concat(0, inputs);
+    }
+
+    /**
+     * Close the environments created by this VectorMDP, and its thread pool.
+     * The first environment is left open, as it belongs to the caller.
+     */
+    public void close() {
+        if (executor != null)
+            executor.shutdownNow();
+        for (int i = 1; i < mdps.size(); i++)
+            mdps.get(i).close();
+    }
+}
@@ -27,6 +27,8 @@ import org.deeplearning4j.rl4j.space.Encodable;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -78,6 +80,26 @@ public class ACPolicy<O extends Encodable> extends Policy<O, Integer> {
         if (rd == null) {
             return Learning.getMaxAction(output);
         }
+        return sample(output);
+    }
+
+    @Override
+    public List<Integer> nextActions(INDArray input) {
+        return nextActions(input, IActorCritic.outputAll(input));
+    }
+
+    @Override
+    public List<Integer> nextActions(INDArray input, INDArray[] outputAll) {
+        INDArray output = outputAll[1];
+        List<Integer> actions = new ArrayList<>((int) output.size(0));
+        for (int i = 0; i < output.size(0); i++) {
+            INDArray row = output.getRow(i);
+            actions.add(rd == null ? Learning.getMaxAction(row) : sample(row));
+        }
+        return actions;
+    }
+
+    private Integer sample(INDArray output) {
         float rVal = rd.nextFloat();
         for (int i = 0; i < output.length(); i++) {
             //System.out.println(i + " " + rVal + " " + output.getFloat(i));
@@ -22,8 +22,11 @@ import org.deeplearning4j.rl4j.network.dqn.DQN;
 import org.deeplearning4j.rl4j.network.dqn.IDQN;
 import org.deeplearning4j.rl4j.space.Encodable;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author rubenfiszel (ruben.fiszel@epfl.ch) 7/18/16.
@@ -49,6 +52,21 @@ public class DQNPolicy<O extends Encodable> extends Policy<O, Integer> {
         return Learning.getMaxAction(output);
     }
 
+    @Override
+    public List<Integer> nextActions(INDArray input) {
+        return nextActions(input, new INDArray[] {dqn.output(input)});
+    }
+
+    @Override
+    public List<Integer> nextActions(INDArray input, INDArray[] qValues) {
+        INDArray output = qValues[0];
+        INDArray maxActions = Nd4j.argMax(output, 1);
+        List<Integer> actions = new ArrayList<>((int) output.size(0));
+        for (int i = 0; i < output.size(0); i++)
+            actions.add(maxActions.getInt(i));
+        return actions;
+    }
+
     public void save(String filename) throws IOException {
         dqn.save(filename);
     }
@@ -25,6 +25,8 @@ import org.deeplearning4j.rl4j.space.ActionSpace;
 import org.deeplearning4j.rl4j.space.Encodable;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -66,6 +68,29 @@ public class EpsGreedy<O extends Encodable, A, AS extends ActionSpace<A>> extend
 
     }
 
+    @Override
+    public List<A> nextActions(INDArray input) {
+        return nextActions(input, null);
+    }
+
+    @Override
+    public List<A> nextActions(INDArray input, INDArray[] output) {
+        float ep = getEpsilon();
+        List<A> actions = null;
+        int size = (int) input.size(0);
+        List<A> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (rd.nextFloat() > ep) {
+                //the underlying policy evaluates the whole batch once
+                if (actions == null)
+                    actions = output == null ? policy.nextActions(input) : policy.nextActions(input, output);
+                result.add(actions.get(i));
+            } else
+                result.add(mdp.getActionSpace().randomAction());
+        }
+        return result;
+    }
+
     public float getEpsilon() {
         return Math.min(1f, Math.max(minEpsilon, 1f - (learning.getStepCounter() - updateStart) * 1f / epsilonNbStep));
     }
@@ -26,8 +26,12 @@ import org.deeplearning4j.rl4j.network.NeuralNet;
 import org.deeplearning4j.rl4j.space.ActionSpace;
 import org.deeplearning4j.rl4j.space.Encodable;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.util.ArrayUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author rubenfiszel (ruben.fiszel@epfl.ch) 7/18/16.
  *
@@ -41,6 +45,33 @@ public abstract class Policy<O extends Encodable, A> {
 
     public abstract A nextAction(INDArray input);
 
+    /**
+     * Choose the next actions of a batch of inputs, ie. the observations of a {@link org.deeplearning4j.rl4j.mdp.VectorMDP}.
+     * Calls nextAction() on each row by default, policies backed by a network should evaluate the whole batch at once.
+     *
+     * @param input batch of inputs, one per row
+     * @return one action per row
+     */
+    public List<A> nextActions(INDArray input) {
+        int size = (int) input.size(0);
+        List<A> actions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            actions.add(nextAction(input.get(NDArrayIndex.interval(i, i + 1))));
+        return actions;
+    }
+
+    /**
+     * Same as nextActions(input), reusing the outputs of the policy network already computed for this batch, so the
+     * network is not evaluated a second time. Policies that are not backed by such outputs ignore them by default.
+     *
+     * @param input batch of inputs, one per row
+     * @param output outputs of the policy network for the batch, as returned by outputAll()
+     * @return one action per row
+     */
+    public List<A> nextActions(INDArray input, INDArray[] output) {
+        return nextActions(input);
+    }
+
     public <AS extends ActionSpace<A>> double play(MDP<O, A, AS> mdp) {
         return play(mdp, (IHistoryProcessor)null);
     }
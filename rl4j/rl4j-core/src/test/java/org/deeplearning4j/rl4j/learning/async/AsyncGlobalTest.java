@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.async;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.rl4j.learning.async.a3c.discrete.A3CDiscrete;
+import org.deeplearning4j.rl4j.learning.async.a3c.discrete.A3CDiscreteDense;
+import org.deeplearning4j.rl4j.learning.async.nstep.discrete.AsyncNStepQLearningDiscrete;
+import org.deeplearning4j.rl4j.learning.async.nstep.discrete.AsyncNStepQLearningDiscreteDense;
+import org.deeplearning4j.rl4j.mdp.toy.SimpleToy;
+import org.deeplearning4j.rl4j.mdp.toy.SimpleToyState;
+import org.deeplearning4j.rl4j.network.ac.ActorCriticFactorySeparateStdDense;
+import org.deeplearning4j.rl4j.network.ac.ActorCriticTest;
+import org.deeplearning4j.rl4j.network.dqn.DQNFactoryStdDense;
+import org.deeplearning4j.rl4j.network.dqn.DQNTest;
+import org.deeplearning4j.rl4j.network.dqn.IDQN;
+import org.deeplearning4j.rl4j.util.DataManager;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class AsyncGlobalTest {
+
+    private static AsyncNStepQLearningDiscrete.AsyncNStepQLConfiguration conf(int maxStep, int numThread,
+                    int targetDqnUpdateFreq) {
+        return new AsyncNStepQLearningDiscrete.AsyncNStepQLConfiguration(
+                        123,        //Random seed
+                        20,         //Max step By epoch
+                        maxStep,    //Max step
+                        numThread,  //Number of threads
+                        5,          //t_max
+                        targetDqnUpdateFreq, //target update (hard)
+                        0,          //num step noop warmup
+                        0.1,        //reward scaling
+                        0.99,       //gamma
+                        10.0,       //td-error clipping
+                        0.1f,       //min epsilon
+                        1000        //num step for eps greedy anneal
+        );
+    }
+
+    private static INDArray params(IDQN dqn) {
+        return dqn.getNeuralNetworks()[0].params();
+    }
+
+    private static Gradient[] gradient(IDQN dqn) {
+        return dqn.gradient(Nd4j.rand(5, 4), Nd4j.rand(5, 2));
+    }
+
+    @Test
+    public void testTargetSnapshots() {
+        IDQN dqn = new DQNFactoryStdDense(DQNTest.NET_CONF).buildDQN(new int[] {4}, 2);
+        AsyncGlobal<IDQN> global = new AsyncGlobal<>(dqn, conf(1000, 1, 10), AsyncGlobal.UpdateMode.LOCKED);
+        IDQN worker = dqn.clone();
+
+        AsyncGlobal.Snapshot<IDQN> initial = global.getTargetSnapshot();
+        INDArray initialParams = params(initial.getNet()).dup();
+        assertEquals(0, initial.getVersion());
+
+        //T = 5, no target update yet
+        global.enqueue(gradient(worker), 5);
+        assertEquals(1, global.getVersion());
+        assertSame(initial, global.getTargetSnapshot());
+        assertNotEquals(initialParams, params(dqn));
+
+        //T = 10, the target is replaced by a new snapshot, the old one is left untouched
+        global.enqueue(gradient(worker), 5);
+        AsyncGlobal.Snapshot<IDQN> snapshot = global.getTargetSnapshot();
+        assertNotSame(initial, snapshot);
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(params(dqn), params(snapshot.getNet()));
+        assertEquals(initialParams, params(initial.getNet()));
+
+        global.enqueue(gradient(worker), 5);
+        assertNotEquals(params(dqn), params(snapshot.getNet()));
+
+        //worker copies only happen when the version changed
+        long version = global.syncCurrent(worker, -1);
+        assertEquals(3, version);
+        assertEquals(params(dqn), params(worker));
+        params(worker).addi(1.0);
+        assertEquals(3, global.syncCurrent(worker, version));
+        assertNotEquals(params(dqn), params(worker));
+    }
+
+    @Test
+    public void testHogwild() throws Exception {
+        final IDQN dqn = new DQNFactoryStdDense(DQNTest.NET_CONF).buildDQN(new int[] {4}, 2);
+        final AsyncGlobal<IDQN> global = new AsyncGlobal<>(dqn, conf(100000, 4, 50), AsyncGlobal.UpdateMode.HOGWILD);
+        INDArray initialParams = params(dqn).dup();
+
+        final int numThreads = 4;
+        final int numUpdates = 50;
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final IDQN worker = dqn.clone();
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long version = -1;
+                    for (int j = 0; j < numUpdates; j++) {
+                        version = global.syncCurrent(worker, version);
+                        global.enqueue(gradient(worker), 5);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(numThreads * numUpdates * 5, global.getT().get());
+        assertEquals(numThreads * numUpdates, global.getVersion());
+        assertTrue(global.getTargetSnapshot().getVersion() > 0);
+        assertNotEquals(initialParams, params(dqn));
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkThroughput() throws Exception {
+        //steps per second of A3C and n-step Q learning on the SimpleToy, for all the update modes
+        int maxStep = 50000;
+        int numThread = 4;
+        for (AsyncGlobal.UpdateMode mode : AsyncGlobal.UpdateMode.values()) {
+            A3CDiscrete.A3CConfiguration a3cConf = new A3CDiscrete.A3CConfiguration(
+                            123,        //Random seed
+                            20,         //Max step By epoch
+                            maxStep,    //Max step
+                            numThread,  //Number of threads
+                            5,          //t_max
+                            0,          //num step noop warmup
+                            0.1,        //reward scaling
+                            0.99,       //gamma
+                            10.0        //td-error clipping
+            );
+            A3CDiscreteDense<SimpleToyState> a3c = new A3CDiscreteDense<>(new SimpleToy(20),
+                            new ActorCriticFactorySeparateStdDense(ActorCriticTest.NET_CONF).buildActorCritic(
+                                            new int[] {1}, 2),
+                            a3cConf, new DataManager(false), mode);
+            log.info("A3C {}: {} steps/s", mode, stepsPerSecond(a3c));
+
+            AsyncNStepQLearningDiscreteDense<SimpleToyState> nstep = new AsyncNStepQLearningDiscreteDense<>(
+                            new SimpleToy(20), new DQNFactoryStdDense(DQNTest.NET_CONF).buildDQN(new int[] {1}, 2),
+                            conf(maxStep, numThread, 100), new DataManager(false), mode);
+            log.info("n-step Q learning {}: {} steps/s", mode, stepsPerSecond(nstep));
+        }
+    }
+
+    private static double stepsPerSecond(AsyncLearning learning) throws InterruptedException {
+        long start = System.nanoTime();
+        learning.launchThreads();
+        while (!learning.isTrainingComplete() && learning.getAsyncGlobal().isRunning())
+            Thread.sleep(10);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return learning.getStepCounter() / seconds;
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FrameExpReplayTest {
+
+    private static List<INDArray> frames(int n) {
+        List<INDArray> frames = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            frames.add(Nd4j.create(new double[] {i, i, i}));
+        return frames;
+    }
+
+    private static void storeAll(FrameExpReplay<Integer> replay, List<INDArray> frames, int n) {
+        //consecutive transitions share their frames, as with the HistoryProcessor
+        for (int t = 0; t < n; t++) {
+            INDArray[] observation = new INDArray[] {frames.get(t), frames.get(t + 1)};
+            replay.store(new Transition<>(observation, t % 4, (double) t, false, frames.get(t + 2)));
+        }
+    }
+
+    @Test
+    public void testSharedFramesAndGather() {
+        FrameExpReplay<Integer> replay = new FrameExpReplay<>(5, 4, new int[] {2, 3}, 2, 123);
+        storeAll(replay, frames(22), 20);
+
+        //frame buffer only holds maxSize + historyLength + 1 frames, so this only works if frames are shared
+        assertEquals(5, replay.getSize());
+
+        for (int iter = 0; iter < 10; iter++) {
+            ReplayBatch<Integer> batch = replay.getFrameBatch();
+            assertEquals(4, batch.getSize());
+            assertArrayEquals(new long[] {4, 2, 3}, batch.getObservations().shape());
+            assertNull(batch.getWeights());
+
+            Set<Integer> seen = new HashSet<>();
+            for (int i = 0; i < batch.getSize(); i++) {
+                int t = (int) batch.getRewards()[i];
+                assertTrue(t >= 15);
+                assertTrue(seen.add(t));
+                assertEquals(t % 4, (int) batch.getAction(i));
+
+                assertEquals(t, batch.getObservations().getDouble(i, 0, 0), 0.0);
+                assertEquals(t + 1, batch.getObservations().getDouble(i, 1, 2), 0.0);
+                //next observation has the next frame appended in front, as Transition.append()
+                assertEquals(t + 2, batch.getNextObservations().getDouble(i, 0, 1), 0.0);
+                assertEquals(t, batch.getNextObservations().getDouble(i, 1, 1), 0.0);
+            }
+        }
+
+        ArrayList<Transition<Integer>> transitions = replay.getBatch();
+        assertEquals(4, transitions.size());
+        for (Transition<Integer> trans : transitions) {
+            int t = (int) trans.getReward();
+            assertEquals(t + 1, trans.getObservation()[1].getDouble(0), 0.0);
+            assertEquals(t + 2, trans.getNextObservation().getDouble(0), 0.0);
+        }
+    }
+
+    @Test
+    public void testSumTree() {
+        SumTree tree = new SumTree(5);
+        double[] priorities = {1, 0, 2, 3, 0.5};
+        for (int i = 0; i < priorities.length; i++)
+            tree.update(i, priorities[i]);
+
+        assertEquals(6.5, tree.total(), 1e-9);
+        assertEquals(0.5, tree.min(), 1e-9);
+        assertEquals(0, tree.find(0.0));
+        assertEquals(0, tree.find(0.99));
+        assertEquals(2, tree.find(1.0));
+        assertEquals(3, tree.find(3.5));
+        assertEquals(4, tree.find(6.4));
+
+        tree.update(4, 0);
+        assertEquals(6.0, tree.total(), 1e-9);
+        assertEquals(1.0, tree.min(), 1e-9);
+        assertEquals(3, tree.find(5.99));
+    }
+
+    @Test
+    public void testPrioritized() {
+        PrioritizedFrameExpReplay<Integer> replay =
+                        new PrioritizedFrameExpReplay<>(10, 2, new int[] {2, 3}, 2, 123, 1.0, 1.0, 0.0, 1e-6);
+        storeAll(replay, frames(12), 10);
+
+        ReplayBatch<Integer> batch = replay.getFrameBatch();
+        assertNotNull(batch.getWeights());
+
+        //give all the priority to one transition
+        int[] indices = new int[10];
+        double[] errors = new double[10];
+        for (int i = 0; i < 10; i++) {
+            indices[i] = i;
+            errors[i] = i == 7 ? 1000.0 : 0.0;
+        }
+        replay.updatePriorities(indices, errors);
+
+        int count = 0;
+        for (int iter = 0; iter < 50; iter++) {
+            batch = replay.getFrameBatch();
+            for (int i = 0; i < batch.getSize(); i++) {
+                if (batch.getRewards()[i] == 7.0) {
+                    count++;
+                    assertTrue(batch.getWeights()[i] <= 1.0);
+                }
+            }
+        }
+        assertTrue(count > 90);
+    }
+}
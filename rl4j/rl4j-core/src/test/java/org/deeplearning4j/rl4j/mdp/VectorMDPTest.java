@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.mdp;
+
+import org.deeplearning4j.gym.StepReply;
+import org.deeplearning4j.rl4j.mdp.toy.SimpleToy;
+import org.deeplearning4j.rl4j.mdp.toy.SimpleToyState;
+import org.deeplearning4j.rl4j.network.dqn.DQN;
+import org.deeplearning4j.rl4j.network.dqn.DQNFactoryStdDense;
+import org.deeplearning4j.rl4j.network.dqn.DQNTest;
+import org.deeplearning4j.rl4j.policy.DQNPolicy;
+import org.deeplearning4j.rl4j.space.DiscreteSpace;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VectorMDPTest {
+
+    @Test
+    public void testStep() {
+        for (boolean parallel : new boolean[] {false, true}) {
+            SimpleToy toy = new SimpleToy(3);
+            VectorMDP<SimpleToyState, Integer, DiscreteSpace> vectorMdp = new VectorMDP<>(toy, 3, parallel);
+            assertEquals(3, vectorMdp.getNumEnvs());
+            assertSame(toy, vectorMdp.getMdp(0));
+            for (int i = 0; i < 3; i++)
+                vectorMdp.reset(i);
+
+            //the second environment is not stepped
+            List<StepReply<SimpleToyState>> replies = vectorMdp.step(Arrays.asList(0, null, 1));
+            assertEquals(1.0, replies.get(0).getReward(), 0.0);
+            assertNull(replies.get(1));
+            assertEquals(0.0, replies.get(2).getReward(), 0.0);
+            assertEquals(1, replies.get(0).getObservation().getStep());
+            assertEquals(1, replies.get(2).getObservation().getStep());
+
+            replies = vectorMdp.step(Arrays.asList(1, 1, 1));
+            assertEquals(2, replies.get(0).getObservation().getStep());
+            assertEquals(1, replies.get(1).getObservation().getStep());
+
+            replies = vectorMdp.step(Arrays.asList(1, 1, 1));
+            assertTrue(vectorMdp.isDone(0));
+            assertFalse(vectorMdp.isDone(1));
+            assertTrue(replies.get(2).isDone());
+
+            vectorMdp.close();
+        }
+    }
+
+    @Test
+    public void testBatchedActions() {
+        DQN dqn = new DQNFactoryStdDense(DQNTest.NET_CONF).buildDQN(new int[] {4}, 3);
+        DQNPolicy<SimpleToyState> policy = new DQNPolicy<>(dqn);
+
+        INDArray[] inputs = new INDArray[8];
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = Nd4j.rand(1, 4);
+
+        List<Integer> actions = policy.nextActions(VectorMDP.stack(inputs));
+        assertEquals(inputs.length, actions.size());
+        for (int i = 0; i < inputs.length; i++)
+            assertEquals(policy.nextAction(inputs[i]), actions.get(i));
+    }
+}
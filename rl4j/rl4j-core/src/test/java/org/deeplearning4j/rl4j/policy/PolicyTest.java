@@ -29,6 +29,8 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -151,4 +153,31 @@ public class PolicyTest {
         assertTrue(count[2] < 40);
         assertTrue(count[3] < 50);
     }
+
+    @Test
+    public void testACPolicyBatch() throws Exception {
+        MultiLayerNetwork mln = new MultiLayerNetwork(new NeuralNetConfiguration.Builder().seed(555).list()
+                .layer(0, new OutputLayer.Builder().nOut(1).build()).build());
+        ACPolicy policy = new ACPolicy(new DummyAC(mln));
+
+        //one row per environment, each with a deterministic action
+        INDArray input = Nd4j.create(new double[][] {{1.0, 0.0, 0.0}, {0.0, 0.0, 1.0}, {0.0, 1.0, 0.0}});
+        for (int i = 0; i < 10; i++) {
+            List<Integer> actions = policy.nextActions(input);
+            assertEquals(Arrays.asList(0, 2, 1), actions);
+        }
+    }
+
+    @Test
+    public void testACPolicyBatchOutput() throws Exception {
+        MultiLayerNetwork mln = new MultiLayerNetwork(new NeuralNetConfiguration.Builder().seed(555).list()
+                .layer(0, new OutputLayer.Builder().nOut(1).build()).build());
+        ACPolicy policy = new ACPolicy(new DummyAC(mln));
+
+        //outputs already computed for the batch are used instead of evaluating the network again
+        INDArray input = Nd4j.create(new double[][] {{1.0, 0.0, 0.0}, {0.0, 0.0, 1.0}, {0.0, 1.0, 0.0}});
+        INDArray output = Nd4j.create(new double[][] {{0.0, 0.0, 1.0}, {1.0, 0.0, 0.0}, {0.0, 1.0, 0.0}});
+        List<Integer> actions = policy.nextActions(input, new INDArray[] {null, output});
+        assertEquals(Arrays.asList(2, 0, 1), actions);
+    }
 }